@@ -0,0 +1,134 @@
+package com.example.maptest;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.maptest.events.ConnectionEvent;
+import com.example.maptest.events.EventBus;
+import com.example.maptest.location.Fix;
+import com.example.maptest.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Names of the latency metrics the app records, and export of them for comparing releases.
+ *
+ * The dump is rewritten to files/metrics.json whenever the map screen goes to the background;
+ * pull it with "adb shell run-as com.example.maptest cat files/metrics.json".
+ */
+public final class AppMetrics {
+
+    public static final String TAG = AppMetrics.class.getSimpleName();
+
+    // building the GoogleApiClient in MapsActivity.onCreate()
+    public static final String API_CLIENT_BUILD = "api_client.build";
+    // client connected until the first fix is shown on the map
+    public static final String FIRST_FIX = "location.first_fix";
+    // addGeofences() call until its result callback
+    public static final String GEOFENCE_REGISTRATION = "geofence.registration";
+    // location that triggered a transition until its notification is posted
+    public static final String TRANSITION_TO_NOTIFICATION = "transition.notification";
+    // one campus overlay tile, from whichever cache tier has it or from rendering
+    public static final String TILE_LOAD = "tile.load";
+    // every stage of the map screen startup; events such as first_frame and first_fix are the
+    // time since onCreate(), the other stages how long they ran
+    public static final String MAPS_STARTUP = "startup.maps.";
+    // between consecutive fixes shown on the map, by their own timestamps
+    public static final String FIX_INTERVAL = "location.fix_interval";
+    // location client suspended until it is connected again
+    public static final String RECONNECT = "location.reconnect";
+    // one fix through turn-by-turn guidance on the main thread, reroutes included
+    public static final String GUIDANCE_UPDATE = "guidance.update";
+
+    private static final String EXPORT_FILE = "metrics.json";
+
+    // events the metrics subscriptions may fall behind by before dropping the oldest
+    private static final int EVENT_BUFFER = 64;
+
+    private static boolean sSubscribed;
+
+    private AppMetrics() {
+    }
+
+    /**
+     * Records the metrics derived from the EventBus, in the background. Subscribes once per
+     * process.
+     */
+    public static synchronized void subscribe() {
+        if (sSubscribed) {
+            return;
+        }
+        sSubscribed = true;
+        EventBus bus = EventBus.get();
+        bus.subscribe("metrics.fixes", Fix.class, AsyncTask.THREAD_POOL_EXECUTOR, EVENT_BUFFER,
+                new EventBus.Subscriber<Fix>() {
+                    private long mLastTime;
+
+                    @Override
+                    public void onEvent(Fix fix) {
+                        if (mLastTime != 0 && fix.getTime() > mLastTime) {
+                            Metrics.get().record(FIX_INTERVAL, (fix.getTime() - mLastTime) * 1000000);
+                        }
+                        mLastTime = fix.getTime();
+                    }
+                });
+        bus.subscribe("metrics.connection", ConnectionEvent.class, AsyncTask.THREAD_POOL_EXECUTOR,
+                EVENT_BUFFER, new EventBus.Subscriber<ConnectionEvent>() {
+                    // -1 while connected
+                    private long mSuspendedAt = -1;
+
+                    @Override
+                    public void onEvent(ConnectionEvent event) {
+                        if (event.getState() == ConnectionEvent.SUSPENDED && mSuspendedAt < 0) {
+                            mSuspendedAt = event.getTimeNanos();
+                        } else if (event.getState() == ConnectionEvent.CONNECTED && mSuspendedAt >= 0) {
+                            Metrics.get().record(RECONNECT, event.getTimeNanos() - mSuspendedAt);
+                            mSuspendedAt = -1;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Writes the current metrics in the background. Exports run one at a time, as the map
+     * screen and the transition notifier both export and share the temporary file.
+     */
+    public static void export(Context context) {
+        final File file = new File(context.getFilesDir(), EXPORT_FILE);
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeTo(file);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not export metrics", e);
+                }
+            }
+        });
+        if (BuildConfig.DEBUG) {
+            Log.i(TAG, Metrics.get().dump());
+            for (EventBus.Subscription<?> subscription : EventBus.get().getSubscriptions()) {
+                Log.i(TAG, subscription.getName() + ": " + subscription.getDelivered() + " delivered, "
+                        + subscription.getDropped() + " dropped, " + subscription.getPending() + " pending");
+            }
+        }
+    }
+
+    private static void writeTo(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try {
+            Metrics.get().writeJson(out, BuildConfig.VERSION_NAME);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
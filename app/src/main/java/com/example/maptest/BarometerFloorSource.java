@@ -0,0 +1,69 @@
+package com.example.maptest;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+import com.example.maptest.location.FloorEstimator;
+
+/**
+ * Feeds the barometer into a FloorEstimator while started. Readings arrive on the main
+ * thread, like the fixes the estimator is also fed with. Devices without a barometer never
+ * know the floor, so only regions on every floor are matched there.
+ */
+public class BarometerFloorSource implements SensorEventListener {
+
+    public static final String TAG = BarometerFloorSource.class.getSimpleName();
+
+    // about 5 readings a second, plenty for walking up the stairs
+    private static final int SAMPLING_PERIOD_US = 200000;
+
+    private final SensorManager mSensorManager;
+    // null on devices without a barometer
+    private final Sensor mBarometer;
+    private final FloorEstimator mEstimator;
+
+    public BarometerFloorSource(Context context, FloorEstimator estimator) {
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        mBarometer = mSensorManager == null ? null : mSensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        mEstimator = estimator;
+    }
+
+    public boolean hasBarometer() {
+        return mBarometer != null;
+    }
+
+    public void start() {
+        Log.i(TAG, "In: BarometerFloorSource | Method: start()");
+        if (mBarometer == null) {
+            Log.d(TAG, "No barometer, the floor stays unknown");
+            return;
+        }
+        mSensorManager.registerListener(this, mBarometer, SAMPLING_PERIOD_US);
+    }
+
+    /**
+     * Stops the readings and forgets the floor; the reference it was measured against is
+     * stale by the time the screen comes back.
+     */
+    public void stop() {
+        Log.i(TAG, "In: BarometerFloorSource | Method: stop()");
+        if (mBarometer != null) {
+            mSensorManager.unregisterListener(this);
+        }
+        mEstimator.reset();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        // hPa, timestamped in elapsed-realtime nanoseconds
+        mEstimator.onPressure(event.values[0], event.timestamp / 1000000);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
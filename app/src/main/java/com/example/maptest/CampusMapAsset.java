@@ -0,0 +1,122 @@
+package com.example.maptest;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import com.example.maptest.geo.GeometryCodec;
+import com.example.maptest.geo.LineSimplifier;
+import com.example.maptest.geofence.PolygonRegion;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.tiles.TilePack;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens the campus map compiled into the APK at build time (see the compileCampusMap task).
+ *
+ * The asset is stored uncompressed, so it can be memory mapped straight out of the APK instead
+ * of being copied onto the heap. The mapping stays valid after the descriptor is closed and is
+ * shared by every screen for the life of the process. The pre-rendered overlay tiles
+ * (see the compileCampusTiles task) are opened the same way.
+ */
+public final class CampusMapAsset {
+
+    public static final String TAG = CampusMapAsset.class.getSimpleName();
+
+    // names of the generated assets
+    private static final String ASSET_NAME = "campus.bin";
+    private static final String TILES_ASSET_NAME = "campus-tiles.bin";
+
+    private static CampusMap sMap;
+    private static TilePack sTiles;
+    private static Map<String, Region> sRegions;
+    private static Map<String, byte[]> sOutlines;
+
+    private CampusMapAsset() {
+    }
+
+    /**
+     * Returns the shared campus map, mapping it on first use.
+     */
+    public static synchronized CampusMap open(Context context) throws IOException {
+        if (sMap == null) {
+            Log.i(TAG, "In: CampusMapAsset | Method: open()");
+            sMap = CampusMap.wrap(map(context, ASSET_NAME));
+        }
+        return sMap;
+    }
+
+    /**
+     * Returns the region with the given request id, or null.
+     */
+    public static synchronized Region region(Context context, String requestId) throws IOException {
+        if (sRegions == null) {
+            Map<String, Region> regions = new HashMap<String, Region>();
+            for (Region region : open(context).regions()) {
+                regions.put(region.getId(), region);
+            }
+            sRegions = regions;
+        }
+        return sRegions.get(requestId);
+    }
+
+    /**
+     * Returns the footprint of the building with the given code, encoded with zoom levels by
+     * GeometryCodec so it is small enough to pass in an Intent, or null if it has none.
+     */
+    public static synchronized byte[] outline(Context context, String buildingCode) throws IOException {
+        if (sOutlines == null) {
+            Map<String, byte[]> outlines = new HashMap<String, byte[]>();
+            for (Region region : open(context).regions()) {
+                // the whole building, not one of its floors
+                if (region instanceof PolygonRegion && region.getBuilding() != null
+                        && region.getFloor() == Region.ANY_FLOOR) {
+                    outlines.put(region.getBuilding(), encode((PolygonRegion) region));
+                }
+            }
+            sOutlines = outlines;
+        }
+        return sOutlines.get(buildingCode);
+    }
+
+    private static byte[] encode(PolygonRegion polygon) {
+        int count = polygon.getVertexCount();
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = polygon.getVertexLat(i);
+            lngs[i] = polygon.getVertexLng(i);
+        }
+        return GeometryCodec.encode(lats, lngs, count, LineSimplifier.levels(lats, lngs, count, true),
+                GeometryCodec.DEFAULT_DECIMALS);
+    }
+
+    /**
+     * Returns the shared pre-rendered tiles, mapping them on first use.
+     */
+    public static synchronized TilePack openTiles(Context context) throws IOException {
+        if (sTiles == null) {
+            Log.i(TAG, "In: CampusMapAsset | Method: openTiles()");
+            sTiles = TilePack.wrap(map(context, TILES_ASSET_NAME));
+        }
+        return sTiles;
+    }
+
+    private static ByteBuffer map(Context context, String name) throws IOException {
+        AssetFileDescriptor fd = context.getApplicationContext().getAssets().openFd(name);
+        FileInputStream in = fd.createInputStream();
+        try {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+        } finally {
+            // also closes the descriptor
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.maptest;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.routing.AStarRouter;
+import com.example.maptest.routing.NodeLocator;
+import com.example.maptest.routing.Route;
+import com.example.maptest.routing.RouteCache;
+import com.example.maptest.routing.RoutePlanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Walking routes across the campus for the whole process, cached between the origins and
+ * destinations people keep asking for (see RouteCache).
+ *
+ * The warm set of the last run is loaded and routed in the background as soon as the main
+ * screen starts, so by the time a search opens the map its route is usually a lookup. Misses
+ * are routed on one background thread, which also owns the planner. Entries computed on an
+ * older campus map are dropped once the current one is opened.
+ */
+public class CampusRoutes {
+
+    public static final String TAG = CampusRoutes.class.getSimpleName();
+
+    // routes kept in memory; a campus route is a few hundred bytes
+    private static final int CACHE_SIZE = 1024;
+
+    // pairs saved and precomputed on the next start
+    private static final int WARM_SET_SIZE = 200;
+
+    /**
+     * Receives a route on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param route null if there is no walkway between the two points, or no campus map
+         */
+        void onRoute(Route route);
+    }
+
+    private static CampusRoutes sInstance;
+
+    private final File mWarmSetFile;
+    private final RouteCache mCache = new RouteCache(CACHE_SIZE);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mWorker;
+
+    // set on the worker once the campus map is open, null if it cannot be
+    private volatile RoutePlanner mPlanner;
+
+    public static synchronized CampusRoutes get(Context context) {
+        if (sInstance == null) {
+            sInstance = new CampusRoutes(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private CampusRoutes(final Context context) {
+        mWarmSetFile = new File(context.getFilesDir(), "routes.bin");
+        mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "campus-routes");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(context);
+            }
+        });
+    }
+
+    // Opens the campus map and routes the warm set; runs first on the worker
+    private void warmUp(Context context) {
+        Log.i(TAG, "In: CampusRoutes | Method: warmUp()");
+        int loaded = mCache.load(mWarmSetFile);
+        CampusMap map;
+        try {
+            map = CampusMapAsset.open(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open the campus map", e);
+            return;
+        }
+        NodeLocator locator = new NodeLocator(map.graph());
+        RoutePlanner planner = new RoutePlanner(locator, new AStarRouter(locator.getGraph()),
+                map.getDataVersion());
+        mCache.invalidate(planner.getGraphVersion());
+        mPlanner = planner;
+        int computed = mCache.precompute(WARM_SET_SIZE, planner);
+        Log.d(TAG, "Warm set: " + loaded + " pairs loaded, " + computed + " routes computed");
+    }
+
+    /**
+     * Finds the walking route between two points. A cached route is passed to the callback
+     * before this returns; anything else is routed in the background and delivered later.
+     * Call on the main thread.
+     */
+    public void route(final double fromLat, final double fromLng, final double toLat, final double toLng,
+                      final Callback callback) {
+        final RouteCache.Key key = RouteCache.key(fromLat, fromLng, toLat, toLng);
+        // a lookup counts towards the warm set, so each request is looked up once
+        RoutePlanner ready = mPlanner;
+        final boolean looked = ready != null;
+        if (looked) {
+            Route route = mCache.get(key, ready.getGraphVersion(),
+                    ready.nearestNode(fromLat, fromLng), ready.nearestNode(toLat, toLng));
+            if (route != null) {
+                callback.onRoute(route);
+                return;
+            }
+        }
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                RoutePlanner planner = mPlanner;
+                final Route route;
+                if (planner == null) {
+                    // the campus map could not be opened
+                    route = null;
+                } else {
+                    int origin = planner.nearestNode(fromLat, fromLng);
+                    int destination = planner.nearestNode(toLat, toLng);
+                    Route cached = looked ? null
+                            : mCache.get(key, planner.getGraphVersion(), origin, destination);
+                    route = cached != null ? cached : planner.route(origin, destination);
+                    if (cached == null && route != null) {
+                        mCache.put(key, planner.getGraphVersion(), route);
+                    }
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRoute(route);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Saves the warm set in the background, for the next start.
+     */
+    public void save() {
+        mWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mCache.save(mWarmSetFile, WARM_SET_SIZE);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not save the route warm set", e);
+                }
+            }
+        });
+    }
+}
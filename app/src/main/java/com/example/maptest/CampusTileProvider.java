@@ -0,0 +1,93 @@
+package com.example.maptest;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.metrics.Metrics;
+import com.example.maptest.metrics.Span;
+import com.example.maptest.tiles.DiskTileCache;
+import com.example.maptest.tiles.MemoryTileCache;
+import com.example.maptest.tiles.TileCache;
+import com.example.maptest.tiles.TileMath;
+import com.example.maptest.tiles.TilePack;
+import com.example.maptest.tiles.TileRenderer;
+import com.example.maptest.tiles.TileSource;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Serves the campus overlay (building footprints, walkways, floor plans) to the map without
+ * the network.
+ *
+ * Tiles come from memory, the pre-rendered pack in the APK, tiles this device rendered before
+ * (in the cache directory), or are rendered from the campus map; see {@link TileCache}. The
+ * map calls getTile() on its own worker threads, so the tiers are opened lazily there rather
+ * than on the main thread.
+ */
+public class CampusTileProvider implements TileProvider {
+
+    public static final String TAG = CampusTileProvider.class.getSimpleName();
+
+    private static final String CACHE_DIR = "campus-tiles";
+
+    private final Context mContext;
+    private TileSource mTiles;
+
+    public CampusTileProvider(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        Span load = Metrics.get().start(AppMetrics.TILE_LOAD);
+        byte[] png;
+        try {
+            png = tiles().getTile(zoom, x, y);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load tile " + zoom + "/" + x + "/" + y, e);
+            // null asks the map to try again later
+            return null;
+        }
+        load.end();
+        if (png == null || png.length == 0) {
+            return NO_TILE;
+        }
+        return new Tile(TileMath.TILE_SIZE, TileMath.TILE_SIZE, png);
+    }
+
+    private synchronized TileSource tiles() throws IOException {
+        if (mTiles == null) {
+            Log.i(TAG, "In: CampusTileProvider | Method: tiles()");
+            Resources res = mContext.getResources();
+            CampusMap map = CampusMapAsset.open(mContext);
+
+            TilePack pack = null;
+            try {
+                pack = CampusMapAsset.openTiles(mContext);
+                if (pack.getDataVersion() != map.getDataVersion()) {
+                    Log.w(TAG, "Pre-rendered tiles are out of date, rendering all zoom levels");
+                    pack = null;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "No pre-rendered tiles", e);
+            }
+
+            DiskTileCache disk = null;
+            try {
+                disk = new DiskTileCache(new File(mContext.getCacheDir(), CACHE_DIR),
+                        res.getInteger(R.integer.tile_disk_cache_kb) * 1024L, map.getDataVersion());
+            } catch (IOException e) {
+                Log.w(TAG, "Rendered tiles are kept in memory only", e);
+            }
+
+            MemoryTileCache memory = new MemoryTileCache(res.getInteger(R.integer.tile_memory_cache_kb) * 1024L);
+            mTiles = new TileCache(memory, pack, disk, new TileRenderer(map));
+        }
+        return mTiles;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.maptest;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.example.maptest.location.AdaptiveLocationPolicy;
+import com.example.maptest.location.Fix;
+import com.example.maptest.location.LocationSource;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LocationSource backed by the FusedLocationApi. The client must be connected before start().
+ * Fixes are delivered on the looper passed to the constructor.
+ */
+public class FusedLocationSource implements LocationSource {
+
+    public static final String TAG = FusedLocationSource.class.getSimpleName();
+
+    private final Context mContext;
+    private final GoogleApiClient mGoogleApiClient;
+    private final Looper mLooper;
+
+    private AdaptiveLocationPolicy.Profile mProfile;
+    private Listener mListener;
+
+    // reused for every delivery, only touched on mLooper
+    private final List<Fix> mFixPool = new ArrayList<Fix>();
+    private final List<Fix> mBatch = new ArrayList<Fix>();
+
+    private final LocationCallback mLocationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            Listener listener = mListener;
+            if (listener == null) {
+                return;
+            }
+            // refills the same Fix objects for every delivery, the listener copies what it keeps
+            List<Location> locations = result.getLocations();
+            mBatch.clear();
+            for (int i = 0; i < locations.size(); i++) {
+                if (i == mFixPool.size()) {
+                    mFixPool.add(new Fix(0, 0, 0, Float.NaN, 0));
+                }
+                mBatch.add(PlayServicesAdapter.toFix(locations.get(i), mFixPool.get(i)));
+            }
+            if (BuildConfig.TRACE_FIXES && !mBatch.isEmpty()) {
+                Log.d(TAG, "Delivering " + mBatch.size() + " fixes, newest " + mBatch.get(mBatch.size() - 1));
+            }
+            listener.onFixes(mBatch);
+        }
+    };
+
+    public FusedLocationSource(Context context, GoogleApiClient client, Looper looper) {
+        mContext = context.getApplicationContext();
+        mGoogleApiClient = client;
+        mLooper = looper;
+    }
+
+    @Override
+    public void setProfile(AdaptiveLocationPolicy.Profile profile) {
+        mProfile = profile;
+        if (mListener != null) {
+            requestLocationUpdates();
+        }
+    }
+
+    @Override
+    public void start(Listener listener) {
+        Log.i(TAG, "In: FusedLocationSource | Method: start()");
+        mListener = listener;
+        requestLocationUpdates();
+    }
+
+    @Override
+    public void stop() {
+        Log.i(TAG, "In: FusedLocationSource | Method: stop()");
+        mListener = null;
+        if (mGoogleApiClient.isConnected()) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, mLocationCallback);
+        }
+    }
+
+    @Override
+    public Fix getLastFix() {
+        if (!hasPermission() || !mGoogleApiClient.isConnected()) {
+            return null;
+        }
+        // may be null, e.g. the first time Google Play services checks for location
+        Location location = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
+        return location == null ? null
+                : PlayServicesAdapter.toFix(location, new Fix(0, 0, 0, Float.NaN, 0));
+    }
+
+    // Requesting again with the same callback replaces the previous request
+    private void requestLocationUpdates() {
+        Log.d(TAG, "In: FusedLocationSource | Method: requestLocationUpdates() " + mProfile);
+        if (mProfile != null && hasPermission() && mGoogleApiClient.isConnected()) {
+            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient,
+                    PlayServicesAdapter.toLocationRequest(mProfile), mLocationCallback, mLooper);
+        }
+    }
+
+    private boolean hasPermission() {
+        return ContextCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.maptest;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.example.maptest.geofence.GeofenceRegistry;
+import com.example.maptest.geofence.GeofenceSpec;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.metrics.Metrics;
+import com.example.maptest.metrics.Span;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.GeofenceStatusCodes;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Keeps the geofences registered with Play Services in line with the regions that should be
+ * monitored, for the whole process: the map screen registers the set its pipeline selects,
+ * and a schedule wakeup while it is paused registers the regions in effect nearest the last
+ * known location, so both work from the same GeofenceRegistry.
+ *
+ * Only the changes against the registry are sent. Everything runs on the main thread, where
+ * the results are delivered; the registry is loaded by the first get(), which may be on any.
+ */
+public class GeofenceRegistrar {
+
+    public static final String TAG = GeofenceRegistrar.class.getSimpleName();
+
+    // number of regions registered with Play Services at a time, below the limit of 100
+    public static final int MAX_MONITORED = 90;
+
+    // bump when the way regions are turned into Geofences changes, so old registrations are replaced
+    private static final int REGISTRATION_VERSION = 1;
+
+    private static final int GEOFENCE_REQ_CODE = 0;
+
+    private static GeofenceRegistrar sInstance;
+
+    private final Context mContext;
+    // what Play Services already has, so reconnecting does not register everything again
+    private final GeofenceRegistry mRegistry;
+    // the same PendingIntent is used for every request
+    private final PendingIntent mGeofenceIntent;
+
+    public static synchronized GeofenceRegistrar get(Context context) {
+        if (sInstance == null) {
+            sInstance = new GeofenceRegistrar(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private GeofenceRegistrar(Context context) {
+        mContext = context;
+        mRegistry = new GeofenceRegistry(new File(context.getFilesDir(), "geofences.bin"),
+                registrationSession());
+        Intent intent = new Intent(context, GeofenceTransitionReceiver.class);
+        mGeofenceIntent = PendingIntent.getBroadcast(
+                context, GEOFENCE_REQ_CODE, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    // Registrations are dropped on reboot and rebuilt when the app or REGISTRATION_VERSION changes
+    private static String registrationSession() {
+        String bootId;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/sys/kernel/random/boot_id"));
+            try {
+                bootId = reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // boot time to the nearest minute
+            long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            bootId = Long.toString(bootTime / 60000);
+        }
+        return bootId + "/" + BuildConfig.VERSION_CODE + "/" + REGISTRATION_VERSION;
+    }
+
+    /**
+     * Registers exactly these regions, removing whatever else is registered.
+     *
+     * @param client connected
+     * @param done   run once Play Services has answered every request, or right away if nothing
+     *               changed
+     */
+    public void register(final GoogleApiClient client, final List<Region> selected,
+                         final Runnable done) {
+        if (!mRegistry.isTrusted()) {
+            // after a reboot, an update or a lost file we cannot tell what is registered; the
+            // adds wait for the removal, which would otherwise wipe them too
+            LocationServices.GeofencingApi.removeGeofences(client, mGeofenceIntent)
+                    .setResultCallback(new ResultCallback<Status>() {
+                        @Override
+                        public void onResult(@NonNull Status status) {
+                            if (status.isSuccess()) {
+                                mRegistry.clear();
+                                save();
+                                apply(client, selected, done);
+                            } else {
+                                // still untrusted, so the next registration tries again
+                                Log.d(TAG, "Geofence removal failed: " + status);
+                                done.run();
+                            }
+                        }
+                    });
+            return;
+        }
+        apply(client, selected, done);
+    }
+
+    // Sends the differences between the registry and the selection
+    private void apply(GoogleApiClient client, List<Region> selected, Runnable done) {
+        GeofenceRegistry.Plan plan = mRegistry.plan(selected);
+        if (plan.isEmpty()) {
+            Log.d(TAG, "Geofences already registered");
+            done.run();
+            return;
+        }
+        Countdown countdown = new Countdown(
+                (plan.remove.isEmpty() ? 0 : 1) + (plan.add.isEmpty() ? 0 : 1), done);
+        if (!plan.remove.isEmpty()) {
+            removeGeofences(client, plan.remove, countdown);
+        }
+        if (!plan.add.isEmpty()) {
+            addGeofences(client, plan.add, countdown);
+        }
+    }
+
+    /**
+     * Connects, selects the regions nearest the last known location with the selector and
+     * registers them. For wakeups while the map screen is paused.
+     *
+     * @param done run once the registration is over, whether or not it succeeded
+     */
+    public void registerNearest(MonitoredSetSelector selector, Runnable done) {
+        new NearestRegistration(selector, done).connect();
+    }
+
+    // Remove geofences that are no longer among the nearest regions
+    private void removeGeofences(GoogleApiClient client, final List<String> requestIds,
+                                 final Countdown countdown) {
+        LocationServices.GeofencingApi.removeGeofences(client, requestIds)
+                .setResultCallback(new ResultCallback<Status>() {
+                    @Override
+                    public void onResult(@NonNull Status status) {
+                        if (status.isSuccess()) {
+                            mRegistry.markRemoved(requestIds);
+                            save();
+                        } else {
+                            Log.d(TAG, "Geofence removal failed: " + status);
+                        }
+                        countdown.run();
+                    }
+                });
+    }
+
+    // Add the regions to the device's monitoring list
+    private void addGeofences(GoogleApiClient client, final List<Region> regions,
+                              final Countdown countdown) {
+        if (!hasPermission()) {
+            countdown.run();
+            return;
+        }
+        // polygons are registered as their covering circle and matched exactly on the device
+        GeofencingRequest request =
+                PlayServicesAdapter.toGeofencingRequest(GeofenceSpec.forRegions(regions));
+        final Span registration = Metrics.get().start(AppMetrics.GEOFENCE_REGISTRATION);
+        LocationServices.GeofencingApi.addGeofences(client, request, mGeofenceIntent)
+                .setResultCallback(new ResultCallback<Status>() {
+                    @Override
+                    public void onResult(@NonNull Status status) {
+                        // only successful registrations count towards the latency
+                        if (status.isSuccess()) {
+                            registration.end();
+                            mRegistry.markRegistered(regions);
+                            save();
+                            Log.d(TAG, "Geofence was created");
+                        } else {
+                            Log.d(TAG, "Geofence failed to create: " + status);
+                            if (status.getStatusCode() == GeofenceStatusCodes.GEOFENCE_NOT_AVAILABLE) {
+                                // location was turned off and Play Services dropped every geofence of the app
+                                mRegistry.clear();
+                                save();
+                            }
+                        }
+                        countdown.run();
+                    }
+                });
+    }
+
+    private boolean hasPermission() {
+        return ContextCompat.checkSelfPermission(mContext, android.Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void save() {
+        try {
+            mRegistry.save();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save the geofence registry", e);
+        }
+    }
+
+    /**
+     * Runs the task once it has been run the given number of times.
+     */
+    private static final class Countdown implements Runnable {
+        private final Runnable task;
+        private int remaining;
+
+        Countdown(int count, Runnable task) {
+            this.task = task;
+            remaining = count;
+        }
+
+        @Override
+        public void run() {
+            if (--remaining == 0) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * A connection of its own, dropped once the registration is done.
+     */
+    private final class NearestRegistration implements GoogleApiClient.ConnectionCallbacks,
+            GoogleApiClient.OnConnectionFailedListener {
+        private final MonitoredSetSelector selector;
+        private final Runnable done;
+        private final GoogleApiClient client;
+        // onConnected runs again after a suspended connection comes back
+        private boolean started;
+
+        NearestRegistration(MonitoredSetSelector selector, Runnable done) {
+            this.selector = selector;
+            this.done = done;
+            client = new GoogleApiClient.Builder(mContext)
+                    .addConnectionCallbacks(this)
+                    .addOnConnectionFailedListener(this)
+                    .addApi(LocationServices.API)
+                    .build();
+        }
+
+        void connect() {
+            client.connect();
+        }
+
+        @Override
+        public void onConnected(Bundle bundle) {
+            if (started) {
+                return;
+            }
+            started = true;
+            Location last = null;
+            try {
+                last = LocationServices.FusedLocationApi.getLastLocation(client);
+            } catch (SecurityException e) {
+                Log.e(TAG, "No location permission to select geofences", e);
+            }
+            if (last == null) {
+                // the next wakeup or the map screen selects again
+                finish();
+                return;
+            }
+            selector.update(last.getLatitude(), last.getLongitude());
+            register(client, selector.getSelected(), new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            });
+        }
+
+        @Override
+        public void onConnectionSuspended(int cause) {
+            // the client reconnects by itself and calls onConnected again
+        }
+
+        @Override
+        public void onConnectionFailed(@NonNull ConnectionResult result) {
+            Log.e(TAG, "Could not connect to register geofences: " + result.getErrorCode());
+            done.run();
+        }
+
+        private void finish() {
+            client.disconnect();
+            done.run();
+        }
+    }
+}
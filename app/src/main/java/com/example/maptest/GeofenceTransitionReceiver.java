@@ -0,0 +1,196 @@
+package com.example.maptest;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.maptest.geofence.GeofenceEventDecoder;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.transition.TransitionEvent;
+import com.google.android.gms.location.GeofencingEvent;
+import com.google.android.gms.location.LocationResult;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by LKing on 11/2/2016.
+ *
+ * Receives geofence transitions from Location Services and hands what they lead to to the
+ * TransitionNotifier. Only the cheap parsing happens here, on the main thread; the
+ * broadcast is kept alive with goAsync() until the worker has posted the notification. In a
+ * process started for the broadcast, the TransitionTracker is built on a worker first (see
+ * TransitionTracker.whenReady()).
+ *
+ * A system geofence only wakes the app up: its triggering fix goes to the TransitionTracker,
+ * which asks for a short burst of fixes and notifies only the transitions they confirm, so
+ * GPS jitter along a wall does not post a notification for every flap. While the map screen
+ * is following the user, its own fixes do that and the wakeups are ignored.
+ *
+ * The alarm set for the next change of the region schedules lands here too while the map
+ * screen is not following: the regions whose hours ended are left, and the geofences are
+ * registered again for the regions now in effect (see TransitionTracker).
+ *
+ * If the campus map cannot be opened, the transitions come from the system as they are,
+ * except that a DWELL whose triggering fix is clearly outside the footprint is dropped (see
+ * GeofenceEventDecoder).
+ */
+
+public class GeofenceTransitionReceiver extends BroadcastReceiver {
+
+    protected static final String TAG = "GeofenceTransitions";
+
+    /**
+     * Handles incoming intents.
+     * @param intent sent by Location Services. This Intent is provided to Location
+     *               Services (inside a PendingIntent) when addGeofences() is called.
+     */
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        Log.i(TAG, "In: GeofenceTransitionReceiver | Method: onReceive()");
+        if (TransitionTracker.ACTION_BURST_FIXES.equals(intent.getAction())) {
+            if (LocationResult.hasResult(intent)) {
+                onBurstFixes(context, LocationResult.extractResult(intent).getLocations(), goAsync());
+            }
+            return;
+        }
+        if (TransitionTracker.ACTION_SCHEDULE_CHANGE.equals(intent.getAction())) {
+            onScheduleChange(context, goAsync());
+            return;
+        }
+
+        final GeofencingEvent geofencingEvent = GeofencingEvent.fromIntent(intent);
+        if (geofencingEvent.hasError()) {
+            String errorMessage = GeofenceErrorMessages.getErrorString(context,
+                    geofencingEvent.getErrorCode());
+            Log.e(TAG, errorMessage);
+            return;
+        }
+
+        // Get the transition type.
+        int geofenceTransition = geofencingEvent.getGeofenceTransition();
+
+        // Test that the reported transition was of interest.
+        if (!GeofenceEventDecoder.isSupported(geofenceTransition)) {
+            // Log the error.
+            Log.e(TAG, context.getString(R.string.geofence_transition_invalid_type, geofenceTransition));
+            return;
+        }
+
+        final PendingResult result = goAsync();
+        TransitionTracker.whenReady(context, new TransitionTracker.Ready() {
+            @Override
+            public void onReady(TransitionTracker tracker) {
+                if (tracker.isFollowing()) {
+                    Log.d(TAG, "The map screen is following the user");
+                    result.finish();
+                    return;
+                }
+                if (tracker.canEvaluate()) {
+                    onWakeup(context, tracker, geofencingEvent.getTriggeringLocation(), result);
+                    return;
+                }
+
+                // A single event can trigger multiple geofences; DWELLs outside the exact shape are dropped
+                List<TransitionEvent> events =
+                        PlayServicesAdapter.toTransitionEvents(geofencingEvent, decoderFor(context));
+                if (events.isEmpty()) {
+                    Log.d(TAG, "No transition left after matching the footprints");
+                }
+                submit(context, events, result);
+            }
+        });
+    }
+
+    // Evaluates the triggering fix and asks for a burst of fixes to confirm what it suggests
+    private static void onWakeup(final Context context, final TransitionTracker tracker,
+                                 Location trigger, final PendingResult result) {
+        final List<TransitionEvent> events = trigger == null
+                ? Collections.<TransitionEvent>emptyList()
+                : tracker.evaluate(Collections.singletonList(trigger));
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tracker.requestBurst();
+                } finally {
+                    submit(context, events, result);
+                }
+            }
+        });
+    }
+
+    private static void onBurstFixes(final Context context, final List<Location> locations,
+                                     final PendingResult result) {
+        TransitionTracker.whenReady(context, new TransitionTracker.Ready() {
+            @Override
+            public void onReady(TransitionTracker tracker) {
+                if (tracker.isFollowing()) {
+                    result.finish();
+                    return;
+                }
+                submit(context, tracker.evaluate(locations), result);
+            }
+        });
+    }
+
+    // Leaves the regions out of hours and registers the ones in effect near the user
+    private static void onScheduleChange(final Context context, final PendingResult result) {
+        TransitionTracker.whenReady(context, new TransitionTracker.Ready() {
+            @Override
+            public void onReady(TransitionTracker tracker) {
+                if (tracker.isFollowing()) {
+                    // the map screen's own timer applies it
+                    result.finish();
+                    return;
+                }
+                final List<TransitionEvent> events = tracker.applySchedule();
+                MonitoredSetSelector selector = tracker.newSelector();
+                if (selector == null) {
+                    submit(context, events, result);
+                    return;
+                }
+                GeofenceRegistrar.get(context).registerNearest(selector, new Runnable() {
+                    @Override
+                    public void run() {
+                        submit(context, events, result);
+                    }
+                });
+            }
+        });
+    }
+
+    // Finishes the broadcast once the worker has handled the events
+    private static void submit(Context context, List<TransitionEvent> events, final PendingResult result) {
+        if (events.isEmpty()) {
+            result.finish();
+            return;
+        }
+        TransitionNotifier.get(context).submit(events, new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        });
+    }
+
+    // Exact shapes from the campus map; a map that cannot be opened checks nothing
+    private static GeofenceEventDecoder decoderFor(final Context context) {
+        return new GeofenceEventDecoder(new GeofenceEventDecoder.Shapes() {
+            @Override
+            public Region find(String requestId) {
+                try {
+                    return CampusMapAsset.region(context, requestId);
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not open the campus map", e);
+                    return null;
+                }
+            }
+        });
+    }
+}
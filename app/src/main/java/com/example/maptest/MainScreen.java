@@ -1,15 +1,33 @@
 package com.example.maptest;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.maptest.search.ClassroomIndex;
+import com.example.maptest.search.Place;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+
 public class MainScreen extends AppCompatActivity {
 
     //GG People!
@@ -17,12 +35,62 @@ public class MainScreen extends AppCompatActivity {
     private boolean mPermissionDenied = false;
     public static final String TAG = MainScreen.class.getSimpleName();
 
+    // number of suggestions shown below the search box
+    private static final int MAX_RESULTS = 20;
+
+    // null until the directory has been loaded in the background
+    private ClassroomIndex mSearchIndex;
+
+    private EditText mSearchBox;
+    private ArrayAdapter<Place> mResultsAdapter;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.i(TAG, "In: MainScreen | Method: onCreate()");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main_screen);
 
+        mResultsAdapter = new ArrayAdapter<Place>(this, android.R.layout.simple_list_item_1);
+        ListView results = (ListView) findViewById(R.id.search_results);
+        results.setAdapter(mResultsAdapter);
+        results.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                openPlace(mResultsAdapter.getItem(position));
+            }
+        });
+
+        // Results are refreshed on every keystroke; the index keeps this well under a frame
+        mSearchBox = (EditText) findViewById(R.id.edit_message);
+        mSearchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                showResults(s);
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+        mSearchBox.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
+                if (actionId == EditorInfo.IME_ACTION_SEARCH) {
+                    searchClassroom(v);
+                    return true;
+                }
+                return false;
+            }
+        });
+
+        new LoadDirectoryTask(this).execute();
+        // routes to the usual destinations are computed while the user types
+        CampusRoutes.get(this);
+
         checkLocationPermissions();
     }
 
@@ -78,4 +146,88 @@ public class MainScreen extends AppCompatActivity {
         startActivity(intent);
     }
 
+    /**
+     * Called by the Search button: opens the map at the best match for the typed classroom.
+     */
+    public void searchClassroom(View view) {
+        Log.i(TAG, "In: MainScreen | Method: searchClassroom()");
+        if (mSearchIndex == null) {
+            Toast.makeText(this, R.string.search_not_ready, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String query = mSearchBox.getText().toString();
+        List<Place> results = mSearchIndex.search(query, 1);
+        if (results.isEmpty()) {
+            Toast.makeText(this, getString(R.string.search_no_results, query), Toast.LENGTH_SHORT).show();
+        } else {
+            openPlace(results.get(0));
+        }
+    }
+
+    private void showResults(CharSequence query) {
+        mResultsAdapter.clear();
+        if (mSearchIndex != null) {
+            mResultsAdapter.addAll(mSearchIndex.search(query, MAX_RESULTS));
+        }
+    }
+
+    private void openPlace(Place place) {
+        Log.i(TAG, "In: MainScreen | Method: openPlace()");
+        Intent intent = new Intent(this, MapsActivity.class);
+        intent.putExtra(MapsActivity.EXTRA_DESTINATION_NAME, place.getLabel());
+        intent.putExtra(MapsActivity.EXTRA_DESTINATION_LAT, place.getLat());
+        intent.putExtra(MapsActivity.EXTRA_DESTINATION_LNG, place.getLng());
+        try {
+            // already read along with the directory, so this is a lookup
+            byte[] outline = CampusMapAsset.outline(this, place.getBuildingCode());
+            if (outline != null) {
+                intent.putExtra(MapsActivity.EXTRA_DESTINATION_OUTLINE, outline);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read the building outline", e);
+        }
+        startActivity(intent);
+    }
+
+    private void onDirectoryLoaded(ClassroomIndex index) {
+        Log.i(TAG, "In: MainScreen | Method: onDirectoryLoaded()");
+        mSearchIndex = index;
+        // the user may have typed before the directory was ready
+        showResults(mSearchBox.getText());
+    }
+
+    /**
+     * Reads the directory from the campus map and builds the search index off the main thread.
+     */
+    private static class LoadDirectoryTask extends AsyncTask<Void, Void, ClassroomIndex> {
+
+        private final Context mContext;
+        private final WeakReference<MainScreen> mActivity;
+
+        LoadDirectoryTask(MainScreen activity) {
+            mContext = activity.getApplicationContext();
+            mActivity = new WeakReference<MainScreen>(activity);
+        }
+
+        @Override
+        protected ClassroomIndex doInBackground(Void... params) {
+            try {
+                ClassroomIndex index = new ClassroomIndex(CampusMapAsset.open(mContext).places());
+                // encode the building outlines now rather than when a place is opened
+                CampusMapAsset.outline(mContext, null);
+                return index;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not load the campus directory", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(ClassroomIndex index) {
+            MainScreen activity = mActivity.get();
+            if (activity != null && index != null) {
+                activity.onDirectoryLoaded(index);
+            }
+        }
     }
+}
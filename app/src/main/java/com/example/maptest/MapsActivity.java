@@ -1,108 +1,321 @@
 package com.example.maptest;
 
-import android.app.PendingIntent;
 import android.content.Intent;
 import android.content.IntentSender;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.location.Location;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.maptest.events.ConnectionEvent;
+import com.example.maptest.events.EventBus;
+import com.example.maptest.events.EventPool;
+import com.example.maptest.geo.GeometryCodec;
+import com.example.maptest.geofence.FloorIndex;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.geofence.RegionScheduler;
+import com.example.maptest.location.Fix;
+import com.example.maptest.location.FloorEstimator;
+import com.example.maptest.location.LocationPipeline;
+import com.example.maptest.location.LocationSource;
+import com.example.maptest.location.ReplayLocationSource;
+import com.example.maptest.location.TraceReader;
+import com.example.maptest.metrics.Metrics;
+import com.example.maptest.metrics.Span;
+import com.example.maptest.overlay.CameraFollower;
+import com.example.maptest.routing.AStarRouter;
+import com.example.maptest.routing.EdgeLocator;
+import com.example.maptest.routing.Guidance;
+import com.example.maptest.routing.GuidanceEvent;
+import com.example.maptest.routing.MapMatcher;
+import com.example.maptest.routing.NodeLocator;
+import com.example.maptest.routing.Route;
+import com.example.maptest.routing.WalkwayGraph;
+import com.example.maptest.search.Place;
+import com.example.maptest.startup.Startup;
+import com.example.maptest.transition.TransitionEvent;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.location.Geofence;
-import com.google.android.gms.location.GeofencingRequest;
-import com.google.android.gms.location.LocationListener;
-import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.Circle;
-import com.google.android.gms.maps.model.CircleOptions;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
-
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import static com.example.maptest.R.id.map;
 
 public class MapsActivity extends FragmentActivity implements
         OnMapReadyCallback,
         GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener,
-        LocationListener,
-        ResultCallback<Status> {
-
-    //timers
-    long start;
-    long start1;
-    long start2;
-    long start3;
-    long end3;
-    long end2;
-    long end1;
-    long end;
+        GoogleApiClient.OnConnectionFailedListener {
 
     private SupportMapFragment mapFragment;
     private GoogleMap mMap;
 
-    protected ArrayList<Geofence> mGeofenceList;
-
-    private PendingIntent mGeofencePendingIntent;
-
-    // used to build location request client
-    private LocationRequest mLocationRequest;
-
     // Google Services client for APIs and other functions
     private GoogleApiClient mGoogleApiClient;
 
     // TAG variable for printing info to the log
     public static final String TAG = MapsActivity.class.getSimpleName();
 
+    // Intent extras describing the place picked in the MainScreen search box
+    public static final String EXTRA_DESTINATION_NAME = "com.example.maptest.DESTINATION_NAME";
+    public static final String EXTRA_DESTINATION_LAT = "com.example.maptest.DESTINATION_LAT";
+    public static final String EXTRA_DESTINATION_LNG = "com.example.maptest.DESTINATION_LNG";
+    // footprint of the destination's building, encoded by GeometryCodec
+    public static final String EXTRA_DESTINATION_OUTLINE = "com.example.maptest.DESTINATION_OUTLINE";
+
+    // Debug builds only: path of a GPX or CSV trace to replay instead of the fused provider
+    public static final String EXTRA_REPLAY_TRACE = "com.example.maptest.REPLAY_TRACE";
+
+    // playback speed of a replayed trace
+    public static final String EXTRA_REPLAY_SPEEDUP = "com.example.maptest.REPLAY_SPEEDUP";
+
     // Constant static member to define request code to be sent to Google Play Services
     private final static int CONNECTION_FAILURE_RESOLUTION_REQUEST = 9000;
 
-    // variables to set location update interval
-    private long UPDATE_INTERVAL = 30 * 1000; // 30 seconds, in milliseconds
-    private long FASTEST_INTERVAL = 10 * 1000; // 10 second, in milliseconds
+    //copies of the shown fixes in use at a time: the camera's and a few the metrics lag behind by
+    private static final int SHOWN_FIX_POOL = 8;
+
+    //zoom level the camera starts at on the first fix
+    private static final float INITIAL_ZOOM = 15;
+
+    //highest zoom the map allows; the destination outline is decoded for it
+    private static final int MAX_ZOOM = 20;
+
+    //outline of the destination's building
+    private static final int OUTLINE_COLOR = Color.argb(200, 176, 30, 36);
+    private static final int OUTLINE_FILL = Color.argb(40, 176, 30, 36);
+    private static final float OUTLINE_WIDTH = 4;
+
+    //walking route to the destination
+    private static final int ROUTE_COLOR = Color.argb(200, 176, 30, 36);
+    private static final float ROUTE_WIDTH = 12;
+
+    //what the guidance banner says for each GuidanceEvent type
+    private static final int[] GUIDANCE_TEXT = {
+            R.string.guidance_slight_left,
+            R.string.guidance_left,
+            R.string.guidance_sharp_left,
+            R.string.guidance_slight_right,
+            R.string.guidance_right,
+            R.string.guidance_sharp_right,
+            R.string.guidance_arrive,
+            R.string.guidance_arrived,
+            R.string.guidance_off_route,
+            R.string.guidance_rerouted,
+    };
+
+    //startup events, completed by the callbacks they are named after
+    private static final String EVENT_MAP_READY = "map_ready";
+    private static final String EVENT_CONNECTED = "connected";
+    private static final String EVENT_FIRST_FRAME = "first_frame";
+    private static final String EVENT_FIRST_FIX = "first_fix";
+
+    //startup stages, see createStartup()
+    private static final String STAGE_REGIONS = "regions";
+    private static final String STAGE_LOCATION_SOURCE = "location_source";
+    private static final String STAGE_WALKWAYS = "walkways";
+    private static final String STAGE_PIPELINE = "pipeline";
+    private static final String STAGE_TRACKING = "tracking";
+    private static final String STAGE_MAP = "map";
+    private static final String STAGE_GEOFENCE_CIRCLES = "geofence_circles";
+    private static final String STAGE_PLACES = "places";
+    private static final String STAGE_PLACE_MARKERS = "place_markers";
+    private static final String STAGE_TRACE = "trace";
+
+    //runs the rest of onCreate as stages; what needs the map or the connected client waits for it
+    private Startup mStartup;
+
+    //all campus regions by floor, matched locally on the floor the user is on
+    private FloorIndex mFloorIndex;
+
+    //the regions on every floor; only the nearest ones are registered with the system
+    private RegionIndex mRegionIndex;
+
+    //which floor the user is on, from the barometer
+    private final FloorEstimator mFloorEstimator = new FloorEstimator();
+    private BarometerFloorSource mBarometer;
+
+    //turns regions on and off by building hours and class times; only the regions in effect are
+    //registered, tracked closely and notified about. Shared with the TransitionTracker
+    private RegionScheduler mRegionScheduler;
+
+    //decides which regions are registered as the user moves
+    private MonitoredSetSelector mGeofenceSelector;
+
+    //wakes up on the main thread, where fixes arrive, when the next region turns on or off
+    private final Handler mScheduleHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mScheduleTimer = new Runnable() {
+        @Override
+        public void run() {
+            advanceSchedule();
+        }
+    };
+
+    //keeps what Play Services has in line with the selection, shared with the schedule wakeups
+    private GeofenceRegistrar mGeofenceRegistrar;
+
+    //draws the registered geofences once Play Services has answered
+    private final Runnable mGeofencesRegistered = new Runnable() {
+        @Override
+        public void run() {
+            drawGeofence();
+        }
+    };
+
+    //where fixes come from: the fused provider, or a recorded trace in debug builds
+    private LocationSource mLocationSource;
+
+    //snaps fixes onto the campus walkways; null if the campus map could not be read
+    private MapMatcher mMapMatcher;
+
+    //adapts the location request and turns fixes into geofence and camera updates
+    private LocationPipeline mLocationPipeline;
 
-    //LatLng object for cherryHall, used for geofence and marker
-    private LatLng cherryHall = new LatLng(36.987336, -86.451221);
+    //the camera is zoomed in once, on the first fix; later fixes only pan, and only when the
+    //map would visibly shift
+    private final CameraFollower mCameraFollower = new CameraFollower();
 
-    //sets how long the geofence will exist
-    private static final long GEO_DURATION = 100 * 1000;
+    //times connection to first fix shown, null once it has been shown
+    private Span mFirstFixSpan;
 
-    //string that provides the ID for the geofence
-    private static final String GEOFENCE_REQ_ID = "Cherry Hall";
+    //the last fix that arrived before the map was set up, shown once it is; null if none
+    private Fix mPendingFix;
 
-    //the active area for the geofence
-    private static final float GEOFENCE_RADIUS = 50.0f; // in meters
+    //campus places read by the places stage, null if they could not be
+    private List<Place> mPlaces;
 
-    //circle object that provides a visual reference for the geofence
-    private Circle geoFenceLimits;
+    //marker of the classroom picked on the main screen, null if the map was opened without one
+    private Marker mDestinationMarker;
+
+    //the route to the destination is requested once, from the first fix shown
+    private boolean mRouteRequested;
+
+    //guides along the route to the destination and publishes it; a cached route arrives before
+    //CampusRoutes.route returns
+    private final CampusRoutes.Callback mRouteCallback = new CampusRoutes.Callback() {
+        @Override
+        public void onRoute(Route route) {
+            if (route == null) {
+                Log.d(TAG, "No walking route to the destination");
+                return;
+            }
+            if (mGuidance != null) {
+                mGuidance.start(route);
+            }
+            EventBus.get().publish(route);
+        }
+    };
+
+    //turn-by-turn guidance along the route, updated with every fix shown on the main thread;
+    //null if the campus map could not be read
+    private Guidance mGuidance;
+
+    //publishes what the guidance decided, and the new route after a reroute so the line follows
+    private final Guidance.Listener mGuidanceListener = new Guidance.Listener() {
+        @Override
+        public void onGuidance(GuidanceEvent event) {
+            EventBus bus = EventBus.get();
+            bus.publish(event);
+            if (event.getType() == GuidanceEvent.REROUTED) {
+                bus.publish(event.getRoute());
+            }
+        }
+    };
+
+    //the route line, replaced when the user is rerouted
+    private Polyline mRouteLine;
+
+    //the next maneuver, over the map
+    private TextView mGuidanceView;
+
+    //the camera and the route line only need the newest fix and route by the time the main
+    //thread gets to them
+    private EventBus.Subscription<Fix> mFixSubscription;
+    private EventBus.Subscription<Route> mRouteSubscription;
+    private EventBus.Subscription<GuidanceEvent> mGuidanceSubscription;
+
+    //runs replayed fixes and main thread startup stages on the UI thread
+    private final Executor mMainThreadExecutor = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    //the copies of the shown fixes published on the EventBus, recycled once every subscriber
+    //has had them
+    private final EventPool<Fix> mShownFixes = new EventPool<Fix>(SHOWN_FIX_POOL,
+            new EventPool.Factory<Fix>() {
+                @Override
+                public Fix create() {
+                    return new Fix(0, 0, 0, Float.NaN, 0);
+                }
+            });
+
+    //receives what the location pipeline decided
+    private final LocationPipeline.Callback mPipelineCallback = new LocationPipeline.Callback() {
+        @Override
+        public void onMonitoredSetChanged(MonitoredSetSelector.Diff diff) {
+            startGeofence();
+        }
+
+        @Override
+        public void onTransitions(List<TransitionEvent> events) {
+            // confirmed against the exact shapes; the system geofences are ignored meanwhile
+            TransitionNotifier.get(MapsActivity.this).submit(events, null);
+        }
+
+        @Override
+        public void onFixShown(Fix fix) {
+            // the pipeline reuses its fixes, so a pooled copy is published
+            EventBus.get().publish(mShownFixes.acquire().set(fix), mShownFixes);
+        }
+    };
+
+    //campus markers and the circles of the monitored geofences, culled to the viewport
+    private OverlayManager mOverlayManager;
 
     protected void onCreate(Bundle savedInstanceState) {
         Log.i(TAG, "In: MapsActivity | Method: onCreate()");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_maps);
-
-        mGeofenceList = new ArrayList<Geofence>();
-        mGeofencePendingIntent = null;
+        mGuidanceView = (TextView) findViewById(R.id.guidance);
 
         // Obtain the SupportMapFragment and get notified when the map is ready to be used.
         mapFragment = (SupportMapFragment) getSupportFragmentManager().findFragmentById(map);
         mapFragment.getMapAsync(this);
 
-        start1 = System.nanoTime();
+        Span clientBuild = Metrics.get().start(AppMetrics.API_CLIENT_BUILD);
         // Create the API client to start receiving Google Services
         // Multiple APIs can be passed in here
         mGoogleApiClient = new GoogleApiClient.Builder(this)
@@ -113,22 +326,196 @@ public class MapsActivity extends FragmentActivity implements
                 .addApi(LocationServices.API)
                 // Builds the client
                 .build();
-        end1 = System.nanoTime();
-        Log.i(TAG, "Time to build GoogleApiClient = "+(end1-start1)/1000000+ "ms");
-
-        start2 = System.nanoTime();
-        // Initializes the LocationRequest variable
-        // Set priority to High Accuracy to request as accurate a location as possible
-        // This takes more power and time, but is essential for a navigation app
-        // Obviously use low time intervals since we're creating a navigation app
-        mLocationRequest = LocationRequest.create()
-                .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
-                .setInterval(UPDATE_INTERVAL)
-                .setFastestInterval(FASTEST_INTERVAL);
-        end2 = System.nanoTime();
-        Log.i(TAG, "Time to start LocationServices = "+(end2-start2)/1000000+ "ms");
+        clientBuild.end();
+
+        mBarometer = new BarometerFloorSource(this, mFloorEstimator);
+
+        // Fixes and routes reach the map through the event bus, like every other consumer
+        EventBus bus = EventBus.get();
+        mFixSubscription = bus.subscribeLatest("maps.camera", Fix.class, mMainThreadExecutor,
+                new EventBus.Subscriber<Fix>() {
+                    @Override
+                    public void onEvent(Fix fix) {
+                        showFix(fix);
+                    }
+                });
+        mRouteSubscription = bus.subscribeLatest("maps.route", Route.class, mMainThreadExecutor,
+                new EventBus.Subscriber<Route>() {
+                    @Override
+                    public void onEvent(Route route) {
+                        showRoute(route);
+                    }
+                });
+        mGuidanceSubscription = bus.subscribeLatest("maps.guidance", GuidanceEvent.class,
+                mMainThreadExecutor, new EventBus.Subscriber<GuidanceEvent>() {
+                    @Override
+                    public void onEvent(GuidanceEvent event) {
+                        showGuidance(event);
+                    }
+                });
+        AppMetrics.subscribe();
+
+        // Everything else runs as stages once the frame, the map or the client is ready for it
+        mStartup = createStartup();
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                mStartup.complete(EVENT_FIRST_FRAME);
+                return true;
+            }
+        });
+        mStartup.start();
     }//end onCreate
 
+    /**
+     * The startup of the screen as a graph: the campus regions and the location source are read
+     * in parallel in the background while the map loads, the map is set up as soon as it is
+     * ready, and tracking starts once both the pipeline and the client are. The places and their
+     * markers are not needed for the first frame and wait for it.
+     */
+    private Startup createStartup() {
+        return new Startup(mMainThreadExecutor, AsyncTask.THREAD_POOL_EXECUTOR, Metrics.get(),
+                AppMetrics.MAPS_STARTUP)
+                .event(EVENT_MAP_READY)
+                .event(EVENT_CONNECTED)
+                .event(EVENT_FIRST_FRAME)
+                .event(EVENT_FIRST_FIX)
+                .inBackground(STAGE_REGIONS, new Runnable() {
+                    @Override
+                    public void run() {
+                        loadRegions();
+                    }
+                })
+                .inBackground(STAGE_LOCATION_SOURCE, new Runnable() {
+                    @Override
+                    public void run() {
+                        // It starts out at high accuracy without batching; the pipeline relaxes it
+                        // once it knows how far the user is from the nearest region edge
+                        mLocationSource = createLocationSource();
+                    }
+                })
+                .inBackground(STAGE_WALKWAYS, new Runnable() {
+                    @Override
+                    public void run() {
+                        loadWalkways();
+                    }
+                })
+                .inBackground(STAGE_PIPELINE, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Where the user is stays with the process, so the pipeline and the
+                        // geofence wakeups in between screens share one evaluator
+                        mLocationPipeline = new LocationPipeline.Builder(mLocationSource, mFloorIndex,
+                                mGeofenceSelector, mPipelineCallback)
+                                .floors(mFloorEstimator)
+                                .matcher(mMapMatcher)
+                                .activeRegions(mRegionScheduler)
+                                .transitions(TransitionTracker.get(MapsActivity.this).getEvaluator())
+                                .build();
+                    }
+                }, STAGE_REGIONS, STAGE_WALKWAYS, STAGE_LOCATION_SOURCE)
+                .onMain(STAGE_TRACKING, new Runnable() {
+                    @Override
+                    public void run() {
+                        startTracking();
+                    }
+                }, STAGE_PIPELINE, EVENT_CONNECTED)
+                .onMain(STAGE_MAP, new Runnable() {
+                    @Override
+                    public void run() {
+                        setUpMap();
+                    }
+                }, EVENT_MAP_READY)
+                .onMain(STAGE_GEOFENCE_CIRCLES, new Runnable() {
+                    @Override
+                    public void run() {
+                        // geofences registered before the map was set up
+                        drawGeofence();
+                    }
+                }, STAGE_MAP, STAGE_REGIONS)
+                .inBackground(STAGE_PLACES, new Runnable() {
+                    @Override
+                    public void run() {
+                        loadPlaces();
+                    }
+                }, EVENT_FIRST_FRAME)
+                .onMain(STAGE_PLACE_MARKERS, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mPlaces != null) {
+                            mOverlayManager.setPlaces(mPlaces);
+                        }
+                    }
+                }, STAGE_PLACES, STAGE_MAP)
+                .onMain(STAGE_TRACE, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (BuildConfig.DEBUG) {
+                            Log.i(TAG, "Startup trace\n" + mStartup.dump());
+                        }
+                    }
+                }, EVENT_FIRST_FIX, STAGE_GEOFENCE_CIRCLES, STAGE_PLACE_MARKERS);
+    }
+
+    // Indexes every campus region once; lookups and nearest-N selection run against it, skipping
+    // the regions out of hours
+    private void loadRegions() {
+        List<Region> regions;
+        try {
+            regions = CampusMapAsset.open(this).regions();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open the campus map", e);
+            regions = new ArrayList<Region>();
+        }
+        mFloorIndex = new FloorIndex(regions);
+        mRegionIndex = mFloorIndex.getAnyFloor();
+        // the geofence wakeups in between screens leave the same regions out
+        mRegionScheduler = TransitionTracker.get(this).getScheduler();
+        mGeofenceSelector = new MonitoredSetSelector(mRegionIndex, mRegionScheduler,
+                GeofenceRegistrar.MAX_MONITORED);
+        // loads what is registered off the main thread
+        mGeofenceRegistrar = GeofenceRegistrar.get(this);
+    }
+
+    // Indexes the walkways the fixes are snapped onto and guided along; without them fixes are
+    // used as delivered and routes are only drawn
+    private void loadWalkways() {
+        try {
+            WalkwayGraph graph = CampusMapAsset.open(this).graph();
+            mMapMatcher = new MapMatcher(new EdgeLocator(graph));
+            mGuidance = new Guidance(new NodeLocator(graph), new AStarRouter(graph), mGuidanceListener);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load the campus walkways", e);
+        }
+    }
+
+    // Reads the campus places for the map markers
+    private void loadPlaces() {
+        try {
+            mPlaces = CampusMapAsset.open(this).places();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load the campus places", e);
+        }
+    }
+
+    // Uses the trace named in the intent when replaying in a debug build, the fused provider otherwise
+    private LocationSource createLocationSource() {
+        String trace = getIntent().getStringExtra(EXTRA_REPLAY_TRACE);
+        if (BuildConfig.DEBUG && trace != null) {
+            try {
+                List<Fix> fixes = TraceReader.read(new File(trace));
+                Log.i(TAG, "Replaying " + fixes.size() + " fixes from " + trace);
+                return new ReplayLocationSource(fixes,
+                        getIntent().getDoubleExtra(EXTRA_REPLAY_SPEEDUP, 1), mMainThreadExecutor);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not read trace " + trace, e);
+            }
+        }
+        return new FusedLocationSource(this, mGoogleApiClient, Looper.getMainLooper());
+    }
+
     /**
      * Now that the client is built, we connect it
      * Use onResume() instead of onStart() because the activity may be paused
@@ -150,12 +537,31 @@ public class MapsActivity extends FragmentActivity implements
     protected void onPause() {
         Log.i(TAG, "In: MapsActivity | Method: onPause().");
         super.onPause();
+        // null while the pipeline stage has not run yet
+        if (mLocationPipeline != null) {
+            mLocationPipeline.stop();
+        }
+        mScheduleHandler.removeCallbacks(mScheduleTimer);
+        mBarometer.stop();
+        TransitionTracker.get(this).setFollowing(false);
+        CampusRoutes.get(this).save();
+        AppMetrics.export(this);
         if (mGoogleApiClient.isConnected()) {
-            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, this);
             mGoogleApiClient.disconnect();
         }
     }// end onPause
 
+    /**
+     * Stops the map from receiving events once the activity is gone
+     */
+    protected void onDestroy() {
+        Log.i(TAG, "In: MapsActivity | Method: onDestroy().");
+        super.onDestroy();
+        mFixSubscription.cancel();
+        mRouteSubscription.cancel();
+        mGuidanceSubscription.cancel();
+    }// end onDestroy
+
     /**
      * Check for permission to access location
      */
@@ -177,26 +583,54 @@ public class MapsActivity extends FragmentActivity implements
         //Check for permission for location data
         //If permission is not granted, request it
         checkPermission();
+        EventBus.get().publish(new ConnectionEvent(ConnectionEvent.CONNECTED, 0, System.nanoTime()));
 
-        start3 = System.nanoTime();
-        // Location variable for storing last location
-        // Note: this may be null if the last location is not already known
-        // For example, the first time Google Play services checks for location
-        Location location = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
-
-        if (location == null) {
-            Log.d(TAG, "Location null");
-            LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, mLocationRequest, this);
+        // the tracking stage runs once, on the first connection; reconnections start it here
+        if (mStartup.isDone(STAGE_TRACKING)) {
+            startTracking();
         } else {
-            onLocationChanged(location);
+            mStartup.complete(EVENT_CONNECTED);
         }
-
-        startGeofence();
     }// end onConnected
 
+    //Follows the user once both the pipeline and the client are ready
+    private void startTracking() {
+        Log.i(TAG, "In: MapsActivity | Method: startTracking()");
+        if (!mGoogleApiClient.isConnected()) {
+            // paused before the pipeline was ready; the next connection starts it
+            return;
+        }
+        mFirstFixSpan = Metrics.get().start(AppMetrics.FIRST_FIX);
+        // Geofences registered by a previous connection stay; only changes are sent
+        // The pipeline replays the last known location, if any, then follows the user
+        TransitionTracker.get(this).setFollowing(true);
+        mBarometer.start();
+        // hours that passed while paused are applied before the first fix
+        advanceSchedule();
+        mLocationPipeline.start();
+    }
+
+    //Turns on and off the regions that are due and waits for the next change while tracking; while
+    //paused, the TransitionTracker sets an alarm for it instead
+    private void advanceSchedule() {
+        Log.i(TAG, "In: MapsActivity | Method: advanceSchedule()");
+        mScheduleHandler.removeCallbacks(mScheduleTimer);
+        long now = System.currentTimeMillis();
+        if (mRegionScheduler.advance(now) > 0) {
+            Log.d(TAG, mRegionScheduler.getInactiveCount() + " regions out of hours");
+            mLocationPipeline.onActiveRegionsChanged();
+        }
+        long next = mRegionScheduler.nextChange();
+        if (next != RegionScheduler.NEVER) {
+            // uptime based, so it runs late after deep sleep; the next startTracking catches up
+            mScheduleHandler.postDelayed(mScheduleTimer, next - now);
+        }
+    }
+
     public void onConnectionSuspended(int i) {
         Log.i(TAG, "In: MapsActivity | Method: onConnectionSuspended()");
         Log.i(TAG, "Location services suspended. Please reconnect.");
+        EventBus.get().publish(new ConnectionEvent(ConnectionEvent.SUSPENDED, i, System.nanoTime()));
         if (i == CAUSE_SERVICE_DISCONNECTED) {
             Toast.makeText(this, "Disconnected. Please re-connect.", Toast.LENGTH_SHORT).show();
         } else if (i == CAUSE_NETWORK_LOST) {
@@ -206,6 +640,8 @@ public class MapsActivity extends FragmentActivity implements
 
     public void onConnectionFailed(ConnectionResult connectionResult) {
         Log.i(TAG, "In: MapsActivity | Method: onConnectionFailed()");
+        EventBus.get().publish(new ConnectionEvent(ConnectionEvent.FAILED,
+                connectionResult.getErrorCode(), System.nanoTime()));
         if (connectionResult.hasResolution()) {
             try {
                 // Start an Activity that tries to resolve the error
@@ -222,25 +658,86 @@ public class MapsActivity extends FragmentActivity implements
      * All of the following code is for gathering the user's location
      */
 
-    //This method is called any time Google Play Service's detects a change in location
-    public void onLocationChanged(Location location) {
-        Log.i(TAG, "In: MapsActivity | Method: onLocationChanged()");
-        // Print passed location to the log
-        Log.d(TAG, location.toString());
-
-        // Use double for storing coordinates as this is what LatLng objects use
-        double currentLatitude = location.getLatitude();
-        double currentLongitude = location.getLongitude();
+    //Moves the camera to a fix the location pipeline decided is worth showing. Gets the newest
+    //one each time the main thread is free, and allocates only when the camera actually moves
+    private void showFix(Fix fix) {
+        if (BuildConfig.TRACE_FIXES) {
+            Log.d(TAG, "In: MapsActivity | Method: showFix() " + fix);
+        }
+        if (mOverlayManager == null) {
+            // the map is not set up yet; the map stage shows the latest fix, a copy as this one
+            // goes back to the pool
+            mPendingFix = new Fix(0, 0, 0, Float.NaN, 0).set(fix);
+            return;
+        }
+        boolean first = !mCameraFollower.isPositioned();
+        if (mCameraFollower.follow(fix.getLat(), fix.getLng(), mOverlayManager.getZoom())) {
+            LatLng latLng = new LatLng(fix.getLat(), fix.getLng());
+            mMap.moveCamera(first
+                    ? CameraUpdateFactory.newLatLngZoom(latLng, INITIAL_ZOOM)
+                    : CameraUpdateFactory.newLatLng(latLng));
+        }
+        if (mFirstFixSpan != null) {
+            mFirstFixSpan.end();
+            mFirstFixSpan = null;
+            mStartup.complete(EVENT_FIRST_FIX);
+        }
+        if (mDestinationMarker != null && !mRouteRequested) {
+            mRouteRequested = true;
+            LatLng destination = mDestinationMarker.getPosition();
+            CampusRoutes.get(this).route(fix.getLat(), fix.getLng(),
+                    destination.latitude, destination.longitude, mRouteCallback);
+        }
+        if (mGuidance != null && mGuidance.getRoute() != null) {
+            long start = System.nanoTime();
+            mGuidance.update(fix);
+            Metrics.get().record(AppMetrics.GUIDANCE_UPDATE, System.nanoTime() - start);
+        }
+    }// end showFix
+
+    //Outlines the destination's building, with only the corners that show at the highest zoom
+    private void showOutline(byte[] outline) {
+        Log.i(TAG, "In: MapsActivity | Method: showOutline()");
+        PolygonOptions polygon = new PolygonOptions()
+                .strokeColor(OUTLINE_COLOR)
+                .strokeWidth(OUTLINE_WIDTH)
+                .fillColor(OUTLINE_FILL);
+        GeometryCodec.Reader reader = new GeometryCodec.Reader(ByteBuffer.wrap(outline), MAX_ZOOM);
+        while (reader.next()) {
+            polygon.add(new LatLng(reader.getLat(), reader.getLng()));
+        }
+        mMap.addPolygon(polygon);
+    }
 
-        // Create new LatLng object from recent location
-        LatLng latLng = new LatLng(currentLatitude, currentLongitude);
-        end3 = System.nanoTime();
-        Log.i(TAG, "Time to get first location update = "+(end3-start3)/1000000+ "ms");
+    //Draws the walking route to the destination, in place of the one before a reroute
+    private void showRoute(Route route) {
+        Log.i(TAG, "In: MapsActivity | Method: showRoute()");
+        PolylineOptions line = new PolylineOptions()
+                .color(ROUTE_COLOR)
+                .width(ROUTE_WIDTH);
+        for (int i = 0; i < route.size(); i++) {
+            line.add(new LatLng(route.getLat(i), route.getLng(i)));
+        }
+        if (mRouteLine != null) {
+            mRouteLine.remove();
+        }
+        mRouteLine = mMap.addPolyline(line);
+        long minutes = Math.max(1, (route.getWalkingTime() + 30) / 60);
+        mDestinationMarker.setSnippet(getResources().getQuantityString(
+                R.plurals.route_walking_minutes, (int) minutes, minutes));
+    }
 
-        //move the camera to the user's position
-        mMap.moveCamera(CameraUpdateFactory.newLatLng(latLng));
-        mMap.moveCamera(CameraUpdateFactory.zoomTo(15));
-    }// end onLocationChanged
+    //Shows the newest guidance over the map; once arrived, the banner says so until the map closes
+    private void showGuidance(GuidanceEvent event) {
+        if (BuildConfig.TRACE_FIXES) {
+            Log.d(TAG, "In: MapsActivity | Method: showGuidance() " + event);
+        }
+        String text = event.isManeuver()
+                ? getString(GUIDANCE_TEXT[event.getType()], Math.round(event.getDistance()))
+                : getString(GUIDANCE_TEXT[event.getType()]);
+        mGuidanceView.setText(text);
+        mGuidanceView.setVisibility(View.VISIBLE);
+    }
 
     /**
      * Manipulates the map once available.
@@ -252,109 +749,68 @@ public class MapsActivity extends FragmentActivity implements
      */
     public void onMapReady(GoogleMap googleMap) {
         Log.i(TAG, "In: MapsActivity | Method: onMapReady()");
+        mMap = googleMap;
+        mStartup.complete(EVENT_MAP_READY);
+    }// end onMapReady
+
+    //The map stage; fixes and geofences that came first are shown once it has run
+    private void setUpMap() {
+        Log.i(TAG, "In: MapsActivity | Method: setUpMap()");
         //Check for permission for location data
         //If permission is not granted, request it
         checkPermission();
 
-        mMap = googleMap;
-
         mMap.setMinZoomPreference(15.0f);
-        mMap.setMaxZoomPreference(20.0f);
+        mMap.setMaxZoomPreference(MAX_ZOOM);
 
         // How the blue myLocation dot is enabled
         mMap.setMyLocationEnabled(true);
 
-        //startGeofence();
-    }// end onMapReady
+        // Campus overlay served from the device, so indoors without signal it still shows
+        mMap.addTileOverlay(new TileOverlayOptions()
+                .tileProvider(new CampusTileProvider(this))
+                .fadeIn(false));
+
+        // Mark the classroom picked on the main screen, if any
+        Intent intent = getIntent();
+        if (intent.hasExtra(EXTRA_DESTINATION_NAME)) {
+            LatLng destination = new LatLng(
+                    intent.getDoubleExtra(EXTRA_DESTINATION_LAT, 0),
+                    intent.getDoubleExtra(EXTRA_DESTINATION_LNG, 0));
+            mDestinationMarker = mMap.addMarker(new MarkerOptions()
+                    .position(destination)
+                    .title(intent.getStringExtra(EXTRA_DESTINATION_NAME)));
+        }
+        byte[] outline = intent.getByteArrayExtra(EXTRA_DESTINATION_OUTLINE);
+        if (outline != null) {
+            showOutline(outline);
+        }
+
+        // Markers and circles follow the camera; they are only updated once it comes to rest
+        mOverlayManager = new OverlayManager(mMap, getResources());
+        mMap.setOnCameraIdleListener(mOverlayManager);
+
+        if (mPendingFix != null) {
+            showFix(mPendingFix);
+            mPendingFix = null;
+        }
+    }
 
     /**
      * All of the following code is for building and handling Geofences
      */
     // Start Geofence creation process
+    // Called when the nearest regions change; sends only what the registry says is missing or stale
     private void startGeofence() {
         Log.i(TAG, "In: MapsActivity | Method: startGeofence()");
-        start = System.nanoTime();
-        Geofence geofence = createGeofence(cherryHall, GEOFENCE_RADIUS);
-        GeofencingRequest geofenceRequest = createGeofenceRequest(geofence);
-        addGeofence(geofenceRequest);
-    }
-
-    // Create a Geofence with the builder
-    private Geofence createGeofence(LatLng latLng, float radius) {
-        Log.d(TAG, "In: MapsActivity | Method: createGeofence()");
-        return new Geofence.Builder()
-                .setRequestId(GEOFENCE_REQ_ID)
-                .setCircularRegion(latLng.latitude, latLng.longitude, radius)
-                .setExpirationDuration(GEO_DURATION)
-                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_DWELL
-                        | Geofence.GEOFENCE_TRANSITION_EXIT)
-                .setLoiteringDelay(2000)
-                .build();
-    }
-
-    // Create a Geofence Request
-    private GeofencingRequest createGeofenceRequest(Geofence geofence) {
-        Log.d(TAG, "In: MapsActivity | Method: createGeofenceRequest()");
-        return new GeofencingRequest.Builder()
-                .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_DWELL)
-                .addGeofence(geofence)
-                .build();
-    }
-
-    private final int GEOFENCE_REQ_CODE = 0;
-
-    private PendingIntent createGeofencePendingIntent() {
-        Log.d(TAG, "In: MapsActivity | Method: createGeofencePendingIntent()");
-        if (mGeofencePendingIntent != null) {
-            Log.d(TAG, "Using existing geofence intent");
-            return mGeofencePendingIntent;
-        } else { Log.d(TAG, "geofence intent is null, creating new intent");
-            Intent intent = new Intent(this, GeofenceTransitionService.class);
-            return PendingIntent.getService(
-                    this, GEOFENCE_REQ_CODE, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-        }
-    }
-
-    // Add the created GeofenceRequest to the device's monitoring list
-    private void addGeofence(GeofencingRequest request) {
-        Log.d(TAG, "In: MapsActivity | Method: addGeofence()");
-        if (checkPermission())
-            LocationServices.GeofencingApi.addGeofences(
-                    mGoogleApiClient,
-                    request,
-                    createGeofencePendingIntent()
-            ).setResultCallback(this);
-    }
-
-    //this method is called after the geofence request
-    //determines if the build was successful or not
-    public void onResult(@NonNull Status status) {
-        Log.i(TAG, "In: MapsActivity | Method: onResult: " + status);
-        if (status.isSuccess()) {
-            Log.d(TAG, "Geofence was created");
-            end = System.nanoTime();
-            Log.i(TAG, "Time to create geofence = "+(end-start)/1000000+ "ms");
-            drawGeofence();
-        } else {
-            Log.d(TAG, "Geofence failed to create");
-        }
+        mGeofenceRegistrar.register(mGoogleApiClient, mGeofenceSelector.getSelected(),
+                mGeofencesRegistered);
     }
 
     private void drawGeofence() {
         Log.d(TAG, "In: MapsActivity | Method: drawGeofence()");
-
-        if (geoFenceLimits != null)
-            geoFenceLimits.remove();
-
-        CircleOptions circleOptions = new CircleOptions()
-                .center(cherryHall)
-                .strokeColor(Color.argb(30, 70, 70, 70))
-                .fillColor(Color.argb(100, 150, 150, 150))
-                .radius(GEOFENCE_RADIUS);
-        geoFenceLimits = mMap.addCircle(circleOptions);
-
-        mMap.addMarker(new MarkerOptions()
-                .position(cherryHall)
-                .title("Cherry Hall"));
+        if (mOverlayManager != null && mGeofenceSelector != null) {
+            mOverlayManager.setCircles(mGeofenceSelector.getSelected());
+        }
     }
 } // end class MapsActivity
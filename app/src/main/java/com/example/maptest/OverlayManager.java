@@ -0,0 +1,225 @@
+package com.example.maptest;
+
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.util.Log;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.overlay.MarkerSpec;
+import com.example.maptest.overlay.OverlaySync;
+import com.example.maptest.overlay.PlaceClusterer;
+import com.example.maptest.search.Place;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the campus markers and geofence circles on the map in line with the viewport.
+ *
+ * Runs when the camera comes to rest: places are clustered for the zoom level (see
+ * {@link PlaceClusterer}), everything outside the viewport is left out, and the existing
+ * Marker and Circle objects are moved to the new positions rather than removed and added
+ * (see {@link OverlaySync}). Must be used on the main thread.
+ */
+public class OverlayManager implements GoogleMap.OnCameraIdleListener {
+
+    public static final String TAG = OverlayManager.class.getSimpleName();
+
+    // geofence circles are too small to see below this zoom
+    private static final float CIRCLE_MIN_ZOOM = 16;
+    // fraction of the viewport added on each side, so short pans need no update
+    private static final double VIEWPORT_PADDING = 0.25;
+    // hidden objects kept for reuse
+    private static final int MAX_SPARE_MARKERS = 100;
+    private static final int MAX_SPARE_CIRCLES = 20;
+
+    private static final int CIRCLE_STROKE = Color.argb(30, 70, 70, 70);
+    private static final int CIRCLE_FILL = Color.argb(100, 150, 150, 150);
+
+    private final GoogleMap mMap;
+    private final Resources mResources;
+    private PlaceClusterer mClusterer = new PlaceClusterer(Collections.<Place>emptyList());
+    private Collection<Region> mCircles = Collections.emptyList();
+
+    private final OverlaySync<MarkerSpec, Marker> mMarkers;
+    private final OverlaySync<Region, Circle> mCircleSync;
+
+    // zoom of the camera at the last refresh
+    private float mZoom;
+
+    private BitmapDescriptor mPlaceIcon;
+    private BitmapDescriptor mClusterIcon;
+
+    public OverlayManager(GoogleMap map, Resources resources) {
+        mMap = map;
+        mResources = resources;
+        mMarkers = new OverlaySync<MarkerSpec, Marker>(new MarkerBinder(), MAX_SPARE_MARKERS);
+        mCircleSync = new OverlaySync<Region, Circle>(new CircleBinder(), MAX_SPARE_CIRCLES);
+        mZoom = map.getCameraPosition().zoom;
+    }
+
+    /**
+     * Sets the places shown as markers.
+     */
+    public void setPlaces(List<Place> places) {
+        mClusterer = new PlaceClusterer(places);
+        refresh();
+    }
+
+    /**
+     * Sets the regions drawn as geofence circles.
+     */
+    public void setCircles(Collection<Region> regions) {
+        mCircles = new ArrayList<Region>(regions);
+        refresh();
+    }
+
+    @Override
+    public void onCameraIdle() {
+        refresh();
+    }
+
+    /**
+     * Brings the map objects in line with the current camera.
+     */
+    public void refresh() {
+        CameraPosition camera = mMap.getCameraPosition();
+        mZoom = camera.zoom;
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        double padLat = (bounds.northeast.latitude - bounds.southwest.latitude) * VIEWPORT_PADDING;
+        double padLng = (bounds.northeast.longitude - bounds.southwest.longitude) * VIEWPORT_PADDING;
+        BoundingBox viewport = new BoundingBox(
+                bounds.southwest.latitude - padLat, bounds.southwest.longitude - padLng,
+                bounds.northeast.latitude + padLat, bounds.northeast.longitude + padLng);
+
+        mMarkers.update(mClusterer.markers(viewport, camera.zoom));
+
+        List<Region> circles = new ArrayList<Region>();
+        if (camera.zoom >= CIRCLE_MIN_ZOOM) {
+            for (Region region : mCircles) {
+                if (region.getBounds().intersects(viewport)) {
+                    circles.add(region);
+                }
+            }
+        }
+        mCircleSync.update(circles);
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Overlay: " + mMarkers.getShownCount() + " markers ("
+                    + mMarkers.getCreatedCount() + " created), " + mCircleSync.getShownCount()
+                    + " circles at zoom " + camera.zoom);
+        }
+    }
+
+    /**
+     * Returns the camera zoom as of the last time the camera came to rest, without asking the
+     * map for a new CameraPosition.
+     */
+    public float getZoom() {
+        return mZoom;
+    }
+
+    /**
+     * Removes every marker and circle this manager added.
+     */
+    public void clear() {
+        mMarkers.clear();
+        mCircleSync.clear();
+    }
+
+    private String titleOf(MarkerSpec spec) {
+        return spec.isCluster()
+                ? mResources.getQuantityString(R.plurals.overlay_cluster_title, spec.count, spec.count)
+                : spec.title;
+    }
+
+    private BitmapDescriptor iconOf(MarkerSpec spec) {
+        // descriptors need the maps library initialized, which it is once there is a map
+        if (mPlaceIcon == null) {
+            mPlaceIcon = BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED);
+            mClusterIcon = BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE);
+        }
+        return spec.isCluster() ? mClusterIcon : mPlaceIcon;
+    }
+
+    private class MarkerBinder implements OverlaySync.Binder<MarkerSpec, Marker> {
+
+        @Override
+        public String keyOf(MarkerSpec spec) {
+            return spec.key;
+        }
+
+        @Override
+        public Marker create(MarkerSpec spec) {
+            return mMap.addMarker(new MarkerOptions()
+                    .position(new LatLng(spec.lat, spec.lng))
+                    .title(titleOf(spec))
+                    .icon(iconOf(spec)));
+        }
+
+        @Override
+        public void bind(Marker marker, MarkerSpec spec) {
+            marker.setPosition(new LatLng(spec.lat, spec.lng));
+            marker.setTitle(titleOf(spec));
+            marker.setIcon(iconOf(spec));
+            marker.setVisible(true);
+        }
+
+        @Override
+        public void hide(Marker marker) {
+            marker.setVisible(false);
+        }
+
+        @Override
+        public void destroy(Marker marker) {
+            marker.remove();
+        }
+    }
+
+    private class CircleBinder implements OverlaySync.Binder<Region, Circle> {
+
+        @Override
+        public String keyOf(Region region) {
+            return region.getId();
+        }
+
+        @Override
+        public Circle create(Region region) {
+            return mMap.addCircle(new CircleOptions()
+                    .center(new LatLng(region.getCenterLat(), region.getCenterLng()))
+                    .radius(region.getRadius())
+                    .strokeColor(CIRCLE_STROKE)
+                    .fillColor(CIRCLE_FILL));
+        }
+
+        @Override
+        public void bind(Circle circle, Region region) {
+            circle.setCenter(new LatLng(region.getCenterLat(), region.getCenterLng()));
+            circle.setRadius(region.getRadius());
+            circle.setVisible(true);
+        }
+
+        @Override
+        public void hide(Circle circle) {
+            circle.setVisible(false);
+        }
+
+        @Override
+        public void destroy(Circle circle) {
+            circle.remove();
+        }
+    }
+}
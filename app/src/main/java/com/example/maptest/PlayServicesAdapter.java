@@ -0,0 +1,91 @@
+package com.example.maptest;
+
+import android.location.Location;
+
+import com.example.maptest.geofence.GeofenceEventDecoder;
+import com.example.maptest.geofence.GeofenceSpec;
+import com.example.maptest.location.AdaptiveLocationPolicy;
+import com.example.maptest.location.Fix;
+import com.example.maptest.transition.TransitionEvent;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts between the platform-neutral types of :core and their Play Services and Android
+ * counterparts. Only conversions live here; what to register and how to interpret events is
+ * decided in :core, where it can be tested without a device.
+ *
+ * TransitionEvent and GeofenceSpec use the Play Services constant values, so transition
+ * types pass through unchanged.
+ */
+public final class PlayServicesAdapter {
+
+    private PlayServicesAdapter() {
+    }
+
+    public static Geofence toGeofence(GeofenceSpec spec) {
+        return new Geofence.Builder()
+                .setRequestId(spec.requestId)
+                .setCircularRegion(spec.lat, spec.lng, spec.radius)
+                .setExpirationDuration(spec.expiration)
+                .setTransitionTypes(spec.transitionTypes)
+                .setLoiteringDelay(spec.loiteringDelay)
+                .build();
+    }
+
+    public static GeofencingRequest toGeofencingRequest(List<GeofenceSpec> specs) {
+        List<Geofence> geofences = new ArrayList<Geofence>(specs.size());
+        for (GeofenceSpec spec : specs) {
+            geofences.add(toGeofence(spec));
+        }
+        return new GeofencingRequest.Builder()
+                .setInitialTrigger(GeofenceSpec.INITIAL_TRIGGER_DWELL)
+                .addGeofences(geofences)
+                .build();
+    }
+
+    /**
+     * Decodes an event without errors whose transition GeofenceEventDecoder supports.
+     */
+    public static List<TransitionEvent> toTransitionEvents(GeofencingEvent event,
+                                                           GeofenceEventDecoder decoder) {
+        List<Geofence> geofences = event.getTriggeringGeofences();
+        List<String> requestIds = new ArrayList<String>(geofences.size());
+        for (Geofence geofence : geofences) {
+            requestIds.add(geofence.getRequestId());
+        }
+        Location trigger = event.getTriggeringLocation();
+        if (trigger == null) {
+            return decoder.decode(event.getGeofenceTransition(), requestIds);
+        }
+        return decoder.decode(event.getGeofenceTransition(), requestIds,
+                trigger.getLatitude(), trigger.getLongitude(),
+                trigger.hasAccuracy() ? trigger.getAccuracy() : 0,
+                trigger.getElapsedRealtimeNanos());
+    }
+
+    public static LocationRequest toLocationRequest(AdaptiveLocationPolicy.Profile profile) {
+        return LocationRequest.create()
+                .setPriority(profile.priority == AdaptiveLocationPolicy.PRIORITY_HIGH_ACCURACY
+                        ? LocationRequest.PRIORITY_HIGH_ACCURACY
+                        : LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setInterval(profile.interval)
+                .setFastestInterval(profile.fastestInterval)
+                .setMaxWaitTime(profile.maxWaitTime);
+    }
+
+    /**
+     * Copies a Location into {@code into} and returns it.
+     */
+    public static Fix toFix(Location location, Fix into) {
+        return into.set(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 0,
+                location.hasSpeed() ? location.getSpeed() : Float.NaN,
+                location.getTime());
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.maptest;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.util.Log;
+
+import com.example.maptest.events.EventBus;
+import com.example.maptest.metrics.Metrics;
+import com.example.maptest.transition.NotificationAggregator;
+import com.example.maptest.transition.TransitionEvent;
+import com.example.maptest.transition.TransitionLabels;
+import com.example.maptest.transition.TransitionPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns batches of geofence transitions into notifications.
+ *
+ * One instance lives for the whole process. Transitions are processed on a small bounded
+ * pool and collected by a NotificationAggregator: every region gets its own notification id,
+ * and everything that arrives within the window is posted together as one notification
+ * group, so walking past a row of buildings alerts once. Everything that does not depend on
+ * the event, the decoded large icon, the content PendingIntent and the strings, is created
+ * once instead of for every transition.
+ */
+public class TransitionNotifier implements TransitionPipeline.Handler {
+
+    public static final String TAG = TransitionNotifier.class.getSimpleName();
+
+    // workers shared by all transition processing
+    private static final int WORKER_THREADS = 2;
+    private static final int WORKER_QUEUE = 16;
+
+    // groups the per-region notifications under one summary
+    private static final String GROUP_KEY = "com.example.maptest.TRANSITIONS";
+
+    private static TransitionNotifier sInstance;
+
+    private final Context mContext;
+    private final TransitionPipeline mPipeline;
+    private final NotificationAggregator mAggregator;
+
+    // closes aggregation windows
+    private final ScheduledExecutorService mTimer;
+    private boolean mFlushScheduled;
+
+    // windows taken from the aggregator so far
+    private long mFlushes;
+    // the flush that posts the batch being handled; its callbacks run right after, on the same worker
+    private long mHandledBy;
+    // callbacks of batches not posted yet, and the flush each waits for
+    private final List<Runnable> mHeld = new ArrayList<Runnable>();
+    private final List<Long> mHeldFor = new ArrayList<Long>();
+
+    // created on the first batch, then reused
+    private Bitmap mLargeIcon;
+    private PendingIntent mContentIntent;
+    private TransitionLabels mLabels;
+    private String mContentText;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public static synchronized TransitionNotifier get(Context context) {
+        if (sInstance == null) {
+            sInstance = new TransitionNotifier(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TransitionNotifier(Context context) {
+        mContext = context;
+        mPipeline = new TransitionPipeline(TransitionPipeline.newBoundedExecutor("transitions",
+                WORKER_THREADS, WORKER_QUEUE), this);
+        Resources resources = context.getResources();
+        mAggregator = new NotificationAggregator(
+                resources.getInteger(R.integer.transition_notification_window_ms),
+                resources.getInteger(R.integer.transition_notification_cooldown_ms));
+        mTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "transition-window");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues transitions and publishes them on the EventBus; onHandled runs on a worker once
+     * the window they joined has been posted, so a broadcast kept alive until then is not
+     * finished while its notification is still waiting.
+     */
+    public void submit(List<TransitionEvent> events, final Runnable onHandled) {
+        mPipeline.submit(events, onHandled == null ? null : new Runnable() {
+            @Override
+            public void run() {
+                holdUntilPosted(onHandled);
+            }
+        });
+        EventBus bus = EventBus.get();
+        for (int i = 0; i < events.size(); i++) {
+            bus.publish(events.get(i));
+        }
+    }
+
+    @Override
+    public void handle(List<TransitionEvent> batch) {
+        Log.i(TAG, "In: TransitionNotifier | Method: handle() " + batch.size());
+        long now = SystemClock.elapsedRealtime();
+        long windowEnd;
+        synchronized (this) {
+            // the next window taken, whether the batch opens it or joins it; none if nothing is pending
+            windowEnd = mAggregator.offer(batch, now);
+            mHandledBy = windowEnd < 0 ? mFlushes : mFlushes + 1;
+        }
+        if (windowEnd <= now) {
+            flush();
+        } else {
+            scheduleFlush(windowEnd - now);
+        }
+    }
+
+    private synchronized void scheduleFlush(long delayMs) {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mTimer.schedule(mFlush, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void holdUntilPosted(Runnable onHandled) {
+        synchronized (this) {
+            if (mHandledBy > mFlushes) {
+                mHeld.add(onHandled);
+                mHeldFor.add(mHandledBy);
+                return;
+            }
+        }
+        onHandled.run();
+    }
+
+    // Posts the closed window, if any; runs on a worker or the timer thread
+    private void flush() {
+        long now = SystemClock.elapsedRealtime();
+        NotificationAggregator.Digest digest;
+        long flushed;
+        synchronized (this) {
+            mFlushScheduled = false;
+            digest = mAggregator.poll(now);
+            if (digest != null) {
+                mFlushes++;
+            }
+            flushed = mFlushes;
+        }
+        try {
+            post(digest, now);
+        } finally {
+            release(flushed);
+        }
+    }
+
+    private void post(NotificationAggregator.Digest digest, long now) {
+        if (digest == null) {
+            // the timer and the clock may disagree by a hair; try again when the window closes
+            long windowEnd = mAggregator.getWindowEnd();
+            if (windowEnd >= 0) {
+                scheduleFlush(Math.max(0, windowEnd - now));
+            }
+            return;
+        }
+        Log.i(TAG, "In: TransitionNotifier | Method: flush() " + digest.entries.size()
+                + " posted, " + digest.suppressed + " on cooldown");
+        if (digest.isEmpty()) {
+            return;
+        }
+        sendNotifications(digest);
+
+        long posted = SystemClock.elapsedRealtimeNanos();
+        Metrics metrics = Metrics.get();
+        for (int i = 0; i < digest.entries.size(); i++) {
+            long trigger = digest.entries.get(i).event.getTriggerNanos();
+            if (trigger > 0) {
+                metrics.record(AppMetrics.TRANSITION_TO_NOTIFICATION, posted - trigger);
+            }
+        }
+        // transitions can arrive without the map screen, which exports otherwise
+        AppMetrics.export(mContext);
+    }
+
+    // Runs the callbacks of every batch posted by the given flush or before
+    private void release(long flushed) {
+        List<Runnable> ready = new ArrayList<Runnable>();
+        synchronized (this) {
+            for (int i = mHeld.size() - 1; i >= 0; i--) {
+                if (mHeldFor.get(i) <= flushed) {
+                    ready.add(mHeld.remove(i));
+                    mHeldFor.remove(i);
+                }
+            }
+        }
+        for (int i = ready.size() - 1; i >= 0; i--) {
+            ready.get(i).run();
+        }
+    }
+
+    private synchronized void prepare() {
+        if (mContentIntent != null) {
+            return;
+        }
+        // In a real app, you may want to use a library like Volley to decode the Bitmap.
+        mLargeIcon = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.ic_launcher);
+        mLabels = new TransitionLabels(
+                mContext.getString(R.string.geofence_transition_entered),
+                mContext.getString(R.string.geofence_transition_exited),
+                mContext.getString(R.string.unknown_geofence_transition));
+        mContentText = mContext.getString(R.string.geofence_transition_notification_text);
+
+        // Create an explicit content Intent that starts the main Activity.
+        Intent notificationIntent = new Intent(mContext, MapsActivity.class);
+
+        // Construct a task stack with the main Activity as the parent.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(mContext);
+        stackBuilder.addParentStack(MapsActivity.class);
+        stackBuilder.addNextIntent(notificationIntent);
+
+        // Get a PendingIntent containing the entire back stack.
+        mContentIntent = stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Posts one notification per region, replacing that region's previous one, plus a group
+     * summary when there is more than one so only one alert is raised per window.
+     * If the user clicks a notification, control goes to the MapsActivity.
+     */
+    private void sendNotifications(NotificationAggregator.Digest digest) {
+        Log.i(TAG, "In: TransitionNotifier | Method: sendNotifications()");
+        prepare();
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(mContext);
+        boolean grouped = digest.entries.size() > 1;
+
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+        for (int i = 0; i < digest.entries.size(); i++) {
+            NotificationAggregator.Entry entry = digest.entries.get(i);
+            String details = mLabels.details(entry.event);
+            inbox.addLine(details);
+            Log.i(TAG, details);
+
+            NotificationCompat.Builder builder = newBuilder()
+                    .setContentTitle(details)
+                    .setContentText(mContentText)
+                    .setGroup(GROUP_KEY);
+            if (grouped) {
+                // the summary raises the one alert for the window
+                builder.setPriority(NotificationCompat.PRIORITY_LOW);
+            }
+            notificationManager.notify(entry.notificationId, builder.build());
+        }
+
+        if (grouped) {
+            String title = mContext.getResources().getQuantityString(
+                    R.plurals.geofence_transition_summary_title,
+                    digest.entries.size(), digest.entries.size());
+            Notification summary = newBuilder()
+                    .setContentTitle(title)
+                    .setContentText(mContentText)
+                    .setStyle(inbox.setBigContentTitle(title))
+                    .setNumber(digest.entries.size())
+                    .setGroup(GROUP_KEY)
+                    .setGroupSummary(true)
+                    .build();
+            notificationManager.notify(NotificationAggregator.SUMMARY_ID, summary);
+        }
+    }
+
+    // Settings shared by every notification; dismissed once the user touches it
+    private NotificationCompat.Builder newBuilder() {
+        return new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setLargeIcon(mLargeIcon)
+                .setColor(Color.RED)
+                .setContentIntent(mContentIntent)
+                .setAutoCancel(true);
+    }
+}
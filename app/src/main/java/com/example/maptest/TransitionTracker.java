@@ -0,0 +1,323 @@
+package com.example.maptest;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.maptest.geofence.FloorIndex;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.geofence.RegionScheduler;
+import com.example.maptest.geofence.TransitionEvaluator;
+import com.example.maptest.geofence.WeeklySchedule;
+import com.example.maptest.location.Fix;
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.transition.TransitionEvent;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the user is, for the whole process: one TransitionEvaluator, fed by the map screen's
+ * location pipeline while it runs and otherwise by a short burst of fixes requested whenever
+ * a system geofence wakes the app. The system geofences only say that something may have
+ * happened near a building; only transitions the evaluator confirms are notified.
+ *
+ * Regions out of hours are left out by the one RegionScheduler of the process, which the map
+ * screen shares: a burst neither enters them nor reports them, and a region whose hours end
+ * while the user is in it reports the EXIT with the next fix.
+ *
+ * While the map screen follows the user, its timer applies the schedule. Otherwise an alarm
+ * at the next change wakes the GeofenceTransitionReceiver with ACTION_SCHEDULE_CHANGE, which
+ * applies it here and registers the geofences in effect, so a room whose class is over stops
+ * waking the app and one whose class starts is registered while the app is in the background.
+ *
+ * The evaluator and the scheduler are only touched on the main thread, where the pipeline gets
+ * its fixes and the receiver its broadcasts. Their state lives as long as the process.
+ */
+public class TransitionTracker {
+
+    public static final String TAG = TransitionTracker.class.getSimpleName();
+
+    // action of the broadcasts carrying the fixes of a burst
+    public static final String ACTION_BURST_FIXES = "com.example.maptest.BURST_FIXES";
+
+    // action of the alarm set for the next change of the schedule
+    public static final String ACTION_SCHEDULE_CHANGE = "com.example.maptest.SCHEDULE_CHANGE";
+
+    // long enough to walk out of a building's exit radius and confirm the EXIT at poor accuracy,
+    // one fix per pipeline interval near an edge
+    private static final long BURST_DURATION = 3 * 60 * 1000;
+    private static final long BURST_INTERVAL = 2000;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    private static final int BURST_REQ_CODE = 1;
+    private static final int SCHEDULE_REQ_CODE = 2;
+
+    private static TransitionTracker sInstance;
+
+    /**
+     * Receives the tracker on the main thread.
+     */
+    public interface Ready {
+        void onReady(TransitionTracker tracker);
+    }
+
+    private final Context mContext;
+    // null when the campus map cannot be opened
+    private final RegionIndex mIndex;
+    // turns regions on and off by building hours and class times
+    private final RegionScheduler mScheduler;
+    private final TransitionEvaluator mEvaluator = new TransitionEvaluator();
+    // the map screen's pipeline is feeding the evaluator
+    private boolean mFollowing;
+
+    public static synchronized TransitionTracker get(Context context) {
+        if (sInstance == null) {
+            sInstance = new TransitionTracker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Hands the tracker to the callback on the main thread, at once if it exists. In a process
+     * woken up in the background it does not yet, and building it opens the campus map and
+     * indexes every region, so that happens on a worker first. Call it on the main thread.
+     */
+    public static void whenReady(final Context context, final Ready ready) {
+        TransitionTracker tracker;
+        synchronized (TransitionTracker.class) {
+            tracker = sInstance;
+        }
+        if (tracker != null) {
+            ready.onReady(tracker);
+            return;
+        }
+        final Handler main = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final TransitionTracker created = get(context);
+                main.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ready.onReady(created);
+                    }
+                });
+            }
+        });
+    }
+
+    private TransitionTracker(Context context) {
+        mContext = context;
+        RegionIndex index = null;
+        List<Region> regions = Collections.emptyList();
+        Map<String, WeeklySchedule> schedules = Collections.emptyMap();
+        try {
+            CampusMap map = CampusMapAsset.open(context);
+            regions = map.regions();
+            schedules = map.schedules();
+            // bursts run without the barometer, so rooms on a floor cannot be told apart
+            index = new FloorIndex(regions).getAnyFloor();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open the campus map", e);
+        }
+        mIndex = index;
+        // the campus hours are local time wherever the phone thinks it is
+        mScheduler = new RegionScheduler(regions, schedules, TimeZone.getDefault());
+        mScheduler.start(System.currentTimeMillis());
+    }
+
+    /**
+     * False if the campus map could not be opened; transitions then come straight from the
+     * system geofences.
+     */
+    public boolean canEvaluate() {
+        return mIndex != null;
+    }
+
+    public TransitionEvaluator getEvaluator() {
+        return mEvaluator;
+    }
+
+    /**
+     * The regions in effect, for the map screen to select and track with. Main thread only.
+     */
+    public RegionScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Selects the regions in effect to register while the map screen is not following.
+     * Null if the campus map could not be opened.
+     */
+    public MonitoredSetSelector newSelector() {
+        return mIndex == null ? null
+                : new MonitoredSetSelector(mIndex, mScheduler, GeofenceRegistrar.MAX_MONITORED);
+    }
+
+    /**
+     * Called by the map screen when its pipeline starts and stops feeding the evaluator; while
+     * it does, geofence wakeups and bursts are ignored and the screen applies the schedule.
+     * Otherwise the schedule wakes the receiver. Main thread only.
+     */
+    public void setFollowing(boolean following) {
+        mFollowing = following;
+        if (following) {
+            alarms().cancel(scheduleIntent());
+        } else {
+            armSchedule();
+        }
+    }
+
+    public boolean isFollowing() {
+        return mFollowing;
+    }
+
+    /**
+     * Feeds locations in time order and returns the transitions they confirm, each with the
+     * elapsed-realtime time of the location that confirmed it. Regions whose hours ended
+     * since the last call are left first. Main thread only.
+     */
+    public List<TransitionEvent> evaluate(List<Location> locations) {
+        List<TransitionEvent> confirmed = new ArrayList<TransitionEvent>();
+        if (mIndex == null) {
+            return confirmed;
+        }
+        advanceSchedule(confirmed);
+        Fix fix = new Fix(0, 0, 0, Float.NaN, 0);
+        List<Region> containing = new ArrayList<Region>();
+        List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+        for (int i = 0; i < locations.size(); i++) {
+            Location location = locations.get(i);
+            PlayServicesAdapter.toFix(location, fix);
+            containing.clear();
+            mIndex.regionsContaining(fix.getLat(), fix.getLng(), containing);
+            removeInactive(containing);
+            fired.clear();
+            mEvaluator.update(fix.getLat(), fix.getLng(), fix.getAccuracy(), fix.getTime(),
+                    containing, fired);
+            for (int j = 0; j < fired.size(); j++) {
+                TransitionEvent event = fired.get(j);
+                confirmed.add(new TransitionEvent(event.getRequestId(), event.getTransition(),
+                        location.getElapsedRealtimeNanos()));
+            }
+        }
+        return confirmed;
+    }
+
+    /**
+     * Applies the changes due, returns the EXITs of the regions turned off with the user in
+     * them and sets the alarm for the next change. Main thread only.
+     */
+    public List<TransitionEvent> applySchedule() {
+        List<TransitionEvent> left = new ArrayList<TransitionEvent>();
+        advanceSchedule(left);
+        armSchedule();
+        return left;
+    }
+
+    // Inexact from KitKat on, so the alarm rides along with other wakeups
+    private void armSchedule() {
+        long next = mScheduler.nextChange();
+        if (next == RegionScheduler.NEVER) {
+            alarms().cancel(scheduleIntent());
+        } else {
+            alarms().set(AlarmManager.RTC_WAKEUP, next, scheduleIntent());
+        }
+    }
+
+    private AlarmManager alarms() {
+        return (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    private PendingIntent scheduleIntent() {
+        Intent intent = new Intent(mContext, GeofenceTransitionReceiver.class)
+                .setAction(ACTION_SCHEDULE_CHANGE);
+        return PendingIntent.getBroadcast(mContext, SCHEDULE_REQ_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    // Applies the changes due and leaves the regions turned off, timed now
+    private void advanceSchedule(List<TransitionEvent> confirmed) {
+        if (mScheduler.advance(System.currentTimeMillis()) == 0) {
+            return;
+        }
+        List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+        mEvaluator.leaveRejected(mScheduler, fired);
+        long now = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < fired.size(); i++) {
+            TransitionEvent event = fired.get(i);
+            confirmed.add(new TransitionEvent(event.getRequestId(), event.getTransition(), now));
+        }
+    }
+
+    private void removeInactive(List<Region> regions) {
+        int kept = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            if (mScheduler.accept(region)) {
+                regions.set(kept++, region);
+            }
+        }
+        while (regions.size() > kept) {
+            regions.remove(regions.size() - 1);
+        }
+    }
+
+    /**
+     * Asks for high accuracy fixes for the next few minutes, delivered to the
+     * GeofenceTransitionReceiver as ACTION_BURST_FIXES broadcasts. A new burst replaces the
+     * running one. Blocks while connecting, so never call it on the main thread.
+     */
+    public void requestBurst() {
+        GoogleApiClient client = new GoogleApiClient.Builder(mContext)
+                .addApi(LocationServices.API)
+                .build();
+        ConnectionResult connection = client.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connection.isSuccess()) {
+            Log.e(TAG, "Could not connect for a burst: " + connection.getErrorCode());
+            return;
+        }
+        try {
+            LocationRequest request = LocationRequest.create()
+                    .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                    .setInterval(BURST_INTERVAL)
+                    .setFastestInterval(BURST_INTERVAL / 2)
+                    .setExpirationDuration(BURST_DURATION);
+            // the request outlives the client, until it expires
+            LocationServices.FusedLocationApi.requestLocationUpdates(client, request, burstIntent())
+                    .await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Log.d(TAG, "Burst requested");
+        } catch (SecurityException e) {
+            Log.e(TAG, "No location permission for a burst", e);
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    private PendingIntent burstIntent() {
+        Intent intent = new Intent(mContext, GeofenceTransitionReceiver.class)
+                .setAction(ACTION_BURST_FIXES);
+        return PendingIntent.getBroadcast(mContext, BURST_REQ_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.maptest.geo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one distance computation with each of the GeoMath formulas, for pairs of points
+ * up to {@link #span} meters apart around the campus. Reports nanoseconds per pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DistanceBenchmark {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static final int PAIRS = 1024;
+
+    // walking distances on campus, and a trip across the state
+    @Param({"1000", "300000"})
+    public double span;
+
+    private final double[] lat1 = new double[PAIRS];
+    private final double[] lng1 = new double[PAIRS];
+    private final double[] lat2 = new double[PAIRS];
+    private final double[] lng2 = new double[PAIRS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        double degrees = span / GeoMath.METERS_PER_DEGREE;
+        for (int i = 0; i < PAIRS; i++) {
+            lat1[i] = LAT + (random.nextDouble() - 0.5) * degrees;
+            lng1[i] = LNG + (random.nextDouble() - 0.5) * degrees;
+            lat2[i] = LAT + (random.nextDouble() - 0.5) * degrees;
+            lng2[i] = LNG + (random.nextDouble() - 0.5) * degrees;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double fastDistance() {
+        double sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += GeoMath.fastDistance(lat1[i], lng1[i], lat2[i], lng2[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double haversine() {
+        double sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += GeoMath.haversine(lat1[i], lng1[i], lat2[i], lng2[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public double vincenty() {
+        double sum = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            sum += GeoMath.vincenty(lat1[i], lng1[i], lat2[i], lng2[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.maptest.geo;
+
+import com.example.maptest.location.Fix;
+import com.example.maptest.location.TraceReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and decoding speed of a walked line in the three forms it could be stored or passed
+ * around in: GeometryCodec, raw doubles in a ByteBuffer, and JSON as [[lat,lng],...].
+ *
+ * The line is the campus-walk.csv trace of the location benchmarks, a point a second. The setup
+ * prints the bytes each form takes and how many points the codec keeps at a few zoom levels.
+ * Every benchmark reports the time for the whole line; the decode* ones sum the coordinates so
+ * none of the work can be left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryCodecBenchmark {
+
+    private static final String TRACE = "/com/example/maptest/location/campus-walk.csv";
+
+    // the map's default and lowest zoom; the highest keeps every point needed
+    private static final int STREET_ZOOM = 15;
+
+    private double[] lats;
+    private double[] lngs;
+    private int count;
+    private int[] levels;
+
+    private byte[] encoded;
+    private byte[] withLevels;
+    private byte[] doubles;
+    private byte[] json;
+    private ByteBuffer scratch;
+
+    @Setup
+    public void setUp() throws IOException {
+        InputStream in = GeometryCodecBenchmark.class.getResourceAsStream(TRACE);
+        if (in == null) {
+            throw new IOException("No such trace: " + TRACE);
+        }
+        List<Fix> trace;
+        try {
+            trace = TraceReader.readCsv(in);
+        } finally {
+            in.close();
+        }
+        count = trace.size();
+        lats = new double[count];
+        lngs = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = trace.get(i).getLat();
+            lngs[i] = trace.get(i).getLng();
+        }
+        levels = LineSimplifier.levels(lats, lngs, count, false);
+
+        encoded = GeometryCodec.encode(lats, lngs, count);
+        withLevels = GeometryCodec.encode(lats, lngs, count, levels, GeometryCodec.DEFAULT_DECIMALS);
+        doubles = new byte[count * 16];
+        ByteBuffer out = ByteBuffer.wrap(doubles);
+        for (int i = 0; i < count; i++) {
+            out.putDouble(lats[i]);
+            out.putDouble(lngs[i]);
+        }
+        json = toJson().getBytes("UTF-8");
+        scratch = ByteBuffer.allocate(GeometryCodec.maxSize(count, true));
+
+        System.out.println();
+        System.out.println(count + " points: codec " + encoded.length + " bytes, with levels "
+                + withLevels.length + ", doubles " + doubles.length + ", json " + json.length);
+        for (int zoom = STREET_ZOOM; zoom <= 21; zoom += 2) {
+            System.out.println("  zoom " + zoom + " keeps " + LineSimplifier.keep(levels, zoom).length);
+        }
+    }
+
+    private String toJson() {
+        StringBuilder sb = new StringBuilder(count * 32);
+        sb.append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(lats[i]).append(',').append(lngs[i]).append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    @Benchmark
+    public int encode() {
+        scratch.clear();
+        GeometryCodec.Writer writer = new GeometryCodec.Writer(scratch, count, false,
+                GeometryCodec.DEFAULT_DECIMALS);
+        for (int i = 0; i < count; i++) {
+            writer.write(lats[i], lngs[i], 0);
+        }
+        return scratch.position();
+    }
+
+    @Benchmark
+    public int encodeWithLevels() {
+        return GeometryCodec.encode(lats, lngs, count, LineSimplifier.levels(lats, lngs, count, false),
+                GeometryCodec.DEFAULT_DECIMALS).length;
+    }
+
+    @Benchmark
+    public double decode() {
+        GeometryCodec.Reader reader = new GeometryCodec.Reader(ByteBuffer.wrap(encoded));
+        double sum = 0;
+        while (reader.next()) {
+            sum += reader.getLat() + reader.getLng();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double decodeAtStreetZoom() {
+        GeometryCodec.Reader reader = new GeometryCodec.Reader(ByteBuffer.wrap(withLevels), STREET_ZOOM);
+        double sum = 0;
+        while (reader.next()) {
+            sum += reader.getLat() + reader.getLng();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double decodeDoubles() {
+        ByteBuffer in = ByteBuffer.wrap(doubles);
+        double sum = 0;
+        while (in.hasRemaining()) {
+            sum += in.getDouble() + in.getDouble();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double decodeJson() throws UnsupportedEncodingException {
+        String text = new String(json, "UTF-8");
+        double sum = 0;
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean number = c == '-' || c == '.' || c == 'E' || (c >= '0' && c <= '9');
+            if (number && start < 0) {
+                start = i;
+            } else if (!number && start >= 0) {
+                sum += Double.parseDouble(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circle containment over the same kind of trace as PolygonContainmentBenchmark: a two hour
+ * walk, one fix per second, across a campus of circular geofences.
+ *
+ * exactTest checks only the (fix, circle) pairs that pass the bounding box check, scan tests
+ * every circle for every fix without the index, and wholeTrace is the per-fix work of
+ * LocationPipeline. All report the time for the whole trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CircleContainmentBenchmark {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static final int FIXES = 7200;
+
+    // the campus as registered today, and every room as its own geofence
+    @Param({"300", "3000"})
+    public int circles;
+
+    private CircleRegion[] regions;
+    private RegionIndex index;
+    private double[] lats;
+    private double[] lngs;
+
+    // (fix, circle) pairs whose bounding boxes match
+    private int[] pairFix;
+    private int[] pairCircle;
+
+    private final List<Region> containing = new ArrayList<Region>();
+    private final RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+    private final List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        regions = new CircleRegion[circles];
+        for (int c = 0; c < circles; c++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.015;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.015;
+            regions[c] = new CircleRegion("c" + c, lat, lng, 20 + random.nextInt(40));
+        }
+        List<Region> all = new ArrayList<Region>(circles);
+        for (CircleRegion region : regions) {
+            all.add(region);
+        }
+        index = new RegionIndex(all);
+
+        // random walk at 1.4 m/s that turns now and then
+        lats = new double[FIXES];
+        lngs = new double[FIXES];
+        double lat = LAT;
+        double lng = LNG;
+        double heading = 0;
+        for (int i = 0; i < FIXES; i++) {
+            if (random.nextInt(60) == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            lat += Math.sin(heading) * 1.4 / 111195;
+            lng += Math.cos(heading) * 1.4 / 88900;
+            // stay on campus
+            if (Math.abs(lat - LAT) > 0.008 || Math.abs(lng - LNG) > 0.008) {
+                heading += Math.PI;
+            }
+            lats[i] = lat;
+            lngs[i] = lng;
+        }
+
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = 0; i < FIXES; i++) {
+            for (int c = 0; c < circles; c++) {
+                if (regions[c].getBounds().contains(lats[i], lngs[i])) {
+                    pairs.add(new int[]{i, c});
+                }
+            }
+        }
+        pairFix = new int[pairs.size()];
+        pairCircle = new int[pairs.size()];
+        for (int p = 0; p < pairs.size(); p++) {
+            pairFix[p] = pairs.get(p)[0];
+            pairCircle[p] = pairs.get(p)[1];
+        }
+    }
+
+    @Benchmark
+    public int exactTest() {
+        int inside = 0;
+        for (int p = 0; p < pairFix.length; p++) {
+            if (regions[pairCircle[p]].contains(lats[pairFix[p]], lngs[pairFix[p]])) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int scan() {
+        int inside = 0;
+        for (int i = 0; i < FIXES; i++) {
+            for (CircleRegion region : regions) {
+                if (region.contains(lats[i], lngs[i])) {
+                    inside++;
+                }
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int wholeTrace() {
+        GeofenceStateMachine machine = new GeofenceStateMachine(GeofenceStateMachine.LOITERING_DELAY);
+        int transitions = 0;
+        for (int i = 0; i < FIXES; i++) {
+            containing.clear();
+            index.regionsContaining(lats[i], lngs[i], containing, scratch);
+            transitions += machine.update(containing, i * 1000L, fired);
+            fired.clear();
+        }
+        return transitions;
+    }
+}
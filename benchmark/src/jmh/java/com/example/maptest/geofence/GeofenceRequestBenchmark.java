@@ -0,0 +1,100 @@
+package com.example.maptest.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The device-independent part of building a geofence request: choosing the regions to
+ * monitor around a position, planning the add/remove calls against what is registered and
+ * building the GeofenceSpecs to add. Turning those into Play Services Geofence objects needs
+ * the device, so it is not included.
+ *
+ * reselect is what happens while walking: each call moves 100 m on and registers the
+ * difference. coldStart is the first registration after a reboot, where every region is new.
+ * Both report the time per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeofenceRequestBenchmark {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    // MapsActivity.MAX_MONITORED_GEOFENCES
+    private static final int MONITORED = 90;
+
+    // positions 100 m apart on a loop around campus
+    private static final int STOPS = 64;
+
+    @Param({"300", "3000"})
+    public int regions;
+
+    private RegionIndex index;
+    private MonitoredSetSelector selector;
+    private GeofenceRegistry registry;
+    private final double[] stopLat = new double[STOPS];
+    private final double[] stopLng = new double[STOPS];
+    private int stop;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Region> all = new ArrayList<Region>(regions);
+        for (int r = 0; r < regions; r++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.03;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.03;
+            all.add(new CircleRegion("r" + r, lat, lng, 20 + random.nextInt(40)));
+        }
+        index = new RegionIndex(all);
+        selector = new MonitoredSetSelector(index, MONITORED);
+
+        // a circle of 1 km radius has about 64 stops 100 m apart
+        for (int i = 0; i < STOPS; i++) {
+            double angle = 2 * Math.PI * i / STOPS;
+            stopLat[i] = LAT + Math.sin(angle) * 1000 / 111195;
+            stopLng[i] = LNG + Math.cos(angle) * 1000 / 88900;
+        }
+        // never saved, so the file is not created
+        registry = new GeofenceRegistry(new File(System.getProperty("java.io.tmpdir"),
+                "geofence-request-benchmark.bin"), "benchmark");
+        registry.clear();
+    }
+
+    @Benchmark
+    public int reselect() {
+        stop = (stop + 1) % STOPS;
+        // the selector skips moves shorter than its reselect distance, so force a selection
+        selector.reset();
+        selector.update(stopLat[stop], stopLng[stop]);
+        return register(registry.plan(selector.getSelected()));
+    }
+
+    @Benchmark
+    public int coldStart() {
+        selector.reset();
+        registry.clear();
+        selector.update(LAT, LNG);
+        return register(registry.plan(selector.getSelected()));
+    }
+
+    // what the addGeofences()/removeGeofences() callbacks record
+    private int register(GeofenceRegistry.Plan plan) {
+        List<GeofenceSpec> specs = GeofenceSpec.forRegions(plan.add);
+        registry.markRemoved(plan.remove);
+        registry.markRegistered(plan.add);
+        return specs.size() + plan.remove.size();
+    }
+}
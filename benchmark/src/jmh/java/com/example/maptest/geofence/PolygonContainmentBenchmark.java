@@ -0,0 +1,152 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Containment over a whole GPS trace: a two hour walk, one fix per second, across a campus of
+ * 300 building footprints.
+ *
+ * rayCasting and edgeBuckets test the same (fix, polygon) pairs, the ones that pass the
+ * bounding box check, so they compare only the exact test. wholeTrace is what
+ * LocationPipeline does per fix: index lookup, exact test and the DWELL/EXIT state machine.
+ * All report the time for the whole trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PolygonContainmentBenchmark {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static final int BUILDINGS = 300;
+    private static final int FIXES = 7200;
+
+    // vertices per footprint: simple boxes up to detailed survey outlines
+    @Param({"8", "64", "512"})
+    public int vertices;
+
+    private PolygonRegion[] polygons;
+    private RegionIndex index;
+    private double[] lats;
+    private double[] lngs;
+
+    // (fix, polygon) pairs whose bounding boxes match
+    private int[] pairFix;
+    private int[] pairPolygon;
+
+    private final List<Region> containing = new ArrayList<Region>();
+    private final RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+    private final List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        polygons = new PolygonRegion[BUILDINGS];
+        List<Region> regions = new ArrayList<Region>(BUILDINGS);
+        for (int b = 0; b < BUILDINGS; b++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.015;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.015;
+            polygons[b] = footprint("b" + b, lat, lng, vertices, random);
+            regions.add(polygons[b]);
+        }
+        index = new RegionIndex(regions);
+
+        // random walk at 1.4 m/s that turns now and then
+        lats = new double[FIXES];
+        lngs = new double[FIXES];
+        double lat = LAT;
+        double lng = LNG;
+        double heading = 0;
+        for (int i = 0; i < FIXES; i++) {
+            if (random.nextInt(60) == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            lat += Math.sin(heading) * 1.4 / 111195;
+            lng += Math.cos(heading) * 1.4 / 88900;
+            // stay on campus
+            if (Math.abs(lat - LAT) > 0.008 || Math.abs(lng - LNG) > 0.008) {
+                heading += Math.PI;
+            }
+            lats[i] = lat;
+            lngs[i] = lng;
+        }
+
+        List<int[]> pairs = new ArrayList<int[]>();
+        for (int i = 0; i < FIXES; i++) {
+            for (int b = 0; b < BUILDINGS; b++) {
+                if (polygons[b].getBounds().contains(lats[i], lngs[i])) {
+                    pairs.add(new int[]{i, b});
+                }
+            }
+        }
+        pairFix = new int[pairs.size()];
+        pairPolygon = new int[pairs.size()];
+        for (int p = 0; p < pairs.size(); p++) {
+            pairFix[p] = pairs.get(p)[0];
+            pairPolygon[p] = pairs.get(p)[1];
+        }
+    }
+
+    // irregular outline of 20 to 60 m across
+    private static PolygonRegion footprint(String id, double lat, double lng, int n, Random random) {
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double r = 0.0001 + random.nextDouble() * 0.00017;
+            lats[i] = lat + r * Math.sin(angle);
+            lngs[i] = lng + r * Math.cos(angle) * 1.25;
+        }
+        return new PolygonRegion(id, lats, lngs);
+    }
+
+    @Benchmark
+    public int rayCasting() {
+        int inside = 0;
+        for (int p = 0; p < pairFix.length; p++) {
+            if (polygons[pairPolygon[p]].containsByRayCasting(lats[pairFix[p]], lngs[pairFix[p]])) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int edgeBuckets() {
+        int inside = 0;
+        for (int p = 0; p < pairFix.length; p++) {
+            if (polygons[pairPolygon[p]].contains(lats[pairFix[p]], lngs[pairFix[p]])) {
+                inside++;
+            }
+        }
+        return inside;
+    }
+
+    @Benchmark
+    public int wholeTrace() {
+        GeofenceStateMachine machine = new GeofenceStateMachine(GeofenceStateMachine.LOITERING_DELAY);
+        int transitions = 0;
+        for (int i = 0; i < FIXES; i++) {
+            containing.clear();
+            index.regionsContaining(lats[i], lngs[i], containing, scratch);
+            transitions += machine.update(containing, i * 1000L, fired);
+            fired.clear();
+        }
+        return transitions;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.maptest.geofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.maptest.geofence.WeeklySchedule.MINUTES_PER_DAY;
+
+/**
+ * A week of class meetings in every room of the campus, as the app's timer plays it: start(),
+ * then advance() at each nextChange() until the week is over.
+ *
+ * week reports the time for the whole week, start the one-off cost of setting every room, and
+ * nothingDue an advance() with no change due, which is all a stray wakeup costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegionSchedulerBenchmark {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static final TimeZone CAMPUS = TimeZone.getTimeZone("America/Chicago");
+
+    // Monday 19 October 2026, 00:00 Central time
+    private static final long MONDAY = 1792386000000L;
+    private static final long WEEK = 7L * 24 * 3600 * 1000;
+
+    @Param({"300", "3000"})
+    public int rooms;
+
+    private RegionScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Region> regions = new ArrayList<Region>(rooms);
+        Map<String, WeeklySchedule> schedules = new HashMap<String, WeeklySchedule>();
+        for (int i = 0; i < rooms; i++) {
+            String id = "room" + i;
+            regions.add(new CircleRegion(id, LAT, LNG, 10));
+            // two or three meetings a week, 50 or 75 minutes, on the quarter hour
+            int meetings = 2 + random.nextInt(2);
+            int[] opens = new int[meetings];
+            int[] closes = new int[meetings];
+            for (int m = 0; m < meetings; m++) {
+                opens[m] = random.nextInt(5) * MINUTES_PER_DAY + (8 * 4 + random.nextInt(40)) * 15;
+                closes[m] = opens[m] + (random.nextBoolean() ? 50 : 75);
+            }
+            schedules.put(id, new WeeklySchedule(opens, closes));
+        }
+        scheduler = new RegionScheduler(regions, schedules, CAMPUS);
+        scheduler.start(MONDAY);
+    }
+
+    @Benchmark
+    public int week() {
+        scheduler.start(MONDAY);
+        int changes = 0;
+        for (long next = scheduler.nextChange(); next < MONDAY + WEEK; next = scheduler.nextChange()) {
+            changes += scheduler.advance(next);
+        }
+        return changes;
+    }
+
+    @Benchmark
+    public int start() {
+        scheduler.start(MONDAY);
+        return scheduler.getInactiveCount();
+    }
+
+    @Benchmark
+    public int nothingDue() {
+        return scheduler.advance(MONDAY);
+    }
+}
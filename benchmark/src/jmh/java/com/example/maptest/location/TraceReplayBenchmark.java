@@ -0,0 +1,173 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.geofence.CircleRegion;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.PolygonRegion;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.transition.TransitionEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geofence transition evaluation over a recorded trace: LocationPipeline with the adaptive
+ * policy, monitored set selection, exact DWELL/EXIT matching and coalescing.
+ *
+ * The trace is a resource next to this class or a CSV/GPX file, e.g.
+ * {@code -p trace=/path/to/walk.gpx} when running the benchmark jar directly. Buildings are
+ * laid along the trace so every trace crosses some, among unrelated ones around it.
+ *
+ * replay delivers the trace the way the fused provider would under the policy's requests,
+ * dropping and batching fixes; everyFix hands over every fix on its own, the worst case.
+ * Both report the time for the whole trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TraceReplayBenchmark {
+
+    // a building footprint every this many meters along the trace
+    private static final double BUILDING_SPACING = 150;
+
+    // buildings away from the trace
+    private static final int OTHER_BUILDINGS = 300;
+
+    // MapsActivity.MAX_MONITORED_GEOFENCES
+    private static final int MONITORED = 90;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final LocationPipeline.Callback IGNORE = new LocationPipeline.Callback() {
+        @Override
+        public void onMonitoredSetChanged(MonitoredSetSelector.Diff diff) {
+        }
+
+        @Override
+        public void onTransitions(List<TransitionEvent> events) {
+        }
+
+        @Override
+        public void onFixShown(Fix fix) {
+        }
+    };
+
+    @Param({"campus-walk.csv"})
+    public String trace;
+
+    private List<Fix> fixes;
+    private RegionIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixes = load(trace);
+        if (fixes.isEmpty()) {
+            throw new IOException("Empty trace: " + trace);
+        }
+
+        Random random = new Random(42);
+        List<Region> regions = new ArrayList<Region>();
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        double walked = BUILDING_SPACING;
+        Fix previous = null;
+        for (Fix fix : fixes) {
+            if (previous != null) {
+                walked += GeoMath.fastDistance(previous.getLat(), previous.getLng(),
+                        fix.getLat(), fix.getLng());
+            }
+            if (walked >= BUILDING_SPACING) {
+                walked = 0;
+                regions.add(footprint("t" + regions.size(), fix.getLat(), fix.getLng(), random));
+            }
+            previous = fix;
+            minLat = Math.min(minLat, fix.getLat());
+            minLng = Math.min(minLng, fix.getLng());
+            maxLat = Math.max(maxLat, fix.getLat());
+            maxLng = Math.max(maxLng, fix.getLng());
+        }
+        for (int b = 0; b < OTHER_BUILDINGS; b++) {
+            double lat = minLat - 0.005 + random.nextDouble() * (maxLat - minLat + 0.01);
+            double lng = minLng - 0.005 + random.nextDouble() * (maxLng - minLng + 0.01);
+            regions.add(random.nextBoolean()
+                    ? footprint("o" + b, lat, lng, random)
+                    : new CircleRegion("o" + b, lat, lng, 20 + random.nextInt(40)));
+        }
+        index = new RegionIndex(regions);
+    }
+
+    private static List<Fix> load(String trace) throws IOException {
+        File file = new File(trace);
+        if (file.isFile()) {
+            return TraceReader.read(file);
+        }
+        InputStream in = TraceReplayBenchmark.class.getResourceAsStream(trace);
+        if (in == null) {
+            throw new IOException("No such trace: " + trace);
+        }
+        try {
+            return trace.endsWith(".gpx") ? TraceReader.readGpx(in) : TraceReader.readCsv(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // octagon of 20 to 50 m across, squashed a little
+    private static PolygonRegion footprint(String id, double lat, double lng, Random random) {
+        double[] lats = new double[8];
+        double[] lngs = new double[8];
+        double r = 0.0001 + random.nextDouble() * 0.00013;
+        for (int i = 0; i < 8; i++) {
+            double angle = 2 * Math.PI * i / 8;
+            lats[i] = lat + r * Math.sin(angle);
+            lngs[i] = lng + r * Math.cos(angle) * 1.25;
+        }
+        return new PolygonRegion(id, lats, lngs);
+    }
+
+    @Benchmark
+    public int replay() throws InterruptedException {
+        ReplayLocationSource source =
+                new ReplayLocationSource(fixes, ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT);
+        LocationPipeline pipeline = new LocationPipeline.Builder(source, index,
+                new MonitoredSetSelector(index, MONITORED), IGNORE).build();
+        source.replay(pipeline);
+        return pipeline.getFixCount();
+    }
+
+    @Benchmark
+    public int everyFix() {
+        LocationPipeline pipeline = new LocationPipeline.Builder(
+                new ReplayLocationSource(fixes, ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT),
+                index, new MonitoredSetSelector(index, MONITORED), IGNORE).build();
+        // one reused batch, the way FusedLocationSource delivers
+        List<Fix> batch = new ArrayList<Fix>(1);
+        batch.add(null);
+        for (int i = 0; i < fixes.size(); i++) {
+            batch.set(0, fixes.get(i));
+            pipeline.onFixes(batch);
+        }
+        return pipeline.getFixCount();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guidance on a grid of walkways, as MapsActivity runs it for every fix shown on the main thread.
+ *
+ * followRoute walks a route from one corner of the grid to the other at one fix a second and
+ * reports the time per fix, which should not grow with the grid or the route.
+ * rerouteAfterWrongTurn starts the route again and sends the fixes that take the user off it
+ * halfway, the last of which searches the way back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GuidanceBenchmark {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    // meters between the walkways of the grid
+    private static final double SPACING = 40;
+
+    // walkways per side: a building, the campus, a campus and its town
+    @Param({"10", "40", "120"})
+    public int side;
+
+    private Guidance guidance;
+    private Route route;
+    private List<Fix> walk;
+    private int nextFix;
+    private Fix wrongTurn;
+    private Fix onRoute;
+    private int events;
+
+    @Setup
+    public void setUp() {
+        GraphBuilder builder = new GraphBuilder();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                builder.addNode(LAT + r * SPACING / GeoMath.METERS_PER_DEGREE,
+                        LNG + c * SPACING / GeoMath.metersPerDegreeLng(LAT));
+            }
+        }
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int n = r * side + c;
+                if (c + 1 < side) {
+                    builder.addWalkway(n, n + 1);
+                }
+                if (r + 1 < side) {
+                    builder.addWalkway(n, n + side);
+                }
+            }
+        }
+        WalkwayGraph graph = builder.build();
+        guidance = new Guidance(new NodeLocator(graph), new AStarRouter(graph), new Guidance.Listener() {
+            @Override
+            public void onGuidance(GuidanceEvent event) {
+                events++;
+            }
+        });
+        route = new AStarRouter(graph).route(0, side * side - 1);
+
+        walk = new ArrayList<Fix>();
+        double carried = 0;
+        for (int i = 1; i < route.size(); i++) {
+            double aLat = route.getLat(i - 1), aLng = route.getLng(i - 1);
+            double bLat = route.getLat(i), bLng = route.getLng(i);
+            double length = GeoMath.fastDistance(aLat, aLng, bLat, bLng);
+            double s = carried;
+            for (; s < length; s += Route.WALKING_SPEED) {
+                double f = s / length;
+                walk.add(new Fix(aLat + f * (bLat - aLat), aLng + f * (bLng - aLng), 5,
+                        (float) Route.WALKING_SPEED, walk.size() * 1000L));
+            }
+            carried = s - length;
+        }
+
+        // halfway along, a block off to the side of the route
+        Fix halfway = walk.get(walk.size() / 2);
+        onRoute = new Fix(0, 0, 0, Float.NaN, 0).set(halfway);
+        wrongTurn = new Fix(halfway.getLat() + SPACING / GeoMath.METERS_PER_DEGREE,
+                halfway.getLng() - SPACING / GeoMath.metersPerDegreeLng(LAT), 5, 1.4f, halfway.getTime());
+        guidance.start(route);
+    }
+
+    @Benchmark
+    public double followRoute() {
+        if (nextFix == walk.size()) {
+            guidance.start(route);
+            nextFix = 0;
+        }
+        guidance.update(walk.get(nextFix++));
+        return guidance.getProgress();
+    }
+
+    @Benchmark
+    public int rerouteAfterWrongTurn() {
+        guidance.start(route);
+        guidance.update(onRoute);
+        for (int i = 0; i < Guidance.OFF_ROUTE_FIXES; i++) {
+            guidance.update(wrongTurn);
+        }
+        return guidance.getRerouteCount() + events;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+import com.example.maptest.location.TraceReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MapMatcher over replayed walks, one fix a second like the fused provider while walking.
+ *
+ * recordedTrace matches the campus-walk.csv trace of the location benchmarks onto a grid of
+ * walkways laid over it; the trace's own accuracy stands in for the noise. syntheticWalk
+ * matches a walk along a route of the grid with Gaussian noise of the given meters added.
+ * Both report the time for the whole trace, which at 1 Hz is real time divided by the trace
+ * length in seconds. The walkway index and the matcher are built once and only reset between
+ * runs, as the app does when location updates restart.
+ *
+ * How close the matched positions are to the true ones at these noise levels is checked by
+ * MapMatcherTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MapMatchingBenchmark {
+
+    // meters between the walkways of the grid, a little denser than the campus paths
+    private static final double SPACING = 25;
+
+    private static final String TRACE = "/com/example/maptest/location/campus-walk.csv";
+
+    private List<Fix> recorded;
+    private MapMatcher recordedMatcher;
+
+    private final Fix out = new Fix(0, 0, 0, Float.NaN, 0);
+
+    /**
+     * The noisy walk, set up once per noise level.
+     */
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+        @Param({"4", "8", "15"})
+        public double noise;
+
+        List<Fix> fixes;
+        MapMatcher matcher;
+
+        @Setup
+        public void setUp() throws IOException {
+            double[] bounds = bounds(readTrace());
+            // a square kilometre of campus, walked corner to corner
+            WalkwayGraph graph = grid(bounds[0], bounds[1], bounds[0] + 0.009, bounds[1] + 0.011,
+                    new Random(11));
+            Route route = null;
+            for (int to = graph.nodeCount() - 1; route == null; to--) {
+                route = new AStarRouter(graph).route(0, to);
+            }
+            List<double[]> truth = walk(route, 1.4);
+            Random random = new Random(42);
+            fixes = new ArrayList<Fix>(truth.size());
+            for (int t = 0; t < truth.size(); t++) {
+                double[] at = truth.get(t);
+                fixes.add(new Fix(at[0] + random.nextGaussian() * noise / GeoMath.METERS_PER_DEGREE,
+                        at[1] + random.nextGaussian() * noise / GeoMath.metersPerDegreeLng(at[0]),
+                        (float) noise, 1.4f, t * 1000L));
+            }
+            matcher = new MapMatcher(new EdgeLocator(graph));
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        recorded = readTrace();
+        double[] bounds = bounds(recorded);
+        recordedMatcher = new MapMatcher(new EdgeLocator(grid(bounds[0] - 0.001, bounds[1] - 0.001,
+                bounds[2] + 0.001, bounds[3] + 0.001, new Random(7))));
+    }
+
+    private static List<Fix> readTrace() throws IOException {
+        InputStream in = MapMatchingBenchmark.class.getResourceAsStream(TRACE);
+        if (in == null) {
+            throw new IOException("No such trace: " + TRACE);
+        }
+        try {
+            return TraceReader.readCsv(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // min lat, min lng, max lat, max lng
+    private static double[] bounds(List<Fix> fixes) {
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (Fix fix : fixes) {
+            minLat = Math.min(minLat, fix.getLat());
+            minLng = Math.min(minLng, fix.getLng());
+            maxLat = Math.max(maxLat, fix.getLat());
+            maxLng = Math.max(maxLng, fix.getLng());
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    // jittered grid of two-way walkways with a few missing, like RouterTest
+    private static WalkwayGraph grid(double minLat, double minLng, double maxLat, double maxLng,
+                                     Random random) {
+        double stepLat = SPACING / GeoMath.METERS_PER_DEGREE;
+        double stepLng = SPACING / GeoMath.metersPerDegreeLng(minLat);
+        int rows = (int) ((maxLat - minLat) / stepLat) + 1;
+        int columns = (int) ((maxLng - minLng) / stepLng) + 1;
+        GraphBuilder builder = new GraphBuilder();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                builder.addNode(minLat + (r + random.nextDouble() * 0.2) * stepLat,
+                        minLng + (c + random.nextDouble() * 0.2) * stepLng);
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int n = r * columns + c;
+                if (c + 1 < columns && random.nextInt(10) > 0) {
+                    builder.addWalkway(n, n + 1);
+                }
+                if (r + 1 < rows && random.nextInt(10) > 0) {
+                    builder.addWalkway(n, n + columns);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // points every step meters along the route
+    private static List<double[]> walk(Route route, double step) {
+        List<double[]> points = new ArrayList<double[]>();
+        double carried = 0;
+        for (int i = 1; i < route.size(); i++) {
+            double aLat = route.getLat(i - 1), aLng = route.getLng(i - 1);
+            double bLat = route.getLat(i), bLng = route.getLng(i);
+            double length = GeoMath.fastDistance(aLat, aLng, bLat, bLng);
+            double s = carried;
+            for (; s < length; s += step) {
+                double f = s / length;
+                points.add(new double[]{aLat + f * (bLat - aLat), aLng + f * (bLng - aLng)});
+            }
+            carried = s - length;
+        }
+        return points;
+    }
+
+    @Benchmark
+    public int recordedTrace() {
+        recordedMatcher.reset();
+        for (int i = 0; i < recorded.size(); i++) {
+            recordedMatcher.match(recorded.get(i), out);
+        }
+        return recordedMatcher.getMatchedCount();
+    }
+
+    @Benchmark
+    public int syntheticWalk(Synthetic walk) {
+        walk.matcher.reset();
+        for (int i = 0; i < walk.fixes.size(); i++) {
+            walk.matcher.match(walk.fixes.get(i), out);
+        }
+        return walk.matcher.getMatchedCount();
+    }
+}
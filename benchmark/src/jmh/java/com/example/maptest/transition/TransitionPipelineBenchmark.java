@@ -0,0 +1,144 @@
+package com.example.maptest.transition;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geofence transitions per second during a class change: four threads deliver bursts of
+ * single-region events, as Play Services does when many geofences fire at once.
+ *
+ * serialPerEvent is the old IntentService behaviour, one worker handling every event on its
+ * own; batchedPipeline is TransitionPipeline on a bounded pool. The handler burns a fixed
+ * amount of CPU per call to stand in for building and posting a notification.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransitionPipelineBenchmark {
+
+    // events delivered back to back by one thread
+    private static final int BURST = 32;
+
+    // pre-generated bursts cycled through by each thread
+    private static final int BURST_POOL = 64;
+
+    // stand-in for the cost of one notification, in Blackhole.consumeCPU tokens
+    private static final long NOTIFY_COST = 2000;
+
+    private static final int DWELL = TransitionEvent.DWELL;
+    private static final int EXIT = TransitionEvent.EXIT;
+
+    // number of regions the events are spread over; fewer regions means more duplicates
+    @Param({"20", "200"})
+    public int regions;
+
+    private List<List<TransitionEvent>> bursts;
+
+    private ThreadPoolExecutor pool;
+    private TransitionPipeline pipeline;
+    private ExecutorService serial;
+
+    private final TransitionPipeline.Handler handler = new TransitionPipeline.Handler() {
+        @Override
+        public void handle(List<TransitionEvent> batch) {
+            postNotification(batch);
+        }
+    };
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        bursts = new ArrayList<List<TransitionEvent>>(BURST_POOL);
+        long time = 0;
+        for (int b = 0; b < BURST_POOL; b++) {
+            List<TransitionEvent> burst = new ArrayList<TransitionEvent>(BURST);
+            for (int i = 0; i < BURST; i++) {
+                burst.add(new TransitionEvent("region-" + random.nextInt(regions),
+                        random.nextBoolean() ? DWELL : EXIT, time++));
+            }
+            bursts.add(burst);
+        }
+        pool = TransitionPipeline.newBoundedExecutor("bench", 2, 16);
+        pipeline = new TransitionPipeline(pool, handler);
+        serial = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        serial.shutdown();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BURST)
+    public void batchedPipeline(Cursor cursor) throws InterruptedException {
+        List<TransitionEvent> burst = bursts.get(cursor.next++ % BURST_POOL);
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < BURST - 1; i++) {
+            pipeline.submit(burst.subList(i, i + 1), null);
+        }
+        pipeline.submit(burst.subList(BURST - 1, BURST), new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BURST)
+    public void serialPerEvent(Cursor cursor) throws InterruptedException {
+        List<TransitionEvent> burst = bursts.get(cursor.next++ % BURST_POOL);
+        final CountDownLatch done = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            final List<TransitionEvent> single = Collections.singletonList(burst.get(i));
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    postNotification(single);
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private static void postNotification(List<TransitionEvent> batch) {
+        StringBuilder details = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            if (details.length() > 0) {
+                details.append(", ");
+            }
+            details.append(batch.get(i).getRequestId());
+        }
+        Blackhole.consumeCPU(NOTIFY_COST + details.length());
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.maptest.events;
+
+/**
+ * The location client connected, lost its connection or failed to connect.
+ */
+public final class ConnectionEvent {
+
+    public static final int CONNECTED = 0;
+    public static final int SUSPENDED = 1;
+    public static final int FAILED = 2;
+
+    private static final String[] STATE_NAMES = {"CONNECTED", "SUSPENDED", "FAILED"};
+
+    private final int state;
+    private final int cause;
+    private final long timeNanos;
+
+    /**
+     * @param state     CONNECTED, SUSPENDED or FAILED
+     * @param cause     why a connection was suspended or failed, as reported by Play Services;
+     *                  0 when connected
+     * @param timeNanos System.nanoTime() when it happened
+     */
+    public ConnectionEvent(int state, int cause, long timeNanos) {
+        this.state = state;
+        this.cause = cause;
+        this.timeNanos = timeNanos;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public int getCause() {
+        return cause;
+    }
+
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return STATE_NAMES[state] + (cause != 0 ? " (" + cause + ")" : "");
+    }
+}
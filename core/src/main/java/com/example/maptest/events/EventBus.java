@@ -0,0 +1,301 @@
+package com.example.maptest.events;
+
+import com.example.maptest.metrics.Histogram;
+import com.example.maptest.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * In-process stream of what happens to the user's location: shown fixes, confirmed
+ * transitions, the state of the location client and walking routes. Publishers do not know
+ * who listens, and every subscriber gets the events of its type at the rate it can handle.
+ *
+ * Each subscription has its own bounded buffer and its own executor. Publishing never blocks
+ * and never runs a subscriber: it only appends to the buffers and schedules a drain. A full
+ * buffer drops its oldest event, so a subscriber that falls behind sees the latest ones; with
+ * {@link #subscribeLatest} the buffer holds a single event, which suits the camera, as only
+ * the newest fix matters by the time the main thread gets to it. A subscriber is never called
+ * concurrently with itself, whatever its executor.
+ *
+ * A publisher of copies can take them from an {@link EventPool}, which gets each one back once
+ * every subscription is done with it, so publishing allocates nothing.
+ *
+ * The delay from publishing to delivery is recorded into Metrics under the prefix and the
+ * subscription name. Use {@link #get()} for the process-wide instance; tests can create
+ * their own. Thread safe.
+ */
+public final class EventBus {
+
+    private static final EventBus INSTANCE = new EventBus(Metrics.get(), "events.");
+
+    /**
+     * Receives the events of one type.
+     */
+    public interface Subscriber<T> {
+        void onEvent(T event);
+    }
+
+    /**
+     * One subscriber with its buffer.
+     */
+    public final class Subscription<T> implements Runnable {
+
+        private final String name;
+        private final Class<T> type;
+        private final Executor executor;
+        private final Subscriber<? super T> subscriber;
+        // delivery delays, looked up once so delivering allocates nothing; null without metrics
+        private final Histogram delays;
+
+        // ring buffer of the pending events, when they were published and the pools they go
+        // back to
+        private final Object[] events;
+        private final long[] publishedAt;
+        private final EventPool<?>[] pools;
+        private int head;
+        private int size;
+
+        // a drain is queued on the executor or running
+        private boolean scheduled;
+        private boolean cancelled;
+        private long delivered;
+        private long dropped;
+
+        Subscription(String name, Class<T> type, Executor executor, int capacity,
+                     Subscriber<? super T> subscriber) {
+            this.name = name;
+            this.type = type;
+            this.executor = executor;
+            this.subscriber = subscriber;
+            this.delays = metrics != null ? metrics.histogram(prefix + name) : null;
+            this.events = new Object[capacity];
+            this.publishedAt = new long[capacity];
+            this.pools = new EventPool<?>[capacity];
+        }
+
+        void offer(Object event, EventPool<?> pool, long now) {
+            synchronized (this) {
+                if (cancelled) {
+                    release(event, pool);
+                    return;
+                }
+                if (size == events.length) {
+                    release(events[head], pools[head]);
+                    events[head] = null;
+                    pools[head] = null;
+                    head = (head + 1) % events.length;
+                    size--;
+                    dropped++;
+                }
+                int tail = (head + size) % events.length;
+                events[tail] = event;
+                publishedAt[tail] = now;
+                pools[tail] = pool;
+                size++;
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the events wait for the next publish
+                synchronized (this) {
+                    scheduled = false;
+                }
+            }
+        }
+
+        /**
+         * Delivers what is buffered, at most one buffer's worth before yielding the executor
+         * to other work.
+         */
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < events.length; i++) {
+                    Object event;
+                    long published;
+                    EventPool<?> pool;
+                    synchronized (this) {
+                        if (cancelled || size == 0) {
+                            break;
+                        }
+                        event = events[head];
+                        published = publishedAt[head];
+                        pool = pools[head];
+                        events[head] = null;
+                        pools[head] = null;
+                        head = (head + 1) % events.length;
+                        size--;
+                        delivered++;
+                    }
+                    if (delays != null) {
+                        delays.record(System.nanoTime() - published);
+                    }
+                    try {
+                        subscriber.onEvent(type.cast(event));
+                    } finally {
+                        release(event, pool);
+                    }
+                }
+            } finally {
+                // also after the subscriber threw, so the rest of the buffer is not stranded
+                boolean again;
+                synchronized (this) {
+                    again = !cancelled && size > 0;
+                    scheduled = again;
+                }
+                if (again) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Stops delivery and drops what is buffered. An event being delivered still completes.
+         */
+        public void cancel() {
+            remove(this);
+            synchronized (this) {
+                cancelled = true;
+                for (int i = 0; i < size; i++) {
+                    int slot = (head + i) % events.length;
+                    release(events[slot], pools[slot]);
+                }
+                for (int i = 0; i < events.length; i++) {
+                    events[i] = null;
+                    pools[i] = null;
+                }
+                size = 0;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized int getPending() {
+            return size;
+        }
+
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * Events pushed out of a full buffer before they were delivered.
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+    }
+
+    private final Metrics metrics;
+    private final String prefix;
+    // replaced on every change, so publishing walks it without a lock or an iterator
+    private volatile Subscription<?>[] subscriptions = new Subscription<?>[0];
+
+    /**
+     * @param metrics where delivery delays are recorded, or null
+     * @param prefix  prepended to the subscription names in Metrics, e.g. "events."
+     */
+    public EventBus(Metrics metrics, String prefix) {
+        this.metrics = metrics;
+        this.prefix = prefix;
+    }
+
+    public static EventBus get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Delivers every published event that is an instance of {@code type} on the executor,
+     * keeping at most {@code capacity} undelivered events and dropping the oldest beyond that.
+     *
+     * @param name names the subscription in Metrics and logs
+     */
+    public <T> Subscription<T> subscribe(String name, Class<T> type, Executor executor, int capacity,
+                                         Subscriber<? super T> subscriber) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        Subscription<T> subscription = new Subscription<T>(name, type, executor, capacity, subscriber);
+        synchronized (this) {
+            Subscription<?>[] grown = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            grown[subscriptions.length] = subscription;
+            subscriptions = grown;
+        }
+        return subscription;
+    }
+
+    private synchronized void remove(Subscription<?> subscription) {
+        List<Subscription<?>> kept = new ArrayList<Subscription<?>>(Arrays.asList(subscriptions));
+        if (kept.remove(subscription)) {
+            subscriptions = kept.toArray(new Subscription<?>[kept.size()]);
+        }
+    }
+
+    private static void release(Object event, EventPool<?> pool) {
+        if (pool != null) {
+            pool.release(event);
+        }
+    }
+
+    /**
+     * Like {@link #subscribe} with a buffer of one: only the newest undelivered event is kept.
+     */
+    public <T> Subscription<T> subscribeLatest(String name, Class<T> type, Executor executor,
+                                               Subscriber<? super T> subscriber) {
+        return subscribe(name, type, executor, 1, subscriber);
+    }
+
+    /**
+     * Hands the event to every subscription of its type without waiting for any of them.
+     * Events must not change once published; publish a copy of anything that is reused.
+     */
+    public void publish(Object event) {
+        publish(event, null);
+    }
+
+    /**
+     * Publishes an event taken from the pool, and returns it to the pool once every
+     * subscription is done with it; right away if there is none.
+     *
+     * @param pool where the event came from, or null if it is not pooled
+     */
+    public void publish(Object event, EventPool<?> pool) {
+        long now = System.nanoTime();
+        Subscription<?>[] current = subscriptions;
+        try {
+            for (int i = 0; i < current.length; i++) {
+                Subscription<?> subscription = current[i];
+                if (subscription.type.isInstance(event)) {
+                    if (pool != null) {
+                        pool.retain(event);
+                    }
+                    subscription.offer(event, pool, now);
+                }
+            }
+        } finally {
+            // the publisher's reference from acquire()
+            release(event, pool);
+        }
+    }
+
+    /**
+     * The current subscriptions, for logs.
+     */
+    public List<Subscription<?>> getSubscriptions() {
+        return new ArrayList<Subscription<?>>(Arrays.asList(subscriptions));
+    }
+}
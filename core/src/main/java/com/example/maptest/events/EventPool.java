@@ -0,0 +1,102 @@
+package com.example.maptest.events;
+
+/**
+ * A few reusable events for a publisher that would otherwise publish a new copy of a reused
+ * object every time, such as the fixes shown on the map.
+ *
+ * An event is taken with {@link #acquire}, filled and handed to
+ * {@link EventBus#publish(Object, EventPool)}. The bus counts the subscriptions it is offered
+ * to and returns it to the pool once each has delivered, dropped or cancelled it, so a
+ * subscriber must not keep a pooled event after onEvent() returns. When every event is still
+ * held, e.g. by a subscriber far behind, acquire() creates one that is not pooled rather than
+ * wait. Thread safe.
+ */
+public final class EventPool<T> {
+
+    /**
+     * Creates the pooled events.
+     */
+    public interface Factory<T> {
+        T create();
+    }
+
+    private final Factory<T> factory;
+    private final Object[] events;
+    // references to each event: the publisher's until it is published, then one per
+    // subscription it was offered to; 0 when free
+    private final int[] references;
+    private long misses;
+
+    public EventPool(int size, Factory<T> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1: " + size);
+        }
+        this.factory = factory;
+        events = new Object[size];
+        references = new int[size];
+        for (int i = 0; i < size; i++) {
+            events[i] = factory.create();
+        }
+    }
+
+    /**
+     * A free event, held by the caller until it is published.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        synchronized (this) {
+            for (int i = 0; i < events.length; i++) {
+                if (references[i] == 0) {
+                    references[i] = 1;
+                    return (T) events[i];
+                }
+            }
+            misses++;
+        }
+        return factory.create();
+    }
+
+    synchronized void retain(Object event) {
+        int i = indexOf(event);
+        if (i >= 0) {
+            references[i]++;
+        }
+    }
+
+    synchronized void release(Object event) {
+        int i = indexOf(event);
+        if (i >= 0 && references[i] > 0) {
+            references[i]--;
+        }
+    }
+
+    // the pools are a handful of events, so a scan beats a map
+    private int indexOf(Object event) {
+        for (int i = 0; i < events.length; i++) {
+            if (events[i] == event) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Events acquired while the whole pool was held, i.e. allocated after all.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Events currently held by the publisher or a subscription.
+     */
+    public synchronized int getHeld() {
+        int held = 0;
+        for (int i = 0; i < references.length; i++) {
+            if (references[i] > 0) {
+                held++;
+            }
+        }
+        return held;
+    }
+}
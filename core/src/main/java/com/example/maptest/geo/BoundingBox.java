@@ -0,0 +1,67 @@
+package com.example.maptest.geo;
+
+/**
+ * Immutable latitude/longitude rectangle. Campus data never crosses the antimeridian,
+ * so no wrap-around handling is done here.
+ */
+public final class BoundingBox {
+
+    public final double minLat;
+    public final double minLng;
+    public final double maxLat;
+    public final double maxLng;
+
+    public BoundingBox(double minLat, double minLng, double maxLat, double maxLng) {
+        if (minLat > maxLat || minLng > maxLng) {
+            throw new IllegalArgumentException("Inverted bounding box");
+        }
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.maxLat = maxLat;
+        this.maxLng = maxLng;
+    }
+
+    /**
+     * Returns the box that extends {@code radius} meters around a point.
+     */
+    public static BoundingBox around(double lat, double lng, double radius) {
+        double dLat = radius / GeoMath.METERS_PER_DEGREE;
+        double dLng = radius / GeoMath.metersPerDegreeLng(lat);
+        return new BoundingBox(lat - dLat, lng - dLng, lat + dLat, lng + dLng);
+    }
+
+    public double centerLat() {
+        return (minLat + maxLat) * 0.5;
+    }
+
+    public double centerLng() {
+        return (minLng + maxLng) * 0.5;
+    }
+
+    public boolean contains(double lat, double lng) {
+        return lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng;
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return other.minLat <= maxLat && other.maxLat >= minLat
+                && other.minLng <= maxLng && other.maxLng >= minLng;
+    }
+
+    /**
+     * Lower bound of the distance from a point to anything inside this box, in meters.
+     * Returns 0 when the point is inside the box.
+     */
+    public double distanceTo(double lat, double lng) {
+        double cLat = lat < minLat ? minLat : (lat > maxLat ? maxLat : lat);
+        double cLng = lng < minLng ? minLng : (lng > maxLng ? maxLng : lng);
+        if (cLat == lat && cLng == lng) {
+            return 0;
+        }
+        return GeoMath.fastDistance(lat, lng, cLat, cLng);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + minLat + "," + minLng + " - " + maxLat + "," + maxLng + "]";
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.maptest.geo;
+
+/**
+ * Spherical earth helpers shared by the geofence, routing and location code.
+ * All angles are in degrees and all distances are in meters.
+ */
+public final class GeoMath {
+
+    // mean earth radius used by the Play Services geofence and Location.distanceBetween math
+    public static final double EARTH_RADIUS_M = 6371008.8;
+
+    // length of one degree of latitude, in meters
+    public static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_M / 180.0;
+
+    // WGS84 ellipsoid, for vincenty()
+    public static final double WGS84_A = 6378137.0;
+    public static final double WGS84_F = 1 / 298.257223563;
+    private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+    // vincenty() stops once lambda changes by less than this, about 0.06 mm on the ground
+    private static final double VINCENTY_EPSILON = 1e-12;
+    private static final int VINCENTY_MAX_ITERATIONS = 20;
+
+    /**
+     * Prevents instantiation.
+     */
+    private GeoMath() {}
+
+    /**
+     * Great-circle distance between two points using the haversine formula.
+     */
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat * 0.5);
+        double sinLng = Math.sin(dLng * 0.5);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2.0 * EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Distance between two points on the WGS84 ellipsoid using Vincenty's inverse formula,
+     * the same method as Location.distanceBetween(). Up to 0.5% more accurate than haversine
+     * but several times slower, so it is meant for reference values rather than hot loops.
+     * Nearly antipodal points, where the iteration does not converge, fall back to haversine.
+     */
+    public static double vincenty(double lat1, double lng1, double lat2, double lng2) {
+        double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+        double l = Math.toRadians(lng2 - lng1);
+
+        double lambda = l;
+        for (int i = 0; i < VINCENTY_MAX_ITERATIONS; i++) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double x = cosU2 * sinLambda;
+            double y = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSigma = Math.sqrt(x * x + y * y);
+            if (sinSigma == 0) {
+                return 0;
+            }
+            double cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            double sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            double cos2Alpha = 1 - sinAlpha * sinAlpha;
+            // both points on the equator: cos2Alpha is 0 and so is this term
+            double cos2SigmaM = cos2Alpha == 0 ? 0 : cosSigma - 2 * sinU1 * sinU2 / cos2Alpha;
+            double c = WGS84_F / 16 * cos2Alpha * (4 + WGS84_F * (4 - 3 * cos2Alpha));
+            double previous = lambda;
+            lambda = l + (1 - c) * WGS84_F * sinAlpha * (sigma + c * sinSigma
+                    * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previous) < VINCENTY_EPSILON) {
+                double uSq = cos2Alpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+                double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+                double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+                double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma
+                        * (-1 + 2 * cos2SigmaM * cos2SigmaM) - b / 6 * cos2SigmaM
+                        * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+                return WGS84_B * a * (sigma - deltaSigma);
+            }
+        }
+        return haversine(lat1, lng1, lat2, lng2);
+    }
+
+    /**
+     * Equirectangular approximation of the distance between two points.
+     * Accurate to well under a meter over campus-sized distances and much cheaper than
+     * haversine, so it is used for index pruning and other hot loops.
+     */
+    public static double fastDistance(double lat1, double lng1, double lat2, double lng2) {
+        double x = (lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) * 0.5));
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Meters covered by one degree of longitude at the given latitude.
+     */
+    public static double metersPerDegreeLng(double lat) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+    }
+
+    /**
+     * Distance from a point to the segment (aLat, aLng)-(bLat, bLng), using a local
+     * equirectangular projection around the point.
+     */
+    public static double distanceToSegment(double lat, double lng,
+                                           double aLat, double aLng,
+                                           double bLat, double bLng) {
+        double kx = metersPerDegreeLng(lat);
+        double ax = (aLng - lng) * kx;
+        double ay = (aLat - lat) * METERS_PER_DEGREE;
+        double bx = (bLng - lng) * kx;
+        double by = (bLat - lat) * METERS_PER_DEGREE;
+        double dx = bx - ax;
+        double dy = by - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : -(ax * dx + ay * dy) / len2;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+        double px = ax + t * dx;
+        double py = ay + t * dy;
+        return Math.sqrt(px * px + py * py);
+    }
+}
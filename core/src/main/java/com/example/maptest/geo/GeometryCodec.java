@@ -0,0 +1,245 @@
+package com.example.maptest.geo;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact encoding of polylines and polygons, for routes, footprints and geofence shapes that
+ * are stored, sent in Intents or handed to the map.
+ *
+ * Coordinates are rounded to fixed point with 5 to 7 decimals (about 1 m to 1 cm) and each
+ * point is stored as its difference from the one before, zigzag encoded so small negative
+ * steps stay small and written as a varint. A walkway vertex a few meters from the last takes
+ * two or three bytes at 6 decimals instead of sixteen as two doubles. Optionally every point
+ * also carries the lowest zoom level it is needed at (see LineSimplifier), so a reader can skip
+ * the points that would not show at its zoom without the geometry being stored once per zoom.
+ *
+ * <pre>
+ * u8       decimals in the low nibble, LEVELS if the points carry zoom levels
+ * varint   point count
+ * points   zigzag varint lat step, zigzag varint lng step; then with LEVELS, u8 zoom level
+ * </pre>
+ *
+ * Reader and Writer work directly on a ByteBuffer, from and to its position, so an encoding
+ * can be read out of a memory mapped file or a byte[] from an Intent without copying, and
+ * several can follow each other in one buffer. Neither allocates per point.
+ */
+public final class GeometryCodec {
+
+    public static final int MIN_DECIMALS = 5;
+    public static final int MAX_DECIMALS = 7;
+    // about 11 cm, well below the accuracy of anything drawn or matched on campus
+    public static final int DEFAULT_DECIMALS = 6;
+
+    static final int LEVELS = 0x10;
+    private static final int DECIMALS_MASK = 0x0F;
+
+    // a zigzag varint of an int takes at most this many bytes
+    private static final int MAX_VARINT_SIZE = 5;
+
+    private static final double[] SCALES = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7};
+
+    private GeometryCodec() {
+    }
+
+    /**
+     * The most bytes an encoding of this many points can take.
+     */
+    public static int maxSize(int points, boolean levels) {
+        return 1 + MAX_VARINT_SIZE + points * (2 * MAX_VARINT_SIZE + (levels ? 1 : 0));
+    }
+
+    /**
+     * Encodes the first {@code count} points.
+     *
+     * @param levels zoom level of every point, or null to store none
+     */
+    public static byte[] encode(double[] lats, double[] lngs, int count, int[] levels, int decimals) {
+        ByteBuffer out = ByteBuffer.allocate(maxSize(count, levels != null));
+        Writer writer = new Writer(out, count, levels != null, decimals);
+        for (int i = 0; i < count; i++) {
+            writer.write(lats[i], lngs[i], levels != null ? levels[i] : 0);
+        }
+        byte[] encoded = new byte[out.position()];
+        out.flip();
+        out.get(encoded);
+        return encoded;
+    }
+
+    public static byte[] encode(double[] lats, double[] lngs, int count) {
+        return encode(lats, lngs, count, null, DEFAULT_DECIMALS);
+    }
+
+    private static void checkDecimals(int decimals) {
+        if (decimals < MIN_DECIMALS || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("Unsupported decimals: " + decimals);
+        }
+    }
+
+    // steps are taken in int arithmetic; a step across the antimeridian overflows on encoding
+    // and again on decoding, so it still comes back right
+    private static void writeSigned(ByteBuffer out, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.put((byte) zigzag);
+    }
+
+    private static int readSigned(ByteBuffer in) {
+        int zigzag = readUnsigned(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static int readUnsigned(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + (in.position() - 1));
+    }
+
+    /**
+     * Writes one encoding point by point. Exactly the announced number of points must be written.
+     */
+    public static final class Writer {
+        private final ByteBuffer out;
+        private final boolean levels;
+        private final double scale;
+        private int remaining;
+        private int lastLat;
+        private int lastLng;
+
+        /**
+         * Writes the header at the buffer's position.
+         *
+         * @throws BufferOverflowException if the buffer has no room for it; see maxSize()
+         */
+        public Writer(ByteBuffer out, int count, boolean levels, int decimals) {
+            checkDecimals(decimals);
+            this.out = out;
+            this.levels = levels;
+            this.scale = SCALES[decimals];
+            this.remaining = count;
+            out.put((byte) (decimals | (levels ? LEVELS : 0)));
+            writeUnsigned(count);
+        }
+
+        private void writeUnsigned(int value) {
+            while ((value & ~0x7F) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        /**
+         * @param level the lowest zoom the point is needed at; ignored without levels
+         */
+        public void write(double lat, double lng, int level) {
+            if (remaining == 0) {
+                throw new IllegalStateException("All points already written");
+            }
+            remaining--;
+            int fixedLat = (int) Math.round(lat * scale);
+            int fixedLng = (int) Math.round(lng * scale);
+            writeSigned(out, fixedLat - lastLat);
+            writeSigned(out, fixedLng - lastLng);
+            lastLat = fixedLat;
+            lastLng = fixedLng;
+            if (levels) {
+                out.put((byte) level);
+            }
+        }
+    }
+
+    /**
+     * Reads one encoding point by point, leaving the buffer positioned after it once every point
+     * has been read.
+     */
+    public static final class Reader {
+        private final ByteBuffer in;
+        private final boolean levels;
+        private final double scale;
+        private final int count;
+        private final int maxLevel;
+        private int remaining;
+        private int fixedLat;
+        private int fixedLng;
+        private int level;
+
+        /**
+         * Reads every point.
+         */
+        public Reader(ByteBuffer in) {
+            this(in, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Reads the points needed at the zoom level, and all of them if the encoding has no
+         * levels. Reads the header at the buffer's position.
+         *
+         * @throws IllegalArgumentException if the header is not one this codec writes
+         */
+        public Reader(ByteBuffer in, int zoom) {
+            this.in = in;
+            int flags = in.get() & 0xFF;
+            int decimals = flags & DECIMALS_MASK;
+            if ((flags & ~(DECIMALS_MASK | LEVELS)) != 0) {
+                throw new IllegalArgumentException("Unknown geometry flags: " + flags);
+            }
+            checkDecimals(decimals);
+            levels = (flags & LEVELS) != 0;
+            scale = SCALES[decimals];
+            count = readUnsigned(in);
+            remaining = count;
+            maxLevel = zoom;
+        }
+
+        /**
+         * Points in the encoding, including any the zoom level skips.
+         */
+        public int size() {
+            return count;
+        }
+
+        public boolean hasLevels() {
+            return levels;
+        }
+
+        /**
+         * Moves to the next point, skipping those above the zoom level.
+         *
+         * @return false once there are no more
+         */
+        public boolean next() {
+            while (remaining > 0) {
+                remaining--;
+                fixedLat += readSigned(in);
+                fixedLng += readSigned(in);
+                level = levels ? in.get() & 0xFF : 0;
+                if (level <= maxLevel) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public double getLat() {
+            return fixedLat / scale;
+        }
+
+        public double getLng() {
+            return fixedLng / scale;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.maptest.geo;
+
+/**
+ * Douglas-Peucker simplification of polylines and polygon rings, by zoom level.
+ *
+ * Instead of simplifying once for one tolerance, every point is given the lowest zoom level at
+ * which leaving it out would move the line by more than PIXEL_TOLERANCE pixels. Keeping the
+ * points whose level is at most z is then the Douglas-Peucker simplification for zoom z, for
+ * every z at once, and the levels can be stored with the points (see GeometryCodec). A point's
+ * level is never below that of the point that split the range it lies in, so the points kept
+ * at one zoom are also kept at every higher one.
+ */
+public final class LineSimplifier {
+
+    // how far, in pixels, a simplified line may stray from the full one
+    public static final double PIXEL_TOLERANCE = 0.5;
+
+    // the highest zoom levels are computed for; points not needed even there get NEVER
+    public static final int MAX_LEVEL = 21;
+    public static final int NEVER = MAX_LEVEL + 1;
+
+    private static final double LN2 = Math.log(2);
+
+    private LineSimplifier() {
+    }
+
+    /**
+     * Zoom levels of the first {@code count} points. The ends of a polyline are needed at every
+     * zoom; so are the first point of a ring and the point farthest from it.
+     *
+     * @param ring whether the points are a closed polygon ring, the last joined to the first
+     */
+    public static int[] levels(double[] lats, double[] lngs, int count, boolean ring) {
+        int[] levels = new int[count];
+        if (count == 0) {
+            return levels;
+        }
+        // meters per degree of longitude where the geometry is; it is small enough for one value
+        double kx = GeoMath.metersPerDegreeLng(lats[0]);
+        // meters a point is off the line without it, once chosen to split its range
+        double[] off = new double[count];
+        // explicit stack of ranges first..last, with the distance of the point that split each;
+        // the ranges waiting are disjoint, so there are fewer of them than points
+        int[] stack = new int[2 * (count + 2)];
+        double[] bound = new double[count + 2];
+        int top = 0;
+        if (ring && count > 2) {
+            int far = 0;
+            double farthest = -1;
+            for (int i = 1; i < count; i++) {
+                double d = distance(lats, lngs, kx, 0, i);
+                if (d > farthest) {
+                    farthest = d;
+                    far = i;
+                }
+            }
+            off[0] = off[far] = Double.POSITIVE_INFINITY;
+            top = push(stack, bound, top, 0, far, Double.POSITIVE_INFINITY);
+            // the closing edge back to the first point
+            top = push(stack, bound, top, far, count, Double.POSITIVE_INFINITY);
+        } else {
+            off[0] = off[count - 1] = Double.POSITIVE_INFINITY;
+            top = push(stack, bound, top, 0, count - 1, Double.POSITIVE_INFINITY);
+        }
+        while (top > 0) {
+            top--;
+            int first = stack[2 * top];
+            int last = stack[2 * top + 1];
+            double limit = bound[top];
+            if (last - first < 2) {
+                continue;
+            }
+            int end = last == count ? 0 : last;
+            int split = -1;
+            double farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d2 = distanceToSegment2(lats, lngs, kx, i, first, end);
+                if (d2 > farthest) {
+                    farthest = d2;
+                    split = i;
+                }
+            }
+            double d = Math.min(Math.sqrt(farthest), limit);
+            off[split] = d;
+            top = push(stack, bound, top, first, split, d);
+            top = push(stack, bound, top, split, last, d);
+        }
+        double tolerance = PIXEL_TOLERANCE * metersPerPixel(kx);
+        for (int i = 0; i < count; i++) {
+            levels[i] = level(off[i], tolerance);
+        }
+        return levels;
+    }
+
+    private static int push(int[] stack, double[] bound, int top, int first, int last, double limit) {
+        stack[2 * top] = first;
+        stack[2 * top + 1] = last;
+        bound[top] = limit;
+        return top + 1;
+    }
+
+    // squared meters from point i to the segment a..b, in the plane around the geometry
+    private static double distanceToSegment2(double[] lats, double[] lngs, double kx, int i, int a, int b) {
+        double ax = (lngs[a] - lngs[i]) * kx;
+        double ay = (lats[a] - lats[i]) * GeoMath.METERS_PER_DEGREE;
+        double dx = (lngs[b] - lngs[a]) * kx;
+        double dy = (lats[b] - lats[a]) * GeoMath.METERS_PER_DEGREE;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : -(ax * dx + ay * dy) / len2;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+        double px = ax + t * dx;
+        double py = ay + t * dy;
+        return px * px + py * py;
+    }
+
+    private static double distance(double[] lats, double[] lngs, double kx, int a, int b) {
+        double dx = (lngs[b] - lngs[a]) * kx;
+        double dy = (lats[b] - lats[a]) * GeoMath.METERS_PER_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * The lowest zoom at which the point is more than the tolerance off the line without it,
+     * the tolerance being given in meters at zoom 0 and halving with every zoom level.
+     */
+    static int level(double meters, double tolerance) {
+        if (!(meters > tolerance / (1L << MAX_LEVEL))) {
+            return NEVER;
+        }
+        if (meters > tolerance) {
+            return 0;
+        }
+        // the smallest zoom with 2^zoom > tolerance / meters; the log only gives the estimate
+        int zoom = Math.max(0, (int) Math.floor(Math.log(tolerance / meters) / LN2) + 1);
+        while (zoom > 0 && meters > tolerance / (1L << (zoom - 1))) {
+            zoom--;
+        }
+        while (!(meters > tolerance / (1L << zoom))) {
+            zoom++;
+        }
+        return zoom;
+    }
+
+    // meters per pixel at zoom 0, as TileMath.metersPerPixel, which geo does not depend on
+    private static double metersPerPixel(double metersPerDegreeLng) {
+        return metersPerDegreeLng * 360.0 / 256;
+    }
+
+    /**
+     * Indices of the points kept at a zoom level, in order.
+     */
+    public static int[] keep(int[] levels, int zoom) {
+        int kept = 0;
+        for (int level : levels) {
+            if (level <= zoom) {
+                kept++;
+            }
+        }
+        int[] indices = new int[kept];
+        for (int i = 0, k = 0; i < levels.length; i++) {
+            if (levels[i] <= zoom) {
+                indices[k++] = i;
+            }
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geo.GeoMath;
+
+/**
+ * Circular region, the same shape Geofence.Builder.setCircularRegion() registers.
+ */
+public class CircleRegion extends Region {
+
+    private final double lat;
+    private final double lng;
+    private final float radius;
+    private final BoundingBox bounds;
+
+    public CircleRegion(String id, double lat, double lng, float radius) {
+        this(id, null, ANY_FLOOR, lat, lng, radius);
+    }
+
+    /**
+     * @param building code of the building the region belongs to, or null
+     * @param floor    floor the region is on, or ANY_FLOOR
+     */
+    public CircleRegion(String id, String building, int floor, double lat, double lng, float radius) {
+        super(id, building, floor);
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Radius must be positive: " + radius);
+        }
+        this.lat = lat;
+        this.lng = lng;
+        this.radius = radius;
+        this.bounds = BoundingBox.around(lat, lng, radius);
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean contains(double lat, double lng) {
+        return bounds.contains(lat, lng)
+                && GeoMath.haversine(this.lat, this.lng, lat, lng) <= radius;
+    }
+
+    @Override
+    public double distanceTo(double lat, double lng) {
+        double d = GeoMath.haversine(this.lat, this.lng, lat, lng) - radius;
+        return d > 0 ? d : 0;
+    }
+
+    @Override
+    public double distanceToEdge(double lat, double lng) {
+        return Math.abs(GeoMath.haversine(this.lat, this.lng, lat, lng) - radius);
+    }
+
+    @Override
+    public double getCenterLat() {
+        return lat;
+    }
+
+    @Override
+    public double getCenterLng() {
+        return lng;
+    }
+
+    @Override
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.maptest.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Slab decomposition of a simple polygon for O(log n) point-in-polygon tests.
+ *
+ * The vertex latitudes cut the polygon's bounding box into horizontal slabs. Each slab gets a
+ * bucket of the edges crossing it completely, sorted by longitude; edges of a simple polygon
+ * never cross inside a slab, so that order holds at every latitude in it. A query finds its
+ * slab and then its place among the slab's edges with two binary searches, and the number of
+ * edges east of the point gives the same even-odd answer as casting a ray towards +lng.
+ *
+ * Buckets hold O(n) edges in total for footprint-like shapes and O(n^2) in the worst case,
+ * e.g. a comb, which for a building outline is still a few thousand ints.
+ */
+final class EdgeBuckets {
+
+    private final double[] lats;
+    private final double[] lngs;
+
+    // distinct vertex latitudes, ascending; slab s spans [slabLat[s], slabLat[s + 1])
+    private final double[] slabLat;
+    // edges of slab s are bucketEdges[bucketStart[s]] .. bucketEdges[bucketStart[s + 1] - 1]
+    private final int[] bucketStart;
+    // an edge is named by its end vertex i; it runs from vertex i - 1 (wrapping) to i
+    private final int[] bucketEdges;
+
+    EdgeBuckets(double[] lats, double[] lngs) {
+        this.lats = lats;
+        this.lngs = lngs;
+        int n = lats.length;
+
+        double[] sorted = lats.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        slabLat = Arrays.copyOf(sorted, distinct);
+        int slabs = Math.max(0, distinct - 1);
+
+        // count, then fill, the edges of every slab
+        bucketStart = new int[slabs + 1];
+        int[] first = new int[n];
+        int[] last = new int[n];
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if (lats[i] == lats[j]) {
+                // horizontal edges are never crossed by an eastward ray
+                first[i] = 0;
+                last[i] = -1;
+                continue;
+            }
+            first[i] = Arrays.binarySearch(slabLat, Math.min(lats[i], lats[j]));
+            last[i] = Arrays.binarySearch(slabLat, Math.max(lats[i], lats[j])) - 1;
+            for (int s = first[i]; s <= last[i]; s++) {
+                bucketStart[s + 1]++;
+            }
+        }
+        for (int s = 0; s < slabs; s++) {
+            bucketStart[s + 1] += bucketStart[s];
+        }
+        bucketEdges = new int[bucketStart[slabs]];
+        int[] fill = Arrays.copyOf(bucketStart, slabs);
+        for (int i = 0; i < n; i++) {
+            for (int s = first[i]; s <= last[i]; s++) {
+                bucketEdges[fill[s]++] = i;
+            }
+        }
+
+        for (int s = 0; s < slabs; s++) {
+            sortBucket(bucketStart[s], bucketStart[s + 1], (slabLat[s] + slabLat[s + 1]) * 0.5);
+        }
+    }
+
+    // Insertion sort by crossing longitude; buckets of footprints hold a handful of edges
+    private void sortBucket(int from, int to, double lat) {
+        for (int k = from + 1; k < to; k++) {
+            int edge = bucketEdges[k];
+            double x = crossing(edge, lat);
+            int m = k - 1;
+            while (m >= from && crossing(bucketEdges[m], lat) > x) {
+                bucketEdges[m + 1] = bucketEdges[m];
+                m--;
+            }
+            bucketEdges[m + 1] = edge;
+        }
+    }
+
+    /**
+     * Longitude where the edge crosses the latitude, computed exactly like the ray casting
+     * loop so both agree on points lying on an edge.
+     */
+    private double crossing(int i, double lat) {
+        int j = i == 0 ? lats.length - 1 : i - 1;
+        return (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i];
+    }
+
+    boolean contains(double lat, double lng) {
+        // last slab starting at or below the point
+        int low = 0;
+        int high = slabLat.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (slabLat[mid] <= lat) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int slab = low - 1;
+        if (slab < 0 || slab >= slabLat.length - 1) {
+            return false;
+        }
+
+        // first edge of the bucket east of the point
+        int start = bucketStart[slab];
+        int end = bucketStart[slab + 1];
+        low = start;
+        high = end - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lng < crossing(bucketEdges[mid], lat)) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return ((end - low) & 1) == 1;
+    }
+
+    /**
+     * Total number of bucket entries, for tests and benchmarks.
+     */
+    int size() {
+        return bucketEdges.length;
+    }
+}
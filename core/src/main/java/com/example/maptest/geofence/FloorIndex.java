@@ -0,0 +1,131 @@
+package com.example.maptest.geofence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Campus regions split by floor: one RegionIndex for the regions that apply to every floor
+ * (outdoor areas and building footprints) and one per floor for floors and rooms. A lookup
+ * only searches the floor the user is on, so the rooms stacked above each other in a tall
+ * building neither cost anything nor match on the wrong floor.
+ *
+ * Floors are numbered the same way in every building, so the rooms of the same floor of all
+ * buildings share an index. Immutable and thread safe, like RegionIndex.
+ */
+public class FloorIndex {
+
+    private final RegionIndex anyFloor;
+    // ascending floor numbers and their indexes
+    private final int[] floors;
+    private final RegionIndex[] floorIndexes;
+
+    public FloorIndex(Collection<? extends Region> regions) {
+        List<Region> everyFloor = new ArrayList<Region>();
+        Map<Integer, List<Region>> byFloor = new TreeMap<Integer, List<Region>>();
+        for (Region region : regions) {
+            if (region.getFloor() == Region.ANY_FLOOR) {
+                everyFloor.add(region);
+                continue;
+            }
+            List<Region> onFloor = byFloor.get(region.getFloor());
+            if (onFloor == null) {
+                onFloor = new ArrayList<Region>();
+                byFloor.put(region.getFloor(), onFloor);
+            }
+            onFloor.add(region);
+        }
+        anyFloor = new RegionIndex(everyFloor);
+        floors = new int[byFloor.size()];
+        floorIndexes = new RegionIndex[byFloor.size()];
+        int i = 0;
+        for (Map.Entry<Integer, List<Region>> entry : byFloor.entrySet()) {
+            floors[i] = entry.getKey();
+            floorIndexes[i++] = new RegionIndex(entry.getValue());
+        }
+    }
+
+    /**
+     * Wraps an index whose regions are all matched on every floor, whatever their own floor.
+     */
+    public FloorIndex(RegionIndex anyFloor) {
+        this.anyFloor = anyFloor;
+        this.floors = new int[0];
+        this.floorIndexes = new RegionIndex[0];
+    }
+
+    /**
+     * The regions matched on every floor. These are the ones the system geofences can watch.
+     */
+    public RegionIndex getAnyFloor() {
+        return anyFloor;
+    }
+
+    /**
+     * The regions on one floor, or null if there are none.
+     */
+    public RegionIndex getFloor(int floor) {
+        int i = indexOf(floor);
+        return i < 0 ? null : floorIndexes[i];
+    }
+
+    /**
+     * Floors that have regions, lowest first.
+     */
+    public List<Integer> getFloors() {
+        List<Integer> result = new ArrayList<Integer>(floors.length);
+        for (int floor : floors) {
+            result.add(floor);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public int size() {
+        int size = anyFloor.size();
+        for (RegionIndex index : floorIndexes) {
+            size += index.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds every region containing the point on the given floor to {@code out}: the regions
+     * on every floor and those on that floor. On an unknown floor (ANY_FLOOR) only the former
+     * are searched; a room is never matched without knowing the floor.
+     *
+     * @return the number of regions added
+     */
+    public int regionsContaining(double lat, double lng, int floor, List<Region> out,
+                                 RegionIndex.Scratch scratch) {
+        return anyFloor.regionsContaining(lat, lng, out, scratch)
+                + regionsOnFloor(lat, lng, floor, out, scratch);
+    }
+
+    /**
+     * Adds the regions on the given floor, and only those, that contain the point to
+     * {@code out}. Allocates nothing, like RegionIndex.
+     *
+     * @return the number of regions added
+     */
+    public int regionsOnFloor(double lat, double lng, int floor, List<Region> out,
+                              RegionIndex.Scratch scratch) {
+        if (floor == Region.ANY_FLOOR) {
+            return 0;
+        }
+        int i = indexOf(floor);
+        return i < 0 ? 0 : floorIndexes[i].regionsContaining(lat, lng, out, scratch);
+    }
+
+    // a handful of floors: a linear scan beats a binary search
+    private int indexOf(int floor) {
+        for (int i = 0; i < floors.length; i++) {
+            if (floors[i] == floor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
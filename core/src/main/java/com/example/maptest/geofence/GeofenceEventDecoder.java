@@ -0,0 +1,78 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a geofencing event reported by the system into the transitions the app acts on,
+ * without the Play Services GeofencingEvent class.
+ *
+ * Only DWELL and EXIT are registered (see {@link GeofenceSpec#forRegion}), so other
+ * transitions are not supported. Play Services only monitors the covering circle of a
+ * building footprint, which reaches into the neighbours; a DWELL whose triggering fix is
+ * farther outside the footprint itself than the fix's accuracy is dropped.
+ */
+public class GeofenceEventDecoder {
+
+    /**
+     * Looks up the exact shape behind a request id.
+     */
+    public interface Shapes {
+        /**
+         * Returns the region, or null if it is unknown or cannot be loaded.
+         */
+        Region find(String requestId);
+    }
+
+    private final Shapes shapes;
+
+    public GeofenceEventDecoder(Shapes shapes) {
+        this.shapes = shapes;
+    }
+
+    public static boolean isSupported(int transition) {
+        return transition == TransitionEvent.DWELL || transition == TransitionEvent.EXIT;
+    }
+
+    /**
+     * Decodes an event that came without a triggering location; nothing can be checked
+     * against the shapes, so every geofence counts.
+     */
+    public List<TransitionEvent> decode(int transition, List<String> requestIds) {
+        List<TransitionEvent> events = new ArrayList<TransitionEvent>(requestIds.size());
+        for (int i = 0; i < requestIds.size(); i++) {
+            events.add(new TransitionEvent(requestIds.get(i), transition, 0));
+        }
+        return events;
+    }
+
+    /**
+     * Decodes an event and its triggering fix.
+     *
+     * @param transition   TransitionEvent.DWELL or EXIT, see {@link #isSupported}
+     * @param requestIds   the triggering geofences
+     * @param accuracy     accuracy of the triggering fix in meters, 0 if unknown
+     * @param triggerNanos elapsed-realtime time of the triggering fix
+     * @return the transitions to handle, possibly none
+     */
+    public List<TransitionEvent> decode(int transition, List<String> requestIds,
+                                        double lat, double lng, float accuracy, long triggerNanos) {
+        List<TransitionEvent> events = new ArrayList<TransitionEvent>(requestIds.size());
+        for (int i = 0; i < requestIds.size(); i++) {
+            String id = requestIds.get(i);
+            if (transition == TransitionEvent.DWELL && !insideShape(id, lat, lng, accuracy)) {
+                continue;
+            }
+            events.add(new TransitionEvent(id, transition, triggerNanos));
+        }
+        return events;
+    }
+
+    // true unless the fix is farther outside the region's exact shape than its accuracy
+    private boolean insideShape(String requestId, double lat, double lng, float accuracy) {
+        Region region = shapes.find(requestId);
+        return region == null || region.distanceTo(lat, lng) <= accuracy;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.maptest.geofence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What is currently registered with Play Services, kept on disk so it survives the activity
+ * and the process.
+ *
+ * Every registered request id is stored with a version stamp of the geometry it was
+ * registered with. Comparing that against the regions that should be monitored gives the
+ * smallest set of removeGeofences/addGeofences calls, which on a plain reconnect is none.
+ *
+ * Registrations do not survive a reboot, so the file records the session (boot id plus
+ * whatever else the caller wants to invalidate on, e.g. the app version) it belongs to. A file
+ * from another session, or an unreadable one, leaves the registry empty and untrusted: the
+ * caller should remove every geofence of its PendingIntent once, then call {@link #clear()}.
+ *
+ * Not thread safe; use it from one thread.
+ */
+public class GeofenceRegistry {
+
+    private static final int MAGIC = 0x47524547; // "GREG"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final String session;
+
+    private final Map<String, Long> registered = new HashMap<String, Long>();
+    private boolean trusted;
+
+    /**
+     * Loads the registry for the session from the file, if it exists and matches.
+     */
+    public GeofenceRegistry(File file, String session) {
+        this.file = file;
+        this.session = session;
+        trusted = load();
+    }
+
+    /**
+     * False if the registry could not be restored and Play Services may hold geofences it
+     * does not know about.
+     */
+    public boolean isTrusted() {
+        return trusted;
+    }
+
+    public int size() {
+        return registered.size();
+    }
+
+    public boolean isRegistered(String requestId) {
+        return registered.containsKey(requestId);
+    }
+
+    /**
+     * Returns what to remove and add so that exactly the desired regions are registered,
+     * each with its current geometry. Changed regions are only added; adding an id that is
+     * already registered replaces it.
+     */
+    public Plan plan(Collection<? extends Region> desired) {
+        List<Region> add = new ArrayList<Region>();
+        Set<String> wanted = new HashSet<String>();
+        for (Region region : desired) {
+            wanted.add(region.getId());
+            Long stamp = registered.get(region.getId());
+            if (stamp == null || stamp != stamp(region)) {
+                add.add(region);
+            }
+        }
+        List<String> remove = new ArrayList<String>();
+        for (String id : registered.keySet()) {
+            if (!wanted.contains(id)) {
+                remove.add(id);
+            }
+        }
+        Collections.sort(remove);
+        return new Plan(add, remove);
+    }
+
+    /**
+     * Records regions Play Services accepted.
+     */
+    public void markRegistered(Collection<? extends Region> regions) {
+        for (Region region : regions) {
+            registered.put(region.getId(), stamp(region));
+        }
+    }
+
+    /**
+     * Records ids Play Services removed.
+     */
+    public void markRemoved(Collection<String> requestIds) {
+        for (String id : requestIds) {
+            registered.remove(id);
+        }
+    }
+
+    /**
+     * Forgets everything, e.g. once all geofences were removed or Play Services dropped them
+     * because location was turned off. The registry is trusted afterwards.
+     */
+    public void clear() {
+        registered.clear();
+        trusted = true;
+    }
+
+    /**
+     * Version stamp of everything about a region that ends up in its Geofence.
+     */
+    public static long stamp(Region region) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, Double.doubleToLongBits(region.getCenterLat()));
+        hash = mix(hash, Double.doubleToLongBits(region.getCenterLng()));
+        hash = mix(hash, Float.floatToIntBits(region.getRadius()));
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the registry to its file, replacing the old one atomically.
+     */
+    public void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(session);
+            out.writeBoolean(trusted);
+            out.writeInt(registered.size());
+            for (Map.Entry<String, Long> entry : registered.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    // Returns true if the file was written by this session; a missing file counts as foreign
+    private boolean load() {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                        || !in.readUTF().equals(session)) {
+                    return false;
+                }
+                boolean wasTrusted = in.readBoolean();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String id = in.readUTF();
+                    registered.put(id, in.readLong());
+                }
+                return wasTrusted;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            registered.clear();
+            return false;
+        }
+    }
+
+    /**
+     * The calls that bring Play Services in line with the desired regions.
+     */
+    public static final class Plan {
+        public final List<Region> add;
+        public final List<String> remove;
+
+        Plan(List<Region> add, List<String> remove) {
+            this.add = add;
+            this.remove = remove;
+        }
+
+        public boolean isEmpty() {
+            return add.isEmpty() && remove.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A geofence as it is registered with the system, independent of the Play Services Geofence
+ * class: a circle, the transitions it reports and how long it lives. The app turns it into a
+ * Geofence (see PlayServicesAdapter), so everything decided here can be tested on a JVM.
+ */
+public final class GeofenceSpec {
+
+    // same value as Geofence.NEVER_EXPIRE
+    public static final long NEVER_EXPIRE = -1;
+
+    // same value as GeofencingRequest.INITIAL_TRIGGER_DWELL, used for every request
+    public static final int INITIAL_TRIGGER_DWELL = 4;
+
+    public final String requestId;
+    public final double lat;
+    public final double lng;
+    public final float radius;
+    // TransitionEvent.ENTER, EXIT and DWELL or-ed together
+    public final int transitionTypes;
+    // milliseconds, only used with DWELL
+    public final int loiteringDelay;
+    // milliseconds from registration, or NEVER_EXPIRE
+    public final long expiration;
+
+    public GeofenceSpec(String requestId, double lat, double lng, float radius,
+                        int transitionTypes, int loiteringDelay, long expiration) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("Radius must be positive: " + radius);
+        }
+        if ((transitionTypes & (TransitionEvent.ENTER | TransitionEvent.EXIT | TransitionEvent.DWELL)) == 0) {
+            throw new IllegalArgumentException("No transition types: " + transitionTypes);
+        }
+        this.requestId = requestId;
+        this.lat = lat;
+        this.lng = lng;
+        this.radius = radius;
+        this.transitionTypes = transitionTypes;
+        this.loiteringDelay = loiteringDelay;
+        this.expiration = expiration;
+    }
+
+    /**
+     * The geofence registered for a campus region: its covering circle, reporting DWELL and
+     * EXIT with the loitering delay of GeofenceStateMachine, never expiring. Polygons are
+     * matched exactly on the device once the circle has triggered.
+     */
+    public static GeofenceSpec forRegion(Region region) {
+        return new GeofenceSpec(region.getId(), region.getCenterLat(), region.getCenterLng(),
+                region.getRadius(), TransitionEvent.DWELL | TransitionEvent.EXIT,
+                GeofenceStateMachine.LOITERING_DELAY, NEVER_EXPIRE);
+    }
+
+    public static List<GeofenceSpec> forRegions(Collection<? extends Region> regions) {
+        List<GeofenceSpec> specs = new ArrayList<GeofenceSpec>(regions.size());
+        for (Region region : regions) {
+            specs.add(forRegion(region));
+        }
+        return specs;
+    }
+
+    public boolean reports(int transition) {
+        return (transitionTypes & transition) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GeofenceSpec(" + requestId + ", " + lat + "," + lng + " r=" + radius
+                + ", transitions=" + transitionTypes + ")";
+    }
+}
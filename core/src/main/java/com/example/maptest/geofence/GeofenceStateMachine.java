@@ -0,0 +1,124 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DWELL and EXIT transitions for regions matched on the device, with the semantics of a
+ * Play Services geofence registered for GEOFENCE_TRANSITION_DWELL | GEOFENCE_TRANSITION_EXIT
+ * with INITIAL_TRIGGER_DWELL:
+ *
+ * <ul>
+ * <li>DWELL fires once the user has been inside a region for the loitering delay without
+ * leaving, including when already inside at the first fix;</li>
+ * <li>EXIT fires on every move from inside to outside, whether or not DWELL fired;</li>
+ * <li>nothing fires on entering.</li>
+ * </ul>
+ *
+ * EXITs of one fix are reported in the order the regions were entered.
+ *
+ * Time only advances with fixes, so a DWELL is reported with the first fix at or after the
+ * delay. Not thread safe.
+ *
+ * This is the model of what the system geofences would report for the exact shapes, used to
+ * measure them (see FlapReport); the app notifies what TransitionEvaluator confirms.
+ */
+public class GeofenceStateMachine {
+
+    public static final int TRANSITION_EXIT = TransitionEvent.EXIT;
+    public static final int TRANSITION_DWELL = TransitionEvent.DWELL;
+
+    // the delay the geofences registered with Play Services use
+    public static final int LOITERING_DELAY = 2000;
+
+    private static final class State {
+        final String id;
+        final long enteredAt;
+        boolean dwelling;
+        long seen;
+
+        State(String id, long enteredAt) {
+            this.id = id;
+            this.enteredAt = enteredAt;
+        }
+    }
+
+    private final long loiteringDelay;
+    private final Map<String, State> inside = new HashMap<String, State>();
+    // the same states in the order they were entered, walked by index so a fix allocates
+    // nothing unless the user enters a region or a transition fires
+    private final List<State> entered = new ArrayList<State>();
+    private long tick;
+
+    public GeofenceStateMachine(long loiteringDelay) {
+        this.loiteringDelay = loiteringDelay;
+    }
+
+    /**
+     * Feeds one fix. Fixes must come in time order.
+     *
+     * @param containing the regions containing the fix, as from RegionIndex.regionsContaining()
+     * @param time       time of the fix in milliseconds
+     * @param out        receives the transitions the fix causes, EXITs first
+     * @return the number of transitions added
+     */
+    public int update(List<Region> containing, long time, List<TransitionEvent> out) {
+        tick++;
+        int fired = 0;
+        for (int i = 0; i < containing.size(); i++) {
+            String id = containing.get(i).getId();
+            State state = inside.get(id);
+            if (state == null) {
+                state = new State(id, time);
+                inside.put(id, state);
+                entered.add(state);
+            }
+            state.seen = tick;
+        }
+        int kept = 0;
+        for (int i = 0; i < entered.size(); i++) {
+            State state = entered.get(i);
+            if (state.seen != tick) {
+                inside.remove(state.id);
+                out.add(new TransitionEvent(state.id, TRANSITION_EXIT, 0));
+                fired++;
+            } else {
+                entered.set(kept++, state);
+            }
+        }
+        for (int i = entered.size() - 1; i >= kept; i--) {
+            entered.remove(i);
+        }
+        for (int i = 0; i < containing.size(); i++) {
+            String id = containing.get(i).getId();
+            State state = inside.get(id);
+            if (!state.dwelling && time - state.enteredAt >= loiteringDelay) {
+                state.dwelling = true;
+                out.add(new TransitionEvent(id, TRANSITION_DWELL, 0));
+                fired++;
+            }
+        }
+        return fired;
+    }
+
+    public boolean isInside(String requestId) {
+        return inside.containsKey(requestId);
+    }
+
+    public boolean isDwelling(String requestId) {
+        State state = inside.get(requestId);
+        return state != null && state.dwelling;
+    }
+
+    /**
+     * Forgets every region, as if the user had never been anywhere.
+     */
+    public void reset() {
+        inside.clear();
+        entered.clear();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.GeoMath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Picks which regions are handed to the system GeofencingApi.
+ *
+ * Play Services limits an app to 100 registered geofences, so only the nearest
+ * {@code maxMonitored} regions are registered. The selection stays valid as long as the user
+ * cannot have reached any unselected region: every unselected region was at least
+ * {@code d} meters away from the anchor, where {@code d} is the distance to the first region
+ * that did not make the cut. Half of that distance is used as the re-selection radius, however
+ * small it gets: where regions are dense, selecting again every few meters is the price of
+ * never walking into one that is not registered.
+ *
+ * With a filter, such as a RegionScheduler, only the regions it accepts are selected, and the
+ * selection must be invalidated whenever the filter changes its mind.
+ */
+public class MonitoredSetSelector {
+
+    // Play Services per-app geofence limit
+    public static final int MAX_SYSTEM_GEOFENCES = 100;
+
+    private final RegionIndex index;
+    // null to select from every region
+    private final RegionIndex.Filter filter;
+    private final int maxMonitored;
+    private final RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+
+    private List<Region> selected = Collections.emptyList();
+    private double anchorLat;
+    private double anchorLng;
+    private double reselectDistance = -1;
+
+    public MonitoredSetSelector(RegionIndex index, int maxMonitored) {
+        this(index, null, maxMonitored);
+    }
+
+    /**
+     * @param filter the regions that may be selected, or null for all
+     */
+    public MonitoredSetSelector(RegionIndex index, RegionIndex.Filter filter, int maxMonitored) {
+        if (maxMonitored <= 0 || maxMonitored > MAX_SYSTEM_GEOFENCES) {
+            throw new IllegalArgumentException("maxMonitored must be in 1.." + MAX_SYSTEM_GEOFENCES);
+        }
+        this.index = index;
+        this.filter = filter;
+        this.maxMonitored = maxMonitored;
+    }
+
+    /**
+     * Returns the regions selected by the last call to {@link #update}.
+     */
+    public List<Region> getSelected() {
+        return selected;
+    }
+
+    /**
+     * Distance the user can move away from the last anchor before a new selection is made.
+     * Infinite when every region is already selected.
+     */
+    public double getReselectDistance() {
+        return reselectDistance;
+    }
+
+    /**
+     * Feeds a new position. Returns the changes to apply to the system geofences, or null if
+     * the current selection is still valid.
+     */
+    public Diff update(double lat, double lng) {
+        if (reselectDistance >= 0
+                && GeoMath.fastDistance(anchorLat, anchorLng, lat, lng) < reselectDistance) {
+            return null;
+        }
+
+        // one extra region tells us how far away the closest unselected region is
+        List<Region> nearest = new ArrayList<Region>(maxMonitored + 1);
+        index.nearest(lat, lng, maxMonitored + 1, nearest, scratch, filter);
+        if (nearest.size() > maxMonitored) {
+            Region firstLeftOut = nearest.remove(maxMonitored);
+            reselectDistance = firstLeftOut.distanceTo(lat, lng) * 0.5;
+        } else {
+            reselectDistance = Double.POSITIVE_INFINITY;
+        }
+        anchorLat = lat;
+        anchorLng = lng;
+
+        Set<String> oldIds = idsOf(selected);
+        Set<String> newIds = idsOf(nearest);
+        List<Region> added = new ArrayList<Region>();
+        for (Region region : nearest) {
+            if (!oldIds.contains(region.getId())) {
+                added.add(region);
+            }
+        }
+        List<String> removed = new ArrayList<String>();
+        for (Region region : selected) {
+            if (!newIds.contains(region.getId())) {
+                removed.add(region.getId());
+            }
+        }
+        selected = Collections.unmodifiableList(nearest);
+        return new Diff(added, removed);
+    }
+
+    /**
+     * Makes the next {@link #update} select again wherever the user is, e.g. because the
+     * filter now accepts other regions. Unlike {@link #reset} only the differences are reported.
+     */
+    public void invalidate() {
+        reselectDistance = -1;
+    }
+
+    /**
+     * Forgets the current selection, e.g. after the system dropped all geofences.
+     * The next {@link #update} reports every selected region as added.
+     */
+    public void reset() {
+        selected = Collections.emptyList();
+        reselectDistance = -1;
+    }
+
+    private static Set<String> idsOf(List<Region> regions) {
+        Set<String> ids = new HashSet<String>(regions.size() * 2);
+        for (Region region : regions) {
+            ids.add(region.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Regions to add to and request ids to remove from the system geofence list.
+     */
+    public static final class Diff {
+        public final List<Region> added;
+        public final List<String> removed;
+
+        Diff(List<Region> added, List<String> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
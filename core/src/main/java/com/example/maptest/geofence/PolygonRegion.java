@@ -0,0 +1,125 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geo.GeoMath;
+
+/**
+ * Simple (non self-intersecting) polygon region such as a building footprint.
+ * Play Services only knows circles, so the covering circle of the polygon is what gets
+ * registered with the system; the exact shape is only used for local matching, where
+ * containment is answered by {@link EdgeBuckets} in O(log n) after a bounding box check.
+ */
+public class PolygonRegion extends Region {
+
+    // vertex coordinates, the ring is implicitly closed
+    private final double[] lats;
+    private final double[] lngs;
+    private final BoundingBox bounds;
+    private final float radius;
+    private final EdgeBuckets buckets;
+
+    public PolygonRegion(String id, double[] lats, double[] lngs) {
+        this(id, null, ANY_FLOOR, lats, lngs);
+    }
+
+    /**
+     * @param building code of the building the region belongs to, or null
+     * @param floor    floor the region is on, or ANY_FLOOR
+     */
+    public PolygonRegion(String id, String building, int floor, double[] lats, double[] lngs) {
+        super(id, building, floor);
+        if (lats.length != lngs.length || lats.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+        }
+        this.lats = lats.clone();
+        this.lngs = lngs.clone();
+
+        double minLat = lats[0], maxLat = lats[0], minLng = lngs[0], maxLng = lngs[0];
+        for (int i = 1; i < lats.length; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLng = Math.min(minLng, lngs[i]);
+            maxLng = Math.max(maxLng, lngs[i]);
+        }
+        this.bounds = new BoundingBox(minLat, minLng, maxLat, maxLng);
+
+        double farthest = 0;
+        for (int i = 0; i < lats.length; i++) {
+            farthest = Math.max(farthest,
+                    GeoMath.haversine(bounds.centerLat(), bounds.centerLng(), lats[i], lngs[i]));
+        }
+        this.radius = (float) Math.ceil(farthest);
+        this.buckets = new EdgeBuckets(this.lats, this.lngs);
+    }
+
+    public int getVertexCount() {
+        return lats.length;
+    }
+
+    public double getVertexLat(int i) {
+        return lats[i];
+    }
+
+    public double getVertexLng(int i) {
+        return lngs[i];
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean contains(double lat, double lng) {
+        return bounds.contains(lat, lng) && buckets.contains(lat, lng);
+    }
+
+    /**
+     * Plain even-odd ray casting over every edge; the reference {@link #contains} is checked
+     * and benchmarked against.
+     */
+    boolean containsByRayCasting(double lat, double lng) {
+        if (!bounds.contains(lat, lng)) {
+            return false;
+        }
+        // even-odd ray casting towards +lng
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lng < (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public double distanceTo(double lat, double lng) {
+        return contains(lat, lng) ? 0 : distanceToEdge(lat, lng);
+    }
+
+    @Override
+    public double distanceToEdge(double lat, double lng) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            best = Math.min(best,
+                    GeoMath.distanceToSegment(lat, lng, lats[j], lngs[j], lats[i], lngs[i]));
+        }
+        return best;
+    }
+
+    @Override
+    public double getCenterLat() {
+        return bounds.centerLat();
+    }
+
+    @Override
+    public double getCenterLng() {
+        return bounds.centerLng();
+    }
+
+    @Override
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.BoundingBox;
+
+/**
+ * A named area on the campus map that can be matched against location fixes.
+ * The id doubles as the Play Services geofence request id, so it must be unique.
+ *
+ * Regions form a building, floor and room hierarchy: a region outside any building has no
+ * building code, a building footprint has a code but no floor, and a floor or a room has
+ * both. Only regions without a floor can be watched by the system geofences, which know
+ * nothing about height; the others are matched on the floor the user is on (see FloorIndex).
+ */
+public abstract class Region {
+
+    // floor of regions that are matched on every floor, and of users on an unknown floor
+    public static final int ANY_FLOOR = Short.MIN_VALUE;
+
+    private final String id;
+    private final String building;
+    private final int floor;
+
+    protected Region(String id) {
+        this(id, null, ANY_FLOOR);
+    }
+
+    /**
+     * @param building code of the building the region belongs to, or null
+     * @param floor    floor the region is on, or ANY_FLOOR
+     */
+    protected Region(String id, String building, int floor) {
+        if (id == null || id.length() == 0) {
+            throw new IllegalArgumentException("Region id must not be empty");
+        }
+        this.id = id;
+        this.building = building;
+        this.floor = floor;
+    }
+
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Code of the building the region belongs to, or null for an outdoor region.
+     */
+    public final String getBuilding() {
+        return building;
+    }
+
+    /**
+     * Floor the region is on, or ANY_FLOOR if it applies to every floor.
+     */
+    public final int getFloor() {
+        return floor;
+    }
+
+    /**
+     * Returns the bounding box used by the spatial index.
+     */
+    public abstract BoundingBox getBounds();
+
+    /**
+     * Returns true if the point lies inside the region.
+     */
+    public abstract boolean contains(double lat, double lng);
+
+    /**
+     * Distance in meters from the point to the edge of the region, or 0 if it is inside.
+     */
+    public abstract double distanceTo(double lat, double lng);
+
+    /**
+     * Distance in meters from the point to the edge of the region, from inside or outside.
+     * This is how far the user has to move before the region can report a transition.
+     */
+    public abstract double distanceToEdge(double lat, double lng);
+
+    /**
+     * Latitude of the center of the smallest circle Play Services should monitor for this region.
+     */
+    public abstract double getCenterLat();
+
+    /**
+     * Longitude of the center of the smallest circle Play Services should monitor for this region.
+     */
+    public abstract double getCenterLng();
+
+    /**
+     * Radius of the circle that covers the whole region, in meters.
+     */
+    public abstract float getRadius();
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + id + ")";
+    }
+}
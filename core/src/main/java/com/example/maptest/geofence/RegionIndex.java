@@ -0,0 +1,381 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geo.GeoMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable R-tree over campus regions, bulk loaded with Sort-Tile-Recursive packing.
+ *
+ * The tree is stored in flat arrays: leaf nodes come first, then each upper level, and the
+ * root is the last node. The children of a node are always contiguous, so a node only
+ * needs the index of its first child and a child count. Rebuild the index when the region
+ * set changes; building 10k regions takes a few milliseconds.
+ */
+public class RegionIndex {
+
+    // maximum number of children per node
+    static final int NODE_CAPACITY = 16;
+
+    // regions in leaf order, together with a copy of their bounds for cache-friendly scans
+    private final Region[] regions;
+    private final double[] itemBounds;
+
+    private final double[] nodeBounds;
+    private final int[] nodeFirst;
+    private final int[] nodeCount;
+    private final int leafCount;
+    private final int height;
+
+    /**
+     * Decides which regions a search may return, e.g. only those in effect at the moment.
+     */
+    public interface Filter {
+        boolean accept(Region region);
+    }
+
+    public RegionIndex(Collection<? extends Region> source) {
+        regions = source.toArray(new Region[source.size()]);
+        sortTileRecursive(regions);
+
+        itemBounds = new double[regions.length * 4];
+        for (int i = 0; i < regions.length; i++) {
+            BoundingBox b = regions[i].getBounds();
+            itemBounds[i * 4] = b.minLat;
+            itemBounds[i * 4 + 1] = b.minLng;
+            itemBounds[i * 4 + 2] = b.maxLat;
+            itemBounds[i * 4 + 3] = b.maxLng;
+        }
+
+        // count the nodes on every level so the arrays can be sized up front
+        int total = 0;
+        int levels = 0;
+        int width = regions.length;
+        do {
+            width = (width + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            total += Math.max(width, 1);
+            levels++;
+        } while (width > 1);
+
+        nodeBounds = new double[total * 4];
+        nodeFirst = new int[total];
+        nodeCount = new int[total];
+        height = levels;
+
+        // leaves group consecutive regions, upper levels group consecutive nodes
+        int node = packLevel(0, itemBounds, 0, regions.length);
+        leafCount = node;
+        int levelStart = 0;
+        while (node - levelStart > 1) {
+            int next = packLevel(node, nodeBounds, levelStart, node - levelStart);
+            levelStart = node;
+            node = next;
+        }
+    }
+
+    /**
+     * Fills one level of nodes whose children are {@code count} boxes starting at
+     * {@code childStart} in {@code childBounds}. Returns the index after the last node written.
+     */
+    private int packLevel(int node, double[] childBounds, int childStart, int count) {
+        if (count == 0) {
+            // empty index: a single empty leaf that never matches
+            nodeBounds[0] = 1;
+            nodeBounds[2] = -1;
+            return 1;
+        }
+        for (int first = 0; first < count; first += NODE_CAPACITY, node++) {
+            int n = Math.min(NODE_CAPACITY, count - first);
+            nodeFirst[node] = childStart + first;
+            nodeCount[node] = n;
+            double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+            for (int c = childStart + first, end = c + n; c < end; c++) {
+                minLat = Math.min(minLat, childBounds[c * 4]);
+                minLng = Math.min(minLng, childBounds[c * 4 + 1]);
+                maxLat = Math.max(maxLat, childBounds[c * 4 + 2]);
+                maxLng = Math.max(maxLng, childBounds[c * 4 + 3]);
+            }
+            nodeBounds[node * 4] = minLat;
+            nodeBounds[node * 4 + 1] = minLng;
+            nodeBounds[node * 4 + 2] = maxLat;
+            nodeBounds[node * 4 + 3] = maxLng;
+        }
+        return node;
+    }
+
+    /**
+     * Orders regions into vertical slices by longitude, then by latitude inside each slice,
+     * so that every run of NODE_CAPACITY regions is spatially compact.
+     */
+    private static void sortTileRecursive(Region[] items) {
+        int leaves = (items.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(leaves));
+        int sliceSize = slices * NODE_CAPACITY;
+        Arrays.sort(items, BY_CENTER_LNG);
+        for (int start = 0; start < items.length; start += sliceSize) {
+            Arrays.sort(items, start, Math.min(items.length, start + sliceSize), BY_CENTER_LAT);
+        }
+    }
+
+    private static final Comparator<Region> BY_CENTER_LNG = new Comparator<Region>() {
+        @Override
+        public int compare(Region a, Region b) {
+            return Double.compare(a.getBounds().centerLng(), b.getBounds().centerLng());
+        }
+    };
+
+    private static final Comparator<Region> BY_CENTER_LAT = new Comparator<Region>() {
+        @Override
+        public int compare(Region a, Region b) {
+            return Double.compare(a.getBounds().centerLat(), b.getBounds().centerLat());
+        }
+    };
+
+    public int size() {
+        return regions.length;
+    }
+
+    /**
+     * Adds every region containing the point to {@code out}.
+     *
+     * @return the number of regions added
+     */
+    public int regionsContaining(double lat, double lng, List<Region> out) {
+        return regionsContaining(lat, lng, out, new Scratch());
+    }
+
+    /**
+     * Same as {@link #regionsContaining(double, double, List)}, but allocates nothing once
+     * {@code scratch} has been used with this index and {@code out} has room.
+     */
+    public int regionsContaining(double lat, double lng, List<Region> out, Scratch scratch) {
+        int found = 0;
+        int[] stack = scratch.stack(height * NODE_CAPACITY + 1);
+        int top = 0;
+        stack[top++] = nodeCount.length - 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!boxContains(nodeBounds, node, lat, lng)) {
+                continue;
+            }
+            int first = nodeFirst[node];
+            int end = first + nodeCount[node];
+            if (node < leafCount) {
+                for (int i = first; i < end; i++) {
+                    if (boxContains(itemBounds, i, lat, lng) && regions[i].contains(lat, lng)) {
+                        out.add(regions[i]);
+                        found++;
+                    }
+                }
+            } else {
+                for (int c = first; c < end; c++) {
+                    stack[top++] = c;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds every region whose bounding box intersects {@code box} to {@code out}.
+     *
+     * @return the number of regions added
+     */
+    public int regionsIntersecting(BoundingBox box, List<Region> out) {
+        int found = 0;
+        int[] stack = new int[height * NODE_CAPACITY + 1];
+        int top = 0;
+        stack[top++] = nodeCount.length - 1;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!boxIntersects(nodeBounds, node, box)) {
+                continue;
+            }
+            int first = nodeFirst[node];
+            int end = first + nodeCount[node];
+            if (node < leafCount) {
+                for (int i = first; i < end; i++) {
+                    if (boxIntersects(itemBounds, i, box)) {
+                        out.add(regions[i]);
+                        found++;
+                    }
+                }
+            } else {
+                for (int c = first; c < end; c++) {
+                    stack[top++] = c;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns up to {@code n} regions ordered by increasing distance from the point.
+     * Regions containing the point come first, at distance 0.
+     */
+    public List<Region> nearest(double lat, double lng, int n) {
+        List<Region> result = new ArrayList<Region>(Math.min(n, regions.length));
+        nearest(lat, lng, n, result, new Scratch());
+        return result;
+    }
+
+    /**
+     * Same as {@link #nearest(double, double, int)}, but adds the regions to {@code out} and
+     * allocates nothing once {@code scratch} has grown to the size of this index.
+     *
+     * @return the number of regions added
+     */
+    public int nearest(double lat, double lng, int n, List<Region> out, Scratch scratch) {
+        return nearest(lat, lng, n, out, scratch, null);
+    }
+
+    /**
+     * Same as {@link #nearest(double, double, int, List, Scratch)}, but skips the regions the
+     * filter rejects. Rejected regions cost a filter call and no distance, but a filter that
+     * rejects most of the regions near the point makes the search visit more of the tree.
+     *
+     * @param filter null to accept every region
+     */
+    public int nearest(double lat, double lng, int n, List<Region> out, Scratch scratch, Filter filter) {
+        if (n <= 0 || regions.length == 0) {
+            return 0;
+        }
+        // best-first search; entries are either nodes or regions, keyed by a distance lower bound
+        scratch.size = 0;
+        int root = nodeCount.length - 1;
+        scratch.offer(root, boxDistance(nodeBounds, root, lat, lng));
+        int found = 0;
+        while (scratch.size > 0 && found < n) {
+            int entry = scratch.poll();
+            if (entry < 0) {
+                out.add(regions[~entry]);
+                found++;
+                continue;
+            }
+            int first = nodeFirst[entry];
+            int end = first + nodeCount[entry];
+            if (entry < leafCount) {
+                for (int i = first; i < end; i++) {
+                    if (filter == null || filter.accept(regions[i])) {
+                        scratch.offer(~i, regions[i].distanceTo(lat, lng));
+                    }
+                }
+            } else {
+                for (int child = first; child < end; child++) {
+                    scratch.offer(child, boxDistance(nodeBounds, child, lat, lng));
+                }
+            }
+        }
+        return found;
+    }
+
+    private static boolean boxContains(double[] b, int i, double lat, double lng) {
+        int o = i * 4;
+        return lat >= b[o] && lng >= b[o + 1] && lat <= b[o + 2] && lng <= b[o + 3];
+    }
+
+    private static boolean boxIntersects(double[] b, int i, BoundingBox box) {
+        int o = i * 4;
+        return box.minLat <= b[o + 2] && box.maxLat >= b[o]
+                && box.minLng <= b[o + 3] && box.maxLng >= b[o + 1];
+    }
+
+    private static double boxDistance(double[] b, int i, double lat, double lng) {
+        int o = i * 4;
+        if (b[o] > b[o + 2]) {
+            return Double.MAX_VALUE;
+        }
+        // BoundingBox.distanceTo() without the box
+        double cLat = lat < b[o] ? b[o] : (lat > b[o + 2] ? b[o + 2] : lat);
+        double cLng = lng < b[o + 1] ? b[o + 1] : (lng > b[o + 3] ? b[o + 3] : lng);
+        if (cLat == lat && cLng == lng) {
+            return 0;
+        }
+        return GeoMath.fastDistance(lat, lng, cLat, cLng);
+    }
+
+    /**
+     * Buffers for repeated queries, so a caller running once per location fix allocates
+     * nothing after the first few queries. A scratch may be shared between indexes but not
+     * between threads; the index itself stays immutable and thread safe.
+     */
+    public static final class Scratch {
+
+        private int[] stack = new int[0];
+
+        // binary min-heap of nearest(): node indexes, or ~index for regions, keyed by distance
+        private int[] entries = new int[16];
+        private double[] keys = new double[16];
+        private int size;
+
+        int[] stack(int capacity) {
+            if (stack.length < capacity) {
+                stack = new int[capacity];
+            }
+            return stack;
+        }
+
+        // same sift order as java.util.PriorityQueue, so ties come out as they always did
+        void offer(int entry, double key) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (compare(entry, key, entries[parent], keys[parent]) >= 0) {
+                    break;
+                }
+                entries[k] = entries[parent];
+                keys[k] = keys[parent];
+                k = parent;
+            }
+            entries[k] = entry;
+            keys[k] = key;
+        }
+
+        int poll() {
+            int result = entries[0];
+            int n = --size;
+            int entry = entries[n];
+            double key = keys[n];
+            if (n > 0) {
+                int k = 0;
+                int half = n >>> 1;
+                while (k < half) {
+                    int child = (k << 1) + 1;
+                    int right = child + 1;
+                    if (right < n && compare(entries[child], keys[child], entries[right], keys[right]) > 0) {
+                        child = right;
+                    }
+                    if (compare(entry, key, entries[child], keys[child]) <= 0) {
+                        break;
+                    }
+                    entries[k] = entries[child];
+                    keys[k] = keys[child];
+                    k = child;
+                }
+                entries[k] = entry;
+                keys[k] = key;
+            }
+            return result;
+        }
+
+        private static int compare(int a, double aKey, int b, double bKey) {
+            int c = Double.compare(aKey, bKey);
+            if (c != 0) {
+                return c;
+            }
+            // settle regions before nodes at equal distance so results come out early
+            boolean aRegion = a < 0;
+            return aRegion == (b < 0) ? 0 : (aRegion ? -1 : 1);
+        }
+    }
+}
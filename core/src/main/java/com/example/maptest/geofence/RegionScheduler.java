@@ -0,0 +1,181 @@
+package com.example.maptest.geofence;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Turns regions on and off by their weekly schedules, so a building that is closed or a room
+ * without a class in session is neither registered with the system, nor makes the location
+ * policy track its edge closely, nor reports transitions.
+ *
+ * Every region with a schedule that changes sits in a binary min-heap keyed by the time of its
+ * next change. advance() only looks at the top of the heap, so a call with nothing due is O(1)
+ * and each change costs O(log n); the caller arms one timer for nextChange() instead of
+ * checking the schedules. Regions without a schedule are always in effect and cost nothing.
+ *
+ * Changes are computed in the zone's local time and re-checked when they are due, so a change
+ * of daylight saving time moves them with the clock. Not thread safe.
+ */
+public class RegionScheduler implements RegionIndex.Filter {
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private static final long MINUTE = 60 * 1000;
+
+    private final TimeZone zone;
+
+    // regions with a changing schedule, by slot
+    private final String[] ids;
+    private final WeeklySchedule[] schedules;
+    private final boolean[] active;
+    private final long[] due;
+
+    // slots ordered by due time
+    private final int[] heap;
+    private int size;
+
+    // ids of the regions currently not in effect
+    private final Set<String> inactive = new HashSet<String>();
+
+    /**
+     * Every region is in effect until {@link #start} is called.
+     *
+     * @param schedules schedules by region id; regions without one are always in effect
+     */
+    public RegionScheduler(Collection<? extends Region> regions, Map<String, WeeklySchedule> schedules,
+                           TimeZone zone) {
+        this.zone = zone;
+        int n = 0;
+        for (Region region : regions) {
+            WeeklySchedule schedule = schedules.get(region.getId());
+            if (schedule != null) {
+                n++;
+            }
+        }
+        ids = new String[n];
+        this.schedules = new WeeklySchedule[n];
+        active = new boolean[n];
+        due = new long[n];
+        heap = new int[n];
+        n = 0;
+        for (Region region : regions) {
+            WeeklySchedule schedule = schedules.get(region.getId());
+            if (schedule != null) {
+                ids[n] = region.getId();
+                this.schedules[n] = schedule;
+                active[n] = true;
+                n++;
+            }
+        }
+    }
+
+    /**
+     * Sets every region as its schedule says at the time. O(n), once.
+     */
+    public void start(long now) {
+        inactive.clear();
+        size = 0;
+        int minute = WeeklySchedule.minuteOfWeek(now, zone);
+        for (int slot = 0; slot < ids.length; slot++) {
+            active[slot] = schedules[slot].isOpen(minute);
+            if (!active[slot]) {
+                inactive.add(ids[slot]);
+            }
+            if (!schedules[slot].isConstant()) {
+                due[slot] = changeAfter(schedules[slot], now);
+                heap[size++] = slot;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Applies every change due at or before the time.
+     *
+     * @return the number of regions turned on or off
+     */
+    public int advance(long now) {
+        int changed = 0;
+        int minute = -1;
+        while (size > 0 && due[heap[0]] <= now) {
+            int slot = heap[0];
+            if (minute < 0) {
+                minute = WeeklySchedule.minuteOfWeek(now, zone);
+            }
+            // a change due by the old offset may not be due by the clock yet, or already past
+            boolean open = schedules[slot].isOpen(minute);
+            if (open != active[slot]) {
+                active[slot] = open;
+                if (open) {
+                    inactive.remove(ids[slot]);
+                } else {
+                    inactive.add(ids[slot]);
+                }
+                changed++;
+            }
+            due[slot] = changeAfter(schedules[slot], now);
+            siftDown(0);
+        }
+        return changed;
+    }
+
+    /**
+     * Time of the next change, or NEVER if no schedule changes.
+     */
+    public long nextChange() {
+        return size == 0 ? NEVER : due[heap[0]];
+    }
+
+    public boolean isActive(Region region) {
+        return !inactive.contains(region.getId());
+    }
+
+    @Override
+    public boolean accept(Region region) {
+        return isActive(region);
+    }
+
+    /**
+     * Number of regions not in effect at the moment.
+     */
+    public int getInactiveCount() {
+        return inactive.size();
+    }
+
+    // the start of the minute the schedule next changes in, by the offset in effect then
+    private long changeAfter(WeeklySchedule schedule, long now) {
+        int minute = WeeklySchedule.minuteOfWeek(now, zone);
+        long local = (now + zone.getOffset(now)) / MINUTE * MINUTE;
+        local += schedule.minutesToChange(minute) * MINUTE;
+        long time = local - zone.getOffset(now);
+        // the offset changing in between moves the change with the clock, unless that would
+        // make it due already, inside the hour skipped when the clocks go forward
+        long moved = local - zone.getOffset(time);
+        return moved > now ? moved : time;
+    }
+
+    private void siftDown(int i) {
+        int slot = heap[i];
+        long key = due[slot];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && due[heap[child + 1]] < due[heap[child]]) {
+                child++;
+            }
+            if (due[heap[child]] >= key) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Confirmed DWELL and EXIT transitions from raw fixes, with hysteresis so GPS jitter along a
+ * wall does not make a region flap between the two.
+ *
+ * <ul>
+ * <li>A region is entered when a fix falls inside its exact shape (the enter radius).</li>
+ * <li>A fix is outside only when it is farther from the shape than the exit margin: the larger
+ * of a fixed margin and twice the fix's accuracy (the exit radius). Accuracy is a 68% radius,
+ * so a margin of one accuracy would still be crossed by about one fix in three at the wall.
+ * Fixes in the band between the two radii change nothing.</li>
+ * <li>DWELL fires once fixes have been inside the shape for the confirmation delay without
+ * one outside it in between. The delay is the loitering delay, or the time it takes to
+ * walk across the fix's accuracy if that is longer, so a region is not confirmed on the
+ * strength of a fix that could as well be next door.</li>
+ * <li>EXIT fires once fixes have been outside for the confirmation delay without one inside
+ * the shape in between, and only for regions that had fired DWELL; walking past a building
+ * without stopping, or a stray fix inside it, is never reported.</li>
+ * <li>A fix on a known floor is outside every region on another floor, however close it is
+ * horizontally. On an unknown floor only the distance counts.</li>
+ * </ul>
+ *
+ * Fixes less accurate than MAX_ACCURACY are ignored. Time only advances with fixes. EXITs of
+ * one fix are reported in the order the regions were entered. Not thread safe.
+ *
+ * Unlike GeofenceStateMachine, which reproduces what Play Services reports, this is what the
+ * app notifies about; the system geofences only wake the app up so it can look for itself.
+ */
+public class TransitionEvaluator {
+
+    // beyond the edge of a region, in meters, before a fix with a good accuracy can leave it
+    public static final double MIN_EXIT_MARGIN = 10;
+
+    // fixes less accurate than this, in meters, say nothing about the building the user is in
+    public static final float MAX_ACCURACY = 100;
+
+    // meters per second used to turn accuracy into a confirmation delay
+    public static final double WALKING_SPEED = 1.4;
+
+    private static final class State {
+        final Region region;
+        // time of the first fix of the current run of fixes inside the shape, or -1
+        long insideSince;
+        boolean dwelling;
+        long seen;
+        // time of the first fix outside since the last one inside, or -1
+        long leftAt = -1;
+
+        State(Region region, long insideSince) {
+            this.region = region;
+            this.insideSince = insideSince;
+        }
+    }
+
+    private final long loiteringDelay;
+    private final double minExitMargin;
+    private final Map<String, State> inside = new HashMap<String, State>();
+    // the same states in the order they were entered, walked by index so a fix allocates
+    // nothing unless the user enters a region or a transition fires
+    private final List<State> entered = new ArrayList<State>();
+    private long tick;
+
+    public TransitionEvaluator() {
+        this(GeofenceStateMachine.LOITERING_DELAY, MIN_EXIT_MARGIN);
+    }
+
+    /**
+     * @param loiteringDelay shortest confirmation delay in milliseconds
+     * @param minExitMargin  shortest exit margin in meters
+     */
+    public TransitionEvaluator(long loiteringDelay, double minExitMargin) {
+        this.loiteringDelay = loiteringDelay;
+        this.minExitMargin = minExitMargin;
+    }
+
+    /**
+     * Feeds one fix on an unknown floor. Fixes must come in time order.
+     *
+     * @param containing the regions containing the fix, as from RegionIndex.regionsContaining()
+     * @param accuracy   accuracy of the fix in meters, 0 if unknown
+     * @param time       time of the fix in milliseconds
+     * @param out        receives the confirmed transitions the fix causes, EXITs first
+     * @return the number of transitions added
+     */
+    public int update(double lat, double lng, float accuracy, long time, List<Region> containing,
+                      List<TransitionEvent> out) {
+        return update(lat, lng, accuracy, time, Region.ANY_FLOOR, containing, out);
+    }
+
+    /**
+     * Feeds one fix on a floor, see {@link #update(double, double, float, long, List, List)}.
+     *
+     * @param floor      the floor the user is on, or Region.ANY_FLOOR if it is not known
+     * @param containing the regions containing the fix on that floor, as from
+     *                   FloorIndex.regionsContaining()
+     */
+    public int update(double lat, double lng, float accuracy, long time, int floor,
+                      List<Region> containing, List<TransitionEvent> out) {
+        if (accuracy > MAX_ACCURACY) {
+            return 0;
+        }
+        tick++;
+        int fired = 0;
+        for (int i = 0; i < containing.size(); i++) {
+            Region region = containing.get(i);
+            State state = inside.get(region.getId());
+            if (state == null) {
+                state = new State(region, time);
+                inside.put(region.getId(), state);
+                entered.add(state);
+            }
+            state.seen = tick;
+        }
+
+        double exitMargin = exitMargin(accuracy);
+        long confirmDelay = confirmDelay(accuracy);
+        int kept = 0;
+        for (int i = 0; i < entered.size(); i++) {
+            State state = entered.get(i);
+            if (state.seen == tick) {
+                state.leftAt = -1;
+                if (state.insideSince < 0) {
+                    state.insideSince = time;
+                }
+                entered.set(kept++, state);
+                continue;
+            }
+            state.insideSince = -1;
+            if (isOtherFloor(state.region, floor) || state.region.distanceTo(lat, lng) > exitMargin) {
+                if (!state.dwelling) {
+                    inside.remove(state.region.getId());
+                    continue;
+                }
+                if (state.leftAt < 0) {
+                    state.leftAt = time;
+                }
+                if (time - state.leftAt >= confirmDelay) {
+                    inside.remove(state.region.getId());
+                    out.add(new TransitionEvent(state.region.getId(), TransitionEvent.EXIT, 0));
+                    fired++;
+                    continue;
+                }
+            }
+            entered.set(kept++, state);
+        }
+        for (int i = entered.size() - 1; i >= kept; i--) {
+            entered.remove(i);
+        }
+
+        for (int i = 0; i < containing.size(); i++) {
+            State state = inside.get(containing.get(i).getId());
+            if (!state.dwelling && time - state.insideSince >= confirmDelay) {
+                state.dwelling = true;
+                out.add(new TransitionEvent(state.region.getId(), TransitionEvent.DWELL, 0));
+                fired++;
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Leaves at once every region the filter no longer accepts, wherever the user is, e.g. a
+     * room whose class just ended. Regions that had fired DWELL report the EXIT.
+     *
+     * @param out receives the EXITs, in the order the regions were entered
+     * @return the number of transitions added to out
+     */
+    public int leaveRejected(RegionIndex.Filter filter, List<TransitionEvent> out) {
+        int fired = 0;
+        int kept = 0;
+        for (int i = 0; i < entered.size(); i++) {
+            State state = entered.get(i);
+            if (filter.accept(state.region)) {
+                entered.set(kept++, state);
+                continue;
+            }
+            inside.remove(state.region.getId());
+            if (state.dwelling) {
+                out.add(new TransitionEvent(state.region.getId(), TransitionEvent.EXIT, 0));
+                fired++;
+            }
+        }
+        for (int i = entered.size() - 1; i >= kept; i--) {
+            entered.remove(i);
+        }
+        return fired;
+    }
+
+    private static boolean isOtherFloor(Region region, int floor) {
+        return floor != Region.ANY_FLOOR && region.getFloor() != Region.ANY_FLOOR
+                && region.getFloor() != floor;
+    }
+
+    /**
+     * How far outside a region, in meters, a fix of this accuracy has to be to leave it.
+     */
+    public double exitMargin(float accuracy) {
+        return Math.max(minExitMargin, 2 * accuracy);
+    }
+
+    /**
+     * How long, in milliseconds, the user has to be in or out of a region before a fix of this
+     * accuracy confirms the DWELL or EXIT.
+     */
+    public long confirmDelay(float accuracy) {
+        return Math.max(loiteringDelay, (long) (accuracy / WALKING_SPEED * 1000));
+    }
+
+    /**
+     * True from the fix that entered the region until the one that left it, confirmed or not.
+     */
+    public boolean isInside(String requestId) {
+        return inside.containsKey(requestId);
+    }
+
+    public boolean isDwelling(String requestId) {
+        State state = inside.get(requestId);
+        return state != null && state.dwelling;
+    }
+
+    /**
+     * Forgets every region, as if the user had never been anywhere.
+     */
+    public void reset() {
+        inside.clear();
+        entered.clear();
+    }
+}
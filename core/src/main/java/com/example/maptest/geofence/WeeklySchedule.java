@@ -0,0 +1,128 @@
+package com.example.maptest.geofence;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * When a region is in effect during the week: the opening hours of a building, or the meetings
+ * of the classes held in a room. The same week repeats; holidays and terms are not modelled.
+ *
+ * Times are minutes of the week in campus local time, from Monday 00:00 (0) to the next
+ * Monday 00:00 (MINUTES_PER_WEEK). An interval may close before it opens, in which case it runs
+ * past the end of the week, e.g. from Sunday evening into Monday morning. Overlapping and
+ * touching intervals are merged, so every change left is a real one.
+ */
+public final class WeeklySchedule {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+
+    // 1 January 1970 was a Thursday, the fourth day of a week starting on Monday
+    private static final int EPOCH_MINUTE_OF_WEEK = 3 * MINUTES_PER_DAY;
+
+    // sorted minutes of the week, alternately an opening and the closing after it
+    private final int[] bounds;
+    // the bounds that change anything: without the end and start of the week when an interval
+    // runs over them
+    private final int[] changes;
+
+    /**
+     * @param opens  minute of the week each interval opens
+     * @param closes minute of the week each interval closes; equal to its opening for all week
+     */
+    public WeeklySchedule(int[] opens, int[] closes) {
+        if (opens.length != closes.length) {
+            throw new IllegalArgumentException("Every opening needs a closing");
+        }
+        // split intervals running past the end of the week in two
+        long[] intervals = new long[2 * opens.length];
+        int n = 0;
+        for (int i = 0; i < opens.length; i++) {
+            int open = opens[i];
+            int close = closes[i];
+            if (open < 0 || open >= MINUTES_PER_WEEK || close < 0 || close > MINUTES_PER_WEEK) {
+                throw new IllegalArgumentException("Not a minute of the week: " + open + "-" + close);
+            }
+            if (close > open) {
+                intervals[n++] = pack(open, close);
+            } else {
+                intervals[n++] = pack(open, MINUTES_PER_WEEK);
+                if (close > 0) {
+                    intervals[n++] = pack(0, close);
+                }
+            }
+        }
+        Arrays.sort(intervals, 0, n);
+        int[] merged = new int[2 * n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int open = (int) (intervals[i] >>> 32);
+            int close = (int) intervals[i];
+            if (m > 0 && open <= merged[m - 1]) {
+                merged[m - 1] = Math.max(merged[m - 1], close);
+            } else {
+                merged[m++] = open;
+                merged[m++] = close;
+            }
+        }
+        bounds = Arrays.copyOf(merged, m);
+        if (m > 0 && bounds[0] == 0 && bounds[m - 1] == MINUTES_PER_WEEK) {
+            changes = Arrays.copyOfRange(bounds, 1, m - 1);
+        } else {
+            changes = bounds;
+        }
+    }
+
+    private static long pack(int open, int close) {
+        return ((long) open << 32) | close;
+    }
+
+    /**
+     * Whether the schedule never changes, being open all week or never.
+     */
+    public boolean isConstant() {
+        return changes.length == 0;
+    }
+
+    public boolean isOpen(int minuteOfWeek) {
+        // an odd number of bounds at or before the minute means inside an interval
+        int i = Arrays.binarySearch(bounds, minuteOfWeek);
+        int passed = i >= 0 ? i + 1 : -i - 1;
+        return (passed & 1) == 1;
+    }
+
+    /**
+     * Minutes from the minute of the week to the next opening or closing, always positive;
+     * -1 if the schedule is constant.
+     */
+    public int minutesToChange(int minuteOfWeek) {
+        if (changes.length == 0) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(changes, minuteOfWeek);
+        int next = i >= 0 ? i + 1 : -i - 1;
+        if (next == changes.length) {
+            return MINUTES_PER_WEEK - minuteOfWeek + changes[0];
+        }
+        return changes[next] - minuteOfWeek;
+    }
+
+    /**
+     * Minute of the week at the given time in the zone.
+     */
+    public static int minuteOfWeek(long time, TimeZone zone) {
+        long minutes = floorDiv(time + zone.getOffset(time), 60000) + EPOCH_MINUTE_OF_WEEK;
+        return (int) (minutes - floorDiv(minutes, MINUTES_PER_WEEK) * MINUTES_PER_WEEK);
+    }
+
+    // Math.floorDiv is Java 8
+    private static long floorDiv(long a, long b) {
+        long q = a / b;
+        return a % b != 0 && (a < 0) != (b < 0) ? q - 1 : q;
+    }
+
+    @Override
+    public String toString() {
+        return "WeeklySchedule" + Arrays.toString(bounds);
+    }
+}
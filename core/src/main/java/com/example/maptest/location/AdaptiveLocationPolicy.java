@@ -0,0 +1,226 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses how often, how accurately and how lazily location updates are requested.
+ *
+ * The deciding quantity is the time the user needs to reach the nearest region edge: the
+ * distance to the edge minus the fix accuracy, divided by the current speed (never less than
+ * walking pace, so a user who starts moving is still caught in time). Far from every edge
+ * updates are spaced out and delivered in batches (setMaxWaitTime), which lets the device
+ * sleep between deliveries. Close to an edge batching is turned off and the interval drops so
+ * transitions are seen as they happen. Intervals are snapped to a few fixed steps and the
+ * near-edge zone has hysteresis, so the request is not re-issued on every fix.
+ *
+ * With a filter only the edges of the regions it accepts count, so a room without a class in
+ * session does not keep the request at high accuracy while the user walks past it.
+ */
+public class AdaptiveLocationPolicy {
+
+    public static final int PRIORITY_HIGH_ACCURACY = 0;
+    public static final int PRIORITY_BALANCED = 1;
+
+    // margin below which batching is turned off, and above which it is allowed again
+    static final double NEAR_ENTER = 30;
+    static final double NEAR_LEAVE = 45;
+
+    // assumed speed when the user is standing still, a brisk walk
+    static final double WALKING_SPEED = 1.4;
+
+    // below this the user is considered stationary, in m/s
+    static final double STATIONARY_SPEED = 0.4;
+
+    // fixed interval steps, in milliseconds
+    private static final long[] INTERVAL_STEPS = {5000, 10000, 20000, 30000, 60000};
+
+    static final long NEAR_INTERVAL = 2000;
+    static final long MAX_WAIT = 2 * 60 * 1000;
+
+    // regions examined when looking for the nearest edge
+    private static final int EDGE_CANDIDATES = 8;
+
+    // a region index without regions means there is no edge to approach
+    private static final double NO_EDGE = Double.POSITIVE_INFINITY;
+
+    private final RegionIndex index;
+    // null to count every region
+    private final RegionIndex.Filter filter;
+    private final RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+    private final List<Region> nearest = new ArrayList<Region>(EDGE_CANDIDATES);
+
+    // copy of the previous fix, sources may reuse their Fix instances
+    private final Fix last = new Fix(0, 0, 0, Float.NaN, 0);
+    private boolean hasLast;
+    private double speed;
+    private boolean near;
+    private Profile profile;
+
+    public AdaptiveLocationPolicy(RegionIndex index) {
+        this(index, null);
+    }
+
+    /**
+     * @param filter the regions whose edges count, or null for all
+     */
+    public AdaptiveLocationPolicy(RegionIndex index, RegionIndex.Filter filter) {
+        this.index = index;
+        this.filter = filter;
+        reset();
+    }
+
+    /**
+     * Returns the profile to request for the current state.
+     */
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Feeds one fix, oldest first when a batch arrives, and returns the profile that should be
+     * requested now. The result is the previous instance unless the request needs to change,
+     * so a steady state allocates nothing.
+     */
+    public Profile update(Fix fix) {
+        updateSpeed(fix);
+        last.set(fix);
+        hasLast = true;
+        return decide();
+    }
+
+    /**
+     * Decides again from the last fix, e.g. after the filter changed its mind, and returns the
+     * profile that should be requested now.
+     */
+    public Profile recheck() {
+        return hasLast ? decide() : profile;
+    }
+
+    private Profile decide() {
+        double margin = nearestEdge(last.getLat(), last.getLng()) - last.getAccuracy();
+        near = margin < (near ? NEAR_LEAVE : NEAR_ENTER);
+        if (near) {
+            return request(PRIORITY_HIGH_ACCURACY, NEAR_INTERVAL, NEAR_INTERVAL / 2, 0);
+        }
+
+        boolean moving = speed >= STATIONARY_SPEED;
+        double seconds = margin / Math.max(speed, WALKING_SPEED);
+        // several fixes while approaching an edge, more of them when already moving
+        long interval = snap((long) (seconds * 1000 / (moving ? 4 : 2)));
+        // a batch must arrive before the user can reach the edge
+        long maxWait = Math.min((long) (seconds * 1000 / 2), MAX_WAIT) / interval * interval;
+        if (maxWait < 2 * interval) {
+            maxWait = 0;
+        }
+        return request(moving ? PRIORITY_HIGH_ACCURACY : PRIORITY_BALANCED,
+                interval, interval / 2, maxWait);
+    }
+
+    private Profile request(int priority, long interval, long fastestInterval, long maxWaitTime) {
+        if (profile.priority != priority || profile.interval != interval
+                || profile.fastestInterval != fastestInterval || profile.maxWaitTime != maxWaitTime) {
+            profile = new Profile(priority, interval, fastestInterval, maxWaitTime);
+        }
+        return profile;
+    }
+
+    /**
+     * Forgets the movement history, e.g. after the location client reconnects.
+     */
+    public void reset() {
+        hasLast = false;
+        speed = 0;
+        near = false;
+        profile = new Profile(PRIORITY_HIGH_ACCURACY, INTERVAL_STEPS[0], INTERVAL_STEPS[0] / 2, 0);
+    }
+
+    /**
+     * Returns the current smoothed speed estimate, in m/s.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    private void updateSpeed(Fix fix) {
+        double measured;
+        if (fix.hasSpeed()) {
+            measured = fix.getSpeed();
+        } else if (hasLast && fix.getTime() > last.getTime()) {
+            double meters = GeoMath.haversine(last.getLat(), last.getLng(), fix.getLat(), fix.getLng());
+            // displacement inside the accuracy circles is noise, not movement
+            meters = Math.max(0, meters - Math.max(fix.getAccuracy(), last.getAccuracy()));
+            measured = meters * 1000 / (fix.getTime() - last.getTime());
+        } else {
+            return;
+        }
+        speed = hasLast ? (speed + measured) / 2 : measured;
+    }
+
+    private double nearestEdge(double lat, double lng) {
+        nearest.clear();
+        index.nearest(lat, lng, EDGE_CANDIDATES, nearest, scratch, filter);
+        double best = NO_EDGE;
+        for (int i = 0; i < nearest.size(); i++) {
+            best = Math.min(best, nearest.get(i).distanceToEdge(lat, lng));
+        }
+        return best;
+    }
+
+    private static long snap(long interval) {
+        long step = INTERVAL_STEPS[0];
+        for (long candidate : INTERVAL_STEPS) {
+            if (candidate <= interval) {
+                step = candidate;
+            }
+        }
+        return step;
+    }
+
+    /**
+     * Location request parameters, independent of the Play Services LocationRequest class.
+     */
+    public static final class Profile {
+        public final int priority;
+        public final long interval;
+        public final long fastestInterval;
+        // 0 means fixes are delivered as soon as they are computed
+        public final long maxWaitTime;
+
+        public Profile(int priority, long interval, long fastestInterval, long maxWaitTime) {
+            this.priority = priority;
+            this.interval = interval;
+            this.fastestInterval = fastestInterval;
+            this.maxWaitTime = maxWaitTime;
+        }
+
+        public boolean isBatched() {
+            return maxWaitTime > 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Profile)) {
+                return false;
+            }
+            Profile other = (Profile) o;
+            return priority == other.priority && interval == other.interval
+                    && fastestInterval == other.fastestInterval && maxWaitTime == other.maxWaitTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (31 * (31 * (31 * priority + interval) + fastestInterval) + maxWaitTime);
+        }
+
+        @Override
+        public String toString() {
+            return "Profile(priority=" + priority + ", interval=" + interval
+                    + ", fastest=" + fastestInterval + ", maxWait=" + maxWaitTime + ")";
+        }
+    }
+}
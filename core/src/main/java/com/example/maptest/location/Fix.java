@@ -0,0 +1,82 @@
+package com.example.maptest.location;
+
+/**
+ * One location fix, decoupled from android.location.Location so the pipeline can be unit tested.
+ *
+ * A source may refill the same instances for every delivery (see {@link #set}) so the location
+ * path allocates nothing per fix. A fix is therefore only valid during the call it is passed to;
+ * code that keeps one past that copies it into an instance of its own.
+ */
+public final class Fix {
+
+    private double lat;
+    private double lng;
+    private float accuracy;
+    private float speed;
+    private long time;
+
+    /**
+     * @param accuracy horizontal accuracy in meters (68% radius), or 0 if unknown
+     * @param speed    ground speed in m/s, or NaN if the provider did not report one
+     * @param time     UTC time of the fix in milliseconds
+     */
+    public Fix(double lat, double lng, float accuracy, float speed, long time) {
+        this.lat = lat;
+        this.lng = lng;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.time = time;
+    }
+
+    /**
+     * Overwrites this fix, see the constructor for the parameters.
+     *
+     * @return this fix
+     */
+    public Fix set(double lat, double lng, float accuracy, float speed, long time) {
+        this.lat = lat;
+        this.lng = lng;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.time = time;
+        return this;
+    }
+
+    /**
+     * Overwrites this fix with a copy of {@code other}.
+     *
+     * @return this fix
+     */
+    public Fix set(Fix other) {
+        return set(other.lat, other.lng, other.accuracy, other.speed, other.time);
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public boolean hasSpeed() {
+        return !Float.isNaN(speed);
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "Fix(" + lat + "," + lng + " +/-" + accuracy + "m @" + time + ")";
+    }
+}
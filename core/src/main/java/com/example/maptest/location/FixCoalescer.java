@@ -0,0 +1,83 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+
+import java.util.List;
+
+/**
+ * Reduces a batch of fixes to at most one fix worth redrawing the map for.
+ *
+ * Within a batch the newest fix is taken unless it is much less accurate than the best one in
+ * the batch. The result is only published if it moved further than its own uncertainty from
+ * the last published fix, or is clearly more accurate, so jitter while standing still does not
+ * move the camera. Every fix still goes to the geofence side; this only throttles the UI.
+ */
+public class FixCoalescer {
+
+    // never redraw for less than this, in meters
+    static final double MIN_DISPLACEMENT = 5;
+
+    // fixes this much less accurate than the best one in the batch are skipped
+    static final float ACCURACY_SLACK = 1.5f;
+
+    // copy of the last fix handed to the UI, batches may reuse their Fix instances
+    private final Fix published = new Fix(0, 0, 0, Float.NaN, 0);
+    private boolean hasPublished;
+
+    /**
+     * Returns the fix to show for the batch, or null if the display does not need to change.
+     * Fixes must be ordered oldest first, as Play Services delivers them. The result is one of
+     * the batch's own fixes. Allocates nothing.
+     */
+    public Fix offer(List<Fix> batch) {
+        float best = Float.MAX_VALUE;
+        for (int i = 0; i < batch.size(); i++) {
+            best = Math.min(best, accuracyOf(batch.get(i)));
+        }
+        Fix pick = null;
+        for (int i = batch.size() - 1; i >= 0 && pick == null; i--) {
+            Fix fix = batch.get(i);
+            if (accuracyOf(fix) <= best * ACCURACY_SLACK) {
+                pick = fix;
+            }
+        }
+        if (pick == null || !isNewsworthy(pick)) {
+            return null;
+        }
+        published.set(pick);
+        hasPublished = true;
+        return pick;
+    }
+
+    /**
+     * Returns a copy of the last fix handed to the UI, or null. The copy is overwritten by the
+     * next published fix.
+     */
+    public Fix getPublished() {
+        return hasPublished ? published : null;
+    }
+
+    public void reset() {
+        hasPublished = false;
+    }
+
+    private boolean isNewsworthy(Fix fix) {
+        if (!hasPublished) {
+            return true;
+        }
+        if (fix.getTime() <= published.getTime()) {
+            return false;
+        }
+        if (accuracyOf(fix) * 2 <= accuracyOf(published)) {
+            return true;
+        }
+        double moved = GeoMath.haversine(published.getLat(), published.getLng(),
+                fix.getLat(), fix.getLng());
+        return moved > Math.max(MIN_DISPLACEMENT, accuracyOf(fix) / 2);
+    }
+
+    // unknown accuracy is treated as poor
+    private static float accuracyOf(Fix fix) {
+        return fix.getAccuracy() > 0 ? fix.getAccuracy() : 1000f;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geofence.Region;
+
+/**
+ * The floor the user is on, from the barometer anchored by location fixes.
+ *
+ * Air pressure drops by about 0.12 hPa per meter climbed, far more finely than GPS altitude
+ * resolves, but the absolute pressure depends on the weather and on the phone. So heights
+ * are only taken relative to a reference: the pressure at the last accurate fix outside every
+ * building, which is ground level right at the door the user walked in through. Anchoring on
+ * every such fix also takes the hills of the campus out of the estimate. Inside, the height
+ * above the reference is turned into floors of FLOOR_HEIGHT above GROUND_FLOOR, with
+ * hysteresis so a reading halfway up the stairs does not flip between two floors.
+ *
+ * The weather drifts the pressure by up to a meter's worth in half an hour, so a reference
+ * older than MAX_REFERENCE_AGE is dropped and the floor is unknown until the user is outside
+ * again. Without a barometer the floor is always unknown.
+ *
+ * Pressure readings carry their own clock; fixes only say when the reference may be taken.
+ * Not thread safe.
+ */
+public class FloorEstimator {
+
+    // floor of the building entrances
+    public static final int GROUND_FLOOR = 1;
+
+    // meters from one floor to the next in the campus buildings
+    public static final double FLOOR_HEIGHT = 4;
+
+    // meters past the middle between two floors before the estimate moves to the other one
+    public static final double HYSTERESIS = 0.75;
+
+    // longest a reference is trusted, in milliseconds
+    public static final long MAX_REFERENCE_AGE = 30 * 60 * 1000;
+
+    // only fixes this accurate, in meters, are trusted to be outside
+    public static final float MAX_REFERENCE_ACCURACY = 15;
+
+    // time constant of the pressure low pass, in milliseconds
+    private static final double SMOOTHING = 1000;
+
+    // hPa, NaN until the first reading
+    private double pressure = Double.NaN;
+    private long pressureTime;
+    // hPa at ground level, NaN while there is none
+    private double reference = Double.NaN;
+    private long referenceTime;
+    private int floor = Region.ANY_FLOOR;
+
+    /**
+     * Feeds one barometer reading.
+     *
+     * @param hPa  pressure in hectopascal (millibar)
+     * @param time time of the reading in milliseconds, on a clock of the sensor's choice
+     */
+    public void onPressure(float hPa, long time) {
+        if (Double.isNaN(pressure) || time - pressureTime > 10 * SMOOTHING || time < pressureTime) {
+            pressure = hPa;
+        } else {
+            double dt = time - pressureTime;
+            pressure += (hPa - pressure) * dt / (SMOOTHING + dt);
+        }
+        pressureTime = time;
+        updateFloor();
+    }
+
+    /**
+     * Feeds one location fix.
+     *
+     * @param accuracy        accuracy of the fix in meters, 0 if unknown
+     * @param outsideBuilding true if no building region contains the fix
+     */
+    public void onFix(float accuracy, boolean outsideBuilding) {
+        if (outsideBuilding && accuracy > 0 && accuracy <= MAX_REFERENCE_ACCURACY
+                && !Double.isNaN(pressure)) {
+            reference = pressure;
+            referenceTime = pressureTime;
+            floor = GROUND_FLOOR;
+        }
+    }
+
+    /**
+     * Returns the floor the user is on, or Region.ANY_FLOOR if it is not known.
+     */
+    public int getFloor() {
+        return floor;
+    }
+
+    /**
+     * Meters above the reference, or NaN if there is none.
+     */
+    public double getHeight() {
+        if (Double.isNaN(reference) || pressureTime - referenceTime > MAX_REFERENCE_AGE) {
+            return Double.NaN;
+        }
+        return height(reference, pressure);
+    }
+
+    /**
+     * Height difference in meters between two pressures in the standard atmosphere, the same
+     * formula as SensorManager.getAltitude().
+     */
+    static double height(double reference, double pressure) {
+        return 44330 * (1 - Math.pow(pressure / reference, 1 / 5.255));
+    }
+
+    private void updateFloor() {
+        double height = getHeight();
+        if (Double.isNaN(height)) {
+            floor = Region.ANY_FLOOR;
+            return;
+        }
+        int nearest = GROUND_FLOOR + (int) Math.round(height / FLOOR_HEIGHT);
+        if (floor == Region.ANY_FLOOR) {
+            floor = nearest;
+        } else if (nearest != floor
+                && Math.abs(height - (nearest - GROUND_FLOOR) * FLOOR_HEIGHT) <= FLOOR_HEIGHT / 2 - HYSTERESIS) {
+            floor = nearest;
+        }
+    }
+
+    /**
+     * Forgets the reference and the floor, e.g. when the barometer stops.
+     */
+    public void reset() {
+        pressure = Double.NaN;
+        reference = Double.NaN;
+        floor = Region.ANY_FLOOR;
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geofence.FloorIndex;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.geofence.TransitionEvaluator;
+import com.example.maptest.routing.MapMatcher;
+import com.example.maptest.transition.TransitionEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything that happens to a batch of fixes before it reaches the map: the adaptive request
+ * policy, selection of the geofences registered with the system, snapping onto the walkways
+ * (see MapMatcher), the floor (see FloorEstimator), confirmed DWELL/EXIT transitions against
+ * the region shapes on that floor (see TransitionEvaluator) and coalescing for the UI.
+ *
+ * Snapped fixes are what the transitions and the map see, so a fix tens of meters off
+ * between two buildings neither flips a region nor makes the position jump; the policy and
+ * the monitored set work from the fixes as delivered.
+ *
+ * Regions can be turned on and off by a filter, normally a RegionScheduler: those it rejects
+ * are not selected, do not count for the policy and report no transitions; a region turned off
+ * while the user is in it reports the EXIT.
+ *
+ * Kept free of Android types so a ReplayLocationSource can drive it on a plain JVM. Fixes are
+ * handled on whatever thread the source delivers them; the pipeline itself is not thread safe.
+ *
+ * Once warmed up, a batch that changes neither the monitored set, the request profile nor any
+ * region state allocates nothing, so continuous tracking does not feed the garbage collector.
+ * Callbacks get the batch's own or reused Fix instances and must copy what they keep.
+ */
+public class LocationPipeline implements LocationSource.Listener {
+
+    /**
+     * Receives the results of the pipeline.
+     */
+    public interface Callback {
+        /**
+         * The set of regions to register with the system changed.
+         */
+        void onMonitoredSetChanged(MonitoredSetSelector.Diff diff);
+
+        /**
+         * The user dwelled in or left regions, confirmed by TransitionEvaluator.
+         */
+        void onTransitions(List<TransitionEvent> events);
+
+        /**
+         * The position shown on the map should move to this fix.
+         */
+        void onFixShown(Fix fix);
+    }
+
+    private final LocationSource source;
+    private final FloorIndex index;
+    private final FloorEstimator floors;
+    // null to use the fixes as delivered
+    private final MapMatcher matcher;
+    private final MonitoredSetSelector selector;
+    // null when every region is in effect
+    private final RegionIndex.Filter active;
+    private final Callback callback;
+    private final AdaptiveLocationPolicy policy;
+    private final FixCoalescer coalescer = new FixCoalescer();
+    private final TransitionEvaluator transitions;
+
+    // scratch reused for every fix
+    private final RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+    private final List<Region> containing = new ArrayList<Region>();
+    private final List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+    // the batch after matching, and the snapped fixes it may point to, grown to the largest batch
+    private final List<Fix> placed = new ArrayList<Fix>();
+    private final List<Fix> snapped = new ArrayList<Fix>();
+    // copy of the newest fix delivered, to select again from when the filter changes
+    private final Fix newest = new Fix(0, 0, 0, Float.NaN, 0);
+    private boolean hasNewest;
+
+    // profile the source is currently running with
+    private AdaptiveLocationPolicy.Profile applied;
+
+    private int batchCount;
+    private int fixCount;
+
+    /**
+     * Puts a pipeline together. The source, the regions, the selector and the callback are
+     * needed; everything else has a default.
+     */
+    public static final class Builder {
+        private final LocationSource source;
+        private final FloorIndex index;
+        private final MonitoredSetSelector selector;
+        private final Callback callback;
+        private FloorEstimator floors;
+        private MapMatcher matcher;
+        private RegionIndex.Filter active;
+        private TransitionEvaluator transitions;
+
+        /**
+         * @param index the campus regions; the selector should pick from index.getAnyFloor()
+         */
+        public Builder(LocationSource source, FloorIndex index, MonitoredSetSelector selector,
+                       Callback callback) {
+            this.source = source;
+            this.index = index;
+            this.selector = selector;
+            this.callback = callback;
+        }
+
+        /**
+         * Regions on every floor, all matched whatever floor the user is on.
+         */
+        public Builder(LocationSource source, RegionIndex index, MonitoredSetSelector selector,
+                       Callback callback) {
+            this(source, new FloorIndex(index), selector, callback);
+        }
+
+        /**
+         * @param floors fed with barometer readings on the thread fixes arrive on; by default
+         *               one without any, so the floor stays unknown
+         */
+        public Builder floors(FloorEstimator floors) {
+            this.floors = floors;
+            return this;
+        }
+
+        /**
+         * @param matcher snaps fixes onto the walkways; by default they are used as delivered
+         */
+        public Builder matcher(MapMatcher matcher) {
+            this.matcher = matcher;
+            return this;
+        }
+
+        /**
+         * @param active the regions in effect, e.g. a RegionScheduler; by default all. The
+         *               selector should use the same filter.
+         */
+        public Builder activeRegions(RegionIndex.Filter active) {
+            this.active = active;
+            return this;
+        }
+
+        /**
+         * @param transitions where the user is, shared with whatever else feeds it fixes while
+         *                    the pipeline is stopped; only touched on the thread fixes arrive
+         *                    on. By default a new one.
+         */
+        public Builder transitions(TransitionEvaluator transitions) {
+            this.transitions = transitions;
+            return this;
+        }
+
+        public LocationPipeline build() {
+            return new LocationPipeline(this);
+        }
+    }
+
+    private LocationPipeline(Builder builder) {
+        this.source = builder.source;
+        this.index = builder.index;
+        this.floors = builder.floors != null ? builder.floors : new FloorEstimator();
+        this.matcher = builder.matcher;
+        this.selector = builder.selector;
+        this.active = builder.active;
+        this.transitions = builder.transitions != null ? builder.transitions : new TransitionEvaluator();
+        this.callback = builder.callback;
+        this.policy = new AdaptiveLocationPolicy(index.getAnyFloor(), active);
+    }
+
+    /**
+     * Starts from scratch: forgets the monitored set and movement history, replays the last
+     * known fix if there is one and starts the source. The regions the user is in are kept;
+     * if they have moved on, the first fix reports the EXITs.
+     */
+    public void start() {
+        selector.reset();
+        policy.reset();
+        if (matcher != null) {
+            matcher.reset();
+        }
+        applied = policy.getProfile();
+        source.setProfile(applied);
+        Fix last = source.getLastFix();
+        if (last != null) {
+            handle(Collections.singletonList(last));
+        }
+        source.start(this);
+    }
+
+    public void stop() {
+        source.stop();
+    }
+
+    @Override
+    public void onFixes(List<Fix> batch) {
+        if (!batch.isEmpty()) {
+            handle(batch);
+        }
+    }
+
+    private void handle(List<Fix> batch) {
+        batchCount++;
+        fixCount += batch.size();
+
+        // every fix feeds the policy and the transitions, so none of the movement near an
+        // edge is lost
+        placed.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            Fix fix = batch.get(i);
+            policy.update(fix);
+            if (matcher != null) {
+                if (snapped.size() == i) {
+                    snapped.add(new Fix(0, 0, 0, Float.NaN, 0));
+                }
+                if (matcher.match(fix, snapped.get(i))) {
+                    fix = snapped.get(i);
+                }
+            }
+            placed.add(fix);
+            containing.clear();
+            index.getAnyFloor().regionsContaining(fix.getLat(), fix.getLng(), containing, scratch);
+            floors.onFix(fix.getAccuracy(), !inBuilding(containing));
+            int floor = floors.getFloor();
+            index.regionsOnFloor(fix.getLat(), fix.getLng(), floor, containing, scratch);
+            if (active != null) {
+                removeInactive(containing);
+            }
+            transitions.update(fix.getLat(), fix.getLng(), fix.getAccuracy(), fix.getTime(), floor,
+                    containing, fired);
+        }
+        if (!fired.isEmpty()) {
+            callback.onTransitions(new ArrayList<TransitionEvent>(fired));
+            fired.clear();
+        }
+        newest.set(batch.get(batch.size() - 1));
+        hasNewest = true;
+        select();
+
+        Fix shown = coalescer.offer(placed);
+        if (shown != null) {
+            callback.onFixShown(shown);
+        }
+
+        apply(policy.getProfile());
+    }
+
+    /**
+     * The filter turned regions on or off: leaves the regions turned off, selects the monitored
+     * set again and re-decides the request from the newest fix, without waiting for the next
+     * one. Must be called on the thread fixes arrive on. Regions turned on are entered with the
+     * next fix.
+     */
+    public void onActiveRegionsChanged() {
+        if (active != null && transitions.leaveRejected(active, fired) > 0) {
+            callback.onTransitions(new ArrayList<TransitionEvent>(fired));
+            fired.clear();
+        }
+        selector.invalidate();
+        if (hasNewest) {
+            select();
+            apply(policy.recheck());
+        }
+    }
+
+    private void select() {
+        MonitoredSetSelector.Diff diff = selector.update(newest.getLat(), newest.getLng());
+        if (diff != null && !diff.isEmpty()) {
+            callback.onMonitoredSetChanged(diff);
+        }
+    }
+
+    // re-issue the request only when the policy wants something different
+    private void apply(AdaptiveLocationPolicy.Profile profile) {
+        if (!profile.equals(applied)) {
+            applied = profile;
+            source.setProfile(profile);
+        }
+    }
+
+    private void removeInactive(List<Region> regions) {
+        int kept = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            if (active.accept(region)) {
+                regions.set(kept++, region);
+            }
+        }
+        while (regions.size() > kept) {
+            regions.remove(regions.size() - 1);
+        }
+    }
+
+    private static boolean inBuilding(List<Region> regions) {
+        for (int i = 0; i < regions.size(); i++) {
+            if (regions.get(i).getBuilding() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public AdaptiveLocationPolicy.Profile getProfile() {
+        return applied;
+    }
+
+    /**
+     * Number of batches handled since construction, i.e. wakeups caused by location delivery.
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    public int getFixCount() {
+        return fixCount;
+    }
+}
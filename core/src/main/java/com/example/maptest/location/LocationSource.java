@@ -0,0 +1,40 @@
+package com.example.maptest.location;
+
+import java.util.List;
+
+/**
+ * A stream of location fixes. On the device this is the fused provider; off the device it is
+ * a recorded trace (see ReplayLocationSource), which is what makes the pipeline testable on a
+ * plain JVM.
+ */
+public interface LocationSource {
+
+    /**
+     * Receives fixes, oldest first. A batch holds more than one fix only when the current
+     * profile allows batching.
+     */
+    interface Listener {
+        void onFixes(List<Fix> batch);
+    }
+
+    /**
+     * Sets how often and how accurately fixes should be produced. May be called at any time;
+     * a started source applies it to the following fixes.
+     */
+    void setProfile(AdaptiveLocationPolicy.Profile profile);
+
+    /**
+     * Starts delivering fixes to the listener. Starting a started source replaces the listener.
+     */
+    void start(Listener listener);
+
+    /**
+     * Stops delivering fixes. Safe to call when not started.
+     */
+    void stop();
+
+    /**
+     * Returns the most recent fix known to the source, or null.
+     */
+    Fix getLastFix();
+}
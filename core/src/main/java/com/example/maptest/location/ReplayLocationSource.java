@@ -0,0 +1,140 @@
+package com.example.maptest.location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Replays a recorded trace as if it came from the fused provider.
+ *
+ * Fixes are dropped to honour the requested interval and grouped into batches up to the
+ * requested max wait time, the way Play Services would deliver them, so the number of
+ * deliveries measured here tracks the number of wakeups on a device. Playback runs at the
+ * recorded pace divided by the speedup; {@link #AS_FAST_AS_POSSIBLE} skips the waiting.
+ * Fixes keep their recorded timestamps.
+ */
+public class ReplayLocationSource implements LocationSource {
+
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final List<Fix> trace;
+    private final double speedup;
+    private final Executor delivery;
+
+    private volatile AdaptiveLocationPolicy.Profile profile =
+            new AdaptiveLocationPolicy.Profile(AdaptiveLocationPolicy.PRIORITY_HIGH_ACCURACY, 0, 0, 0);
+    private volatile Fix lastFix;
+    private Thread thread;
+
+    /**
+     * @param trace    fixes in time order
+     * @param speedup  playback speed relative to the recording, e.g. 10 for ten times faster
+     * @param delivery runs the listener calls, e.g. a handler for the UI thread
+     */
+    public ReplayLocationSource(List<Fix> trace, double speedup, Executor delivery) {
+        if (!(speedup > 0)) {
+            throw new IllegalArgumentException("Speedup must be positive: " + speedup);
+        }
+        this.trace = new ArrayList<Fix>(trace);
+        this.speedup = speedup;
+        this.delivery = delivery;
+    }
+
+    @Override
+    public void setProfile(AdaptiveLocationPolicy.Profile profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) {
+        stop();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replay(listener);
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        }, "location-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public Fix getLastFix() {
+        return lastFix;
+    }
+
+    /**
+     * Plays the whole trace on the calling thread and returns the number of batches delivered.
+     */
+    public int replay(Listener listener) throws InterruptedException {
+        if (trace.isEmpty()) {
+            return 0;
+        }
+        long recordingStart = trace.get(0).getTime();
+        long wallStart = System.nanoTime();
+        int batches = 0;
+
+        List<Fix> batch = new ArrayList<Fix>();
+        Fix kept = null;
+        for (int i = 0; i < trace.size(); i++) {
+            Fix fix = trace.get(i);
+            AdaptiveLocationPolicy.Profile current = profile;
+            if (kept != null && fix.getTime() - kept.getTime() < current.interval) {
+                continue;
+            }
+            kept = fix;
+            batch.add(fix);
+            if (current.isBatched() && fix.getTime() - batch.get(0).getTime() < current.maxWaitTime) {
+                continue;
+            }
+            pace(wallStart, fix.getTime() - recordingStart);
+            deliver(listener, batch);
+            batch = new ArrayList<Fix>();
+            batches++;
+        }
+        if (!batch.isEmpty()) {
+            pace(wallStart, trace.get(trace.size() - 1).getTime() - recordingStart);
+            deliver(listener, batch);
+            batches++;
+        }
+        return batches;
+    }
+
+    private void pace(long wallStart, long recordedMs) throws InterruptedException {
+        if (speedup == AS_FAST_AS_POSSIBLE) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return;
+        }
+        long dueNs = wallStart + (long) (recordedMs * 1e6 / speedup);
+        long waitNs = dueNs - System.nanoTime();
+        if (waitNs > 0) {
+            Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private void deliver(final Listener listener, final List<Fix> batch) {
+        lastFix = batch.get(batch.size() - 1);
+        delivery.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFixes(batch);
+            }
+        });
+    }
+}
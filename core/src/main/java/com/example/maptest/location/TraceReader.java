@@ -0,0 +1,207 @@
+package com.example.maptest.location;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Loads recorded GPS traces for ReplayLocationSource.
+ *
+ * GPX: every trkpt (or rtept/wpt) with a time element becomes a fix. GPX has no accuracy
+ * field, so it is estimated as 5 m per unit of hdop when present; speed is read from the
+ * GPX 1.0 speed element.
+ *
+ * CSV: one fix per line as time,lat,lng[,accuracy[,speed]], where time is epoch milliseconds
+ * or an ISO 8601 timestamp. Blank lines, lines starting with '#' and a header line are skipped.
+ */
+public final class TraceReader {
+
+    // rough conversion from horizontal dilution of precision to meters
+    private static final float METERS_PER_HDOP = 5f;
+
+    private TraceReader() {
+    }
+
+    /**
+     * Reads a .gpx or .csv file, chosen by extension.
+     */
+    public static List<Fix> read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return file.getName().toLowerCase().endsWith(".gpx") ? readGpx(in) : readCsv(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static List<Fix> readCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        List<Fix> fixes = new ArrayList<Fix>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                if (fields.length < 3) {
+                    throw new IllegalArgumentException("expected time,lat,lng");
+                }
+                long time = parseTime(fields[0].trim());
+                fixes.add(new Fix(
+                        Double.parseDouble(fields[1].trim()),
+                        Double.parseDouble(fields[2].trim()),
+                        fields.length > 3 ? Float.parseFloat(fields[3].trim()) : 0,
+                        fields.length > 4 ? Float.parseFloat(fields[4].trim()) : Float.NaN,
+                        time));
+            } catch (IllegalArgumentException e) {
+                if (lineNumber == 1 && fixes.isEmpty()) {
+                    continue; // header
+                }
+                throw new IOException("Bad trace line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return fixes;
+    }
+
+    public static List<Fix> readGpx(InputStream in) throws IOException {
+        GpxHandler handler = new GpxHandler();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(in, handler);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e.toString());
+        } catch (SAXException e) {
+            throw new IOException("Bad GPX trace: " + e.getMessage());
+        }
+        return handler.fixes;
+    }
+
+    /**
+     * Parses epoch milliseconds or an ISO 8601 timestamp such as 2016-11-02T14:05:09.250Z.
+     */
+    static long parseTime(String text) {
+        if (text.indexOf('T') < 0) {
+            return Long.parseLong(text);
+        }
+        try {
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.clear();
+            calendar.set(Integer.parseInt(text.substring(0, 4)),
+                    Integer.parseInt(text.substring(5, 7)) - 1,
+                    Integer.parseInt(text.substring(8, 10)),
+                    Integer.parseInt(text.substring(11, 13)),
+                    Integer.parseInt(text.substring(14, 16)),
+                    Integer.parseInt(text.substring(17, 19)));
+            long millis = calendar.getTimeInMillis();
+
+            int i = 19;
+            if (i < text.length() && text.charAt(i) == '.') {
+                int start = ++i;
+                while (i < text.length() && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+                String fraction = (text.substring(start, i) + "00").substring(0, 3);
+                millis += Integer.parseInt(fraction);
+            }
+            if (i < text.length() && text.charAt(i) != 'Z') {
+                int sign = text.charAt(i) == '-' ? -1 : 1;
+                int hours = Integer.parseInt(text.substring(i + 1, i + 3));
+                int minutes = Integer.parseInt(text.substring(text.length() - 2));
+                millis -= sign * (hours * 60 + minutes) * 60000L;
+            }
+            return millis;
+        } catch (StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Bad timestamp: " + text);
+        }
+    }
+
+    private static class GpxHandler extends DefaultHandler {
+
+        final List<Fix> fixes = new ArrayList<Fix>();
+        private final StringBuilder text = new StringBuilder();
+
+        private boolean inPoint;
+        private double lat;
+        private double lng;
+        private long time;
+        private float accuracy;
+        private float speed;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            String name = name(localName, qName);
+            text.setLength(0);
+            if (name.equals("trkpt") || name.equals("rtept") || name.equals("wpt")) {
+                String latText = attributes.getValue("lat");
+                String lngText = attributes.getValue("lon");
+                if (latText == null || lngText == null) {
+                    throw new SAXException(name + " without lat/lon");
+                }
+                inPoint = true;
+                try {
+                    lat = Double.parseDouble(latText);
+                    lng = Double.parseDouble(lngText);
+                } catch (NumberFormatException e) {
+                    throw new SAXException(e.getMessage());
+                }
+                time = Long.MIN_VALUE;
+                accuracy = 0;
+                speed = Float.NaN;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!inPoint) {
+                return;
+            }
+            String name = name(localName, qName);
+            String value = text.toString().trim();
+            try {
+                if (name.equals("time")) {
+                    time = parseTime(value);
+                } else if (name.equals("hdop")) {
+                    accuracy = Float.parseFloat(value) * METERS_PER_HDOP;
+                } else if (name.equals("speed")) {
+                    speed = Float.parseFloat(value);
+                } else if (name.equals("trkpt") || name.equals("rtept") || name.equals("wpt")) {
+                    inPoint = false;
+                    if (time != Long.MIN_VALUE) {
+                        fixes.add(new Fix(lat, lng, accuracy, speed, time));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new SAXException(e.getMessage());
+            }
+        }
+
+        private static String name(String localName, String qName) {
+            String name = localName != null && localName.length() > 0 ? localName : qName;
+            int colon = name.indexOf(':');
+            return colon >= 0 ? name.substring(colon + 1) : name;
+        }
+    }
+}
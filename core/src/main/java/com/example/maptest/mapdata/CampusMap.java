@@ -0,0 +1,436 @@
+package com.example.maptest.mapdata;
+
+import com.example.maptest.geofence.CircleRegion;
+import com.example.maptest.geofence.PolygonRegion;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.WeeklySchedule;
+import com.example.maptest.routing.WalkwayGraph;
+import com.example.maptest.search.Place;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.maptest.mapdata.CampusMapFormat.*;
+
+/**
+ * Read-only view of a binary campus map (see {@link CampusMapFormat}).
+ *
+ * Opening a map only validates the header and section table; nothing is parsed up front.
+ * Every accessor reads straight from the underlying buffer, normally a MappedByteBuffer, so
+ * the file is paged in by the OS as it is touched and the Java heap does not grow with the
+ * size of the campus. Strings are decoded on each call.
+ *
+ * Only absolute reads are used, so one instance can be shared between threads.
+ */
+public final class CampusMap {
+
+    private final ByteBuffer buffer;
+    private final long dataVersion;
+
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int stringBlob;
+    private final int buildingCount;
+    private final int buildings;
+    private final int roomCount;
+    private final int rooms;
+    private final int shapeCount;
+    private final int shapes;
+    private final int vertexCount;
+    private final int vertices;
+    private final int nodeCount;
+    private final int nodes;
+    private final int edgeCount;
+    private final int edges;
+    private final int hoursCount;
+    private final int hours;
+
+    private CampusMap(ByteBuffer source) throws IOException {
+        buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a campus map file");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Unsupported campus map version " + version);
+        }
+        int sections = buffer.getShort(6) & 0xFFFF;
+        dataVersion = buffer.getLong(8);
+
+        int[] offset = new int[SECTION_HOURS + 1];
+        Arrays.fill(offset, -1);
+        for (int i = 0; i < sections; i++) {
+            int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            check(entry + SECTION_ENTRY_SIZE <= buffer.limit(), "truncated section table");
+            int id = buffer.getInt(entry);
+            int start = buffer.getInt(entry + 4);
+            int length = buffer.getInt(entry + 8);
+            check(start >= 0 && length >= 4 && (long) start + length <= buffer.limit(),
+                    "section " + id + " out of bounds");
+            if (id > 0 && id < offset.length) {
+                offset[id] = start;
+            }
+        }
+
+        stringCount = count(offset[SECTION_STRINGS]);
+        stringOffsets = offset[SECTION_STRINGS] + 4;
+        stringBlob = stringOffsets + (stringCount + 1) * 4;
+        if (stringCount > 0) {
+            check(stringBlob + buffer.getInt(stringOffsets + stringCount * 4) <= buffer.limit(),
+                    "string blob out of bounds");
+        }
+        buildingCount = records(offset[SECTION_BUILDINGS], BUILDING_SIZE);
+        buildings = offset[SECTION_BUILDINGS] + 4;
+        roomCount = records(offset[SECTION_ROOMS], ROOM_SIZE);
+        rooms = offset[SECTION_ROOMS] + 4;
+        shapeCount = records(offset[SECTION_SHAPES], SHAPE_SIZE);
+        shapes = offset[SECTION_SHAPES] + 4;
+        vertexCount = records(offset[SECTION_VERTICES], VERTEX_SIZE);
+        vertices = offset[SECTION_VERTICES] + 4;
+        nodeCount = records(offset[SECTION_NODES], NODE_SIZE);
+        nodes = offset[SECTION_NODES] + 4;
+        edgeCount = records(offset[SECTION_EDGES], EDGE_SIZE);
+        edges = offset[SECTION_EDGES] + 4;
+        // maps compiled before there were hours have no such section
+        hoursCount = records(offset[SECTION_HOURS], HOURS_SIZE);
+        hours = offset[SECTION_HOURS] + 4;
+    }
+
+    /**
+     * Wraps a buffer holding a complete campus map file, starting at its position.
+     */
+    public static CampusMap wrap(ByteBuffer buffer) throws IOException {
+        return new CampusMap(buffer.slice());
+    }
+
+    /**
+     * Memory-maps {@code length} bytes of the channel starting at {@code offset}, which is how
+     * an uncompressed APK asset is opened.
+     */
+    public static CampusMap map(FileChannel channel, long offset, long length) throws IOException {
+        return new CampusMap(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * Memory-maps a campus map file. The mapping stays valid after the file is closed.
+     */
+    public static CampusMap map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return map(raf.getChannel(), 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private int count(int sectionOffset) {
+        return sectionOffset < 0 ? 0 : buffer.getInt(sectionOffset);
+    }
+
+    private int records(int sectionOffset, int recordSize) throws IOException {
+        int count = count(sectionOffset);
+        check(count >= 0 && (long) sectionOffset + 4 + (long) count * recordSize <= buffer.limit(),
+                "record section out of bounds");
+        return count;
+    }
+
+    private static void check(boolean condition, String message) throws IOException {
+        if (!condition) {
+            throw new IOException("Corrupt campus map: " + message);
+        }
+    }
+
+    /**
+     * Version stamp of the data set, changed by the compiler whenever the content changes.
+     */
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    // ---- strings
+
+    public int stringCount() {
+        return stringCount;
+    }
+
+    /**
+     * Decodes string {@code id}, or returns null for id -1.
+     */
+    public String string(int id) {
+        if (id < 0) {
+            return null;
+        }
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int end = buffer.getInt(stringOffsets + (id + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(stringBlob + start + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // ---- buildings
+
+    public int buildingCount() {
+        return buildingCount;
+    }
+
+    public String buildingCode(int building) {
+        return string(buffer.getInt(buildings + building * BUILDING_SIZE));
+    }
+
+    public String buildingName(int building) {
+        return string(buffer.getInt(buildings + building * BUILDING_SIZE + 4));
+    }
+
+    /**
+     * Alternative names of the building, separated by ';', or null.
+     */
+    public String buildingAliases(int building) {
+        return string(buffer.getInt(buildings + building * BUILDING_SIZE + 8));
+    }
+
+    public double buildingLat(int building) {
+        return fromFixed(buffer.getInt(buildings + building * BUILDING_SIZE + 12));
+    }
+
+    public double buildingLng(int building) {
+        return fromFixed(buffer.getInt(buildings + building * BUILDING_SIZE + 16));
+    }
+
+    public int buildingFloors(int building) {
+        return buffer.getShort(buildings + building * BUILDING_SIZE + 20);
+    }
+
+    // ---- rooms
+
+    public int roomCount() {
+        return roomCount;
+    }
+
+    public int roomBuilding(int room) {
+        return buffer.getInt(rooms + room * ROOM_SIZE);
+    }
+
+    public String roomNumber(int room) {
+        return string(buffer.getInt(rooms + room * ROOM_SIZE + 4));
+    }
+
+    public String roomName(int room) {
+        return string(buffer.getInt(rooms + room * ROOM_SIZE + 8));
+    }
+
+    public double roomLat(int room) {
+        return fromFixed(buffer.getInt(rooms + room * ROOM_SIZE + 12));
+    }
+
+    public double roomLng(int room) {
+        return fromFixed(buffer.getInt(rooms + room * ROOM_SIZE + 16));
+    }
+
+    public int roomFloor(int room) {
+        return buffer.getShort(rooms + room * ROOM_SIZE + 20);
+    }
+
+    // ---- geofence shapes
+
+    public int shapeCount() {
+        return shapeCount;
+    }
+
+    public String shapeId(int shape) {
+        return string(buffer.getInt(shapes + shape * SHAPE_SIZE));
+    }
+
+    public int shapeType(int shape) {
+        return buffer.get(shapes + shape * SHAPE_SIZE + 4) & 0xFF;
+    }
+
+    /**
+     * Floor the shape applies to, or {@link CampusMapFormat#NO_FLOOR} for every floor.
+     */
+    public int shapeFloor(int shape) {
+        return buffer.getShort(shapes + shape * SHAPE_SIZE + 6);
+    }
+
+    /**
+     * Building the shape belongs to, or -1.
+     */
+    public int shapeBuilding(int shape) {
+        return buffer.getInt(shapes + shape * SHAPE_SIZE + 8);
+    }
+
+    private int shapeField(int shape, int field) {
+        return buffer.getInt(shapes + shape * SHAPE_SIZE + 12 + field * 4);
+    }
+
+    /**
+     * Builds the geofence region for a shape. This is the only accessor that copies
+     * coordinates onto the heap, because the region index needs them there.
+     */
+    public Region shapeRegion(int shape) {
+        String id = shapeId(shape);
+        int b = shapeBuilding(shape);
+        String building = b < 0 ? null : buildingCode(b);
+        int floor = shapeFloor(shape);
+        if (floor == NO_FLOOR) {
+            floor = Region.ANY_FLOOR;
+        }
+        if (shapeType(shape) == SHAPE_CIRCLE) {
+            return new CircleRegion(id, building, floor, fromFixed(shapeField(shape, 0)),
+                    fromFixed(shapeField(shape, 1)), shapeField(shape, 2) / 100f);
+        }
+        int first = shapeField(shape, 0);
+        int count = shapeField(shape, 1);
+        double[] lats = new double[count];
+        double[] lngs = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = vertexLat(first + i);
+            lngs[i] = vertexLng(first + i);
+        }
+        return new PolygonRegion(id, building, floor, lats, lngs);
+    }
+
+    public List<Region> regions() {
+        List<Region> regions = new ArrayList<Region>(shapeCount);
+        for (int i = 0; i < shapeCount; i++) {
+            regions.add(shapeRegion(i));
+        }
+        return regions;
+    }
+
+    /**
+     * Returns the weekly schedule of every region that has one, by region id. The others are
+     * always in effect.
+     */
+    public Map<String, WeeklySchedule> schedules() {
+        // records of one shape need not be adjacent
+        Map<Integer, int[]> intervals = new HashMap<Integer, int[]>();
+        for (int i = 0; i < hoursCount; i++) {
+            int record = hours + i * HOURS_SIZE;
+            int shape = buffer.getInt(record);
+            int[] found = intervals.get(shape);
+            int n = found == null ? 0 : found.length;
+            int[] grown = found == null ? new int[2] : Arrays.copyOf(found, n + 2);
+            grown[n] = buffer.getShort(record + 4) & 0xFFFF;
+            grown[n + 1] = buffer.getShort(record + 6) & 0xFFFF;
+            intervals.put(shape, grown);
+        }
+        Map<String, WeeklySchedule> schedules = new HashMap<String, WeeklySchedule>();
+        for (Map.Entry<Integer, int[]> entry : intervals.entrySet()) {
+            int[] bounds = entry.getValue();
+            int[] opens = new int[bounds.length / 2];
+            int[] closes = new int[bounds.length / 2];
+            for (int i = 0; i < opens.length; i++) {
+                opens[i] = bounds[2 * i];
+                closes[i] = bounds[2 * i + 1];
+            }
+            schedules.put(shapeId(entry.getKey()), new WeeklySchedule(opens, closes));
+        }
+        return schedules;
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public double vertexLat(int vertex) {
+        return fromFixed(buffer.getInt(vertices + vertex * VERTEX_SIZE));
+    }
+
+    public double vertexLng(int vertex) {
+        return fromFixed(buffer.getInt(vertices + vertex * VERTEX_SIZE + 4));
+    }
+
+    // ---- walkway graph
+
+    /**
+     * Returns the walkway graph backed directly by this map's buffer.
+     */
+    public WalkwayGraph graph() {
+        return new MappedWalkwayGraph();
+    }
+
+    /**
+     * Floor of a graph node, or {@link CampusMapFormat#NO_FLOOR} for outdoor nodes.
+     */
+    public int nodeFloor(int node) {
+        return buffer.getShort(nodes + node * NODE_SIZE + 12);
+    }
+
+    // ---- search directory
+
+    /**
+     * Returns every building and room as a search entry.
+     */
+    public List<Place> places() {
+        List<Place> places = new ArrayList<Place>(buildingCount + roomCount);
+        for (int b = 0; b < buildingCount; b++) {
+            String aliases = buildingAliases(b);
+            places.add(new Place(buildingCode(b), buildingName(b), null,
+                    aliases == null ? null : Arrays.asList(aliases.split(";")),
+                    buildingLat(b), buildingLng(b)));
+        }
+        for (int r = 0; r < roomCount; r++) {
+            int b = roomBuilding(r);
+            String name = roomName(r);
+            places.add(new Place(buildingCode(b), buildingName(b), roomNumber(r),
+                    name == null ? null : Collections.singletonList(name),
+                    roomLat(r), roomLng(r)));
+        }
+        return places;
+    }
+
+    private final class MappedWalkwayGraph implements WalkwayGraph {
+
+        @Override
+        public int nodeCount() {
+            return nodeCount;
+        }
+
+        @Override
+        public int edgeCount() {
+            return edgeCount;
+        }
+
+        @Override
+        public double lat(int node) {
+            return fromFixed(buffer.getInt(nodes + node * NODE_SIZE));
+        }
+
+        @Override
+        public double lng(int node) {
+            return fromFixed(buffer.getInt(nodes + node * NODE_SIZE + 4));
+        }
+
+        @Override
+        public int firstEdge(int node) {
+            return node == nodeCount ? edgeCount : buffer.getInt(nodes + node * NODE_SIZE + 8);
+        }
+
+        @Override
+        public int edgeTarget(int edge) {
+            return buffer.getInt(edges + edge * EDGE_SIZE);
+        }
+
+        @Override
+        public float edgeLength(int edge) {
+            return buffer.getFloat(edges + edge * EDGE_SIZE + 4);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.maptest.mapdata;
+
+import com.example.maptest.geofence.WeeklySchedule;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Build-time converter from the editable campus source (src/main/campus/campus.txt) to the
+ * binary map shipped in the APK. Run by the compileCampusMap Gradle task; it is plain Java
+ * so it can also be run by hand:
+ *
+ * <pre>java com.example.maptest.mapdata.CampusMapCompiler campus.txt campus.bin</pre>
+ *
+ * The source has one record per line, fields separated by '|', and '#' comments. A '-'
+ * stands for "none" in building and floor fields.
+ *
+ * <pre>
+ * building code|name|aliases (';' separated)|lat|lng|floors
+ * room     building code|number|name|floor|lat|lng
+ * circle   id|building code|floor|lat|lng|radius in meters
+ * polygon  id|building code|floor|lat,lng;lat,lng;...
+ * node     name|lat|lng|floor
+ * walkway  node|node
+ * edge     from node|to node|length in meters     (one way, e.g. an escalator)
+ * hours    circle or polygon id|days|times
+ * </pre>
+ *
+ * An hours record puts a region in effect only at those times every week: a building's opening
+ * hours, or the meetings of the classes held in a room. Days are names, ranges and lists such
+ * as "Mon-Fri" or "Mon,Wed,Fri"; times are "HH:MM-HH:MM" in campus local time, several
+ * separated by ';'. A time closing at or before it opens runs past midnight. Regions without
+ * hours records are always in effect.
+ */
+public final class CampusMapCompiler {
+
+    private static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+
+    /**
+     * Prevents instantiation.
+     */
+    private CampusMapCompiler() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CampusMapCompiler <campus.txt> <campus.bin>");
+            System.exit(2);
+        }
+        CampusMapWriter writer;
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            writer = compile(in);
+        } finally {
+            in.close();
+        }
+        File output = new File(args[1]);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        OutputStream out = new FileOutputStream(output);
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static CampusMapWriter compile(InputStream in) throws IOException {
+        CampusMapWriter writer = new CampusMapWriter();
+        Map<String, Integer> buildings = new HashMap<String, Integer>();
+        Map<String, Integer> nodes = new HashMap<String, Integer>();
+        Map<String, Integer> shapes = new HashMap<String, Integer>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("Line " + lineNumber + ": missing fields");
+            }
+            String kind = line.substring(0, space);
+            String[] f = line.substring(space + 1).split("\\|", -1);
+            for (int i = 0; i < f.length; i++) {
+                f[i] = f[i].trim();
+            }
+            try {
+                if (kind.equals("building")) {
+                    expect(f, 6, lineNumber);
+                    if (buildings.containsKey(f[0])) {
+                        throw new IOException("Line " + lineNumber + ": duplicate building " + f[0]);
+                    }
+                    buildings.put(f[0], writer.addBuilding(f[0], f[1], emptyToNull(f[2]),
+                            Double.parseDouble(f[3]), Double.parseDouble(f[4]), Integer.parseInt(f[5])));
+                } else if (kind.equals("room")) {
+                    expect(f, 6, lineNumber);
+                    writer.addRoom(building(buildings, f[0], lineNumber), f[1], emptyToNull(f[2]),
+                            Integer.parseInt(f[3]), Double.parseDouble(f[4]), Double.parseDouble(f[5]));
+                } else if (kind.equals("circle")) {
+                    expect(f, 6, lineNumber);
+                    shapes.put(f[0], writer.addCircle(f[0], building(buildings, f[1], lineNumber), floor(f[2]),
+                            Double.parseDouble(f[3]), Double.parseDouble(f[4]), Float.parseFloat(f[5])));
+                } else if (kind.equals("polygon")) {
+                    expect(f, 4, lineNumber);
+                    String[] points = f[3].split(";");
+                    double[] lats = new double[points.length];
+                    double[] lngs = new double[points.length];
+                    for (int i = 0; i < points.length; i++) {
+                        String[] ll = points[i].split(",");
+                        if (ll.length != 2) {
+                            throw new IOException("Line " + lineNumber + ": bad vertex " + points[i]);
+                        }
+                        lats[i] = Double.parseDouble(ll[0].trim());
+                        lngs[i] = Double.parseDouble(ll[1].trim());
+                    }
+                    shapes.put(f[0], writer.addPolygon(f[0], building(buildings, f[1], lineNumber), floor(f[2]),
+                            lats, lngs));
+                } else if (kind.equals("node")) {
+                    expect(f, 4, lineNumber);
+                    if (nodes.containsKey(f[0])) {
+                        throw new IOException("Line " + lineNumber + ": duplicate node " + f[0]);
+                    }
+                    nodes.put(f[0], writer.addNode(Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+                            floor(f[3])));
+                } else if (kind.equals("walkway")) {
+                    expect(f, 2, lineNumber);
+                    writer.addWalkway(node(nodes, f[0], lineNumber), node(nodes, f[1], lineNumber));
+                } else if (kind.equals("edge")) {
+                    expect(f, 3, lineNumber);
+                    writer.addEdge(node(nodes, f[0], lineNumber), node(nodes, f[1], lineNumber),
+                            Float.parseFloat(f[2]));
+                } else if (kind.equals("hours")) {
+                    expect(f, 3, lineNumber);
+                    Integer shape = shapes.get(f[0]);
+                    if (shape == null) {
+                        throw new IOException("Line " + lineNumber + ": unknown region " + f[0]);
+                    }
+                    boolean[] days = days(f[1]);
+                    for (String time : f[2].split(";")) {
+                        String[] range = time.trim().split("-");
+                        if (range.length != 2) {
+                            throw new IOException("Line " + lineNumber + ": bad time " + time);
+                        }
+                        int open = minuteOfDay(range[0]);
+                        int close = minuteOfDay(range[1]);
+                        if (close <= open) {
+                            close += WeeklySchedule.MINUTES_PER_DAY;
+                        }
+                        for (int day = 0; day < 7; day++) {
+                            if (days[day]) {
+                                int start = day * WeeklySchedule.MINUTES_PER_DAY;
+                                int end = start + close;
+                                if (end > WeeklySchedule.MINUTES_PER_WEEK) {
+                                    end -= WeeklySchedule.MINUTES_PER_WEEK;
+                                }
+                                writer.addHours(shape, start + open, end);
+                            }
+                        }
+                    }
+                } else {
+                    throw new IOException("Line " + lineNumber + ": unknown record " + kind);
+                }
+            } catch (IllegalArgumentException e) {
+                // also covers NumberFormatException
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return writer;
+    }
+
+    private static void expect(String[] fields, int count, int lineNumber) throws IOException {
+        if (fields.length != count) {
+            throw new IOException("Line " + lineNumber + ": expected " + count + " fields, got " + fields.length);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    private static int floor(String value) {
+        return value.equals("-") ? CampusMapFormat.NO_FLOOR : Integer.parseInt(value);
+    }
+
+    // "Mon-Fri", "Mon,Wed,Fri", "Sat-Mon", "Tue,Thu-Sat"; Monday first
+    private static boolean[] days(String value) {
+        boolean[] days = new boolean[7];
+        for (String part : value.split(",")) {
+            String[] range = part.trim().split("-");
+            if (range.length > 2) {
+                throw new IllegalArgumentException("bad days " + value);
+            }
+            int first = day(range[0]);
+            int last = day(range[range.length - 1]);
+            for (int day = first; ; day = (day + 1) % 7) {
+                days[day] = true;
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+
+    private static int day(String name) {
+        for (int day = 0; day < DAYS.length; day++) {
+            if (DAYS[day].equalsIgnoreCase(name.trim())) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("unknown day " + name);
+    }
+
+    // "07:30"; "24:00" is the end of the day
+    private static int minuteOfDay(String value) {
+        String[] hm = value.trim().split(":");
+        if (hm.length != 2) {
+            throw new IllegalArgumentException("bad time " + value);
+        }
+        int hours = Integer.parseInt(hm[0]);
+        int minutes = Integer.parseInt(hm[1]);
+        if (hours < 0 || minutes < 0 || minutes >= 60 || hours * 60 + minutes > WeeklySchedule.MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("bad time " + value);
+        }
+        return hours * 60 + minutes;
+    }
+
+    private static int building(Map<String, Integer> buildings, String code, int lineNumber)
+            throws IOException {
+        if (code.equals("-")) {
+            return -1;
+        }
+        Integer id = buildings.get(code);
+        if (id == null) {
+            throw new IOException("Line " + lineNumber + ": unknown building " + code);
+        }
+        return id;
+    }
+
+    private static int node(Map<String, Integer> nodes, String name, int lineNumber) throws IOException {
+        Integer id = nodes.get(name);
+        if (id == null) {
+            throw new IOException("Line " + lineNumber + ": unknown node " + name);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.maptest.mapdata;
+
+/**
+ * Layout of the binary campus map file (assets/campus.bin).
+ *
+ * All values are little-endian. Coordinates are stored as fixed-point integers in units of
+ * 1e-7 degrees (about 1 cm), lengths as meters in 32-bit floats.
+ *
+ * <pre>
+ * header       magic "CMAP", u16 format version, u16 section count, i64 data version
+ * section table  per section: i32 id, i32 offset, i32 length (bytes from file start)
+ * STRINGS      i32 count, i32[count + 1] offsets into the UTF-8 blob, blob
+ * BUILDINGS    i32 count, records: code, name, aliases (string ids), lat, lng, i16 floors, i16 pad
+ * ROOMS        i32 count, records: building, number, name (string id or -1), lat, lng, i16 floor, i16 pad
+ * SHAPES       i32 count, records: id (string), u8 type, u8 pad, i16 floor, building, a, b, c
+ *              circle: a = lat, b = lng, c = radius in cm; polygon: a = first vertex, b = vertex count
+ * VERTICES     i32 count, records: lat, lng
+ * NODES        i32 count, records: lat, lng, first edge, i16 floor, i16 pad
+ * EDGES        i32 count, records: target node, f32 length
+ * HOURS        i32 count, records: shape, u16 open, u16 close (minutes of the week from Monday
+ *              00:00, see WeeklySchedule); shapes without records are always in effect
+ * </pre>
+ *
+ * Readers ignore sections they do not know, so sections can be added without bumping the
+ * format version. Changing an existing record layout requires a new version.
+ */
+public final class CampusMapFormat {
+
+    // "CMAP" read as a little-endian int
+    public static final int MAGIC = 0x50414D43;
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int SECTION_ENTRY_SIZE = 12;
+
+    public static final int SECTION_STRINGS = 1;
+    public static final int SECTION_BUILDINGS = 2;
+    public static final int SECTION_ROOMS = 3;
+    public static final int SECTION_SHAPES = 4;
+    public static final int SECTION_VERTICES = 5;
+    public static final int SECTION_NODES = 6;
+    public static final int SECTION_EDGES = 7;
+    public static final int SECTION_HOURS = 8;
+
+    public static final int BUILDING_SIZE = 24;
+    public static final int ROOM_SIZE = 24;
+    public static final int SHAPE_SIZE = 24;
+    public static final int VERTEX_SIZE = 8;
+    public static final int NODE_SIZE = 16;
+    public static final int EDGE_SIZE = 8;
+    public static final int HOURS_SIZE = 8;
+
+    public static final int SHAPE_CIRCLE = 0;
+    public static final int SHAPE_POLYGON = 1;
+
+    // floor value of shapes that apply to every floor, and of outdoor graph nodes
+    public static final short NO_FLOOR = Short.MIN_VALUE;
+
+    static final double COORDINATE_SCALE = 1e7;
+
+    /**
+     * Prevents instantiation.
+     */
+    private CampusMapFormat() {}
+
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    static double fromFixed(int fixed) {
+        return fixed / COORDINATE_SCALE;
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.maptest.mapdata;
+
+import com.example.maptest.routing.ArrayWalkwayGraph;
+import com.example.maptest.routing.GraphBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.maptest.geofence.WeeklySchedule.MINUTES_PER_WEEK;
+import static com.example.maptest.mapdata.CampusMapFormat.*;
+
+/**
+ * Assembles a binary campus map in memory. Used by {@link CampusMapCompiler} at build time
+ * and by tests; the app itself only reads maps.
+ */
+public class CampusMapWriter {
+
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+    private final List<int[]> buildings = new ArrayList<int[]>();
+    private final List<int[]> rooms = new ArrayList<int[]>();
+    private final List<int[]> shapes = new ArrayList<int[]>();
+    private final List<int[]> vertices = new ArrayList<int[]>();
+    private final List<int[]> hours = new ArrayList<int[]>();
+    private final GraphBuilder graph = new GraphBuilder();
+    private final List<Short> nodeFloors = new ArrayList<Short>();
+
+    public int addBuilding(String code, String name, String aliases, double lat, double lng, int floors) {
+        buildings.add(new int[]{string(code), string(name), string(aliases),
+                toFixed(lat), toFixed(lng), floors});
+        return buildings.size() - 1;
+    }
+
+    public int buildingCount() {
+        return buildings.size();
+    }
+
+    public int addRoom(int building, String number, String name, int floor, double lat, double lng) {
+        checkBuilding(building);
+        rooms.add(new int[]{building, string(number), string(name), toFixed(lat), toFixed(lng), floor});
+        return rooms.size() - 1;
+    }
+
+    /**
+     * @param building owning building or -1
+     * @param floor    floor number or {@link CampusMapFormat#NO_FLOOR}
+     */
+    public int addCircle(String id, int building, int floor, double lat, double lng, float radius) {
+        if (building >= 0) {
+            checkBuilding(building);
+        }
+        shapes.add(new int[]{string(id), SHAPE_CIRCLE, floor, building,
+                toFixed(lat), toFixed(lng), Math.round(radius * 100)});
+        return shapes.size() - 1;
+    }
+
+    public int addPolygon(String id, int building, int floor, double[] lats, double[] lngs) {
+        if (building >= 0) {
+            checkBuilding(building);
+        }
+        if (lats.length != lngs.length || lats.length < 3) {
+            throw new IllegalArgumentException("Polygon " + id + " needs at least 3 vertices");
+        }
+        shapes.add(new int[]{string(id), SHAPE_POLYGON, floor, building, vertices.size(), lats.length, 0});
+        for (int i = 0; i < lats.length; i++) {
+            vertices.add(new int[]{toFixed(lats[i]), toFixed(lngs[i])});
+        }
+        return shapes.size() - 1;
+    }
+
+    /**
+     * Puts a shape in effect from {@code open} to {@code close} every week, in minutes from
+     * Monday 00:00; a shape may have several intervals. See WeeklySchedule.
+     */
+    public void addHours(int shape, int open, int close) {
+        if (shape < 0 || shape >= shapes.size()) {
+            throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+        if (open < 0 || open >= MINUTES_PER_WEEK || close < 0 || close > MINUTES_PER_WEEK) {
+            throw new IllegalArgumentException("Not a minute of the week: " + open + "-" + close);
+        }
+        hours.add(new int[]{shape, open, close});
+    }
+
+    /**
+     * @param floor floor number, or {@link CampusMapFormat#NO_FLOOR} for outdoor walkways
+     */
+    public int addNode(double lat, double lng, int floor) {
+        nodeFloors.add((short) floor);
+        return graph.addNode(lat, lng);
+    }
+
+    public void addWalkway(int a, int b) {
+        graph.addWalkway(a, b);
+    }
+
+    public void addEdge(int from, int to, float length) {
+        graph.addEdge(from, to, length);
+    }
+
+    private void checkBuilding(int building) {
+        if (building < 0 || building >= buildings.size()) {
+            throw new IllegalArgumentException("Unknown building " + building);
+        }
+    }
+
+    private int string(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    public byte[] toByteArray() {
+        byte[][] encoded = new byte[strings.size()][];
+        int blobSize = 0;
+        try {
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes("UTF-8");
+                blobSize += encoded[i].length;
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        ArrayWalkwayGraph g = graph.build();
+
+        int sections = 8;
+        int[] sizes = {
+                4 + (encoded.length + 1) * 4 + blobSize,
+                4 + buildings.size() * BUILDING_SIZE,
+                4 + rooms.size() * ROOM_SIZE,
+                4 + shapes.size() * SHAPE_SIZE,
+                4 + vertices.size() * VERTEX_SIZE,
+                4 + g.nodeCount() * NODE_SIZE,
+                4 + g.edgeCount() * EDGE_SIZE,
+                4 + hours.size() * HOURS_SIZE,
+        };
+        int total = HEADER_SIZE + sections * SECTION_ENTRY_SIZE;
+        int[] offsets = new int[sections];
+        for (int i = 0; i < sections; i++) {
+            // keep every section 4-byte aligned
+            offsets[i] = total;
+            total += (sizes[i] + 3) & ~3;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(total).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putShort((short) VERSION).putShort((short) sections).putLong(0);
+        for (int i = 0; i < sections; i++) {
+            out.putInt(i + 1).putInt(offsets[i]).putInt(sizes[i]);
+        }
+
+        out.position(offsets[0]);
+        out.putInt(encoded.length);
+        int blobOffset = 0;
+        for (byte[] bytes : encoded) {
+            out.putInt(blobOffset);
+            blobOffset += bytes.length;
+        }
+        out.putInt(blobOffset);
+        for (byte[] bytes : encoded) {
+            out.put(bytes);
+        }
+
+        out.position(offsets[1]);
+        out.putInt(buildings.size());
+        for (int[] b : buildings) {
+            out.putInt(b[0]).putInt(b[1]).putInt(b[2]).putInt(b[3]).putInt(b[4])
+                    .putShort((short) b[5]).putShort((short) 0);
+        }
+
+        out.position(offsets[2]);
+        out.putInt(rooms.size());
+        for (int[] r : rooms) {
+            out.putInt(r[0]).putInt(r[1]).putInt(r[2]).putInt(r[3]).putInt(r[4])
+                    .putShort((short) r[5]).putShort((short) 0);
+        }
+
+        out.position(offsets[3]);
+        out.putInt(shapes.size());
+        for (int[] s : shapes) {
+            out.putInt(s[0]).put((byte) s[1]).put((byte) 0).putShort((short) s[2])
+                    .putInt(s[3]).putInt(s[4]).putInt(s[5]).putInt(s[6]);
+        }
+
+        out.position(offsets[4]);
+        out.putInt(vertices.size());
+        for (int[] v : vertices) {
+            out.putInt(v[0]).putInt(v[1]);
+        }
+
+        out.position(offsets[5]);
+        out.putInt(g.nodeCount());
+        for (int n = 0; n < g.nodeCount(); n++) {
+            out.putInt(toFixed(g.lat(n))).putInt(toFixed(g.lng(n))).putInt(g.firstEdge(n))
+                    .putShort(nodeFloors.get(n)).putShort((short) 0);
+        }
+
+        out.position(offsets[6]);
+        out.putInt(g.edgeCount());
+        for (int e = 0; e < g.edgeCount(); e++) {
+            out.putInt(g.edgeTarget(e)).putFloat(g.edgeLength(e));
+        }
+
+        out.position(offsets[7]);
+        out.putInt(hours.size());
+        for (int[] h : hours) {
+            out.putInt(h[0]).putShort((short) h[1]).putShort((short) h[2]);
+        }
+
+        // the data version is a hash of everything after the header
+        byte[] bytes = out.array();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = HEADER_SIZE; i < bytes.length; i++) {
+            hash ^= bytes[i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        out.putLong(8, hash);
+        return bytes;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(toByteArray());
+    }
+}
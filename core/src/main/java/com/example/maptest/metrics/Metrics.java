@@ -0,0 +1,141 @@
+package com.example.maptest.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named latency histograms, all in nanoseconds of System.nanoTime().
+ *
+ * Components start a span where an operation begins and end it where it completes; the
+ * registry keeps one histogram per name for the life of the process. Use {@link #get()} for
+ * the process-wide instance; tests can create their own.
+ */
+public final class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    // percentiles written by dump() and writeJson()
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final ConcurrentMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the histogram for the name, creating it on first use.
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public Span start(String name) {
+        return new Span(histogram(name), System.nanoTime());
+    }
+
+    /**
+     * Starts a span at an earlier point on the System.nanoTime() clock.
+     */
+    public Span startAt(String name, long startNanos) {
+        return new Span(histogram(name), startNanos);
+    }
+
+    /**
+     * Records a duration measured elsewhere, e.g. against another monotonic clock.
+     */
+    public void record(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Returns a consistent copy of every histogram, sorted by name.
+     */
+    public Map<String, Histogram> snapshot() {
+        Map<String, Histogram> copy = new TreeMap<String, Histogram>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns one line per histogram with count and percentiles in milliseconds, for logs.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : snapshot().entrySet()) {
+            Histogram h = entry.getValue();
+            out.append(entry.getKey()).append(" count=").append(h.getCount());
+            for (double p : PERCENTILES) {
+                out.append(" p").append((int) p).append('=').append(millis(h.getValueAtPercentile(p)));
+            }
+            out.append(" max=").append(millis(h.getMax())).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes every histogram as a JSON object keyed by name, with values in nanoseconds, e.g.
+     * {"version":"1.0","histograms":{"fix.first":{"count":3,"min":...,"p50":...,...}}}
+     */
+    public void writeJson(Appendable out, String version) throws IOException {
+        out.append("{\"version\":");
+        quote(out, version);
+        out.append(",\"histograms\":{");
+        boolean first = true;
+        for (Map.Entry<String, Histogram> entry : snapshot().entrySet()) {
+            Histogram h = entry.getValue();
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            quote(out, entry.getKey());
+            out.append(":{\"count\":").append(String.valueOf(h.getCount()))
+                    .append(",\"min\":").append(String.valueOf(h.getMin()))
+                    .append(",\"mean\":").append(String.valueOf(Math.round(h.getMean())));
+            for (double p : PERCENTILES) {
+                out.append(",\"p").append(String.valueOf((int) p)).append("\":")
+                        .append(String.valueOf(h.getValueAtPercentile(p)));
+            }
+            out.append(",\"max\":").append(String.valueOf(h.getMax())).append('}');
+        }
+        out.append("}}");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+
+    private static void quote(Appendable out, String text) throws IOException {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
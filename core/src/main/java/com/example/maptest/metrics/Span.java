@@ -0,0 +1,43 @@
+package com.example.maptest.metrics;
+
+/**
+ * A running timer for one named operation. Ending it records the elapsed monotonic time into
+ * the histogram of the same name; only the first end() counts.
+ */
+public final class Span {
+
+    private final Histogram histogram;
+    private final long startNanos;
+    private boolean ended;
+
+    Span(Histogram histogram, long startNanos) {
+        this.histogram = histogram;
+        this.startNanos = startNanos;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Records the time since the span started and returns it in nanoseconds, or -1 if the
+     * span had already ended.
+     */
+    public long end() {
+        return end(System.nanoTime());
+    }
+
+    synchronized long end(long nowNanos) {
+        if (ended) {
+            return -1;
+        }
+        ended = true;
+        long elapsed = nowNanos - startNanos;
+        histogram.record(elapsed);
+        return elapsed;
+    }
+
+    public synchronized boolean isEnded() {
+        return ended;
+    }
+}
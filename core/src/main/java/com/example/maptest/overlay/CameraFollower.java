@@ -0,0 +1,57 @@
+package com.example.maptest.overlay;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.tiles.TileMath;
+
+/**
+ * Decides when the camera has to follow the user's position.
+ *
+ * Every camera move costs a LatLng, a CameraUpdate and a redraw of the map, so a position
+ * that would shift the map by less than {@link #MIN_MOVE_PIXELS} at the current zoom is not
+ * worth one. Pixels are map pixels, 256 to a tile like the zoom levels. Not thread safe.
+ */
+public class CameraFollower {
+
+    // smallest shift of the map worth a camera move, in map pixels
+    static final double MIN_MOVE_PIXELS = 4;
+
+    private boolean positioned;
+    private double lat;
+    private double lng;
+
+    /**
+     * Returns true if the camera should move to the point, which then becomes the position
+     * the camera is assumed to show. The first point is always followed.
+     *
+     * @param zoom the current camera zoom level
+     */
+    public boolean follow(double lat, double lng, double zoom) {
+        if (positioned && GeoMath.fastDistance(this.lat, this.lng, lat, lng)
+                < MIN_MOVE_PIXELS * metersPerPixel(lat, zoom)) {
+            return false;
+        }
+        positioned = true;
+        this.lat = lat;
+        this.lng = lng;
+        return true;
+    }
+
+    /**
+     * Returns true once the camera has been moved to a position.
+     */
+    public boolean isPositioned() {
+        return positioned;
+    }
+
+    /**
+     * Forgets the camera position, so the next point is followed whatever its distance.
+     */
+    public void reset() {
+        positioned = false;
+    }
+
+    // TileMath.metersPerPixel() for fractional zoom levels
+    static double metersPerPixel(double lat, double zoom) {
+        return GeoMath.metersPerDegreeLng(lat) * 360.0 / (TileMath.TILE_SIZE * Math.pow(2, zoom));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.maptest.overlay;
+
+/**
+ * What one map marker should show: a single place, or a cluster of {@link #count} places
+ * drawn at their mean position.
+ */
+public final class MarkerSpec {
+
+    public final String key;
+    public final double lat;
+    public final double lng;
+    // label of the place; for clusters the label of one member
+    public final String title;
+    public final int count;
+
+    public MarkerSpec(String key, double lat, double lng, String title, int count) {
+        this.key = key;
+        this.lat = lat;
+        this.lng = lng;
+        this.title = title;
+        this.count = count;
+    }
+
+    public boolean isCluster() {
+        return count > 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MarkerSpec)) {
+            return false;
+        }
+        MarkerSpec other = (MarkerSpec) o;
+        return key.equals(other.key) && lat == other.lat && lng == other.lng
+                && count == other.count && title.equals(other.title);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode() * 31 + count;
+    }
+
+    @Override
+    public String toString() {
+        return key + (isCluster() ? " x" + count : " " + title) + " @" + lat + "," + lng;
+    }
+}
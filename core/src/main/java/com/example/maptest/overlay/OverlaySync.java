@@ -0,0 +1,165 @@
+package com.example.maptest.overlay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a set of map objects in line with the specs that should be shown, touching only what
+ * changed.
+ *
+ * Objects are matched to specs by key. A spec that is still shown and unchanged costs nothing;
+ * a changed one is rebound in place. Objects no longer needed are handed to new specs or hidden
+ * and kept as spares, so panning and zooming move existing markers and circles around instead
+ * of removing and adding them. Only spares beyond {@code maxSpare} are destroyed.
+ *
+ * Not thread safe; map objects may only be touched on the main thread anyway.
+ */
+public class OverlaySync<S, V> {
+
+    /**
+     * Creates and updates the map objects for specs.
+     */
+    public interface Binder<S, V> {
+
+        String keyOf(S spec);
+
+        /**
+         * Creates a visible object for the spec.
+         */
+        V create(S spec);
+
+        /**
+         * Updates an existing object to show the spec; also makes a hidden spare visible.
+         */
+        void bind(V view, S spec);
+
+        void hide(V view);
+
+        void destroy(V view);
+    }
+
+    private static final class Shown<S, V> {
+        S spec;
+        final V view;
+
+        Shown(S spec, V view) {
+            this.spec = spec;
+            this.view = view;
+        }
+    }
+
+    private final Binder<S, V> binder;
+    private final int maxSpare;
+
+    private Map<String, Shown<S, V>> shown = new HashMap<String, Shown<S, V>>();
+    private final ArrayDeque<V> spare = new ArrayDeque<V>();
+
+    private long created;
+    private long rebound;
+    private long destroyed;
+
+    public OverlaySync(Binder<S, V> binder, int maxSpare) {
+        this.binder = binder;
+        this.maxSpare = maxSpare;
+    }
+
+    /**
+     * Shows exactly the given specs, whose keys must be unique.
+     */
+    public void update(Collection<? extends S> specs) {
+        Map<String, Shown<S, V>> previous = shown;
+        Map<String, Shown<S, V>> next = new HashMap<String, Shown<S, V>>(specs.size() * 2);
+        List<S> unmatched = new ArrayList<S>();
+        for (S spec : specs) {
+            String key = binder.keyOf(spec);
+            Shown<S, V> entry = previous.remove(key);
+            if (entry == null) {
+                unmatched.add(spec);
+                continue;
+            }
+            if (!entry.spec.equals(spec)) {
+                binder.bind(entry.view, spec);
+                entry.spec = spec;
+                rebound++;
+            }
+            next.put(key, entry);
+        }
+
+        // objects whose spec went away are handed straight to new specs
+        Iterator<Shown<S, V>> leftover = previous.values().iterator();
+        for (S spec : unmatched) {
+            V view;
+            if (leftover.hasNext()) {
+                view = leftover.next().view;
+                leftover.remove();
+                binder.bind(view, spec);
+                rebound++;
+            } else if (!spare.isEmpty()) {
+                view = spare.pop();
+                binder.bind(view, spec);
+                rebound++;
+            } else {
+                view = binder.create(spec);
+                created++;
+            }
+            next.put(binder.keyOf(spec), new Shown<S, V>(spec, view));
+        }
+        while (leftover.hasNext()) {
+            release(leftover.next().view);
+        }
+        shown = next;
+    }
+
+    /**
+     * Destroys every object, shown or spare.
+     */
+    public void clear() {
+        for (Shown<S, V> entry : shown.values()) {
+            binder.destroy(entry.view);
+            destroyed++;
+        }
+        shown.clear();
+        while (!spare.isEmpty()) {
+            binder.destroy(spare.pop());
+            destroyed++;
+        }
+    }
+
+    private void release(V view) {
+        if (spare.size() < maxSpare) {
+            binder.hide(view);
+            spare.push(view);
+        } else {
+            binder.destroy(view);
+            destroyed++;
+        }
+    }
+
+    public int getShownCount() {
+        return shown.size();
+    }
+
+    public int getSpareCount() {
+        return spare.size();
+    }
+
+    /**
+     * Objects created since construction; should level off once the user has looked around.
+     */
+    public long getCreatedCount() {
+        return created;
+    }
+
+    public long getReboundCount() {
+        return rebound;
+    }
+
+    public long getDestroyedCount() {
+        return destroyed;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.maptest.overlay;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.search.Place;
+import com.example.maptest.tiles.TileMath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups places into grid clusters per zoom level so a screen never holds more than a few
+ * hundred markers, however many places the campus has.
+ *
+ * Places falling into the same {@link #CELL_PIXELS} square of the Web Mercator pixel grid
+ * become one marker. The clusters of a zoom level are computed once, on first use; a viewport
+ * query then only filters them. A lone place keeps the same key at every zoom, so zooming in
+ * or out reuses its marker as is.
+ */
+public class PlaceClusterer {
+
+    public static final int CELL_PIXELS = 80;
+
+    private final List<Place> places;
+    private final double[] worldX;
+    private final double[] worldY;
+    private final Map<Integer, List<MarkerSpec>> byZoom = new HashMap<Integer, List<MarkerSpec>>();
+
+    public PlaceClusterer(List<Place> places) {
+        this.places = new ArrayList<Place>(places);
+        worldX = new double[places.size()];
+        worldY = new double[places.size()];
+        for (int i = 0; i < places.size(); i++) {
+            worldX[i] = TileMath.tileX(places.get(i).getLng(), 0);
+            worldY[i] = TileMath.tileY(places.get(i).getLat(), 0);
+        }
+    }
+
+    public int placeCount() {
+        return places.size();
+    }
+
+    /**
+     * Returns the markers inside the viewport at a zoom level. Fractional zooms use the
+     * clusters of the level below.
+     */
+    public List<MarkerSpec> markers(BoundingBox viewport, double zoom) {
+        List<MarkerSpec> visible = new ArrayList<MarkerSpec>();
+        for (MarkerSpec marker : clusters((int) Math.floor(zoom))) {
+            if (viewport.contains(marker.lat, marker.lng)) {
+                visible.add(marker);
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Every cluster of a zoom level.
+     */
+    synchronized List<MarkerSpec> clusters(int zoom) {
+        List<MarkerSpec> clusters = byZoom.get(zoom);
+        if (clusters == null) {
+            clusters = build(Math.max(0, Math.min(TileMath.MAX_ZOOM, zoom)));
+            byZoom.put(zoom, clusters);
+        }
+        return clusters;
+    }
+
+    private List<MarkerSpec> build(int zoom) {
+        double cells = (double) TileMath.TILE_SIZE * (1L << zoom) / CELL_PIXELS;
+        // cell key -> indices of the places in it, in first-seen order for stable output
+        LinkedHashMap<Long, List<Integer>> grid = new LinkedHashMap<Long, List<Integer>>();
+        for (int i = 0; i < places.size(); i++) {
+            long cx = (long) (worldX[i] * cells);
+            long cy = (long) (worldY[i] * cells);
+            Long cell = (cx << 32) | cy;
+            List<Integer> members = grid.get(cell);
+            if (members == null) {
+                members = new ArrayList<Integer>(1);
+                grid.put(cell, members);
+            }
+            members.add(i);
+        }
+
+        List<MarkerSpec> clusters = new ArrayList<MarkerSpec>(grid.size());
+        for (Map.Entry<Long, List<Integer>> entry : grid.entrySet()) {
+            List<Integer> members = entry.getValue();
+            if (members.size() == 1) {
+                int i = members.get(0);
+                Place place = places.get(i);
+                clusters.add(new MarkerSpec("p" + i, place.getLat(), place.getLng(), place.getLabel(), 1));
+                continue;
+            }
+            double x = 0;
+            double y = 0;
+            for (int i : members) {
+                x += worldX[i];
+                y += worldY[i];
+            }
+            x /= members.size();
+            y /= members.size();
+            long cell = entry.getKey();
+            clusters.add(new MarkerSpec("c" + zoom + ":" + (cell >>> 32) + ":" + (cell & 0xFFFFFFFFL),
+                    TileMath.lat(y, 0), TileMath.lng(x, 0),
+                    places.get(members.get(0)).getLabel(), members.size()));
+        }
+        return clusters;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+import java.util.Arrays;
+
+/**
+ * A* search with a great-circle heuristic.
+ *
+ * Every edge is at least as long as the great-circle distance between its endpoints (see
+ * {@link GraphBuilder#addEdge}), so the heuristic never overestimates and the first time the
+ * destination is settled its distance is optimal. All per-node state lives in arrays sized
+ * once for the graph and invalidated with a query stamp, so a query never clears or allocates
+ * O(nodes) memory.
+ */
+public class AStarRouter implements Router {
+
+    // guards against float rounding in edge lengths making the heuristic inadmissible
+    private static final double HEURISTIC_SCALE = 0.9999;
+
+    private final WalkwayGraph graph;
+
+    // node coordinates in radians and cos(latitude), precomputed for the heuristic
+    private final double[] latRad;
+    private final double[] lngRad;
+    private final double[] cosLat;
+
+    private final double[] distance;
+    private final double[] heuristic;
+    private final int[] parent;
+    private final int[] seen;
+    private final int[] closed;
+    private final NodeHeap open;
+    private int stamp;
+
+    // number of nodes settled by the last query, for diagnostics and tests
+    private int settled;
+
+    public AStarRouter(WalkwayGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        latRad = new double[n];
+        lngRad = new double[n];
+        cosLat = new double[n];
+        for (int i = 0; i < n; i++) {
+            latRad[i] = Math.toRadians(graph.lat(i));
+            lngRad[i] = Math.toRadians(graph.lng(i));
+            cosLat[i] = Math.cos(latRad[i]);
+        }
+        distance = new double[n];
+        heuristic = new double[n];
+        parent = new int[n];
+        seen = new int[n];
+        closed = new int[n];
+        open = new NodeHeap(n);
+    }
+
+    public WalkwayGraph getGraph() {
+        return graph;
+    }
+
+    int getSettledCount() {
+        return settled;
+    }
+
+    @Override
+    public Route route(int from, int to) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            stamp = 1;
+        }
+        settled = 0;
+        open.clear();
+
+        seen[from] = stamp;
+        distance[from] = 0;
+        parent[from] = -1;
+        heuristic[from] = estimate(from, to);
+        open.put(from, heuristic[from]);
+
+        while (!open.isEmpty()) {
+            int u = open.pop();
+            closed[u] = stamp;
+            settled++;
+            if (u == to) {
+                return buildRoute(to);
+            }
+            double du = distance[u];
+            for (int e = graph.firstEdge(u), end = graph.firstEdge(u + 1); e < end; e++) {
+                int v = graph.edgeTarget(e);
+                if (closed[v] == stamp) {
+                    continue;
+                }
+                double dv = du + graph.edgeLength(e);
+                if (seen[v] != stamp) {
+                    seen[v] = stamp;
+                    heuristic[v] = estimate(v, to);
+                } else if (dv >= distance[v]) {
+                    continue;
+                }
+                distance[v] = dv;
+                parent[v] = u;
+                open.put(v, dv + heuristic[v]);
+            }
+        }
+        return null;
+    }
+
+    private double estimate(int node, int target) {
+        double sinLat = Math.sin((latRad[target] - latRad[node]) * 0.5);
+        double sinLng = Math.sin((lngRad[target] - lngRad[node]) * 0.5);
+        double a = sinLat * sinLat + cosLat[node] * cosLat[target] * sinLng * sinLng;
+        return HEURISTIC_SCALE * 2.0 * GeoMath.EARTH_RADIUS_M * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    private Route buildRoute(int to) {
+        int count = 0;
+        for (int n = to; n >= 0; n = parent[n]) {
+            count++;
+        }
+        int[] nodes = new int[count];
+        for (int n = to, i = count - 1; n >= 0; n = parent[n], i--) {
+            nodes[i] = n;
+        }
+        return new Route(graph, nodes, distance[to]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.maptest.routing;
+
+/**
+ * Heap-backed {@link WalkwayGraph}, produced by {@link GraphBuilder}.
+ */
+public final class ArrayWalkwayGraph implements WalkwayGraph {
+
+    private final double[] lats;
+    private final double[] lngs;
+    private final int[] firstEdge;
+    private final int[] targets;
+    private final float[] lengths;
+
+    ArrayWalkwayGraph(double[] lats, double[] lngs, int[] firstEdge, int[] targets, float[] lengths) {
+        this.lats = lats;
+        this.lngs = lngs;
+        this.firstEdge = firstEdge;
+        this.targets = targets;
+        this.lengths = lengths;
+    }
+
+    @Override
+    public int nodeCount() {
+        return lats.length;
+    }
+
+    @Override
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    @Override
+    public double lat(int node) {
+        return lats[node];
+    }
+
+    @Override
+    public double lng(int node) {
+        return lngs[node];
+    }
+
+    @Override
+    public int firstEdge(int node) {
+        return firstEdge[node];
+    }
+
+    @Override
+    public int edgeTarget(int edge) {
+        return targets[edge];
+    }
+
+    @Override
+    public float edgeLength(int edge) {
+        return lengths[edge];
+    }
+}
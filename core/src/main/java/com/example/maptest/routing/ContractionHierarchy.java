@@ -0,0 +1,476 @@
+package com.example.maptest.routing;
+
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy over a {@link WalkwayGraph}: an optional preprocessing step that
+ * trades a few seconds of work up front for queries that settle only a few hundred nodes.
+ *
+ * Nodes are contracted one at a time in order of importance (twice the edge difference plus
+ * the number of already contracted neighbours, re-evaluated lazily). Contracting a node adds
+ * a shortcut between each pair of its neighbours whose shortest path runs through it, unless
+ * a bounded witness search finds another path that is no longer. A query is then a bidirectional
+ * Dijkstra that only follows edges towards more important nodes, and the shortcuts on the
+ * resulting path are unpacked back into original edges.
+ */
+public class ContractionHierarchy implements Router {
+
+    // settled-node limits for witness searches while ordering and while contracting
+    static final int SIMULATE_WITNESS_LIMIT = 50;
+    static final int CONTRACT_WITNESS_LIMIT = 500;
+
+    private final WalkwayGraph graph;
+
+    // all edges, original ones first, then shortcuts; child edges are -1 for original edges
+    private final int[] edgeTarget;
+    private final int[] edgeSource;
+    private final double[] edgeWeight;
+    private final int[] edgeChild1;
+    private final int[] edgeChild2;
+
+    // upward edges leaving each node (forward search) and entering it from above (backward)
+    private final int[] forwardFirst;
+    private final int[] forwardEdges;
+    private final int[] backwardFirst;
+    private final int[] backwardEdges;
+
+    // query scratch state
+    private final double[] forwardDistance;
+    private final double[] backwardDistance;
+    private final int[] forwardParent;
+    private final int[] backwardParent;
+    private final int[] forwardSeen;
+    private final int[] backwardSeen;
+    private final NodeHeap forwardQueue;
+    private final NodeHeap backwardQueue;
+    private final IntList pathEdges = new IntList(64);
+    private final IntList unpackStack = new IntList(64);
+    private int stamp;
+    private int settled;
+
+    private ContractionHierarchy(WalkwayGraph graph, Preprocessor p) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        int m = p.edgeCount;
+        edgeSource = Arrays.copyOf(p.sources, m);
+        edgeTarget = Arrays.copyOf(p.targets, m);
+        edgeWeight = Arrays.copyOf(p.weights, m);
+        edgeChild1 = Arrays.copyOf(p.child1, m);
+        edgeChild2 = Arrays.copyOf(p.child2, m);
+
+        int[] rank = p.rank;
+        forwardFirst = new int[n + 1];
+        backwardFirst = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (rank[edgeTarget[e]] > rank[edgeSource[e]]) {
+                forwardFirst[edgeSource[e] + 1]++;
+            } else {
+                backwardFirst[edgeTarget[e] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            forwardFirst[i + 1] += forwardFirst[i];
+            backwardFirst[i + 1] += backwardFirst[i];
+        }
+        forwardEdges = new int[forwardFirst[n]];
+        backwardEdges = new int[backwardFirst[n]];
+        int[] fNext = Arrays.copyOf(forwardFirst, n);
+        int[] bNext = Arrays.copyOf(backwardFirst, n);
+        for (int e = 0; e < m; e++) {
+            if (rank[edgeTarget[e]] > rank[edgeSource[e]]) {
+                forwardEdges[fNext[edgeSource[e]]++] = e;
+            } else {
+                backwardEdges[bNext[edgeTarget[e]]++] = e;
+            }
+        }
+
+        forwardDistance = new double[n];
+        backwardDistance = new double[n];
+        forwardParent = new int[n];
+        backwardParent = new int[n];
+        forwardSeen = new int[n];
+        backwardSeen = new int[n];
+        forwardQueue = new NodeHeap(n);
+        backwardQueue = new NodeHeap(n);
+    }
+
+    /**
+     * Contracts the whole graph. Takes seconds for a campus-sized graph, so run it off the
+     * main thread and share the result; the returned router itself is not thread-safe.
+     */
+    public static ContractionHierarchy build(WalkwayGraph graph) {
+        Preprocessor p = new Preprocessor(graph);
+        p.contractAll();
+        return new ContractionHierarchy(graph, p);
+    }
+
+    public WalkwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Number of shortcut edges added by preprocessing.
+     */
+    public int getShortcutCount() {
+        return edgeTarget.length - graph.edgeCount();
+    }
+
+    int getSettledCount() {
+        return settled;
+    }
+
+    @Override
+    public Route route(int from, int to) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(forwardSeen, 0);
+            Arrays.fill(backwardSeen, 0);
+            stamp = 1;
+        }
+        settled = 0;
+        forwardQueue.clear();
+        backwardQueue.clear();
+
+        forwardSeen[from] = stamp;
+        forwardDistance[from] = 0;
+        forwardParent[from] = -1;
+        forwardQueue.put(from, 0);
+        backwardSeen[to] = stamp;
+        backwardDistance[to] = 0;
+        backwardParent[to] = -1;
+        backwardQueue.put(to, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        while (true) {
+            double fKey = forwardQueue.peekKey();
+            double bKey = backwardQueue.peekKey();
+            if (Math.min(fKey, bKey) >= best) {
+                break;
+            }
+            settled++;
+            if (fKey <= bKey) {
+                int u = forwardQueue.pop();
+                if (backwardSeen[u] == stamp && forwardDistance[u] + backwardDistance[u] < best) {
+                    best = forwardDistance[u] + backwardDistance[u];
+                    meeting = u;
+                }
+                for (int i = forwardFirst[u], end = forwardFirst[u + 1]; i < end; i++) {
+                    int e = forwardEdges[i];
+                    relax(edgeTarget[e], forwardDistance[u] + edgeWeight[e], e,
+                            forwardSeen, forwardDistance, forwardParent, forwardQueue);
+                }
+            } else {
+                int u = backwardQueue.pop();
+                if (forwardSeen[u] == stamp && forwardDistance[u] + backwardDistance[u] < best) {
+                    best = forwardDistance[u] + backwardDistance[u];
+                    meeting = u;
+                }
+                for (int i = backwardFirst[u], end = backwardFirst[u + 1]; i < end; i++) {
+                    int e = backwardEdges[i];
+                    relax(edgeSource[e], backwardDistance[u] + edgeWeight[e], e,
+                            backwardSeen, backwardDistance, backwardParent, backwardQueue);
+                }
+            }
+        }
+        if (meeting < 0) {
+            return null;
+        }
+        return buildRoute(from, meeting, best);
+    }
+
+    private void relax(int v, double d, int edge, int[] seen, double[] distance, int[] parent,
+                       NodeHeap queue) {
+        if (seen[v] != stamp) {
+            seen[v] = stamp;
+        } else if (d >= distance[v]) {
+            return;
+        }
+        distance[v] = d;
+        parent[v] = edge;
+        queue.put(v, d);
+    }
+
+    private Route buildRoute(int from, int meeting, double distance) {
+        // collect the hierarchy edges from source to meeting node, then on to the target
+        pathEdges.clear();
+        for (int n = meeting; forwardParent[n] >= 0; n = edgeSource[forwardParent[n]]) {
+            pathEdges.add(forwardParent[n]);
+        }
+        pathEdges.reverse();
+        for (int n = meeting; backwardParent[n] >= 0; n = edgeTarget[backwardParent[n]]) {
+            pathEdges.add(backwardParent[n]);
+        }
+
+        IntList nodes = new IntList(pathEdges.size() * 2 + 1);
+        nodes.add(from);
+        for (int i = 0; i < pathEdges.size(); i++) {
+            unpackStack.clear();
+            unpackStack.add(pathEdges.get(i));
+            while (unpackStack.size() > 0) {
+                int e = unpackStack.removeLast();
+                if (edgeChild1[e] < 0) {
+                    nodes.add(edgeTarget[e]);
+                } else {
+                    unpackStack.add(edgeChild2[e]);
+                    unpackStack.add(edgeChild1[e]);
+                }
+            }
+        }
+        return new Route(graph, nodes.toArray(), distance);
+    }
+
+    /**
+     * Mutable graph state used only while contracting.
+     */
+    private static final class Preprocessor {
+
+        final WalkwayGraph graph;
+        final int nodeCount;
+
+        int[] sources;
+        int[] targets;
+        double[] weights;
+        int[] child1;
+        int[] child2;
+        int edgeCount;
+
+        // edges touching each node, pruned lazily as neighbours get contracted
+        final IntList[] outEdges;
+        final IntList[] inEdges;
+        final boolean[] contracted;
+        final int[] contractedNeighbours;
+        final int[] rank;
+
+        // witness search scratch
+        final double[] witnessDistance;
+        final int[] witnessSeen;
+        final NodeHeap witnessQueue;
+        int witnessStamp;
+        final int[] isTarget;
+        int targetStamp;
+
+        Preprocessor(WalkwayGraph graph) {
+            this.graph = graph;
+            nodeCount = graph.nodeCount();
+            int m = graph.edgeCount();
+            int capacity = Math.max(16, m * 2);
+            sources = new int[capacity];
+            targets = new int[capacity];
+            weights = new double[capacity];
+            child1 = new int[capacity];
+            child2 = new int[capacity];
+
+            outEdges = new IntList[nodeCount];
+            inEdges = new IntList[nodeCount];
+            for (int v = 0; v < nodeCount; v++) {
+                outEdges[v] = new IntList(4);
+                inEdges[v] = new IntList(4);
+            }
+            for (int u = 0; u < nodeCount; u++) {
+                for (int e = graph.firstEdge(u), end = graph.firstEdge(u + 1); e < end; e++) {
+                    addEdge(u, graph.edgeTarget(e), graph.edgeLength(e), -1, -1);
+                }
+            }
+            contracted = new boolean[nodeCount];
+            contractedNeighbours = new int[nodeCount];
+            rank = new int[nodeCount];
+            witnessDistance = new double[nodeCount];
+            witnessSeen = new int[nodeCount];
+            witnessQueue = new NodeHeap(nodeCount);
+            isTarget = new int[nodeCount];
+        }
+
+        void addEdge(int from, int to, double weight, int c1, int c2) {
+            if (edgeCount == sources.length) {
+                int capacity = edgeCount * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+            }
+            sources[edgeCount] = from;
+            targets[edgeCount] = to;
+            weights[edgeCount] = weight;
+            child1[edgeCount] = c1;
+            child2[edgeCount] = c2;
+            outEdges[from].add(edgeCount);
+            inEdges[to].add(edgeCount);
+            edgeCount++;
+        }
+
+        void contractAll() {
+            NodeHeap order = new NodeHeap(nodeCount);
+            for (int v = 0; v < nodeCount; v++) {
+                order.put(v, priority(v));
+            }
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.pop();
+                // lazy update: re-evaluate and requeue if the node is no longer the cheapest
+                double p = priority(v);
+                if (!order.isEmpty() && p > order.peekKey()) {
+                    order.put(v, p);
+                    continue;
+                }
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = next++;
+                // neighbour priorities are refreshed lazily when they reach the top of the queue;
+                // re-evaluating them eagerly here costs 3-4x the build time for similar quality
+                IntList out = outEdges[v];
+                for (int i = 0; i < out.size(); i++) {
+                    int w = targets[out.get(i)];
+                    if (!contracted[w]) {
+                        contractedNeighbours[w]++;
+                        prune(w);
+                    }
+                }
+                IntList in = inEdges[v];
+                for (int i = 0; i < in.size(); i++) {
+                    int u = sources[in.get(i)];
+                    if (!contracted[u]) {
+                        contractedNeighbours[u]++;
+                        prune(u);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Drops edges to contracted nodes from v's lists so later searches skip them.
+         * They remain in the edge arrays and end up in the hierarchy.
+         */
+        void prune(int v) {
+            IntList out = outEdges[v];
+            int kept = 0;
+            for (int i = 0; i < out.size(); i++) {
+                if (!contracted[targets[out.get(i)]]) {
+                    out.set(kept++, out.get(i));
+                }
+            }
+            out.truncate(kept);
+            IntList in = inEdges[v];
+            kept = 0;
+            for (int i = 0; i < in.size(); i++) {
+                if (!contracted[sources[in.get(i)]]) {
+                    in.set(kept++, in.get(i));
+                }
+            }
+            in.truncate(kept);
+        }
+
+        double priority(int v) {
+            int shortcuts = contract(v, true);
+            int removed = 0;
+            IntList out = outEdges[v];
+            for (int i = 0; i < out.size(); i++) {
+                if (!contracted[targets[out.get(i)]]) {
+                    removed++;
+                }
+            }
+            IntList in = inEdges[v];
+            for (int i = 0; i < in.size(); i++) {
+                if (!contracted[sources[in.get(i)]]) {
+                    removed++;
+                }
+            }
+            return 2 * (shortcuts - removed) + contractedNeighbours[v];
+        }
+
+        /**
+         * Adds (or, when simulating, counts) the shortcuts needed to contract v.
+         */
+        int contract(int v, boolean simulate) {
+            int shortcuts = 0;
+            IntList in = inEdges[v];
+            IntList out = outEdges[v];
+            // snapshot the sizes: shortcuts added below never touch v's own lists
+            int inSize = in.size();
+            int outSize = out.size();
+            for (int i = 0; i < inSize; i++) {
+                int e1 = in.get(i);
+                int u = sources[e1];
+                if (contracted[u]) {
+                    continue;
+                }
+                double maxOut = -1;
+                int pending = 0;
+                targetStamp++;
+                for (int j = 0; j < outSize; j++) {
+                    int w = targets[out.get(j)];
+                    if (w != u && !contracted[w]) {
+                        maxOut = Math.max(maxOut, weights[out.get(j)]);
+                        if (isTarget[w] != targetStamp) {
+                            isTarget[w] = targetStamp;
+                            pending++;
+                        }
+                    }
+                }
+                if (maxOut < 0) {
+                    // no uncontracted neighbour to connect u to
+                    continue;
+                }
+                witnessSearch(u, v, weights[e1] + maxOut, pending,
+                        simulate ? SIMULATE_WITNESS_LIMIT : CONTRACT_WITNESS_LIMIT);
+                for (int j = 0; j < outSize; j++) {
+                    int e2 = out.get(j);
+                    int w = targets[e2];
+                    if (w == u || contracted[w]) {
+                        continue;
+                    }
+                    double via = weights[e1] + weights[e2];
+                    if (witnessSeen[w] == witnessStamp && witnessDistance[w] <= via) {
+                        continue;
+                    }
+                    shortcuts++;
+                    if (!simulate) {
+                        addEdge(u, w, via, e1, e2);
+                        // later witness searches from u may now use the shortcut
+                        witnessDistance[w] = via;
+                        witnessSeen[w] = witnessStamp;
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Dijkstra from source over uncontracted nodes, skipping {@code skip}, until all
+         * {@code pending} target nodes are settled, {@code maxDistance} is exceeded or
+         * {@code limit} nodes have been settled.
+         */
+        void witnessSearch(int source, int skip, double maxDistance, int pending, int limit) {
+            witnessStamp++;
+            witnessQueue.clear();
+            witnessSeen[source] = witnessStamp;
+            witnessDistance[source] = 0;
+            witnessQueue.put(source, 0);
+            int settledNodes = 0;
+            while (!witnessQueue.isEmpty() && settledNodes < limit) {
+                if (witnessQueue.peekKey() > maxDistance) {
+                    break;
+                }
+                int u = witnessQueue.pop();
+                settledNodes++;
+                if (isTarget[u] == targetStamp && --pending == 0) {
+                    break;
+                }
+                IntList out = outEdges[u];
+                for (int i = 0; i < out.size(); i++) {
+                    int e = out.get(i);
+                    int w = targets[e];
+                    if (w == skip || contracted[w]) {
+                        continue;
+                    }
+                    double d = witnessDistance[u] + weights[e];
+                    if (witnessSeen[w] != witnessStamp || d < witnessDistance[w]) {
+                        witnessSeen[w] = witnessStamp;
+                        witnessDistance[w] = d;
+                        witnessQueue.put(w, d);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+/**
+ * Finds the walkways near a point, for snapping fixes onto the graph (see MapMatcher).
+ *
+ * Every walkway is bucketed into each cell of a uniform grid its bounding box touches, in
+ * compressed sparse row form like NodeLocator. A two-way walkway is stored as two edges but
+ * indexed once, under the edge from its lower numbered node. Immutable and thread safe; a
+ * lookup only writes to the Candidates it is given.
+ */
+public class EdgeLocator {
+
+    // side of a grid cell in meters
+    static final double CELL_METERS = 50;
+
+    /**
+     * Walkways near a point, nearest first, with the point projected onto each. Reused from
+     * lookup to lookup.
+     */
+    public static final class Candidates {
+        final int[] edge;
+        // where the projection lies along the edge, 0 at its source and 1 at its target
+        final double[] fraction;
+        final double[] lat;
+        final double[] lng;
+        // meters from the point to the projection
+        final double[] distance;
+        int size;
+
+        public Candidates(int capacity) {
+            edge = new int[capacity];
+            fraction = new double[capacity];
+            lat = new double[capacity];
+            lng = new double[capacity];
+            distance = new double[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getEdge(int i) {
+            return edge[i];
+        }
+
+        public double getFraction(int i) {
+            return fraction[i];
+        }
+
+        public double getLat(int i) {
+            return lat[i];
+        }
+
+        public double getLng(int i) {
+            return lng[i];
+        }
+
+        public double getDistance(int i) {
+            return distance[i];
+        }
+    }
+
+    private final WalkwayGraph graph;
+    // source node of every edge, which the graph only has implicitly
+    private final int[] source;
+    private final double minLat;
+    private final double minLng;
+    private final double cellLat;
+    private final double cellLng;
+    private final int rows;
+    private final int columns;
+    // edges of cell c are cellEdges[cellStart[c]..cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private final int[] cellEdges;
+
+    public EdgeLocator(WalkwayGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        source = new int[graph.edgeCount()];
+        for (int node = 0; node < n; node++) {
+            for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                source[e] = node;
+            }
+        }
+        double loLat = Double.MAX_VALUE, loLng = Double.MAX_VALUE;
+        double hiLat = -Double.MAX_VALUE, hiLng = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            loLat = Math.min(loLat, graph.lat(i));
+            loLng = Math.min(loLng, graph.lng(i));
+            hiLat = Math.max(hiLat, graph.lat(i));
+            hiLng = Math.max(hiLng, graph.lng(i));
+        }
+        if (n == 0) {
+            loLat = loLng = hiLat = hiLng = 0;
+        }
+        minLat = loLat;
+        minLng = loLng;
+        cellLat = CELL_METERS / GeoMath.METERS_PER_DEGREE;
+        cellLng = CELL_METERS / GeoMath.metersPerDegreeLng((loLat + hiLat) / 2);
+        rows = (int) ((hiLat - loLat) / cellLat) + 1;
+        columns = (int) ((hiLng - loLng) / cellLng) + 1;
+
+        // count, then fill, the cells each indexed edge's bounding box touches
+        cellStart = new int[rows * columns + 1];
+        for (int e = 0; e < source.length; e++) {
+            if (isIndexed(e)) {
+                forEachCell(e, null, null);
+            }
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellEdges = new int[cellStart[rows * columns]];
+        int[] next = new int[rows * columns];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int e = 0; e < source.length; e++) {
+            if (isIndexed(e)) {
+                forEachCell(e, next, cellEdges);
+            }
+        }
+    }
+
+    // the edge from the higher numbered node of a two-way walkway is left out
+    private boolean isIndexed(int edge) {
+        int from = source[edge];
+        int to = graph.edgeTarget(edge);
+        if (from < to) {
+            return true;
+        }
+        for (int e = graph.firstEdge(to); e < graph.firstEdge(to + 1); e++) {
+            if (graph.edgeTarget(e) == from) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // counts the edge into cellStart, or with next given, files it into cells
+    private void forEachCell(int edge, int[] next, int[] cells) {
+        int to = graph.edgeTarget(edge);
+        int r0 = row(Math.min(graph.lat(source[edge]), graph.lat(to)));
+        int r1 = row(Math.max(graph.lat(source[edge]), graph.lat(to)));
+        int c0 = column(Math.min(graph.lng(source[edge]), graph.lng(to)));
+        int c1 = column(Math.max(graph.lng(source[edge]), graph.lng(to)));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                if (next == null) {
+                    cellStart[cell + 1]++;
+                } else {
+                    cells[next[cell]++] = edge;
+                }
+            }
+        }
+    }
+
+    public WalkwayGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Node the edge starts at.
+     */
+    public int source(int edge) {
+        return source[edge];
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / cellLat)));
+    }
+
+    private int column(double lng) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lng - minLng) / cellLng)));
+    }
+
+    /**
+     * Fills {@code out} with the walkways within {@code radius} meters of the point, as many
+     * as it holds, nearest first. Allocates nothing.
+     *
+     * @return the number of walkways found
+     */
+    public int nearest(double lat, double lng, double radius, Candidates out) {
+        out.size = 0;
+        if (cellEdges.length == 0) {
+            return 0;
+        }
+        double kx = GeoMath.metersPerDegreeLng(lat);
+        int r0 = row(lat - radius / GeoMath.METERS_PER_DEGREE);
+        int r1 = row(lat + radius / GeoMath.METERS_PER_DEGREE);
+        int c0 = column(lng - radius / kx);
+        int c1 = column(lng + radius / kx);
+        int capacity = out.edge.length;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int edge = cellEdges[k];
+                    int from = source[edge];
+                    int to = graph.edgeTarget(edge);
+                    // local equirectangular projection around the point, as in GeoMath
+                    double ax = (graph.lng(from) - lng) * kx;
+                    double ay = (graph.lat(from) - lat) * GeoMath.METERS_PER_DEGREE;
+                    double dx = (graph.lng(to) - lng) * kx - ax;
+                    double dy = (graph.lat(to) - lat) * GeoMath.METERS_PER_DEGREE - ay;
+                    double len2 = dx * dx + dy * dy;
+                    double t = len2 == 0 ? 0 : -(ax * dx + ay * dy) / len2;
+                    if (t < 0) t = 0;
+                    else if (t > 1) t = 1;
+                    double px = ax + t * dx;
+                    double py = ay + t * dy;
+                    double d = Math.sqrt(px * px + py * py);
+                    if (d > radius || (out.size == capacity && d >= out.distance[capacity - 1])
+                            || contains(out, edge)) {
+                        continue;
+                    }
+                    // insertion into the short sorted list
+                    int i = Math.min(out.size, capacity - 1);
+                    while (i > 0 && out.distance[i - 1] > d) {
+                        out.edge[i] = out.edge[i - 1];
+                        out.fraction[i] = out.fraction[i - 1];
+                        out.lat[i] = out.lat[i - 1];
+                        out.lng[i] = out.lng[i - 1];
+                        out.distance[i] = out.distance[i - 1];
+                        i--;
+                    }
+                    out.edge[i] = edge;
+                    out.fraction[i] = t;
+                    out.lat[i] = lat + py / GeoMath.METERS_PER_DEGREE;
+                    out.lng[i] = lng + px / kx;
+                    out.distance[i] = d;
+                    if (out.size < capacity) {
+                        out.size++;
+                    }
+                }
+            }
+        }
+        return out.size;
+    }
+
+    // an edge spanning several cells is met once in each
+    private static boolean contains(Candidates candidates, int edge) {
+        for (int i = 0; i < candidates.size; i++) {
+            if (candidates.edge[i] == edge) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
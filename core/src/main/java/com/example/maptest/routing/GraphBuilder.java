@@ -0,0 +1,87 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+import java.util.Arrays;
+
+/**
+ * Collects nodes and edges in any order and packs them into an {@link ArrayWalkwayGraph}.
+ */
+public class GraphBuilder {
+
+    private double[] lats = new double[64];
+    private double[] lngs = new double[64];
+    private int nodes;
+
+    private int[] sources = new int[128];
+    private int[] targets = new int[128];
+    private float[] lengths = new float[128];
+    private int edges;
+
+    /**
+     * @return the id of the new node
+     */
+    public int addNode(double lat, double lng) {
+        if (nodes == lats.length) {
+            lats = Arrays.copyOf(lats, nodes * 2);
+            lngs = Arrays.copyOf(lngs, nodes * 2);
+        }
+        lats[nodes] = lat;
+        lngs[nodes] = lng;
+        return nodes++;
+    }
+
+    /**
+     * Adds a two-way walkway whose length is the great-circle distance between its ends.
+     */
+    public void addWalkway(int a, int b) {
+        float length = (float) GeoMath.haversine(lats[a], lngs[a], lats[b], lngs[b]);
+        addEdge(a, b, length);
+        addEdge(b, a, length);
+    }
+
+    /**
+     * Adds a one-way edge, e.g. an escalator. The length is raised to the great-circle
+     * distance if it is shorter, so that the A* heuristic stays admissible.
+     */
+    public void addEdge(int from, int to, float length) {
+        if (from < 0 || from >= nodes || to < 0 || to >= nodes) {
+            throw new IllegalArgumentException("Unknown node in edge " + from + " -> " + to);
+        }
+        float minimum = (float) GeoMath.haversine(lats[from], lngs[from], lats[to], lngs[to]);
+        if (edges == sources.length) {
+            sources = Arrays.copyOf(sources, edges * 2);
+            targets = Arrays.copyOf(targets, edges * 2);
+            lengths = Arrays.copyOf(lengths, edges * 2);
+        }
+        sources[edges] = from;
+        targets[edges] = to;
+        lengths[edges] = Math.max(length, minimum);
+        edges++;
+    }
+
+    public int nodeCount() {
+        return nodes;
+    }
+
+    public ArrayWalkwayGraph build() {
+        // counting sort of the edges by source node
+        int[] first = new int[nodes + 1];
+        for (int e = 0; e < edges; e++) {
+            first[sources[e] + 1]++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            first[n + 1] += first[n];
+        }
+        int[] next = Arrays.copyOf(first, nodes);
+        int[] packedTargets = new int[edges];
+        float[] packedLengths = new float[edges];
+        for (int e = 0; e < edges; e++) {
+            int slot = next[sources[e]]++;
+            packedTargets[slot] = targets[e];
+            packedLengths[slot] = lengths[e];
+        }
+        return new ArrayWalkwayGraph(Arrays.copyOf(lats, nodes), Arrays.copyOf(lngs, nodes),
+                first, packedTargets, packedLengths);
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+
+import java.util.Arrays;
+
+/**
+ * Turn-by-turn guidance along a route, one fix at a time.
+ *
+ * The maneuvers are worked out once when a route starts: every node where the walkways turn by
+ * more than SLIGHT_DEGREES, then the destination. Progress is kept as the segment of the route
+ * the user is on, and a fix only looks a few segments ahead of it for one it is nearer to, so
+ * each segment is passed once over the whole walk and a fix costs the same however long the
+ * route is. Each maneuver is announced when it becomes the next one and again PROMPT_METERS
+ * before it.
+ *
+ * A fix more than OFF_ROUTE_METERS from the route counts towards leaving it, one within
+ * ON_ROUTE_METERS clears the count and one in between changes nothing, so a user walking along
+ * the edge of the threshold is not told they are off route and back every few seconds. Fixes
+ * less accurate than MAX_ACCURACY count neither way, and only fixes on the route move the
+ * announcements on. After OFF_ROUTE_FIXES in a row the user is
+ * off route and a new route is searched from the node nearest to them: first the cheapest way
+ * back onto the old route within REJOIN_METERS, which is what a wrong turn needs and only
+ * touches the walkways around the user, and only if the old route is out of reach a route to
+ * the destination from scratch.
+ *
+ * Search state is sized once for the graph and invalidated with a stamp like AStarRouter, and
+ * nothing is allocated per fix but the events. Not thread safe.
+ */
+public class Guidance {
+
+    /**
+     * Receives the events of the guidance, on the thread that calls update().
+     */
+    public interface Listener {
+        void onGuidance(GuidanceEvent event);
+    }
+
+    // degrees the direction changes by at a node for each kind of turn
+    static final double SLIGHT_DEGREES = 30;
+    static final double TURN_DEGREES = 60;
+    static final double SHARP_DEGREES = 120;
+
+    // meters before a maneuver it is announced again
+    public static final double PROMPT_METERS = 25;
+
+    // meters from the destination along the route that count as having arrived
+    public static final double ARRIVED_METERS = 10;
+
+    // meters from the route a fix counts towards leaving it, and within which it is back on it
+    public static final double OFF_ROUTE_METERS = 25;
+    public static final double ON_ROUTE_METERS = 12;
+    static final int OFF_ROUTE_FIXES = 3;
+    static final float MAX_ACCURACY = 30;
+
+    // how far ahead of the current segment a fix looks for the one it is on
+    static final int LOOKAHEAD_SEGMENTS = 4;
+    static final double LOOKAHEAD_METERS = 60;
+
+    // meters walked back towards the old route before routing to the destination from scratch
+    static final double REJOIN_METERS = 300;
+
+    private final NodeLocator locator;
+    private final Router router;
+    private final WalkwayGraph graph;
+    private final Listener listener;
+
+    // null when not guiding
+    private Route route;
+    // meters along the route to each of its nodes
+    private double[] along;
+    // route index and type of every maneuver, the destination last
+    private int[] maneuverAt;
+    private int[] maneuverType;
+    private int maneuverCount;
+
+    private int segment;
+    // where along the current segment the last projection fell, 0 at its start and 1 at its end
+    private double fraction;
+    private double progress;
+    private int next;
+    private int announced;
+    private int prompted;
+    private int offRouteFixes;
+    private boolean offRoute;
+    private int rerouteCount;
+
+    // index of each node in the current route, the last if it is visited twice
+    private final int[] routeIndex;
+    private final int[] routeStamp;
+    private int routeVersion;
+
+    // rejoin search state
+    private final double[] distance;
+    private final int[] parent;
+    private final int[] seen;
+    private final NodeHeap open;
+    private int stamp;
+
+    /**
+     * @param locator finds the node a reroute starts at
+     * @param router  routes to the destination when the old route is out of reach; on the
+     *                locator's graph
+     */
+    public Guidance(NodeLocator locator, Router router, Listener listener) {
+        this.locator = locator;
+        this.router = router;
+        this.graph = locator.getGraph();
+        this.listener = listener;
+        int n = graph.nodeCount();
+        routeIndex = new int[n];
+        routeStamp = new int[n];
+        distance = new double[n];
+        parent = new int[n];
+        seen = new int[n];
+        open = new NodeHeap(n);
+    }
+
+    /**
+     * Starts guiding along the route, which must be on a graph with the same nodes as the
+     * locator's, e.g. another graph() of the same CampusMap. Replaces any route being followed.
+     */
+    public void start(Route route) {
+        this.route = route;
+        int n = route.size();
+        along = new double[n];
+        for (int i = 1; i < n; i++) {
+            along[i] = along[i - 1] + length(route.getNode(i - 1), route.getNode(i));
+        }
+        maneuverAt = new int[n];
+        maneuverType = new int[n];
+        maneuverCount = 0;
+        for (int i = 1; i < n - 1; i++) {
+            int type = turn(i);
+            if (type >= 0) {
+                maneuverAt[maneuverCount] = i;
+                maneuverType[maneuverCount++] = type;
+            }
+        }
+        maneuverAt[maneuverCount] = n - 1;
+        maneuverType[maneuverCount++] = GuidanceEvent.ARRIVE;
+
+        if (++routeVersion == Integer.MAX_VALUE) {
+            Arrays.fill(routeStamp, 0);
+            routeVersion = 1;
+        }
+        for (int i = 0; i < n; i++) {
+            routeStamp[route.getNode(i)] = routeVersion;
+            routeIndex[route.getNode(i)] = i;
+        }
+
+        segment = 0;
+        fraction = 0;
+        progress = 0;
+        next = 0;
+        announced = -1;
+        prompted = -1;
+        offRouteFixes = 0;
+        offRoute = false;
+    }
+
+    /**
+     * Stops guiding.
+     */
+    public void stop() {
+        route = null;
+    }
+
+    // walking length of the shortest edge between two nodes
+    private double length(int from, int to) {
+        double length = Double.MAX_VALUE;
+        for (int e = graph.firstEdge(from); e < graph.firstEdge(from + 1); e++) {
+            if (graph.edgeTarget(e) == to) {
+                length = Math.min(length, graph.edgeLength(e));
+            }
+        }
+        if (length == Double.MAX_VALUE) {
+            length = GeoMath.fastDistance(graph.lat(from), graph.lng(from), graph.lat(to), graph.lng(to));
+        }
+        return length;
+    }
+
+    // the maneuver at route node i, or -1 if the walkways go on about straight
+    private int turn(int i) {
+        double in = bearing(route.getNode(i - 1), route.getNode(i));
+        double out = bearing(route.getNode(i), route.getNode(i + 1));
+        // clockwise, so right turns are positive
+        double change = out - in;
+        if (change > 180) {
+            change -= 360;
+        } else if (change <= -180) {
+            change += 360;
+        }
+        double size = Math.abs(change);
+        if (size < SLIGHT_DEGREES) {
+            return -1;
+        }
+        boolean left = change < 0;
+        if (size < TURN_DEGREES) {
+            return left ? GuidanceEvent.SLIGHT_LEFT : GuidanceEvent.SLIGHT_RIGHT;
+        } else if (size < SHARP_DEGREES) {
+            return left ? GuidanceEvent.LEFT : GuidanceEvent.RIGHT;
+        }
+        return left ? GuidanceEvent.SHARP_LEFT : GuidanceEvent.SHARP_RIGHT;
+    }
+
+    // degrees clockwise from north, in the local equirectangular projection
+    private double bearing(int from, int to) {
+        double dx = (graph.lng(to) - graph.lng(from)) * Math.cos(Math.toRadians(graph.lat(from)));
+        double dy = graph.lat(to) - graph.lat(from);
+        return Math.toDegrees(Math.atan2(dx, dy));
+    }
+
+    /**
+     * Moves the user along the route to the fix and tells the listener what changed: the next
+     * maneuver, leaving the route and the new route, or arriving. Fixes come in time order.
+     */
+    public void update(Fix fix) {
+        if (route == null) {
+            return;
+        }
+        double lat = fix.getLat();
+        double lng = fix.getLng();
+        double offset = advance(lat, lng);
+        if (fix.getAccuracy() <= MAX_ACCURACY) {
+            if (offset > OFF_ROUTE_METERS) {
+                offRouteFixes++;
+            } else if (offset < ON_ROUTE_METERS) {
+                offRouteFixes = 0;
+                if (offRoute) {
+                    // back on the route, so the next maneuver is news again
+                    offRoute = false;
+                    announced = -1;
+                }
+            }
+        }
+        if (offRouteFixes >= OFF_ROUTE_FIXES) {
+            // counted afresh before the next attempt if no route is found
+            offRouteFixes = 0;
+            if (!offRoute) {
+                offRoute = true;
+                emit(GuidanceEvent.OFF_ROUTE, 0, fix.getTime());
+            }
+            Route rerouted = reroute(lat, lng);
+            if (rerouted == null) {
+                return;
+            }
+            rerouteCount++;
+            start(rerouted);
+            offset = advance(lat, lng);
+            emit(GuidanceEvent.REROUTED, 0, fix.getTime());
+        }
+        // a fix well off the route says little about where along it the user is
+        if (!offRoute && offset <= OFF_ROUTE_METERS) {
+            announce(fix.getTime());
+        }
+    }
+
+    // moves to the nearest segment within the lookahead, returns the meters the point is off it
+    private double advance(double lat, double lng) {
+        int last = route.size() - 2;
+        if (last < 0) {
+            return GeoMath.fastDistance(lat, lng, route.getLat(0), route.getLng(0));
+        }
+        double offset = project(segment, lat, lng);
+        double at = fraction;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            double position = along[segment] + at * (along[segment + 1] - along[segment]);
+            int best = segment;
+            for (int s = segment + 1; s <= last && s <= segment + LOOKAHEAD_SEGMENTS; s++) {
+                if (s > segment + 1 && along[s] - position > LOOKAHEAD_METERS) {
+                    break;
+                }
+                double d = project(s, lat, lng);
+                if (d < offset) {
+                    offset = d;
+                    at = fraction;
+                    best = s;
+                }
+            }
+            if (best != segment) {
+                segment = best;
+                moved = true;
+            }
+        }
+        fraction = at;
+        progress = along[segment] + at * (along[segment + 1] - along[segment]);
+        return offset;
+    }
+
+    // meters from the point to segment s, with where along it the projection falls in fraction
+    private double project(int s, double lat, double lng) {
+        double kx = GeoMath.metersPerDegreeLng(lat);
+        double ax = (route.getLng(s) - lng) * kx;
+        double ay = (route.getLat(s) - lat) * GeoMath.METERS_PER_DEGREE;
+        double dx = (route.getLng(s + 1) - lng) * kx - ax;
+        double dy = (route.getLat(s + 1) - lat) * GeoMath.METERS_PER_DEGREE - ay;
+        double len2 = dx * dx + dy * dy;
+        double t = len2 == 0 ? 0 : -(ax * dx + ay * dy) / len2;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+        fraction = t;
+        double px = ax + t * dx;
+        double py = ay + t * dy;
+        return Math.sqrt(px * px + py * py);
+    }
+
+    private void announce(long time) {
+        // a maneuver is passed once the user is on the segment after it
+        while (next < maneuverCount - 1 && maneuverAt[next] <= segment) {
+            next++;
+        }
+        if (getRemaining() <= ARRIVED_METERS) {
+            emit(GuidanceEvent.ARRIVED, 0, time);
+            route = null;
+            return;
+        }
+        double ahead = along[maneuverAt[next]] - progress;
+        if (announced != next) {
+            announced = next;
+            if (ahead <= PROMPT_METERS) {
+                prompted = next;
+            }
+            emit(maneuverType[next], ahead, time);
+        } else if (prompted != next && ahead <= PROMPT_METERS) {
+            prompted = next;
+            emit(maneuverType[next], ahead, time);
+        }
+    }
+
+    private void emit(int type, double ahead, long time) {
+        listener.onGuidance(new GuidanceEvent(type, ahead, getRemaining(), route, time));
+    }
+
+    // a way back onto the old route, or to the destination from scratch
+    private Route reroute(double lat, double lng) {
+        int from = locator.nearest(lat, lng);
+        if (from < 0) {
+            return null;
+        }
+        Route rerouted = rejoin(from);
+        return rerouted != null ? rerouted : router.route(from, route.getDestination());
+    }
+
+    // Dijkstra from the node, up to REJOIN_METERS, for the route node with the least walk to it
+    // plus the rest of the old route from it
+    private Route rejoin(int from) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        open.clear();
+        seen[from] = stamp;
+        distance[from] = 0;
+        parent[from] = -1;
+        open.put(from, 0);
+        double total = along[route.size() - 1];
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        while (!open.isEmpty()) {
+            double du = open.peekKey();
+            // the rest of the route adds to the walk, so nothing further can beat the best
+            if (du >= bestDistance || du > REJOIN_METERS) {
+                break;
+            }
+            int u = open.pop();
+            if (routeStamp[u] == routeVersion) {
+                double d = du + total - along[routeIndex[u]];
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = u;
+                }
+            }
+            for (int e = graph.firstEdge(u); e < graph.firstEdge(u + 1); e++) {
+                int v = graph.edgeTarget(e);
+                double dv = du + graph.edgeLength(e);
+                if (seen[v] != stamp) {
+                    seen[v] = stamp;
+                } else if (dv >= distance[v] || !open.contains(v)) {
+                    continue;
+                }
+                distance[v] = dv;
+                parent[v] = u;
+                open.put(v, dv);
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        int walk = 0;
+        for (int n = best; n >= 0; n = parent[n]) {
+            walk++;
+        }
+        int rest = route.size() - 1 - routeIndex[best];
+        int[] nodes = new int[walk + rest];
+        for (int n = best, i = walk - 1; n >= 0; n = parent[n], i--) {
+            nodes[i] = n;
+        }
+        for (int i = 0; i < rest; i++) {
+            nodes[walk + i] = route.getNode(routeIndex[best] + 1 + i);
+        }
+        return new Route(graph, nodes, bestDistance);
+    }
+
+    /**
+     * The route being followed, or null if not guiding.
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    public boolean isOffRoute() {
+        return offRoute;
+    }
+
+    /**
+     * Meters along the route from its origin to the user.
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * Meters along the route from the user to the destination.
+     */
+    public double getRemaining() {
+        return along == null ? 0 : along[along.length - 1] - progress;
+    }
+
+    public int getRerouteCount() {
+        return rerouteCount;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.maptest.routing;
+
+/**
+ * What turn-by-turn guidance tells the user: the next maneuver and how far away it is, or a
+ * change in the state of the guidance itself (see Guidance).
+ */
+public final class GuidanceEvent {
+
+    // maneuvers, announced once when they become the next one and again when they are close
+    public static final int SLIGHT_LEFT = 0;
+    public static final int LEFT = 1;
+    public static final int SHARP_LEFT = 2;
+    public static final int SLIGHT_RIGHT = 3;
+    public static final int RIGHT = 4;
+    public static final int SHARP_RIGHT = 5;
+    // the destination is the next thing on the route
+    public static final int ARRIVE = 6;
+
+    // the state of the guidance
+    public static final int ARRIVED = 7;
+    public static final int OFF_ROUTE = 8;
+    public static final int REROUTED = 9;
+
+    private static final String[] TYPE_NAMES = {"SLIGHT_LEFT", "LEFT", "SHARP_LEFT",
+            "SLIGHT_RIGHT", "RIGHT", "SHARP_RIGHT", "ARRIVE", "ARRIVED", "OFF_ROUTE", "REROUTED"};
+
+    private final int type;
+    private final double distance;
+    private final double remaining;
+    private final Route route;
+    private final long time;
+
+    /**
+     * @param type      a maneuver, ARRIVED, OFF_ROUTE or REROUTED
+     * @param distance  meters along the route to the maneuver; 0 for the others
+     * @param remaining meters along the route to the destination
+     * @param route     the route now being followed
+     * @param time      time of the fix that caused the event, in milliseconds
+     */
+    public GuidanceEvent(int type, double distance, double remaining, Route route, long time) {
+        this.type = type;
+        this.distance = distance;
+        this.remaining = remaining;
+        this.route = route;
+        this.time = time;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public boolean isManeuver() {
+        return type <= ARRIVE;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getRemaining() {
+        return remaining;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return TYPE_NAMES[type] + (isManeuver() ? " in " + Math.round(distance) + " m" : "")
+                + " (" + Math.round(remaining) + " m to go)";
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.maptest.routing;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used while preprocessing graphs.
+ */
+final class IntList {
+
+    private int[] values;
+    private int size;
+
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, 2)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int i) {
+        return values[i];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    void set(int i, int value) {
+        values[i] = value;
+    }
+
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    int removeLast() {
+        return values[--size];
+    }
+
+    void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+
+import java.util.Arrays;
+
+/**
+ * Snaps noisy fixes onto the campus walkways, one fix at a time.
+ *
+ * A hidden Markov model in the manner of Newson and Krumm: the hidden state is the point on a
+ * walkway the user is at, the candidates for each fix are the few walkways nearest to it
+ * (see EdgeLocator), a candidate is as likely as its distance from the fix is under Gaussian
+ * noise of the fix's accuracy, and moving between the candidates of two fixes is less likely
+ * the further the walk between them along the graph exceeds what the user could have covered:
+ * the straight line between the fixes, but no more than MAX_SPEED allows. At one fix a second
+ * the noise moves a fix further than the user walks, so unlike Newson and Krumm's sparse
+ * vehicle fixes the straight line alone would let the match follow the noise.
+ * Viterbi scores are carried from fix to fix and the best candidate of the newest fix is the
+ * matched position, so a fix near two walkways goes to the one the user could have reached.
+ *
+ * The walk between two candidates is measured by a search from the earlier candidate that
+ * stops at a few times the straight distance, so only the neighbourhood of the user is ever
+ * searched. Only two layers of candidates are kept, and the search state is sized once for
+ * the graph, so matching runs in constant memory and allocates nothing per fix.
+ *
+ * A fix with no walkway within reach, or one no candidate of the previous fix can walk to,
+ * starts the model afresh. Not thread safe.
+ */
+public class MapMatcher {
+
+    // candidates kept per fix
+    public static final int MAX_CANDIDATES = 6;
+
+    // walkways are searched within twice the accuracy of a fix, but at least and at most this far
+    public static final double MIN_RADIUS = 25;
+    public static final double MAX_RADIUS = 60;
+
+    // meters of GPS noise assumed even when a fix claims better
+    static final double MIN_SIGMA = 4;
+
+    // meters by which a walk between fixes may exceed what the user could cover at 1/e likelihood
+    static final double BETA = 2;
+
+    // meters per second, a brisk walk between classes
+    static final double MAX_SPEED = 2;
+
+    // the walk between two candidates is searched up to this multiple of the straight distance,
+    // plus the slack for the candidates' own distance from their fixes
+    static final double MAX_DETOUR = 2;
+    static final double DETOUR_SLACK = 2 * MAX_RADIUS;
+
+    private final EdgeLocator locator;
+    private final WalkwayGraph graph;
+
+    private EdgeLocator.Candidates previous = new EdgeLocator.Candidates(MAX_CANDIDATES);
+    private EdgeLocator.Candidates current = new EdgeLocator.Candidates(MAX_CANDIDATES);
+    // log likelihood of the best path ending at each candidate
+    private double[] previousScore = new double[MAX_CANDIDATES];
+    private double[] score = new double[MAX_CANDIDATES];
+    private final double[] emission = new double[MAX_CANDIDATES];
+    private boolean hasPrevious;
+    private double previousLat;
+    private double previousLng;
+    private long previousTime;
+
+    // bounded search state, invalidated with a stamp like AStarRouter
+    private final double[] distance;
+    private final int[] seen;
+    private final NodeHeap open;
+    private int stamp;
+
+    private int matchedCount;
+    private int breakCount;
+
+    public MapMatcher(EdgeLocator locator) {
+        this.locator = locator;
+        this.graph = locator.getGraph();
+        distance = new double[graph.nodeCount()];
+        seen = new int[graph.nodeCount()];
+        open = new NodeHeap(graph.nodeCount());
+    }
+
+    /**
+     * Matches the next fix, in time order. If a walkway is within reach, writes the fix moved
+     * onto it into {@code out} and returns true; the accuracy, speed and time are kept.
+     */
+    public boolean match(Fix fix, Fix out) {
+        double lat = fix.getLat();
+        double lng = fix.getLng();
+        double accuracy = fix.getAccuracy();
+        double radius = Math.max(MIN_RADIUS, Math.min(MAX_RADIUS, 2 * accuracy));
+        int n = locator.nearest(lat, lng, radius, current);
+        if (n == 0) {
+            hasPrevious = false;
+            return false;
+        }
+        double sigma = Math.max(MIN_SIGMA, accuracy);
+        for (int j = 0; j < n; j++) {
+            double z = current.distance[j] / sigma;
+            emission[j] = -0.5 * z * z;
+        }
+
+        boolean connected = false;
+        if (hasPrevious) {
+            Arrays.fill(score, 0, n, Double.NEGATIVE_INFINITY);
+            double straight = GeoMath.fastDistance(previousLat, previousLng, lat, lng);
+            double seconds = Math.max(1, (fix.getTime() - previousTime) / 1000.0);
+            double reach = Math.min(straight, seconds * MAX_SPEED);
+            double bound = straight * MAX_DETOUR + DETOUR_SLACK;
+            for (int i = 0; i < previous.size; i++) {
+                if (previousScore[i] == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                search(i, bound);
+                for (int j = 0; j < n; j++) {
+                    double walk = walk(i, j);
+                    if (walk > bound) {
+                        continue;
+                    }
+                    double s = previousScore[i] - Math.max(0, walk - reach) / BETA + emission[j];
+                    if (s > score[j]) {
+                        score[j] = s;
+                        connected = true;
+                    }
+                }
+            }
+        }
+        if (!connected) {
+            if (hasPrevious) {
+                breakCount++;
+            }
+            System.arraycopy(emission, 0, score, 0, n);
+        }
+
+        int best = 0;
+        for (int j = 1; j < n; j++) {
+            if (score[j] > score[best]) {
+                best = j;
+            }
+        }
+        // keep the scores near zero however long the walk
+        double top = score[best];
+        for (int j = 0; j < n; j++) {
+            score[j] -= top;
+        }
+        out.set(current.lat[best], current.lng[best], fix.getAccuracy(), fix.getSpeed(), fix.getTime());
+        matchedCount++;
+
+        EdgeLocator.Candidates candidates = previous;
+        previous = current;
+        current = candidates;
+        double[] scores = previousScore;
+        previousScore = score;
+        score = scores;
+        previousLat = lat;
+        previousLng = lng;
+        previousTime = fix.getTime();
+        hasPrevious = true;
+        return true;
+    }
+
+    // Dijkstra from both ends of the previous candidate's edge, up to bound meters
+    private void search(int candidate, double bound) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        open.clear();
+        int edge = previous.edge[candidate];
+        double length = graph.edgeLength(edge);
+        reach(locator.source(edge), previous.fraction[candidate] * length);
+        reach(graph.edgeTarget(edge), (1 - previous.fraction[candidate]) * length);
+        while (!open.isEmpty() && open.peekKey() <= bound) {
+            int node = open.pop();
+            double d = distance[node];
+            for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                reach(graph.edgeTarget(e), d + graph.edgeLength(e));
+            }
+        }
+    }
+
+    private void reach(int node, double d) {
+        if (seen[node] != stamp) {
+            seen[node] = stamp;
+            distance[node] = d;
+            open.put(node, d);
+        } else if (d < distance[node] && open.contains(node)) {
+            distance[node] = d;
+            open.put(node, d);
+        }
+    }
+
+    // meters walked from previous candidate i to current candidate j, infinite if not searched
+    private double walk(int i, int j) {
+        int from = previous.edge[i];
+        int to = current.edge[j];
+        double length = graph.edgeLength(to);
+        if (from == to) {
+            return Math.abs(current.fraction[j] - previous.fraction[i]) * length;
+        }
+        double walk = Double.POSITIVE_INFINITY;
+        int source = locator.source(to);
+        if (seen[source] == stamp) {
+            walk = distance[source] + current.fraction[j] * length;
+        }
+        int target = graph.edgeTarget(to);
+        if (seen[target] == stamp) {
+            walk = Math.min(walk, distance[target] + (1 - current.fraction[j]) * length);
+        }
+        return walk;
+    }
+
+    /**
+     * Forgets the fixes matched so far, e.g. when the location updates restart.
+     */
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    /**
+     * Fixes matched onto a walkway since construction.
+     */
+    public int getMatchedCount() {
+        return matchedCount;
+    }
+
+    /**
+     * Times no candidate of a fix could be walked to from those of the one before, so the
+     * match started afresh.
+     */
+    public int getBreakCount() {
+        return breakCount;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.maptest.routing;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of node ids keyed by a double, with decrease-key.
+ * Sized once for a graph and reused across queries so searches do not allocate.
+ */
+final class NodeHeap {
+
+    private final int[] heap;
+    private final double[] keys;
+    // position of each node in the heap, -1 when absent
+    private final int[] positions;
+    private int size;
+
+    NodeHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int node) {
+        return positions[node] >= 0;
+    }
+
+    double peekKey() {
+        return size == 0 ? Double.POSITIVE_INFINITY : keys[heap[0]];
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts the node, or moves it to the new key if it is already queued.
+     */
+    void put(int node, double key) {
+        int pos = positions[node];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = node;
+            positions[node] = pos;
+            keys[node] = key;
+            siftUp(pos);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(pos);
+        } else {
+            keys[node] = key;
+            siftDown(pos);
+        }
+    }
+
+    int pop() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int pos) {
+        int node = heap[pos];
+        double key = keys[node];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) {
+                break;
+            }
+            heap[pos] = p;
+            positions[p] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int node = heap[pos];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int c = heap[child];
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[pos] = c;
+            positions[c] = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+/**
+ * Finds the graph node nearest to a point, so a route can start at the user's position or at a
+ * place that is not itself a node.
+ *
+ * The nodes are bucketed into a uniform grid of square cells, stored like the graph itself in
+ * compressed sparse row form. A lookup searches rings of cells around the point until the next
+ * ring cannot hold anything closer. Immutable and thread safe.
+ */
+public class NodeLocator {
+
+    // side of a grid cell in meters
+    static final double CELL_METERS = 50;
+
+    private final WalkwayGraph graph;
+    private final double minLat;
+    private final double minLng;
+    private final double cellLat;
+    private final double cellLng;
+    private final int rows;
+    private final int columns;
+    // nodes of cell c are cellNodes[cellStart[c]..cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private final int[] cellNodes;
+
+    public NodeLocator(WalkwayGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        double loLat = Double.MAX_VALUE, loLng = Double.MAX_VALUE;
+        double hiLat = -Double.MAX_VALUE, hiLng = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            loLat = Math.min(loLat, graph.lat(i));
+            loLng = Math.min(loLng, graph.lng(i));
+            hiLat = Math.max(hiLat, graph.lat(i));
+            hiLng = Math.max(hiLng, graph.lng(i));
+        }
+        if (n == 0) {
+            loLat = loLng = hiLat = hiLng = 0;
+        }
+        minLat = loLat;
+        minLng = loLng;
+        cellLat = CELL_METERS / GeoMath.METERS_PER_DEGREE;
+        cellLng = CELL_METERS / GeoMath.metersPerDegreeLng((loLat + hiLat) / 2);
+        rows = (int) ((hiLat - loLat) / cellLat) + 1;
+        columns = (int) ((hiLng - loLng) / cellLng) + 1;
+
+        cellStart = new int[rows * columns + 1];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = row(graph.lat(i)) * columns + column(graph.lng(i));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellNodes = new int[n];
+        int[] next = new int[rows * columns];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int i = 0; i < n; i++) {
+            cellNodes[next[cellOf[i]]++] = i;
+        }
+    }
+
+    public WalkwayGraph getGraph() {
+        return graph;
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / cellLat)));
+    }
+
+    private int column(double lng) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lng - minLng) / cellLng)));
+    }
+
+    /**
+     * Returns the node nearest to the point, or -1 if the graph has no nodes.
+     */
+    public int nearest(double lat, double lng) {
+        if (cellNodes.length == 0) {
+            return -1;
+        }
+        int row = row(lat);
+        int column = column(lng);
+        // a point outside the grid is at least this far from every node
+        double outside = Math.max(0, Math.max(
+                Math.max(minLat - lat, lat - (minLat + rows * cellLat)) * GeoMath.METERS_PER_DEGREE,
+                Math.max(minLng - lng, lng - (minLng + columns * cellLng)) * GeoMath.metersPerDegreeLng(lat)));
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        int maxRing = Math.max(rows, columns);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // every node in this ring or beyond is at least this far away
+            if (best >= 0 && Math.max(Math.max(0, ring - 1) * CELL_METERS, outside) > bestDistance) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                for (int c = column - ring; c <= column + ring; c += edgeRow ? 1 : 2 * ring) {
+                    if (c >= 0 && c < columns) {
+                        int cell = r * columns + c;
+                        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                            int node = cellNodes[k];
+                            double d = GeoMath.fastDistance(lat, lng, graph.lat(node), graph.lng(node));
+                            if (d < bestDistance) {
+                                bestDistance = d;
+                                best = node;
+                            }
+                        }
+                    }
+                    if (ring == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.maptest.routing;
+
+/**
+ * A path through a {@link WalkwayGraph}, as the sequence of visited nodes.
+ */
+public final class Route {
+
+    // meters per second, for the walking time shown with a route
+    public static final double WALKING_SPEED = 1.4;
+
+    private final WalkwayGraph graph;
+    private final int[] nodes;
+    private final double distance;
+
+    public Route(WalkwayGraph graph, int[] nodes, double distance) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.distance = distance;
+    }
+
+    public WalkwayGraph getGraph() {
+        return graph;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public int getNode(int i) {
+        return nodes[i];
+    }
+
+    public double getLat(int i) {
+        return graph.lat(nodes[i]);
+    }
+
+    public double getLng(int i) {
+        return graph.lng(nodes[i]);
+    }
+
+    public int getOrigin() {
+        return nodes[0];
+    }
+
+    public int getDestination() {
+        return nodes[nodes.length - 1];
+    }
+
+    /**
+     * Walking distance in meters.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Walking time in seconds at WALKING_SPEED.
+     */
+    public long getWalkingTime() {
+        return Math.round(distance / WALKING_SPEED);
+    }
+}
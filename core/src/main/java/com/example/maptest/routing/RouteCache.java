@@ -0,0 +1,399 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes between the places people keep asking about, so the common query is a lookup instead
+ * of a search.
+ *
+ * Origin and destination are quantized to a grid of CELL_METERS cells, so everyone leaving the
+ * same entrance for the same lecture hall shares one entry. A route still runs between the
+ * nodes nearest the actual endpoints: a cached one is only returned to a query that snaps to
+ * the same first and last node, so a cell spanning a wall does not send people round the wrong
+ * side of it. Such a query routes again and replaces the entry. At most {@code capacity} routes
+ * are kept, least recently used first out. Each route remembers the version of the walkway
+ * graph it was computed on; a lookup with another version misses, and {@link #invalidate}
+ * drops them all once the campus map changes.
+ *
+ * Every lookup is counted, also for pairs whose route has been evicted, and the most requested
+ * pairs are the warm set: saved to a file, loaded on the next start and precomputed in the
+ * background before anyone asks. Each pair keeps the endpoints of its latest query, and the
+ * precomputed route runs from them, so asking the same thing again hits. They are kept as
+ * coordinates rather than nodes, so the warm set stays useful across graph versions.
+ *
+ * Thread safe; routing happens outside the lock on the caller's planner.
+ */
+public class RouteCache {
+
+    // side of a quantization cell in meters
+    public static final double CELL_METERS = 20;
+
+    private static final int MAGIC = 0x52545743; // "RTWC"
+    private static final int FORMAT_VERSION = 2;
+
+    // counts are kept for this many pairs per cached route, the least requested go first
+    private static final int TRACKED_PER_ENTRY = 4;
+
+    /**
+     * An origin and destination cell, and the endpoints of the query it was made for. Only the
+     * cells are compared.
+     */
+    public static final class Key {
+        private final long origin;
+        private final long destination;
+        private final double fromLat;
+        private final double fromLng;
+        private final double toLat;
+        private final double toLng;
+
+        Key(long origin, long destination, double fromLat, double fromLng,
+            double toLat, double toLng) {
+            this.origin = origin;
+            this.destination = destination;
+            this.fromLat = fromLat;
+            this.fromLng = fromLng;
+            this.toLat = toLat;
+            this.toLng = toLng;
+        }
+
+        public double getOriginLat() {
+            return cellLat(origin);
+        }
+
+        public double getOriginLng() {
+            return cellLng(origin);
+        }
+
+        public double getDestinationLat() {
+            return cellLat(destination);
+        }
+
+        public double getDestinationLng() {
+            return cellLng(destination);
+        }
+
+        public double getFromLat() {
+            return fromLat;
+        }
+
+        public double getFromLng() {
+            return fromLng;
+        }
+
+        public double getToLat() {
+            return toLat;
+        }
+
+        public double getToLng() {
+            return toLng;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return origin == other.origin && destination == other.destination;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = origin * 31 + destination;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return "Key(" + getOriginLat() + "," + getOriginLng() + " -> "
+                    + getDestinationLat() + "," + getDestinationLng() + ")";
+        }
+    }
+
+    private static final class Entry {
+        final Route route;
+        final long graphVersion;
+
+        Entry(Route route, long graphVersion) {
+            this.route = route;
+            this.graphVersion = graphVersion;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> routes = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    private final Map<Key, Integer> requests = new HashMap<Key, Integer>();
+    private long hits;
+    private long misses;
+
+    public RouteCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Quantizes a query.
+     */
+    public static Key key(double fromLat, double fromLng, double toLat, double toLng) {
+        return new Key(cell(fromLat, fromLng), cell(toLat, toLng), fromLat, fromLng, toLat, toLng);
+    }
+
+    // row in the high half, column in the low half; columns are sized at the row's latitude
+    private static long cell(double lat, double lng) {
+        int row = (int) Math.floor(lat * GeoMath.METERS_PER_DEGREE / CELL_METERS);
+        double rowLat = (row + 0.5) * CELL_METERS / GeoMath.METERS_PER_DEGREE;
+        int column = (int) Math.floor(lng * GeoMath.metersPerDegreeLng(rowLat) / CELL_METERS);
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static double cellLat(long cell) {
+        return ((int) (cell >> 32) + 0.5) * CELL_METERS / GeoMath.METERS_PER_DEGREE;
+    }
+
+    private static double cellLng(long cell) {
+        return ((int) cell + 0.5) * CELL_METERS / GeoMath.metersPerDegreeLng(cellLat(cell));
+    }
+
+    /**
+     * Returns the cached route if it was computed on this graph version, or null. Counts the
+     * request towards the warm set either way.
+     */
+    public Route get(Key key, long graphVersion) {
+        return get(key, graphVersion, -1, -1);
+    }
+
+    /**
+     * Same as {@link #get(Key, long)}, but a route that does not run from the origin node to
+     * the destination node is a miss.
+     *
+     * @param origin      node the query starts at, as from RoutePlanner.nearestNode(), or -1
+     *                    for any
+     * @param destination node the query ends at, or -1 for any
+     */
+    public synchronized Route get(Key key, long graphVersion, int origin, int destination) {
+        // removed first, so the pair keeps this query's endpoints
+        Integer count = requests.remove(key);
+        requests.put(key, count == null ? 1 : count + 1);
+        if (requests.size() > 2 * TRACKED_PER_ENTRY * capacity) {
+            trimRequests();
+        }
+        Entry entry = routes.get(key);
+        if (entry != null && entry.graphVersion != graphVersion) {
+            routes.remove(key);
+            entry = null;
+        }
+        if (entry == null || (origin >= 0 && entry.route.getOrigin() != origin)
+                || (destination >= 0 && entry.route.getDestination() != destination)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.route;
+    }
+
+    public synchronized void put(Key key, long graphVersion, Route route) {
+        routes.put(key, new Entry(route, graphVersion));
+        Iterator<Map.Entry<Key, Entry>> eldest = routes.entrySet().iterator();
+        while (routes.size() > capacity && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the cached route for the query, routing and caching it on a miss.
+     *
+     * @return the route, or null if the destination cannot be reached
+     */
+    public Route route(double fromLat, double fromLng, double toLat, double toLng,
+                       RoutePlanner planner) {
+        Key key = key(fromLat, fromLng, toLat, toLng);
+        int origin = planner.nearestNode(fromLat, fromLng);
+        int destination = planner.nearestNode(toLat, toLng);
+        Route route = get(key, planner.getGraphVersion(), origin, destination);
+        if (route == null) {
+            route = planner.route(origin, destination);
+            if (route != null) {
+                put(key, planner.getGraphVersion(), route);
+            }
+        }
+        return route;
+    }
+
+    private synchronized boolean contains(Key key, long graphVersion) {
+        Entry entry = routes.get(key);
+        return entry != null && entry.graphVersion == graphVersion;
+    }
+
+    /**
+     * Drops every route computed on another graph version.
+     */
+    public synchronized void invalidate(long graphVersion) {
+        Iterator<Entry> entries = routes.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().graphVersion != graphVersion) {
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * The most requested pairs, most requested first.
+     */
+    public synchronized List<Key> warmSet(int size) {
+        List<Map.Entry<Key, Integer>> counted = byRequests();
+        List<Key> keys = new ArrayList<Key>(Math.min(size, counted.size()));
+        for (int i = 0; i < counted.size() && i < size; i++) {
+            keys.add(counted.get(i).getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Routes the warm set that is not cached for the planner's graph version yet, each pair
+     * between the endpoints it was last asked for. Takes as long as that many searches, so run
+     * it in the background.
+     *
+     * @return the number of routes computed
+     */
+    public int precompute(int size, RoutePlanner planner) {
+        int computed = 0;
+        for (Key key : warmSet(Math.min(size, capacity))) {
+            if (contains(key, planner.getGraphVersion())) {
+                continue;
+            }
+            Route route = planner.route(key.getFromLat(), key.getFromLng(),
+                    key.getToLat(), key.getToLng());
+            if (route != null) {
+                put(key, planner.getGraphVersion(), route);
+                computed++;
+            }
+        }
+        return computed;
+    }
+
+    // most requested first
+    private List<Map.Entry<Key, Integer>> byRequests() {
+        List<Map.Entry<Key, Integer>> counted = new ArrayList<Map.Entry<Key, Integer>>(requests.entrySet());
+        Collections.sort(counted, new Comparator<Map.Entry<Key, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Key, Integer> a, Map.Entry<Key, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        return counted;
+    }
+
+    private void trimRequests() {
+        List<Map.Entry<Key, Integer>> counted = byRequests();
+        for (int i = TRACKED_PER_ENTRY * capacity; i < counted.size(); i++) {
+            requests.remove(counted.get(i).getKey());
+        }
+    }
+
+    /**
+     * Writes the warm set and its request counts, replacing the old file atomically.
+     */
+    public void save(File file, int size) throws IOException {
+        List<Map.Entry<Key, Integer>> counted;
+        synchronized (this) {
+            counted = byRequests();
+        }
+        int count = Math.min(size, counted.size());
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeDouble(CELL_METERS);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                Map.Entry<Key, Integer> entry = counted.get(i);
+                Key key = entry.getKey();
+                out.writeLong(key.origin);
+                out.writeLong(key.destination);
+                out.writeDouble(key.fromLat);
+                out.writeDouble(key.fromLng);
+                out.writeDouble(key.toLat);
+                out.writeDouble(key.toLng);
+                out.writeInt(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Adds the request counts of a saved warm set; pairs asked for since keep their own
+     * endpoints. A missing or unreadable file, or one written with another cell size or format,
+     * adds nothing.
+     *
+     * @return the number of pairs loaded
+     */
+    public int load(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        Map<Key, Integer> loaded = new HashMap<Key, Integer>();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                        || in.readDouble() != CELL_METERS) {
+                    return 0;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Key key = new Key(in.readLong(), in.readLong(),
+                            in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                    loaded.put(key, in.readInt());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        synchronized (this) {
+            for (Map.Entry<Key, Integer> entry : loaded.entrySet()) {
+                Integer count = requests.get(entry.getKey());
+                requests.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+            }
+        }
+        return loaded.size();
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
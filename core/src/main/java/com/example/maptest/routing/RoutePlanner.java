@@ -0,0 +1,56 @@
+package com.example.maptest.routing;
+
+/**
+ * Routes between coordinates: both ends snap to the nearest walkway node (see
+ * {@link NodeLocator}) and the router runs between the two. Carries the version of the graph
+ * so cached routes can tell whether they are still valid.
+ *
+ * Not thread safe, like the router; use one planner per thread.
+ */
+public class RoutePlanner {
+
+    private final NodeLocator locator;
+    private final Router router;
+    private final long graphVersion;
+
+    /**
+     * @param graphVersion changes whenever the graph does, e.g. CampusMap.getDataVersion()
+     */
+    public RoutePlanner(NodeLocator locator, Router router, long graphVersion) {
+        this.locator = locator;
+        this.router = router;
+        this.graphVersion = graphVersion;
+    }
+
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    /**
+     * @return the shortest route between the nodes nearest to both points, or null if there is
+     * none
+     */
+    public Route route(double fromLat, double fromLng, double toLat, double toLng) {
+        return route(locator.nearest(fromLat, fromLng), locator.nearest(toLat, toLng));
+    }
+
+    /**
+     * @param from a node, or -1 if there is none
+     * @param to   a node, or -1 if there is none
+     * @return the shortest route between the nodes, or null if there is none
+     */
+    public Route route(int from, int to) {
+        if (from < 0 || to < 0) {
+            return null;
+        }
+        return router.route(from, to);
+    }
+
+    /**
+     * The node a route from or to the point starts or ends at, -1 if the graph is empty. Unlike
+     * routing, safe on any thread.
+     */
+    public int nearestNode(double lat, double lng) {
+        return locator.nearest(lat, lng);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.maptest.routing;
+
+/**
+ * Shortest-path search between two graph nodes.
+ * Implementations keep per-query scratch state and are not thread-safe; use one router per thread.
+ */
+public interface Router {
+
+    /**
+     * @return the shortest route, or null if the destination cannot be reached
+     */
+    Route route(int from, int to);
+}
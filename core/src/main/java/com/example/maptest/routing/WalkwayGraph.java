@@ -0,0 +1,33 @@
+package com.example.maptest.routing;
+
+/**
+ * Directed walkway and indoor-corridor graph in compressed sparse row form.
+ *
+ * Nodes are numbered 0..nodeCount()-1 and edges 0..edgeCount()-1. The outgoing edges of
+ * node n are the contiguous range firstEdge(n)..firstEdge(n + 1) - 1, which lets the routers
+ * walk adjacency without allocating. A two-way walkway is stored as two edges.
+ */
+public interface WalkwayGraph {
+
+    int nodeCount();
+
+    int edgeCount();
+
+    double lat(int node);
+
+    double lng(int node);
+
+    /**
+     * Index of the first outgoing edge of the node. {@code firstEdge(nodeCount())} equals
+     * {@code edgeCount()}.
+     */
+    int firstEdge(int node);
+
+    int edgeTarget(int edge);
+
+    /**
+     * Walking length of the edge in meters, never shorter than the great-circle distance
+     * between its endpoints.
+     */
+    float edgeLength(int edge);
+}
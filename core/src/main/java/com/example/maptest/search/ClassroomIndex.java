@@ -0,0 +1,332 @@
+package com.example.maptest.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory search index over building and room names, codes and aliases.
+ *
+ * Everything expensive happens once, in the constructor: every place is tokenized into a
+ * sorted term dictionary with posting lists, and every term is broken into trigrams for typo
+ * tolerance. A keystroke then costs a binary search for the prefix range of each query token,
+ * a trigram lookup for misspelled tokens and a merge of the matching posting lists.
+ *
+ * Query tokens are combined with AND. A token matches a term exactly, as a prefix, or within
+ * one or two edits (for tokens of at least 4 or 8 characters). When no place matches every
+ * token, the places matching the most tokens are returned instead.
+ */
+public class ClassroomIndex {
+
+    static final int SCORE_EXACT = 100;
+    static final int SCORE_PREFIX = 70;
+    static final int SCORE_FUZZY = 40;
+
+    // cap on the number of misspelled terms considered per query token
+    static final int MAX_FUZZY_TERMS = 64;
+
+    private final Place[] places;
+
+    // sorted, unique terms and the ascending ids of the places containing each of them
+    private final String[] terms;
+    private final int[][] postings;
+
+    // padded trigram -> ids of the terms containing it
+    private final Map<String, int[]> trigrams;
+
+    // scratch state reused by every search; searches are serialized on this instance
+    private final int[] placeStamp;
+    private final int[] placeMatched;
+    private final int[] placeScore;
+    private final int[] tokenStamp;
+    private final int[] tokenScore;
+    private final int[] tokenTouched;
+    private final int[] queryTouched;
+    private final int[] termStamp;
+    private final int[] termCount;
+    private final int[] termTouched;
+    private int stamp;
+
+    public ClassroomIndex(Collection<Place> source) {
+        places = source.toArray(new Place[source.size()]);
+
+        TreeMap<String, List<Integer>> dictionary = new TreeMap<String, List<Integer>>();
+        for (int id = 0; id < places.length; id++) {
+            for (String term : termsOf(places[id])) {
+                List<Integer> list = dictionary.get(term);
+                if (list == null) {
+                    list = new ArrayList<Integer>(2);
+                    dictionary.put(term, list);
+                }
+                list.add(id);
+            }
+        }
+
+        terms = dictionary.keySet().toArray(new String[dictionary.size()]);
+        postings = new int[terms.length][];
+        Map<String, List<Integer>> grams = new HashMap<String, List<Integer>>();
+        int t = 0;
+        for (Map.Entry<String, List<Integer>> entry : dictionary.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] list = new int[ids.size()];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = ids.get(i);
+            }
+            postings[t] = list;
+            for (String gram : trigramsOf(entry.getKey())) {
+                List<Integer> termIds = grams.get(gram);
+                if (termIds == null) {
+                    termIds = new ArrayList<Integer>(4);
+                    grams.put(gram, termIds);
+                }
+                termIds.add(t);
+            }
+            t++;
+        }
+        trigrams = new HashMap<String, int[]>(grams.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : grams.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] list = new int[ids.size()];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = ids.get(i);
+            }
+            trigrams.put(entry.getKey(), list);
+        }
+
+        placeStamp = new int[places.length];
+        placeMatched = new int[places.length];
+        placeScore = new int[places.length];
+        tokenStamp = new int[places.length];
+        tokenScore = new int[places.length];
+        tokenTouched = new int[places.length];
+        queryTouched = new int[places.length];
+        termStamp = new int[terms.length];
+        termCount = new int[terms.length];
+        termTouched = new int[terms.length];
+    }
+
+    public int size() {
+        return places.length;
+    }
+
+    public Place get(int id) {
+        return places[id];
+    }
+
+    /**
+     * Returns up to {@code limit} places matching the query, best match first.
+     */
+    public synchronized List<Place> search(CharSequence query, int limit) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        List<Place> results = new ArrayList<Place>(limit);
+        if (tokens.isEmpty() || limit <= 0 || places.length == 0) {
+            return results;
+        }
+
+        int queryStamp = nextStamp();
+        int touched = 0;
+        for (int k = 0; k < tokens.size(); k++) {
+            int tokenCount = matchToken(tokens.get(k));
+            for (int i = 0; i < tokenCount; i++) {
+                int p = tokenTouched[i];
+                if (placeStamp[p] != queryStamp) {
+                    placeStamp[p] = queryStamp;
+                    placeMatched[p] = 0;
+                    placeScore[p] = 0;
+                    queryTouched[touched++] = p;
+                }
+                placeMatched[p]++;
+                placeScore[p] += tokenScore[p];
+            }
+        }
+
+        int required = 0;
+        for (int i = 0; i < touched; i++) {
+            required = Math.max(required, placeMatched[queryTouched[i]]);
+        }
+
+        // keep the best `limit` candidates in a small array sorted best first
+        int[] best = new int[limit];
+        int count = 0;
+        for (int i = 0; i < touched; i++) {
+            int p = queryTouched[i];
+            if (placeMatched[p] < required) {
+                continue;
+            }
+            if (count == limit && !better(p, best[count - 1])) {
+                continue;
+            }
+            int pos = count < limit ? count++ : limit - 1;
+            while (pos > 0 && better(p, best[pos - 1])) {
+                best[pos] = best[pos - 1];
+                pos--;
+            }
+            best[pos] = p;
+        }
+        for (int i = 0; i < count; i++) {
+            results.add(places[best[i]]);
+        }
+        return results;
+    }
+
+    /**
+     * Scores every place containing a term that matches the token. Afterwards the first
+     * N entries of tokenTouched hold the matching places and tokenScore their best score.
+     *
+     * @return N, the number of matching places
+     */
+    private int matchToken(String token) {
+        int serial = nextStamp();
+        int touched = 0;
+
+        // the exact term sorts first in its own prefix range
+        int lo = lowerBound(token);
+        for (int t = lo; t < terms.length && terms[t].startsWith(token); t++) {
+            int score = terms[t].length() == token.length()
+                    ? SCORE_EXACT
+                    : SCORE_PREFIX - Math.min(20, terms[t].length() - token.length());
+            touched = addPostings(t, score, serial, touched);
+        }
+
+        int maxEdits = token.length() >= 8 ? 2 : (token.length() >= 4 ? 1 : 0);
+        if (maxEdits > 0) {
+            int candidates = fuzzyCandidates(token, maxEdits);
+            int accepted = 0;
+            for (int i = 0; i < candidates && accepted < MAX_FUZZY_TERMS; i++) {
+                int t = termTouched[i];
+                if (terms[t].startsWith(token)) {
+                    continue;
+                }
+                int distance = EditDistance.bounded(token, terms[t], maxEdits);
+                if (distance <= maxEdits) {
+                    touched = addPostings(t, SCORE_FUZZY - 10 * distance, serial, touched);
+                    accepted++;
+                }
+            }
+        }
+        return touched;
+    }
+
+    private int addPostings(int term, int score, int serial, int touched) {
+        for (int p : postings[term]) {
+            if (tokenStamp[p] != serial) {
+                tokenStamp[p] = serial;
+                tokenScore[p] = score;
+                tokenTouched[touched++] = p;
+            } else if (score > tokenScore[p]) {
+                tokenScore[p] = score;
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Collects terms sharing enough trigrams with the token to be within maxEdits of it.
+     * An insert, delete or substitution changes at most three trigrams of the padded term,
+     * and swapping two adjacent letters changes at most four.
+     *
+     * @return the number of candidate term ids written to termTouched
+     */
+    private int fuzzyCandidates(String token, int maxEdits) {
+        int serial = nextStamp();
+        int touched = 0;
+        List<String> grams = trigramsOf(token);
+        for (String gram : grams) {
+            int[] ids = trigrams.get(gram);
+            if (ids == null) {
+                continue;
+            }
+            for (int t : ids) {
+                if (termStamp[t] != serial) {
+                    termStamp[t] = serial;
+                    termCount[t] = 0;
+                    if (Math.abs(terms[t].length() - token.length()) > maxEdits) {
+                        // never a candidate, but stamp it so it is only checked once
+                        termCount[t] = Integer.MIN_VALUE;
+                        continue;
+                    }
+                    termTouched[touched++] = t;
+                }
+                termCount[t]++;
+            }
+        }
+        int needed = Math.max(1, grams.size() - 4 * maxEdits);
+        int candidates = 0;
+        for (int i = 0; i < touched; i++) {
+            int t = termTouched[i];
+            if (termCount[t] >= needed) {
+                termTouched[candidates++] = t;
+            }
+        }
+        return candidates;
+    }
+
+    private boolean better(int a, int b) {
+        if (placeScore[a] != placeScore[b]) {
+            return placeScore[a] > placeScore[b];
+        }
+        // buildings before their rooms, then shorter room numbers, then alphabetical
+        Place pa = places[a];
+        Place pb = places[b];
+        if (pa.isBuilding() != pb.isBuilding()) {
+            return pa.isBuilding();
+        }
+        String la = pa.getLabel();
+        String lb = pb.getLabel();
+        if (la.length() != lb.length()) {
+            return la.length() < lb.length();
+        }
+        return la.compareTo(lb) < 0;
+    }
+
+    private int lowerBound(String token) {
+        int lo = 0;
+        int hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(token) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            // wrap around: clear every stamp so old values cannot collide
+            Arrays.fill(placeStamp, 0);
+            Arrays.fill(tokenStamp, 0);
+            Arrays.fill(termStamp, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    static Set<String> termsOf(Place place) {
+        Set<String> terms = new LinkedHashSet<String>();
+        terms.addAll(Tokenizer.tokenize(place.getBuildingCode()));
+        terms.addAll(Tokenizer.tokenize(place.getBuildingName()));
+        terms.addAll(Tokenizer.tokenize(place.getRoom()));
+        for (String alias : place.getAliases()) {
+            terms.addAll(Tokenizer.tokenize(alias));
+        }
+        return terms;
+    }
+
+    static List<String> trigramsOf(String term) {
+        String padded = "$" + term + "$";
+        List<String> grams = new ArrayList<String>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+}
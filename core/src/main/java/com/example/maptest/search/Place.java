@@ -0,0 +1,73 @@
+package com.example.maptest.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A searchable campus destination: either a whole building or a room inside one.
+ */
+public final class Place {
+
+    private final String buildingCode;
+    private final String buildingName;
+    private final String room;
+    private final List<String> aliases;
+    private final double lat;
+    private final double lng;
+
+    /**
+     * @param room room number, or null for the building itself
+     */
+    public Place(String buildingCode, String buildingName, String room, List<String> aliases,
+                 double lat, double lng) {
+        this.buildingCode = buildingCode;
+        this.buildingName = buildingName;
+        this.room = room;
+        this.aliases = aliases == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<String>(aliases));
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    public String getBuildingCode() {
+        return buildingCode;
+    }
+
+    public String getBuildingName() {
+        return buildingName;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public boolean isBuilding() {
+        return room == null;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLng() {
+        return lng;
+    }
+
+    /**
+     * Label shown in the result list, e.g. "Cherry Hall 125 (CH)".
+     */
+    public String getLabel() {
+        String name = room == null ? buildingName : buildingName + " " + room;
+        return buildingCode == null || buildingCode.length() == 0 ? name : name + " (" + buildingCode + ")";
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.maptest.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits names and queries into lower case search tokens.
+ *
+ * Anything that is not a letter or digit separates tokens, and so does a change between
+ * letters and digits, so "CH125", "ch-125" and "CH 125" all become [ch, 125].
+ */
+public final class Tokenizer {
+
+    /**
+     * Prevents instantiation.
+     */
+    private Tokenizer() {}
+
+    public static List<String> tokenize(CharSequence text) {
+        List<String> tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        int currentKind = 0; // 0 none, 1 letters, 2 digits
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int kind = Character.isLetter(c) ? 1 : (Character.isDigit(c) ? 2 : 0);
+            if (kind != currentKind && current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+            if (kind != 0) {
+                current.append(Character.toLowerCase(c));
+            }
+            currentKind = kind;
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.maptest.startup;
+
+import com.example.maptest.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the startup of a screen as a graph of stages instead of one long onCreate().
+ *
+ * A stage is either work, run on the main or a background executor once every stage it
+ * depends on has completed, or an event such as "map ready" or "first frame" that completes
+ * when the screen says so. Independent work runs in parallel, work that needs the map or the
+ * connected client simply depends on those events, and work that is not needed for the first
+ * frame is deferred by depending on it.
+ *
+ * Every stage and event is traced in nanoseconds since start(): stages by when they became
+ * ready, started and ended, events by when they happened. Stage durations and event times are
+ * also recorded into Metrics under the prefix, so time to first frame and time to first fix
+ * can be compared between releases like every other latency.
+ *
+ * Stages are declared before start(), from any one thread; complete() may then be called
+ * from any thread. A stage that throws never completes, so its dependents never run; the
+ * exception goes to the executor.
+ */
+public class Startup {
+
+    /**
+     * One stage in the trace, times in nanoseconds since start() or -1 if not reached.
+     */
+    public static final class Entry {
+        public final String name;
+        // "main", "background" or "event"
+        public final String kind;
+        public final long readyAt;
+        public final long startedAt;
+        public final long endedAt;
+
+        Entry(String name, String kind, long readyAt, long startedAt, long endedAt) {
+            this.name = name;
+            this.kind = kind;
+            this.readyAt = readyAt;
+            this.startedAt = startedAt;
+            this.endedAt = endedAt;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-10s %-24s ready %8s start %8s end %8s",
+                    kind, name, millis(readyAt), millis(startedAt), millis(endedAt));
+        }
+    }
+
+    private static final int MAIN = 0;
+    private static final int BACKGROUND = 1;
+    private static final int EVENT = 2;
+    private static final String[] KIND_NAMES = {"main", "background", "event"};
+
+    private final class Stage implements Runnable {
+        final String name;
+        final int kind;
+        final Runnable task;
+        final String[] after;
+        final List<Stage> dependents = new ArrayList<Stage>();
+        int waiting;
+        long readyAt = -1;
+        long startedAt = -1;
+        long endedAt = -1;
+
+        Stage(String name, int kind, Runnable task, String[] after) {
+            this.name = name;
+            this.kind = kind;
+            this.task = task;
+            this.after = after;
+        }
+
+        @Override
+        public void run() {
+            synchronized (Startup.this) {
+                startedAt = now();
+            }
+            task.run();
+            finish(this);
+        }
+    }
+
+    private final Executor main;
+    private final Executor background;
+    private final Metrics metrics;
+    private final String prefix;
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+    // events completed before start()
+    private final List<Stage> early = new ArrayList<Stage>();
+    // -1 until start()
+    private long startNanos = -1;
+
+    /**
+     * @param main       runs stages that touch the UI, in order
+     * @param background runs the other stages, possibly in parallel
+     * @param prefix     prepended to the stage names in Metrics, e.g. "startup.maps."
+     */
+    public Startup(Executor main, Executor background, Metrics metrics, String prefix) {
+        this.main = main;
+        this.background = background;
+        this.metrics = metrics;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Declares work that runs on the main executor once the named stages have completed.
+     */
+    public Startup onMain(String name, Runnable task, String... after) {
+        return add(new Stage(name, MAIN, task, after));
+    }
+
+    /**
+     * Declares work that runs on the background executor once the named stages have completed.
+     */
+    public Startup inBackground(String name, Runnable task, String... after) {
+        return add(new Stage(name, BACKGROUND, task, after));
+    }
+
+    /**
+     * Declares an event, completed by {@link #complete}.
+     */
+    public Startup event(String name) {
+        return add(new Stage(name, EVENT, null, new String[0]));
+    }
+
+    private synchronized Startup add(Stage stage) {
+        if (startNanos >= 0) {
+            throw new IllegalStateException("Startup already running, cannot add " + stage.name);
+        }
+        if (stages.containsKey(stage.name)) {
+            throw new IllegalArgumentException("Duplicate stage " + stage.name);
+        }
+        stages.put(stage.name, stage);
+        return this;
+    }
+
+    /**
+     * Starts every stage without dependencies.
+     *
+     * @throws IllegalStateException if a stage depends on an unknown stage or on itself,
+     *                               directly or not
+     */
+    public void start() {
+        List<Stage> ready = new ArrayList<Stage>();
+        List<Stage> happened;
+        synchronized (this) {
+            if (startNanos >= 0) {
+                throw new IllegalStateException("Startup already running");
+            }
+            for (Stage stage : stages.values()) {
+                for (String name : stage.after) {
+                    Stage dependency = stages.get(name);
+                    if (dependency == null) {
+                        throw new IllegalStateException(stage.name + " depends on unknown stage " + name);
+                    }
+                    dependency.dependents.add(stage);
+                    stage.waiting++;
+                }
+            }
+            checkAcyclic();
+            startNanos = System.nanoTime();
+            for (Stage stage : stages.values()) {
+                if (stage.kind != EVENT && stage.waiting == 0) {
+                    stage.readyAt = 0;
+                    ready.add(stage);
+                }
+            }
+            for (Stage stage : early) {
+                stage.readyAt = stage.startedAt = 0;
+            }
+            happened = new ArrayList<Stage>(early);
+            early.clear();
+        }
+        dispatch(ready);
+        for (Stage stage : happened) {
+            finish(stage);
+        }
+    }
+
+    // Kahn's algorithm over a copy of the counts
+    private void checkAcyclic() {
+        Map<Stage, Integer> waiting = new LinkedHashMap<Stage, Integer>();
+        List<Stage> free = new ArrayList<Stage>();
+        for (Stage stage : stages.values()) {
+            waiting.put(stage, stage.waiting);
+            if (stage.waiting == 0) {
+                free.add(stage);
+            }
+        }
+        int visited = 0;
+        while (!free.isEmpty()) {
+            Stage stage = free.remove(free.size() - 1);
+            visited++;
+            for (Stage dependent : stage.dependents) {
+                int left = waiting.get(dependent) - 1;
+                waiting.put(dependent, left);
+                if (left == 0) {
+                    free.add(dependent);
+                }
+            }
+        }
+        if (visited < stages.size()) {
+            throw new IllegalStateException("Startup stages depend on each other in a cycle");
+        }
+    }
+
+    /**
+     * Completes an event; before start(), it completes as soon as startup starts. Completing it
+     * again does nothing.
+     *
+     * @throws IllegalArgumentException if there is no such event
+     */
+    public void complete(String event) {
+        Stage stage;
+        synchronized (this) {
+            stage = stages.get(event);
+            if (stage == null || stage.kind != EVENT) {
+                throw new IllegalArgumentException("No event " + event);
+            }
+            if (startNanos < 0) {
+                if (!early.contains(stage)) {
+                    early.add(stage);
+                }
+                return;
+            }
+            // set when it happened
+            if (stage.readyAt >= 0) {
+                return;
+            }
+            stage.readyAt = stage.startedAt = now();
+        }
+        finish(stage);
+    }
+
+    private void finish(Stage stage) {
+        List<Stage> ready = new ArrayList<Stage>();
+        long duration;
+        synchronized (this) {
+            stage.endedAt = now();
+            duration = stage.kind == EVENT ? stage.endedAt : stage.endedAt - stage.startedAt;
+            for (Stage dependent : stage.dependents) {
+                if (--dependent.waiting == 0 && dependent.kind != EVENT) {
+                    dependent.readyAt = stage.endedAt;
+                    ready.add(dependent);
+                }
+            }
+        }
+        metrics.record(prefix + stage.name, duration);
+        dispatch(ready);
+    }
+
+    private void dispatch(List<Stage> ready) {
+        for (Stage stage : ready) {
+            (stage.kind == MAIN ? main : background).execute(stage);
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * True once the stage has run or the event has happened.
+     */
+    public synchronized boolean isDone(String name) {
+        Stage stage = stages.get(name);
+        return stage != null && stage.endedAt >= 0;
+    }
+
+    /**
+     * Nanoseconds from start() until the stage ended or the event happened, or -1.
+     */
+    public synchronized long getTime(String name) {
+        Stage stage = stages.get(name);
+        return stage == null ? -1 : stage.endedAt;
+    }
+
+    /**
+     * Stages that have not completed, and the ones each is still waiting for.
+     */
+    public synchronized Map<String, List<String>> getPending() {
+        Map<String, List<String>> pending = new LinkedHashMap<String, List<String>>();
+        for (Stage stage : stages.values()) {
+            if (stage.endedAt < 0) {
+                List<String> waitingFor = new ArrayList<String>();
+                for (String name : stage.after) {
+                    if (stages.get(name).endedAt < 0) {
+                        waitingFor.add(name);
+                    }
+                }
+                pending.put(stage.name, waitingFor);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Every stage in the order it completed, the pending ones last in declaration order.
+     */
+    public synchronized List<Entry> getTrace() {
+        List<Stage> ordered = new ArrayList<Stage>(stages.values());
+        Collections.sort(ordered, new Comparator<Stage>() {
+            @Override
+            public int compare(Stage a, Stage b) {
+                long x = a.endedAt < 0 ? Long.MAX_VALUE : a.endedAt;
+                long y = b.endedAt < 0 ? Long.MAX_VALUE : b.endedAt;
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        List<Entry> trace = new ArrayList<Entry>(ordered.size());
+        for (Stage stage : ordered) {
+            trace.add(new Entry(stage.name, KIND_NAMES[stage.kind], stage.readyAt, stage.startedAt, stage.endedAt));
+        }
+        return trace;
+    }
+
+    /**
+     * The trace as one line per stage, for logs.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : getTrace()) {
+            out.append(entry).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String millis(long nanos) {
+        return nanos < 0 ? "-" : String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.maptest.tiles;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.routing.WalkwayGraph;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Build-time tile generator: renders the campus overlay for the shallow zoom levels into a
+ * {@link TilePack}. Run by the compileCampusTiles Gradle task after the campus map is
+ * compiled; plain Java, so it can also be run by hand on any machine with a JDK:
+ *
+ * <pre>java com.example.maptest.tiles.CampusTileTool campus.bin campus-tiles.bin [min max]</pre>
+ *
+ * The deeper levels hold four times as many tiles per level and are rendered on the device
+ * when first shown instead of making the APK bigger.
+ */
+public final class CampusTileTool {
+
+    public static final int DEFAULT_MIN_ZOOM = 15;
+    public static final int DEFAULT_MAX_ZOOM = 18;
+
+    // strokes and outlines reach a little past the mapped features
+    private static final double MARGIN = 50;
+
+    /**
+     * Prevents instantiation.
+     */
+    private CampusTileTool() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("usage: CampusTileTool <campus.bin> <campus-tiles.bin> [minZoom maxZoom]");
+            System.exit(2);
+        }
+        int minZoom = args.length == 4 ? Integer.parseInt(args[2]) : DEFAULT_MIN_ZOOM;
+        int maxZoom = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_MAX_ZOOM;
+
+        long start = System.nanoTime();
+        CampusMap map = CampusMap.map(new File(args[0]));
+        TilePackWriter writer = render(map, minZoom, maxZoom);
+
+        File output = new File(args[1]);
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        OutputStream out = new FileOutputStream(output);
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Rendered " + writer.size() + " tiles, zoom " + minZoom + "-" + maxZoom
+                + ", " + writer.byteSize() / 1024 + " KB in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Renders every tile over the campus at the given zoom levels.
+     */
+    public static TilePackWriter render(CampusMap map, int minZoom, int maxZoom) {
+        TilePackWriter writer = new TilePackWriter(minZoom, maxZoom, map.getDataVersion());
+        BoundingBox bounds = bounds(map);
+        if (bounds == null) {
+            return writer;
+        }
+        TileRenderer renderer = new TileRenderer(map);
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            int minX = (int) TileMath.tileX(bounds.minLng, zoom);
+            int maxX = (int) TileMath.tileX(bounds.maxLng, zoom);
+            int minY = (int) TileMath.tileY(bounds.maxLat, zoom);
+            int maxY = (int) TileMath.tileY(bounds.minLat, zoom);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    writer.add(zoom, x, y, renderer.getTile(zoom, x, y));
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Area covered by the map's shapes and walkways plus a margin, or null for an empty map.
+     */
+    static BoundingBox bounds(CampusMap map) {
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLng = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLng = Double.NEGATIVE_INFINITY;
+        for (Region region : map.regions()) {
+            BoundingBox box = region.getBounds();
+            minLat = Math.min(minLat, box.minLat);
+            minLng = Math.min(minLng, box.minLng);
+            maxLat = Math.max(maxLat, box.maxLat);
+            maxLng = Math.max(maxLng, box.maxLng);
+        }
+        WalkwayGraph graph = map.graph();
+        for (int n = 0; n < graph.nodeCount(); n++) {
+            minLat = Math.min(minLat, graph.lat(n));
+            minLng = Math.min(minLng, graph.lng(n));
+            maxLat = Math.max(maxLat, graph.lat(n));
+            maxLng = Math.max(maxLng, graph.lng(n));
+        }
+        if (minLat > maxLat) {
+            return null;
+        }
+        BoundingBox low = BoundingBox.around(minLat, minLng, MARGIN);
+        BoundingBox high = BoundingBox.around(maxLat, maxLng, MARGIN);
+        return new BoundingBox(low.minLat, low.minLng, high.maxLat, high.maxLng);
+    }
+}
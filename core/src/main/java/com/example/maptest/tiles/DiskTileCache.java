@@ -0,0 +1,213 @@
+package com.example.maptest.tiles;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tiles rendered on the device, one file per tile in a directory, bounded in total size with
+ * least-recently-used eviction.
+ *
+ * The recency order lives in memory and is rebuilt from file modification times on open, so
+ * across restarts it degrades to least-recently-written. The directory is tagged with the
+ * version of the data the tiles were rendered from and wiped when that changes. Files are
+ * read and written outside the lock; a tile evicted while being read is just a miss.
+ */
+public class DiskTileCache {
+
+    private static final String VERSION_FILE = "version";
+    private static final String SUFFIX = ".png";
+    // space is allocated in blocks, which is what the size limit is about
+    private static final long BLOCK_SIZE = 4096;
+
+    private final File dir;
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Long> index = new LinkedHashMap<Long, Long>(64, 0.75f, true);
+    private long bytes;
+
+    /**
+     * Opens or creates the cache directory, discarding tiles of another data version.
+     */
+    public DiskTileCache(File dir, long maxBytes, long dataVersion) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        if (readVersion() != dataVersion) {
+            deleteTiles();
+            writeVersion(dataVersion);
+        }
+        load();
+    }
+
+    /**
+     * Reads a cached tile, or returns null.
+     */
+    public byte[] get(long key) throws IOException {
+        synchronized (this) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        File file = fileFor(key);
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                byte[] tile = new byte[(int) file.length()];
+                in.readFully(tile);
+                return tile.length == 0 ? TileSource.EMPTY : tile;
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            synchronized (this) {
+                Long size = index.remove(key);
+                if (size != null) {
+                    bytes -= size;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores a tile, evicting the least recently used ones beyond the size limit.
+     */
+    public void put(long key, byte[] tile) throws IOException {
+        File file = fileFor(key);
+        File temp = new File(dir, file.getName() + ".tmp" + Thread.currentThread().getId());
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(tile);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+        synchronized (this) {
+            Long old = index.put(key, cost(tile.length));
+            if (old != null) {
+                bytes -= old;
+            }
+            bytes += cost(tile.length);
+            trim();
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long byteSize() {
+        return bytes;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, Long>> eldest = index.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Long, Long> entry = eldest.next();
+            fileFor(entry.getKey()).delete();
+            bytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ma = a.lastModified();
+                long mb = b.lastModified();
+                return ma < mb ? -1 : (ma == mb ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            long key = keyOf(file.getName());
+            if (key >= 0) {
+                long size = cost(file.length());
+                index.put(key, size);
+                bytes += size;
+            } else if (!file.getName().equals(VERSION_FILE)) {
+                // leftovers of interrupted writes
+                file.delete();
+            }
+        }
+        trim();
+    }
+
+    private void deleteTiles() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private long readVersion() {
+        File file = new File(dir, VERSION_FILE);
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readLong();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private void writeVersion(long version) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, VERSION_FILE)));
+        try {
+            out.writeLong(version);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File fileFor(long key) {
+        return new File(dir, TileMath.zoom(key) + "-" + TileMath.x(key) + "-" + TileMath.y(key) + SUFFIX);
+    }
+
+    // Returns the key of a tile file name, or -1 for anything else
+    static long keyOf(String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("-");
+        if (parts.length != 3) {
+            return -1;
+        }
+        try {
+            return TileMath.key(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long cost(long length) {
+        return Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE) * BLOCK_SIZE;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.maptest.tiles;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used tiles kept on the heap, bounded by their encoded size.
+ *
+ * Holds the encoded PNGs rather than bitmaps: a TileProvider hands bytes to the map, which
+ * decodes and keeps its own bitmaps. Blank tiles are cached too, so panning over empty
+ * ground never reaches the slower tiers. Thread safe.
+ */
+public class MemoryTileCache {
+
+    // rough per-entry cost of the map node, key and array header
+    static final int ENTRY_OVERHEAD = 64;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, byte[]> tiles = new LinkedHashMap<Long, byte[]>(64, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    public MemoryTileCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached tile, or null.
+     */
+    public synchronized byte[] get(long key) {
+        byte[] tile = tiles.get(key);
+        if (tile == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return tile;
+    }
+
+    public synchronized void put(long key, byte[] tile) {
+        byte[] old = tiles.put(key, tile);
+        if (old != null) {
+            bytes -= cost(old);
+        }
+        bytes += cost(tile);
+        Iterator<Map.Entry<Long, byte[]>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= cost(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long byteSize() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private static long cost(byte[] tile) {
+        return tile.length + ENTRY_OVERHEAD;
+    }
+}
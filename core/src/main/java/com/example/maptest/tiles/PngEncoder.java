@@ -0,0 +1,95 @@
+package com.example.maptest.tiles;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal PNG writer for overlay tiles: 8-bit RGBA, no interlacing, every row filtered with
+ * the Sub filter. Campus tiles are mostly transparent or flat color, for which Sub plus
+ * deflate gets within a few percent of a full encoder.
+ */
+public final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int FILTER_SUB = 1;
+
+    /**
+     * Prevents instantiation.
+     */
+    private PngEncoder() {}
+
+    /**
+     * Encodes row-major, non-premultiplied ARGB pixels.
+     */
+    public static byte[] encode(int[] argb, int width, int height) {
+        int stride = width * 4 + 1;
+        byte[] raw = new byte[stride * height];
+        for (int y = 0; y < height; y++) {
+            int row = y * stride;
+            raw[row] = FILTER_SUB;
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[y * width + x];
+                int out = row + 1 + x * 4;
+                raw[out] = (byte) ((pixel >> 16) - (previous >> 16));
+                raw[out + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+                raw[out + 2] = (byte) (pixel - previous);
+                raw[out + 3] = (byte) ((pixel >>> 24) - (previous >>> 24));
+                previous = pixel;
+            }
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] compressed;
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(raw.length / 8 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                deflated.write(chunk, 0, n);
+            }
+            compressed = deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(compressed.length + 64);
+        png.write(SIGNATURE, 0, SIGNATURE.length);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 6; // color type: RGBA
+        writeChunk(png, "IHDR", header);
+        writeChunk(png, "IDAT", compressed);
+        writeChunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data) {
+        byte[] typeBytes = {(byte) type.charAt(0), (byte) type.charAt(1),
+                (byte) type.charAt(2), (byte) type.charAt(3)};
+        byte[] length = new byte[4];
+        putInt(length, 0, data.length);
+        out.write(length, 0, 4);
+        out.write(typeBytes, 0, 4);
+        out.write(data, 0, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        byte[] checksum = new byte[4];
+        putInt(checksum, 0, (int) crc.getValue());
+        out.write(checksum, 0, 4);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.maptest.tiles;
+
+import java.util.Arrays;
+
+/**
+ * Small anti-aliased ARGB canvas, enough to draw campus overlay tiles without android.graphics
+ * so the same code runs in the build-time tile tool and on the device.
+ *
+ * Shapes are filled with the even-odd rule. Coverage is computed exactly along each
+ * sub-scanline and averaged over {@link #SUBSAMPLES} of them per pixel row, then blended
+ * source-over. Pixels are stored non-premultiplied, as PNG wants them. Joints and round ends
+ * of strokes overlap, so strokes should use opaque colors.
+ */
+public final class Raster {
+
+    static final int SUBSAMPLES = 4;
+
+    private static final int CIRCLE_SEGMENTS = 24;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    // scratch space reused by every fill
+    private final float[] coverage;
+    private double[] crossings = new double[16];
+    private final double[] quadX = new double[4];
+    private final double[] quadY = new double[4];
+    private final double[] circleX = new double[CIRCLE_SEGMENTS];
+    private final double[] circleY = new double[CIRCLE_SEGMENTS];
+
+    public Raster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.coverage = new float[width + 1];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Row-major ARGB pixels; the array is live.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public void clear() {
+        Arrays.fill(pixels, 0);
+    }
+
+    /**
+     * True if nothing visible has been drawn.
+     */
+    public boolean isTransparent() {
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills the polygon given by the first {@code n} vertices, in pixel coordinates.
+     */
+    public void fillPolygon(double[] xs, double[] ys, int n, int color) {
+        if (n < 3) {
+            return;
+        }
+        double minY = ys[0];
+        double maxY = ys[0];
+        double minX = xs[0];
+        double maxX = xs[0];
+        for (int i = 1; i < n; i++) {
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+        }
+        if (maxY <= 0 || minY >= height || maxX <= 0 || minX >= width) {
+            return;
+        }
+        int firstRow = Math.max(0, (int) Math.floor(minY));
+        int lastRow = Math.min(height - 1, (int) Math.ceil(maxY));
+        if (crossings.length < n) {
+            crossings = new double[n];
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            int left = width;
+            int right = -1;
+            for (int s = 0; s < SUBSAMPLES; s++) {
+                double sy = row + (s + 0.5) / SUBSAMPLES;
+                int count = 0;
+                for (int i = 0, j = n - 1; i < n; j = i++) {
+                    double y0 = ys[j];
+                    double y1 = ys[i];
+                    if ((y0 <= sy) != (y1 <= sy)) {
+                        crossings[count++] = xs[j] + (sy - y0) / (y1 - y0) * (xs[i] - xs[j]);
+                    }
+                }
+                Arrays.sort(crossings, 0, count);
+                for (int k = 0; k + 1 < count; k += 2) {
+                    double x0 = Math.max(0, crossings[k]);
+                    double x1 = Math.min(width, crossings[k + 1]);
+                    if (x1 <= x0) {
+                        continue;
+                    }
+                    int p0 = (int) x0;
+                    int p1 = Math.min(width - 1, (int) x1);
+                    left = Math.min(left, p0);
+                    right = Math.max(right, p1);
+                    if (p0 == p1) {
+                        coverage[p0] += (x1 - x0) / SUBSAMPLES;
+                        continue;
+                    }
+                    coverage[p0] += (p0 + 1 - x0) / SUBSAMPLES;
+                    for (int p = p0 + 1; p < p1; p++) {
+                        coverage[p] += 1f / SUBSAMPLES;
+                    }
+                    coverage[p1] += (x1 - p1) / SUBSAMPLES;
+                }
+            }
+            for (int p = left; p <= right; p++) {
+                float c = coverage[p];
+                if (c > 0) {
+                    blend(row * width + p, color, Math.min(1f, c));
+                }
+                coverage[p] = 0;
+            }
+        }
+    }
+
+    /**
+     * Fills a circle around a point, in pixel coordinates.
+     */
+    public void fillCircle(double cx, double cy, double radius, int color) {
+        for (int i = 0; i < CIRCLE_SEGMENTS; i++) {
+            double a = 2 * Math.PI * i / CIRCLE_SEGMENTS;
+            circleX[i] = cx + radius * Math.cos(a);
+            circleY[i] = cy + radius * Math.sin(a);
+        }
+        fillPolygon(circleX, circleY, CIRCLE_SEGMENTS, color);
+    }
+
+    /**
+     * Draws a line of the given width with round ends.
+     */
+    public void strokeLine(double x0, double y0, double x1, double y1, double lineWidth, int color) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        double half = lineWidth / 2;
+        if (length > 0) {
+            double nx = -dy / length * half;
+            double ny = dx / length * half;
+            quadX[0] = x0 + nx;
+            quadY[0] = y0 + ny;
+            quadX[1] = x1 + nx;
+            quadY[1] = y1 + ny;
+            quadX[2] = x1 - nx;
+            quadY[2] = y1 - ny;
+            quadX[3] = x0 - nx;
+            quadY[3] = y0 - ny;
+            fillPolygon(quadX, quadY, 4, color);
+        }
+        if (lineWidth > 2) {
+            fillCircle(x0, y0, half, color);
+            fillCircle(x1, y1, half, color);
+        }
+    }
+
+    /**
+     * Outlines a closed polygon.
+     */
+    public void strokePolygon(double[] xs, double[] ys, int n, double lineWidth, int color) {
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            strokeLine(xs[j], ys[j], xs[i], ys[i], lineWidth, color);
+        }
+    }
+
+    private void blend(int index, int color, float coverage) {
+        float sa = (color >>> 24) / 255f * coverage;
+        if (sa <= 0) {
+            return;
+        }
+        int dst = pixels[index];
+        float da = (dst >>> 24) / 255f;
+        float outA = sa + da * (1 - sa);
+        float dw = da * (1 - sa);
+        int r = channel(color >> 16, dst >> 16, sa, dw, outA);
+        int g = channel(color >> 8, dst >> 8, sa, dw, outA);
+        int b = channel(color, dst, sa, dw, outA);
+        pixels[index] = (Math.round(outA * 255) << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int channel(int src, int dst, float sa, float dw, float outA) {
+        return Math.round(((src & 0xFF) * sa + (dst & 0xFF) * dw) / outA);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.maptest.tiles;
+
+import java.io.IOException;
+
+/**
+ * The campus overlay's tile lookup: memory, then the pre-rendered pack, then tiles rendered
+ * earlier on this device, and finally rendering.
+ *
+ * Everything found below the memory tier is promoted into it; freshly rendered tiles are
+ * also written to disk. Thread safe as long as the tiers are.
+ */
+public class TileCache implements TileSource {
+
+    private final MemoryTileCache memory;
+    private final TileSource pack;
+    private final DiskTileCache disk;
+    private final TileSource origin;
+
+    /**
+     * @param pack   pre-rendered tiles, or null
+     * @param disk   store for rendered tiles, or null to only keep them in memory
+     * @param origin renders whatever the other tiers do not have
+     */
+    public TileCache(MemoryTileCache memory, TileSource pack, DiskTileCache disk, TileSource origin) {
+        this.memory = memory;
+        this.pack = pack;
+        this.disk = disk;
+        this.origin = origin;
+    }
+
+    /**
+     * Returns the tile, {@link #EMPTY} if it is blank, or null if even the origin has nothing.
+     */
+    @Override
+    public byte[] getTile(int zoom, int x, int y) throws IOException {
+        long key = TileMath.key(zoom, x, y);
+        byte[] tile = memory.get(key);
+        if (tile != null) {
+            return tile;
+        }
+        if (pack != null) {
+            tile = pack.getTile(zoom, x, y);
+        }
+        if (tile == null && disk != null) {
+            tile = disk.get(key);
+        }
+        if (tile == null) {
+            tile = origin.getTile(zoom, x, y);
+            if (tile == null) {
+                return null;
+            }
+            if (disk != null) {
+                try {
+                    disk.put(key, tile);
+                } catch (IOException e) {
+                    // still served from memory; rendered again once evicted
+                }
+            }
+        }
+        memory.put(key, tile);
+        return tile;
+    }
+}
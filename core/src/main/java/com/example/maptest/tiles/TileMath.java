@@ -0,0 +1,84 @@
+package com.example.maptest.tiles;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geo.GeoMath;
+
+/**
+ * Web Mercator tile arithmetic, using the same x/y/zoom scheme as GoogleMap tile overlays:
+ * zoom z has 2^z by 2^z tiles, x grows eastwards from the antimeridian and y southwards
+ * from the top of the map.
+ */
+public final class TileMath {
+
+    public static final int TILE_SIZE = 256;
+    // deepest zoom level a key can address
+    public static final int MAX_ZOOM = 29;
+
+    // web mercator is cut off here so the map is square
+    private static final double MAX_LAT = 85.05112878;
+
+    /**
+     * Prevents instantiation.
+     */
+    private TileMath() {}
+
+    /**
+     * Fractional tile x of a longitude.
+     */
+    public static double tileX(double lng, int zoom) {
+        return (lng + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    /**
+     * Fractional tile y of a latitude.
+     */
+    public static double tileY(double lat, int zoom) {
+        double clamped = Math.max(-MAX_LAT, Math.min(MAX_LAT, lat));
+        double sin = Math.sin(Math.toRadians(clamped));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return y * (1 << zoom);
+    }
+
+    public static double lng(double tileX, int zoom) {
+        return tileX / (1 << zoom) * 360.0 - 180.0;
+    }
+
+    public static double lat(double tileY, int zoom) {
+        double n = Math.PI * (1 - 2 * tileY / (1 << zoom));
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * Area covered by a tile.
+     */
+    public static BoundingBox bounds(int zoom, int x, int y) {
+        return new BoundingBox(lat(y + 1, zoom), lng(x, zoom), lat(y, zoom), lng(x + 1, zoom));
+    }
+
+    /**
+     * Ground size of a pixel at a latitude.
+     */
+    public static double metersPerPixel(double lat, int zoom) {
+        return GeoMath.metersPerDegreeLng(lat) * 360.0 / ((long) TILE_SIZE << zoom);
+    }
+
+    /**
+     * Packs a tile address into one long: 6 bits of zoom, 29 bits each of x and y.
+     * Keys of the same zoom sort by x, then y.
+     */
+    public static long key(int zoom, int x, int y) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    public static int zoom(long key) {
+        return (int) (key >>> 58);
+    }
+
+    public static int x(long key) {
+        return (int) (key >>> 29) & 0x1FFFFFFF;
+    }
+
+    public static int y(long key) {
+        return (int) key & 0x1FFFFFFF;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.maptest.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only set of pre-rendered tiles, written by {@link CampusTileTool} and shipped as the
+ * uncompressed asset campus-tiles.bin so it can be memory mapped like the campus map.
+ *
+ * <pre>
+ * header   magic "CTIL", u16 format version, u8 min zoom, u8 max zoom, i64 data version,
+ *          i32 tile count, i32 pad
+ * keys     i64[count], sorted ({@link TileMath#key})
+ * offsets  i32[count + 1] into the blob
+ * blob     the PNGs back to back
+ * </pre>
+ *
+ * All values are little-endian. Blank tiles are left out, so within the zoom range a tile
+ * that is not in the pack is {@link TileSource#EMPTY}.
+ */
+public final class TilePack implements TileSource {
+
+    // "CTIL" read as a little-endian int
+    static final int MAGIC = 0x4C495443;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    private final ByteBuffer buffer;
+    private final int minZoom;
+    private final int maxZoom;
+    private final long dataVersion;
+    private final int count;
+    private final int offsets;
+    private final int blob;
+
+    private TilePack(ByteBuffer source) throws IOException {
+        buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a tile pack");
+        }
+        int version = buffer.getShort(4) & 0xFFFF;
+        if (version > VERSION) {
+            throw new IOException("Unsupported tile pack version " + version);
+        }
+        minZoom = buffer.get(6) & 0xFF;
+        maxZoom = buffer.get(7) & 0xFF;
+        dataVersion = buffer.getLong(8);
+        count = buffer.getInt(16);
+        offsets = HEADER_SIZE + count * 8;
+        blob = offsets + (count + 1) * 4;
+        if (count < 0 || blob > buffer.limit()
+                || blob + (long) buffer.getInt(offsets + count * 4) > buffer.limit()) {
+            throw new IOException("Truncated tile pack");
+        }
+    }
+
+    /**
+     * Wraps a buffer holding a complete tile pack, starting at its position.
+     */
+    public static TilePack wrap(ByteBuffer buffer) throws IOException {
+        return new TilePack(buffer.slice());
+    }
+
+    /**
+     * Memory-maps {@code length} bytes of the channel starting at {@code offset}.
+     */
+    public static TilePack map(FileChannel channel, long offset, long length) throws IOException {
+        return new TilePack(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    public static TilePack map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return map(raf.getChannel(), 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getMinZoom() {
+        return minZoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * Data version of the campus map the tiles were rendered from.
+     */
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Copies the tile out of the pack. Returns null outside the pack's zoom range.
+     */
+    @Override
+    public byte[] getTile(int zoom, int x, int y) {
+        if (zoom < minZoom || zoom > maxZoom) {
+            return null;
+        }
+        int index = indexOf(TileMath.key(zoom, x, y));
+        if (index < 0) {
+            return EMPTY;
+        }
+        int start = buffer.getInt(offsets + index * 4);
+        int end = buffer.getInt(offsets + index * 4 + 4);
+        byte[] tile = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(blob + start);
+        view.get(tile);
+        return tile;
+    }
+
+    private int indexOf(long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long probe = buffer.getLong(HEADER_SIZE + mid * 8);
+            if (probe < key) {
+                low = mid + 1;
+            } else if (probe > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.maptest.tiles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.TreeMap;
+
+/**
+ * Collects rendered tiles and writes them in the {@link TilePack} layout.
+ */
+public class TilePackWriter {
+
+    private final int minZoom;
+    private final int maxZoom;
+    private final long dataVersion;
+    private final TreeMap<Long, byte[]> tiles = new TreeMap<Long, byte[]>();
+    private long blobSize;
+
+    public TilePackWriter(int minZoom, int maxZoom, long dataVersion) {
+        if (minZoom < 0 || maxZoom > TileMath.MAX_ZOOM || minZoom > maxZoom) {
+            throw new IllegalArgumentException("Bad zoom range " + minZoom + ".." + maxZoom);
+        }
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * Adds a tile. Blank tiles are skipped; the pack reports them as empty anyway.
+     */
+    public void add(int zoom, int x, int y, byte[] png) {
+        if (zoom < minZoom || zoom > maxZoom) {
+            throw new IllegalArgumentException("Zoom " + zoom + " outside " + minZoom + ".." + maxZoom);
+        }
+        if (png.length == 0) {
+            return;
+        }
+        byte[] old = tiles.put(TileMath.key(zoom, x, y), png);
+        blobSize += png.length - (old == null ? 0 : old.length);
+    }
+
+    public int size() {
+        return tiles.size();
+    }
+
+    public long byteSize() {
+        return TilePack.HEADER_SIZE + tiles.size() * 12L + 4 + blobSize;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (byteSize() > Integer.MAX_VALUE) {
+            throw new IOException("Tile pack too large: " + byteSize() + " bytes");
+        }
+        int count = tiles.size();
+        ByteBuffer index = ByteBuffer.allocate(TilePack.HEADER_SIZE + count * 12 + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(TilePack.MAGIC);
+        index.putShort((short) TilePack.VERSION);
+        index.put((byte) minZoom);
+        index.put((byte) maxZoom);
+        index.putLong(dataVersion);
+        index.putInt(count);
+        index.putInt(0);
+        for (Long key : tiles.keySet()) {
+            index.putLong(key);
+        }
+        int offset = 0;
+        for (byte[] png : tiles.values()) {
+            index.putInt(offset);
+            offset += png.length;
+        }
+        index.putInt(offset);
+        out.write(index.array());
+        for (byte[] png : tiles.values()) {
+            out.write(png);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.maptest.tiles;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.geofence.CircleRegion;
+import com.example.maptest.geofence.PolygonRegion;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.mapdata.CampusMapFormat;
+import com.example.maptest.routing.WalkwayGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws campus overlay tiles from the campus map: building footprints, walkways and, from
+ * {@link #DETAIL_ZOOM} on, floor plan outlines and indoor corridors.
+ *
+ * Used by the build-time tile tool for the zoom levels shipped in the APK and on the device
+ * for the deeper ones. Safe to call from several threads; each gets its own canvas.
+ */
+public class TileRenderer implements TileSource {
+
+    // floor plans and indoor corridors only make sense once single rooms are visible
+    public static final int DETAIL_ZOOM = 19;
+
+    private static final int FOOTPRINT_FILL = 0x803F51B5;
+    private static final int FOOTPRINT_OUTLINE = 0xFF303F9F;
+    private static final int FLOOR_OUTLINE = 0xFF7986CB;
+    private static final int WALKWAY_CASING = 0xFF9E9E9E;
+    private static final int WALKWAY = 0xFFFFFFFF;
+    private static final int INDOOR_WALKWAY = 0xFFFFCC80;
+
+    private static final double WALKWAY_WIDTH = 3.0;
+    private static final double MIN_WALKWAY_PIXELS = 1.5;
+    private static final double OUTLINE_PIXELS = 1.5;
+    private static final int CIRCLE_SEGMENTS = 48;
+
+    private final List<Region> footprints = new ArrayList<Region>();
+    private final List<Region> floorPlans = new ArrayList<Region>();
+
+    // graph nodes in world coordinates (0..1 across the whole mercator map)
+    private final double[] nodeX;
+    private final double[] nodeY;
+    private final boolean[] indoor;
+    // one entry per walkway, two-way walkways once
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int edgeCount;
+
+    private final ThreadLocal<Canvas> canvas = new ThreadLocal<Canvas>() {
+        @Override
+        protected Canvas initialValue() {
+            return new Canvas();
+        }
+    };
+
+    public TileRenderer(CampusMap map) {
+        for (int i = 0; i < map.shapeCount(); i++) {
+            if (map.shapeFloor(i) == CampusMapFormat.NO_FLOOR) {
+                footprints.add(map.shapeRegion(i));
+            } else {
+                floorPlans.add(map.shapeRegion(i));
+            }
+        }
+
+        WalkwayGraph graph = map.graph();
+        int nodes = graph.nodeCount();
+        nodeX = new double[nodes];
+        nodeY = new double[nodes];
+        indoor = new boolean[nodes];
+        for (int n = 0; n < nodes; n++) {
+            nodeX[n] = TileMath.tileX(graph.lng(n), 0);
+            nodeY[n] = TileMath.tileY(graph.lat(n), 0);
+            indoor[n] = map.nodeFloor(n) != CampusMapFormat.NO_FLOOR;
+        }
+        int[] from = new int[graph.edgeCount()];
+        int[] to = new int[graph.edgeCount()];
+        int count = 0;
+        for (int n = 0; n < nodes; n++) {
+            for (int e = graph.firstEdge(n); e < graph.firstEdge(n + 1); e++) {
+                int target = graph.edgeTarget(e);
+                if (n < target || !hasEdge(graph, target, n)) {
+                    from[count] = n;
+                    to[count] = target;
+                    count++;
+                }
+            }
+        }
+        edgeFrom = from;
+        edgeTo = to;
+        edgeCount = count;
+    }
+
+    private static boolean hasEdge(WalkwayGraph graph, int from, int to) {
+        for (int e = graph.firstEdge(from); e < graph.firstEdge(from + 1); e++) {
+            if (graph.edgeTarget(e) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders a tile; never returns null.
+     */
+    @Override
+    public byte[] getTile(int zoom, int x, int y) {
+        Canvas c = canvas.get();
+        c.begin(zoom, x, y);
+        boolean detail = zoom >= DETAIL_ZOOM;
+
+        for (Region region : footprints) {
+            c.drawRegion(region, true, FOOTPRINT_FILL, FOOTPRINT_OUTLINE);
+        }
+        if (detail) {
+            for (Region region : floorPlans) {
+                c.drawRegion(region, false, 0, FLOOR_OUTLINE);
+            }
+        }
+
+        double walkway = Math.max(MIN_WALKWAY_PIXELS,
+                WALKWAY_WIDTH / TileMath.metersPerPixel(c.centerLat, zoom));
+        // casings first so crossing walkways join cleanly
+        for (int pass = 0; pass < 2; pass++) {
+            for (int e = 0; e < edgeCount; e++) {
+                int a = edgeFrom[e];
+                int b = edgeTo[e];
+                boolean inside = indoor[a] || indoor[b];
+                if (inside && !detail) {
+                    continue;
+                }
+                if (pass == 0) {
+                    c.drawWalkway(a, b, walkway + 2, WALKWAY_CASING);
+                } else {
+                    c.drawWalkway(a, b, walkway, inside ? INDOOR_WALKWAY : WALKWAY);
+                }
+            }
+        }
+
+        Raster raster = c.raster;
+        if (raster.isTransparent()) {
+            return EMPTY;
+        }
+        return PngEncoder.encode(raster.getPixels(), raster.getWidth(), raster.getHeight());
+    }
+
+    /**
+     * Per-thread drawing state for the tile being rendered.
+     */
+    private final class Canvas {
+
+        final Raster raster = new Raster(TileMath.TILE_SIZE, TileMath.TILE_SIZE);
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+
+        // world to pixel transform of the current tile
+        int zoom;
+        double scale;
+        double originX;
+        double originY;
+        double centerLat;
+        BoundingBox area;
+
+        void begin(int zoom, int x, int y) {
+            raster.clear();
+            this.zoom = zoom;
+            scale = (double) TileMath.TILE_SIZE * (1 << zoom);
+            originX = (double) x * TileMath.TILE_SIZE;
+            originY = (double) y * TileMath.TILE_SIZE;
+            centerLat = TileMath.lat(y + 0.5, zoom);
+            // one tile of margin covers strokes that reach in from a neighbour
+            area = new BoundingBox(TileMath.lat(y + 2, zoom), TileMath.lng(x - 1, zoom),
+                    TileMath.lat(y - 1, zoom), TileMath.lng(x + 2, zoom));
+        }
+
+        double px(double lng) {
+            return TileMath.tileX(lng, 0) * scale - originX;
+        }
+
+        double py(double lat) {
+            return TileMath.tileY(lat, 0) * scale - originY;
+        }
+
+        void drawRegion(Region region, boolean fill, int fillColor, int outlineColor) {
+            if (!region.getBounds().intersects(area)) {
+                return;
+            }
+            int n;
+            if (region instanceof PolygonRegion) {
+                PolygonRegion polygon = (PolygonRegion) region;
+                n = polygon.getVertexCount();
+                if (xs.length < n) {
+                    xs = new double[n];
+                    ys = new double[n];
+                }
+                for (int i = 0; i < n; i++) {
+                    xs[i] = px(polygon.getVertexLng(i));
+                    ys[i] = py(polygon.getVertexLat(i));
+                }
+            } else if (region instanceof CircleRegion) {
+                n = CIRCLE_SEGMENTS;
+                double cx = px(region.getCenterLng());
+                double cy = py(region.getCenterLat());
+                double r = region.getRadius() / TileMath.metersPerPixel(region.getCenterLat(), zoom);
+                for (int i = 0; i < n; i++) {
+                    double a = 2 * Math.PI * i / n;
+                    xs[i] = cx + r * Math.cos(a);
+                    ys[i] = cy + r * Math.sin(a);
+                }
+            } else {
+                return;
+            }
+            if (fill) {
+                raster.fillPolygon(xs, ys, n, fillColor);
+            }
+            raster.strokePolygon(xs, ys, n, OUTLINE_PIXELS, outlineColor);
+        }
+
+        void drawWalkway(int a, int b, double width, int color) {
+            double x0 = nodeX[a] * scale - originX;
+            double y0 = nodeY[a] * scale - originY;
+            double x1 = nodeX[b] * scale - originX;
+            double y1 = nodeY[b] * scale - originY;
+            double size = TileMath.TILE_SIZE + width;
+            if (Math.max(x0, x1) < -width || Math.min(x0, x1) > size
+                    || Math.max(y0, y1) < -width || Math.min(y0, y1) > size) {
+                return;
+            }
+            raster.strokeLine(x0, y0, x1, y1, width, color);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.maptest.tiles;
+
+import java.io.IOException;
+
+/**
+ * Something that can produce encoded overlay tiles.
+ */
+public interface TileSource {
+
+    /**
+     * Returned for tiles known to have nothing on them. Never modify it.
+     */
+    byte[] EMPTY = new byte[0];
+
+    /**
+     * Returns the PNG of a tile, {@link #EMPTY} if the tile is blank, or null if this source
+     * does not know and the next one should be asked.
+     */
+    byte[] getTile(int zoom, int x, int y) throws IOException;
+}
@@ -0,0 +1,77 @@
+package com.example.maptest.transition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts flaps in a stream of transitions: a DWELL of a region within the window after its
+ * EXIT. Walking through a building is a DWELL and an EXIT in quick succession and is not a
+ * flap; coming back to it straight away after an EXIT usually is jitter. Each flap costs two
+ * notifications the user did not need, so the rate is what hysteresis is judged by.
+ * Not thread safe.
+ */
+public class FlapMeter {
+
+    // DWELLs this soon after an EXIT of the same region are counted as flaps
+    public static final long DEFAULT_WINDOW = 60000;
+
+    private static final class Last {
+        int transition;
+        long time;
+    }
+
+    private final long window;
+    private final Map<String, Last> last = new HashMap<String, Last>();
+    private int transitions;
+    private int flaps;
+
+    public FlapMeter() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window milliseconds after an EXIT within which a DWELL counts as a flap
+     */
+    public FlapMeter(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Records one transition; calls must come in time order.
+     *
+     * @param time milliseconds, on the same clock as the other calls
+     * @return true if it was a flap
+     */
+    public boolean record(String requestId, int transition, long time) {
+        transitions++;
+        Last previous = last.get(requestId);
+        if (previous == null) {
+            previous = new Last();
+            last.put(requestId, previous);
+        } else if (transition == TransitionEvent.DWELL && previous.transition == TransitionEvent.EXIT
+                && time - previous.time < window) {
+            flaps++;
+            previous.transition = transition;
+            previous.time = time;
+            return true;
+        }
+        previous.transition = transition;
+        previous.time = time;
+        return false;
+    }
+
+    public int getTransitionCount() {
+        return transitions;
+    }
+
+    public int getFlapCount() {
+        return flaps;
+    }
+
+    /**
+     * Flaps per hour over a trace of the given length in milliseconds.
+     */
+    public double flapsPerHour(long duration) {
+        return duration > 0 ? flaps * 3600000.0 / duration : 0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.maptest.transition;
+
+import com.example.maptest.geofence.GeofenceStateMachine;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.geofence.TransitionEvaluator;
+import com.example.maptest.location.Fix;
+import com.example.maptest.location.TraceReader;
+import com.example.maptest.mapdata.CampusMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded traces against the compiled campus map and prints how often the regions
+ * flap (see FlapMeter), once with the semantics of the Play Services geofences and once with
+ * the TransitionEvaluator the app notifies from. Run by the flapReport Gradle task of :app:
+ *
+ * <pre>java com.example.maptest.transition.FlapReport campus.bin trace.csv|trace.gpx ...</pre>
+ */
+public final class FlapReport {
+
+    /**
+     * Prevents instantiation.
+     */
+    private FlapReport() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: FlapReport <campus.bin> <trace.csv|trace.gpx>...");
+            System.exit(2);
+        }
+        RegionIndex index = new RegionIndex(CampusMap.map(new File(args[0])).regions());
+        System.out.println("trace                    fixes  minutes  play transitions/flaps/per h"
+                + "  evaluator transitions/flaps/per h");
+        for (int i = 1; i < args.length; i++) {
+            File trace = new File(args[i]);
+            report(trace.getName(), TraceReader.read(trace), index, System.out);
+        }
+    }
+
+    /**
+     * Prints one line for a trace.
+     */
+    public static void report(String name, List<Fix> fixes, RegionIndex index, PrintStream out) {
+        if (fixes.isEmpty()) {
+            out.println(name + ": empty");
+            return;
+        }
+        GeofenceStateMachine play = new GeofenceStateMachine(GeofenceStateMachine.LOITERING_DELAY);
+        TransitionEvaluator evaluator = new TransitionEvaluator();
+        FlapMeter playFlaps = new FlapMeter();
+        FlapMeter evaluatorFlaps = new FlapMeter();
+        List<Region> containing = new ArrayList<Region>();
+        List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+        for (int i = 0; i < fixes.size(); i++) {
+            Fix fix = fixes.get(i);
+            containing.clear();
+            index.regionsContaining(fix.getLat(), fix.getLng(), containing);
+            fired.clear();
+            play.update(containing, fix.getTime(), fired);
+            record(fired, fix.getTime(), playFlaps);
+            fired.clear();
+            evaluator.update(fix.getLat(), fix.getLng(), fix.getAccuracy(), fix.getTime(),
+                    containing, fired);
+            record(fired, fix.getTime(), evaluatorFlaps);
+        }
+        long duration = fixes.get(fixes.size() - 1).getTime() - fixes.get(0).getTime();
+        out.println(String.format("%-22s %7d %8.1f  %11d %6d %7.1f  %16d %6d %7.1f",
+                name, fixes.size(), duration / 60000.0,
+                playFlaps.getTransitionCount(), playFlaps.getFlapCount(), playFlaps.flapsPerHour(duration),
+                evaluatorFlaps.getTransitionCount(), evaluatorFlaps.getFlapCount(),
+                evaluatorFlaps.flapsPerHour(duration)));
+    }
+
+    private static void record(List<TransitionEvent> events, long time, FlapMeter meter) {
+        for (int i = 0; i < events.size(); i++) {
+            TransitionEvent event = events.get(i);
+            meter.record(event.getRequestId(), event.getTransition(), time);
+        }
+    }
+}
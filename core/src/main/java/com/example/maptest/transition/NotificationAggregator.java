@@ -0,0 +1,167 @@
+package com.example.maptest.transition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which transitions become notifications, and when.
+ *
+ * The first transition after a quiet period opens a window; everything that arrives before it
+ * closes is posted together, one entry per region with its latest transition. A region that
+ * was already notified for the same transition within the cooldown is left out, so walking
+ * back and forth past a building does not repeat itself. Each region keeps one notification
+ * id, so a newer transition replaces that region's notification instead of another region's.
+ *
+ * Times are in milliseconds on any monotonic clock; the methods are thread safe.
+ */
+public class NotificationAggregator {
+
+    // id of the group summary; region ids are allocated above it
+    public static final int SUMMARY_ID = 1;
+    private static final int FIRST_REGION_ID = 1000;
+
+    private final long window;
+    private final long cooldown;
+
+    // events of the open window by request id, in order of first arrival
+    private final Map<String, TransitionEvent> pending = new LinkedHashMap<String, TransitionEvent>();
+    private long windowEnd = -1;
+
+    // request id + transition -> time it was last notified
+    private final Map<String, Long> notified = new HashMap<String, Long>();
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final Map<Integer, String> idOwners = new HashMap<Integer, String>();
+
+    private int suppressed;
+
+    /**
+     * @param window   how long to collect transitions before posting, 0 to post at once
+     * @param cooldown minimum time between two notifications of one region and transition
+     */
+    public NotificationAggregator(long window, long cooldown) {
+        if (window < 0 || cooldown < 0) {
+            throw new IllegalArgumentException("Negative window or cooldown");
+        }
+        this.window = window;
+        this.cooldown = cooldown;
+    }
+
+    /**
+     * Adds transitions to the open window, opening one if needed, and returns the time the
+     * window closes, or -1 if nothing is pending.
+     */
+    public synchronized long offer(List<TransitionEvent> events, long now) {
+        for (int i = 0; i < events.size(); i++) {
+            TransitionEvent event = events.get(i);
+            pending.remove(event.getRequestId());
+            pending.put(event.getRequestId(), event);
+        }
+        if (!pending.isEmpty() && windowEnd < 0) {
+            windowEnd = now + window;
+        }
+        return windowEnd;
+    }
+
+    /**
+     * The time the open window closes, or -1 if nothing is pending.
+     */
+    public synchronized long getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * Closes the window if its time has come and returns what to post, or null if the window
+     * is still open or nothing is pending. A digest may be empty when every entry was on
+     * cooldown.
+     */
+    public synchronized Digest poll(long now) {
+        if (windowEnd < 0 || now < windowEnd) {
+            return null;
+        }
+        expireCooldowns(now);
+        List<Entry> entries = new ArrayList<Entry>(pending.size());
+        int dropped = 0;
+        for (TransitionEvent event : pending.values()) {
+            String key = event.getRequestId() + '\n' + event.getTransition();
+            if (notified.containsKey(key)) {
+                dropped++;
+                continue;
+            }
+            notified.put(key, now);
+            entries.add(new Entry(event, notificationIdFor(event.getRequestId())));
+        }
+        pending.clear();
+        windowEnd = -1;
+        suppressed += dropped;
+        return new Digest(entries, dropped);
+    }
+
+    /**
+     * Returns the notification id of a region, the same for the life of the aggregator.
+     * Ids are derived from the request id, so they normally survive a restart too.
+     */
+    public synchronized int notificationIdFor(String requestId) {
+        Integer id = ids.get(requestId);
+        if (id == null) {
+            int candidate = FIRST_REGION_ID + (requestId.hashCode() & 0xFFFFFF);
+            while (idOwners.containsKey(candidate)) {
+                candidate++;
+            }
+            id = candidate;
+            ids.put(requestId, id);
+            idOwners.put(id, requestId);
+        }
+        return id;
+    }
+
+    /**
+     * Number of transitions left out because of their cooldown.
+     */
+    public synchronized int getSuppressedCount() {
+        return suppressed;
+    }
+
+    private void expireCooldowns(long now) {
+        Iterator<Long> times = notified.values().iterator();
+        while (times.hasNext()) {
+            if (now - times.next() >= cooldown) {
+                times.remove();
+            }
+        }
+    }
+
+    /**
+     * One region to notify about.
+     */
+    public static final class Entry {
+        public final TransitionEvent event;
+        public final int notificationId;
+
+        Entry(TransitionEvent event, int notificationId) {
+            this.event = event;
+            this.notificationId = notificationId;
+        }
+    }
+
+    /**
+     * Everything to post for one window.
+     */
+    public static final class Digest {
+        public final List<Entry> entries;
+        // transitions of this window left out because of their cooldown
+        public final int suppressed;
+
+        Digest(List<Entry> entries, int suppressed) {
+            this.entries = entries;
+            this.suppressed = suppressed;
+        }
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.maptest.transition;
+
+/**
+ * One geofence transition, as reported by Play Services for one triggering region.
+ */
+public final class TransitionEvent {
+
+    // same values as Geofence.GEOFENCE_TRANSITION_ENTER / _EXIT / _DWELL
+    public static final int ENTER = 1;
+    public static final int EXIT = 2;
+    public static final int DWELL = 4;
+
+    private final String requestId;
+    private final int transition;
+    private final long triggerNanos;
+
+    /**
+     * @param requestId    id of the region, see Region.getId()
+     * @param transition   ENTER, EXIT or DWELL
+     * @param triggerNanos elapsed-realtime time of the triggering fix, or 0 if unknown
+     */
+    public TransitionEvent(String requestId, int transition, long triggerNanos) {
+        this.requestId = requestId;
+        this.transition = transition;
+        this.triggerNanos = triggerNanos;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public int getTransition() {
+        return transition;
+    }
+
+    public long getTriggerNanos() {
+        return triggerNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TransitionEvent(" + requestId + ", " + transition + ")";
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.maptest.transition;
+
+/**
+ * Notification text for transitions, e.g. "Entered: Cherry Hall". The labels themselves are
+ * localized by the app.
+ */
+public final class TransitionLabels {
+
+    private final String entered;
+    private final String exited;
+    private final String unknown;
+
+    /**
+     * @param entered label for DWELL, which is reported once the user is inside
+     * @param exited  label for EXIT
+     * @param unknown label for any other transition
+     */
+    public TransitionLabels(String entered, String exited, String unknown) {
+        this.entered = entered;
+        this.exited = exited;
+        this.unknown = unknown;
+    }
+
+    public String label(int transition) {
+        switch (transition) {
+            case TransitionEvent.DWELL:
+                return entered;
+            case TransitionEvent.EXIT:
+                return exited;
+            default:
+                return unknown;
+        }
+    }
+
+    public String details(TransitionEvent event) {
+        return label(event.getTransition()) + ": " + event.getRequestId();
+    }
+}
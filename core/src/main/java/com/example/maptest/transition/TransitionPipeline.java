@@ -0,0 +1,159 @@
+package com.example.maptest.transition;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects geofence transitions from any thread and hands them to a handler in batches.
+ *
+ * Events submitted while the handler is busy wait in a map keyed by request id, so a burst
+ * (everyone leaving class at once, or one region firing DWELL then EXIT) collapses into one
+ * batch with at most one event per region, the most recent one. A pipeline keeps at most one
+ * task on its executor, which keeps batches in order and makes a shared bounded pool enough
+ * for any number of events.
+ */
+public class TransitionPipeline {
+
+    /**
+     * Processes one batch. Called on an executor thread, never concurrently for one pipeline.
+     */
+    public interface Handler {
+        void handle(List<TransitionEvent> batch);
+    }
+
+    private final Executor executor;
+    private final Handler handler;
+
+    private final Object lock = new Object();
+    // pending events by request id, in order of first arrival
+    private Map<String, TransitionEvent> pending = new LinkedHashMap<String, TransitionEvent>();
+    // run once the batch holding their events has been handled
+    private List<Runnable> callbacks = new ArrayList<Runnable>();
+    private boolean scheduled;
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger handled = new AtomicInteger();
+    private final AtomicInteger batches = new AtomicInteger();
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public TransitionPipeline(Executor executor, Handler handler) {
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * Queues events for the next batch.
+     *
+     * @param onHandled run on the worker once the events have been handled, may be null
+     */
+    public void submit(List<TransitionEvent> events, Runnable onHandled) {
+        submitted.addAndGet(events.size());
+        boolean schedule;
+        synchronized (lock) {
+            for (int i = 0; i < events.size(); i++) {
+                TransitionEvent event = events.get(i);
+                TransitionEvent previous = pending.get(event.getRequestId());
+                if (previous == null || previous.getTriggerNanos() <= event.getTriggerNanos()) {
+                    pending.put(event.getRequestId(), event);
+                }
+            }
+            if (onHandled != null) {
+                callbacks.add(onHandled);
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            executor.execute(drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Map<String, TransitionEvent> batch;
+            List<Runnable> done;
+            synchronized (lock) {
+                if (pending.isEmpty() && callbacks.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+                batch = pending;
+                done = callbacks;
+                pending = new LinkedHashMap<String, TransitionEvent>();
+                callbacks = new ArrayList<Runnable>();
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    batches.incrementAndGet();
+                    handled.addAndGet(batch.size());
+                    handler.handle(new ArrayList<TransitionEvent>(batch.values()));
+                }
+            } catch (RuntimeException e) {
+                // let the next submit() schedule a new drain, then fail this task
+                synchronized (lock) {
+                    scheduled = false;
+                }
+                throw e;
+            } finally {
+                for (int i = 0; i < done.size(); i++) {
+                    done.get(i).run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Events passed to submit(), including those later merged away.
+     */
+    public int getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Events passed to the handler.
+     */
+    public int getHandledCount() {
+        return handled.get();
+    }
+
+    public int getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Creates a pool of at most the given number of daemon threads with a bounded queue.
+     * When the queue is full the submitting thread runs the task itself, which slows the
+     * producer down instead of dropping work.
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(final String name, int threads, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.maptest.events;
+
+import com.example.maptest.location.Fix;
+import com.example.maptest.metrics.Metrics;
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+
+    /**
+     * Runs tasks only when asked, like a main thread busy drawing.
+     */
+    private static class QueueExecutor implements Executor {
+        final Queue<Runnable> queue = new LinkedList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            Runnable next;
+            while ((next = poll()) != null) {
+                next.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return queue.poll();
+        }
+    }
+
+    private static <T> EventBus.Subscriber<T> collect(final List<T> into) {
+        return new EventBus.Subscriber<T>() {
+            @Override
+            public void onEvent(T event) {
+                synchronized (into) {
+                    into.add(event);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void publishingOnlyQueuesUntilTheExecutorRuns() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor main = new QueueExecutor();
+        List<String> received = new ArrayList<String>();
+        bus.subscribe("strings", String.class, main, 8, collect(received));
+
+        bus.publish("a");
+        bus.publish("b");
+        assertTrue(received.isEmpty());
+        // one drain for both
+        assertEquals(1, main.queue.size());
+
+        main.runAll();
+        assertEquals(Arrays.asList("a", "b"), received);
+    }
+
+    @Test
+    public void fullBufferDropsTheOldest() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor slow = new QueueExecutor();
+        List<Integer> received = new ArrayList<Integer>();
+        EventBus.Subscription<Integer> subscription = bus.subscribe("ints", Integer.class, slow, 3, collect(received));
+
+        for (int i = 0; i < 10; i++) {
+            bus.publish(i);
+        }
+        assertEquals(3, subscription.getPending());
+        assertEquals(7, subscription.getDropped());
+
+        slow.runAll();
+        assertEquals(Arrays.asList(7, 8, 9), received);
+        assertEquals(3, subscription.getDelivered());
+    }
+
+    @Test
+    public void latestOnlyKeepsTheNewestEvent() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor main = new QueueExecutor();
+        List<String> camera = new ArrayList<String>();
+        List<String> log = new ArrayList<String>();
+        bus.subscribeLatest("camera", String.class, main, collect(camera));
+        bus.subscribe("log", String.class, main, 16, collect(log));
+
+        bus.publish("first");
+        bus.publish("second");
+        bus.publish("third");
+        main.runAll();
+
+        assertEquals(Arrays.asList("third"), camera);
+        assertEquals(Arrays.asList("first", "second", "third"), log);
+    }
+
+    @Test
+    public void deliversByType() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor main = new QueueExecutor();
+        List<Integer> ints = new ArrayList<Integer>();
+        List<Number> numbers = new ArrayList<Number>();
+        List<ConnectionEvent> connections = new ArrayList<ConnectionEvent>();
+        bus.subscribe("ints", Integer.class, main, 8, collect(ints));
+        bus.subscribe("numbers", Number.class, main, 8, collect(numbers));
+        bus.subscribe("connections", ConnectionEvent.class, main, 8, collect(connections));
+
+        bus.publish(1);
+        bus.publish(2.5);
+        bus.publish(new ConnectionEvent(ConnectionEvent.SUSPENDED, 2, 0));
+        bus.publish("ignored");
+        main.runAll();
+
+        assertEquals(Arrays.asList(1), ints);
+        assertEquals(Arrays.<Number>asList(1, 2.5), numbers);
+        assertEquals(1, connections.size());
+        assertEquals(ConnectionEvent.SUSPENDED, connections.get(0).getState());
+    }
+
+    @Test
+    public void cancelledSubscriptionGetsNothingMore() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor main = new QueueExecutor();
+        List<String> received = new ArrayList<String>();
+        EventBus.Subscription<String> subscription = bus.subscribe("strings", String.class, main, 8, collect(received));
+
+        bus.publish("queued");
+        subscription.cancel();
+        bus.publish("after");
+        main.runAll();
+
+        assertTrue(received.isEmpty());
+        assertTrue(bus.getSubscriptions().isEmpty());
+    }
+
+    @Test
+    public void throwingSubscriberKeepsReceiving() {
+        EventBus bus = new EventBus(null, "");
+        QueueExecutor main = new QueueExecutor();
+        final List<String> received = new ArrayList<String>();
+        bus.subscribe("strings", String.class, main, 8, new EventBus.Subscriber<String>() {
+            @Override
+            public void onEvent(String event) {
+                if (event.equals("bad")) {
+                    throw new IllegalStateException(event);
+                }
+                received.add(event);
+            }
+        });
+
+        bus.publish("bad");
+        bus.publish("good");
+        try {
+            main.runAll();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // the rest of the buffer was rescheduled
+        main.runAll();
+        assertEquals(Arrays.asList("good"), received);
+    }
+
+    @Test
+    public void recordsDeliveryDelay() {
+        Metrics metrics = new Metrics();
+        EventBus bus = new EventBus(metrics, "events.");
+        QueueExecutor main = new QueueExecutor();
+        bus.subscribeLatest("camera", String.class, main, collect(new ArrayList<String>()));
+
+        bus.publish("a");
+        bus.publish("b");
+        main.runAll();
+
+        // the dropped event was never delivered, so it has no delay
+        assertEquals(1, metrics.histogram("events.camera").getCount());
+    }
+
+    private static EventPool<Fix> fixes(int size) {
+        return new EventPool<Fix>(size, new EventPool.Factory<Fix>() {
+            @Override
+            public Fix create() {
+                return new Fix(0, 0, 0, Float.NaN, 0);
+            }
+        });
+    }
+
+    @Test
+    public void pooledEventsGoBackOnceEverySubscriptionIsDone() {
+        EventBus bus = new EventBus(null, "");
+        EventPool<Fix> pool = fixes(4);
+        QueueExecutor main = new QueueExecutor();
+        QueueExecutor background = new QueueExecutor();
+        final List<Double> shown = new ArrayList<Double>();
+        bus.subscribeLatest("camera", Fix.class, main, new EventBus.Subscriber<Fix>() {
+            @Override
+            public void onEvent(Fix fix) {
+                shown.add(fix.getLat());
+            }
+        });
+        List<Fix> logged = new ArrayList<Fix>();
+        EventBus.Subscription<Fix> log = bus.subscribe("log", Fix.class, background, 2, collect(logged));
+
+        // with nobody subscribed it goes back at once
+        bus.publish("not a fix", null);
+        Fix first = pool.acquire().set(1, 0, 5, 0, 1000);
+        bus.publish(first, pool);
+        assertEquals(1, pool.getHeld());
+        bus.publish(pool.acquire().set(2, 0, 5, 0, 2000), pool);
+        // the camera dropped the first; the log still has it
+        assertEquals(2, pool.getHeld());
+        main.runAll();
+        assertEquals(Arrays.asList(2.0), shown);
+        assertEquals(2, pool.getHeld());
+        background.runAll();
+        assertEquals(2, logged.size());
+        assertEquals(0, pool.getHeld());
+
+        // the log is full and drops the oldest, and cancelling gives back the rest
+        for (int i = 0; i < 3; i++) {
+            bus.publish(pool.acquire().set(3 + i, 0, 5, 0, 3000 + i), pool);
+        }
+        main.runAll();
+        assertEquals(2, pool.getHeld());
+        log.cancel();
+        assertEquals(0, pool.getHeld());
+        assertEquals(0, pool.getMisses());
+
+        // a subscriber far behind holds the whole pool; the publisher gets an unpooled one
+        bus.subscribe("slow", Fix.class, background, 8, collect(new ArrayList<Fix>()));
+        for (int i = 0; i < 5; i++) {
+            bus.publish(pool.acquire().set(i, 0, 5, 0, i), pool);
+        }
+        assertEquals(1, pool.getMisses());
+        main.runAll();
+        background.runAll();
+        assertEquals(0, pool.getHeld());
+    }
+
+    @Test
+    public void publishingPooledFixesAllocatesNothing() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        // the camera on the main thread and the metrics in the background, as in the app
+        EventBus bus = new EventBus(new Metrics(), "events.");
+        EventPool<Fix> pool = fixes(8);
+        final Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        // runs the drain it was handed every few fixes, like a busy pool thread
+        final Runnable[] pending = new Runnable[1];
+        Executor later = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending[0] = command;
+            }
+        };
+        final double[] sum = new double[1];
+        EventBus.Subscriber<Fix> subscriber = new EventBus.Subscriber<Fix>() {
+            @Override
+            public void onEvent(Fix fix) {
+                sum[0] += fix.getLat();
+            }
+        };
+        bus.subscribeLatest("camera", Fix.class, direct, subscriber);
+        bus.subscribe("metrics", Fix.class, later, 64, subscriber);
+
+        Fix shown = new Fix(0, 0, 0, Float.NaN, 0);
+        int fixes = 20000;
+        publishShown(bus, pool, shown, pending, 1000);
+
+        // what asking for the counter costs, so it can be taken off
+        long probe = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - probe;
+        long before = threads.getThreadAllocatedBytes(thread);
+        publishShown(bus, pool, shown, pending, fixes);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals(0, pool.getMisses());
+        assertTrue(sum[0] > 0);
+        // any object per fix would add up to at least 16 bytes per fix
+        assertTrue("allocated " + allocated + " bytes for " + fixes + " fixes", allocated < fixes);
+    }
+
+    // what the pipeline callback does with each fix shown; the background drain runs every
+    // fourth fix
+    private static void publishShown(EventBus bus, EventPool<Fix> pool, Fix shown, Runnable[] pending,
+                                     int count) {
+        for (int i = 0; i < count; i++) {
+            shown.set(i, 0, 5, 0, i * 1000L);
+            bus.publish(pool.acquire().set(shown), pool);
+            if (i % 4 == 3 && pending[0] != null) {
+                Runnable drain = pending[0];
+                pending[0] = null;
+                drain.run();
+            }
+        }
+    }
+
+    @Test
+    public void neverCallsASubscriberConcurrently() throws InterruptedException {
+        EventBus bus = new EventBus(null, "");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final int[] inside = {0};
+        final boolean[] overlapped = {false};
+        final CountDownLatch done = new CountDownLatch(1);
+        final int total = 2000;
+        final int[] count = {0};
+        bus.subscribe("all", Integer.class, pool, total, new EventBus.Subscriber<Integer>() {
+            @Override
+            public void onEvent(Integer event) {
+                synchronized (inside) {
+                    if (++inside[0] > 1) {
+                        overlapped[0] = true;
+                    }
+                }
+                synchronized (inside) {
+                    inside[0]--;
+                    if (++count[0] == total) {
+                        done.countDown();
+                    }
+                }
+            }
+        });
+
+        for (int i = 0; i < total; i++) {
+            bus.publish(i);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertFalse(overlapped[0]);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.maptest.geo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GeoMathTest {
+
+    @Test
+    public void vincentyMatchesTheReferenceLine() {
+        // Flinders Peak to Buninyong, the worked example in Vincenty (1975)
+        double d = GeoMath.vincenty(-37.95103342, 144.42486789, -37.65282114, 143.92649554);
+        assertEquals(54972.271, d, 0.001);
+    }
+
+    @Test
+    public void vincentyIsSymmetricAndZeroForOnePoint() {
+        double there = GeoMath.vincenty(36.987336, -86.451221, 36.9951, -86.4403);
+        double back = GeoMath.vincenty(36.9951, -86.4403, 36.987336, -86.451221);
+        assertEquals(there, back, 1e-6);
+        assertEquals(0, GeoMath.vincenty(36.987336, -86.451221, 36.987336, -86.451221), 0);
+    }
+
+    @Test
+    public void vincentyAlongTheEquator() {
+        // one degree of longitude on the equator is 1/360 of the WGS84 equator
+        assertEquals(2 * Math.PI * GeoMath.WGS84_A / 360, GeoMath.vincenty(0, 0, 0, 1), 1e-6);
+    }
+
+    @Test
+    public void nearlyAntipodalPointsFallBackToHaversine() {
+        double d = GeoMath.vincenty(0, 0, 0.5, 179.7);
+        assertEquals(GeoMath.haversine(0, 0, 0.5, 179.7), d, 0);
+    }
+
+    @Test
+    public void sphericalFormulasStayCloseToTheEllipsoid() {
+        double lat = 36.987336;
+        double lng = -86.451221;
+        for (int bearing = 0; bearing < 360; bearing += 15) {
+            double lat2 = lat + 0.01 * Math.sin(Math.toRadians(bearing));
+            double lng2 = lng + 0.01 * Math.cos(Math.toRadians(bearing));
+            double exact = GeoMath.vincenty(lat, lng, lat2, lng2);
+            assertEquals(exact, GeoMath.haversine(lat, lng, lat2, lng2), exact * 0.005);
+            assertEquals(exact, GeoMath.fastDistance(lat, lng, lat2, lng2), exact * 0.005);
+        }
+    }
+}
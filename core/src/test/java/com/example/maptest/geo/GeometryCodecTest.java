@@ -0,0 +1,133 @@
+package com.example.maptest.geo;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeometryCodecTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    // a walk of n points, about a meter and a half apart, wandering a little
+    private static double[][] walk(int n, long seed) {
+        Random random = new Random(seed);
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        double lat = LAT, lng = LNG, heading = 0;
+        for (int i = 0; i < n; i++) {
+            lats[i] = lat;
+            lngs[i] = lng;
+            heading += random.nextGaussian() * 0.3;
+            lat += Math.cos(heading) * 1.4 / GeoMath.METERS_PER_DEGREE;
+            lng += Math.sin(heading) * 1.4 / GeoMath.metersPerDegreeLng(LAT);
+        }
+        return new double[][]{lats, lngs};
+    }
+
+    @Test
+    public void roundTripsToTheChosenPrecision() {
+        double[][] walk = walk(500, 1);
+        for (int decimals = GeometryCodec.MIN_DECIMALS; decimals <= GeometryCodec.MAX_DECIMALS; decimals++) {
+            byte[] encoded = GeometryCodec.encode(walk[0], walk[1], 500, null, decimals);
+            GeometryCodec.Reader reader = new GeometryCodec.Reader(ByteBuffer.wrap(encoded));
+            assertEquals(500, reader.size());
+            assertFalse(reader.hasLevels());
+            double tolerance = 0.5 / Math.pow(10, decimals) + 1e-12;
+            for (int i = 0; i < 500; i++) {
+                assertTrue(reader.next());
+                assertEquals(walk[0][i], reader.getLat(), tolerance);
+                assertEquals(walk[1][i], reader.getLng(), tolerance);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void aWalkTakesAFewBytesAPoint() {
+        double[][] walk = walk(1000, 2);
+        byte[] encoded = GeometryCodec.encode(walk[0], walk[1], 1000);
+        // two doubles would be 16
+        assertTrue(encoded.length + " bytes", encoded.length < 1000 * 5);
+        assertTrue(encoded.length <= GeometryCodec.maxSize(1000, false));
+    }
+
+    @Test
+    public void stepsAcrossTheAntimeridianAndPolesComeBack() {
+        double[] lats = {0, -89.9999999, 89.9999999, 0.5, 0};
+        double[] lngs = {179.9999999, -179.9999999, 179.9999999, -0.0000001, 0};
+        byte[] encoded = GeometryCodec.encode(lats, lngs, 5, null, 7);
+        GeometryCodec.Reader reader = new GeometryCodec.Reader(ByteBuffer.wrap(encoded));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(reader.next());
+            assertEquals(lats[i], reader.getLat(), 1e-9);
+            assertEquals(lngs[i], reader.getLng(), 1e-9);
+        }
+    }
+
+    @Test
+    public void readsEncodingsOneAfterAnotherInOneBuffer() {
+        double[][] a = walk(30, 3);
+        double[][] b = walk(7, 4);
+        ByteBuffer buffer = ByteBuffer.allocate(GeometryCodec.maxSize(37, true) + 1);
+        GeometryCodec.Writer writer = new GeometryCodec.Writer(buffer, 30, false, 6);
+        for (int i = 0; i < 30; i++) {
+            writer.write(a[0][i], a[1][i], 0);
+        }
+        writer = new GeometryCodec.Writer(buffer, 7, true, 6);
+        for (int i = 0; i < 7; i++) {
+            writer.write(b[0][i], b[1][i], i);
+        }
+        buffer.put((byte) 42);
+        buffer.flip();
+
+        GeometryCodec.Reader first = new GeometryCodec.Reader(buffer);
+        int n = 0;
+        while (first.next()) {
+            n++;
+        }
+        assertEquals(30, n);
+        // only the points needed up to zoom 3
+        GeometryCodec.Reader second = new GeometryCodec.Reader(buffer, 3);
+        n = 0;
+        while (second.next()) {
+            assertEquals(n, second.getLevel());
+            assertEquals(b[0][n], second.getLat(), 1e-6);
+            n++;
+        }
+        assertEquals(4, n);
+        assertEquals(42, buffer.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesMorePointsThanAnnounced() {
+        GeometryCodec.Writer writer = new GeometryCodec.Writer(ByteBuffer.allocate(64), 1, false, 6);
+        writer.write(LAT, LNG, 0);
+        writer.write(LAT, LNG, 0);
+    }
+
+    @Test
+    public void rejectsWhatItDidNotWrite() {
+        try {
+            new GeometryCodec.Reader(ByteBuffer.wrap(new byte[]{(byte) 0x26, 1}));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new GeometryCodec.Reader(ByteBuffer.wrap(new byte[]{6, 1, -1, -1, -1, -1, -1, -1})).next();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        byte[] encoded = GeometryCodec.encode(new double[]{LAT}, new double[]{LNG}, 1);
+        ByteBuffer truncated = ByteBuffer.wrap(encoded, 0, encoded.length - 1);
+        try {
+            new GeometryCodec.Reader(truncated).next();
+            fail();
+        } catch (BufferUnderflowException expected) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.maptest.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineSimplifierTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static double north(double meters) {
+        return meters / GeoMath.METERS_PER_DEGREE;
+    }
+
+    private static double east(double meters) {
+        return meters / GeoMath.metersPerDegreeLng(LAT);
+    }
+
+    private static double tolerance(int zoom) {
+        return LineSimplifier.PIXEL_TOLERANCE * GeoMath.metersPerDegreeLng(LAT) * 360.0 / (256L << zoom);
+    }
+
+    @Test
+    public void straightLineNeedsOnlyItsEnds() {
+        double[] lats = new double[50];
+        double[] lngs = new double[50];
+        for (int i = 0; i < 50; i++) {
+            lats[i] = LAT;
+            lngs[i] = LNG + east(i * 2);
+        }
+        int[] levels = LineSimplifier.levels(lats, lngs, 50, false);
+        assertEquals(0, levels[0]);
+        assertEquals(0, levels[49]);
+        for (int i = 1; i < 49; i++) {
+            assertEquals(LineSimplifier.NEVER, levels[i]);
+        }
+        assertArrayEquals(new int[]{0, 49}, LineSimplifier.keep(levels, LineSimplifier.MAX_LEVEL));
+    }
+
+    @Test
+    public void everyZoomKeepsTheLineWithinTolerance() {
+        Random random = new Random(9);
+        int n = 400;
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        double heading = 0, north = 0, east = 0;
+        for (int i = 0; i < n; i++) {
+            lats[i] = LAT + north(north);
+            lngs[i] = LNG + east(east);
+            heading += random.nextGaussian() * 0.4;
+            north += Math.cos(heading) * 3;
+            east += Math.sin(heading) * 3;
+        }
+        int[] levels = LineSimplifier.levels(lats, lngs, n, false);
+        int previous = 0;
+        for (int zoom = 0; zoom <= LineSimplifier.MAX_LEVEL; zoom++) {
+            int[] kept = LineSimplifier.keep(levels, zoom);
+            assertEquals(0, kept[0]);
+            assertEquals(n - 1, kept[kept.length - 1]);
+            assertTrue(kept.length >= previous);
+            previous = kept.length;
+            // every dropped point is within tolerance of the simplified segment spanning it
+            for (int k = 1; k < kept.length; k++) {
+                for (int i = kept[k - 1] + 1; i < kept[k]; i++) {
+                    double d = GeoMath.distanceToSegment(lats[i], lngs[i],
+                            lats[kept[k - 1]], lngs[kept[k - 1]], lats[kept[k]], lngs[kept[k]]);
+                    assertTrue("zoom " + zoom + ": " + d + " m off", d <= tolerance(zoom));
+                }
+            }
+        }
+        // a campus walk at street zoom needs far fewer points than at building zoom
+        assertTrue(LineSimplifier.keep(levels, 15).length < LineSimplifier.keep(levels, 20).length / 2);
+    }
+
+    @Test
+    public void ringKeepsItsCornersAndDropsPointsAlongItsSides() {
+        // a 40 m square footprint with a point halfway along each side
+        double[] lats = {LAT, LAT, LAT, LAT + north(20), LAT + north(40), LAT + north(40), LAT + north(40), LAT + north(20)};
+        double[] lngs = {LNG, LNG + east(20), LNG + east(40), LNG + east(40), LNG + east(40), LNG + east(20), LNG, LNG};
+        int[] levels = LineSimplifier.levels(lats, lngs, 8, true);
+        assertArrayEquals(new int[]{0, 2, 4, 6}, LineSimplifier.keep(levels, LineSimplifier.MAX_LEVEL));
+        // the first corner and the one opposite are needed at every zoom
+        assertEquals(0, levels[0]);
+        assertEquals(0, levels[4]);
+        // at world zoom the square is a speck
+        assertArrayEquals(new int[]{0, 4}, LineSimplifier.keep(levels, 5));
+    }
+}
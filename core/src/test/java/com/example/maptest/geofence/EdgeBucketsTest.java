@@ -0,0 +1,128 @@
+package com.example.maptest.geofence;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EdgeBucketsTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    /**
+     * Random star-shaped polygon around the campus center, like an irregular footprint.
+     */
+    static PolygonRegion star(String id, double lat, double lng, int vertices, Random random) {
+        double[] lats = new double[vertices];
+        double[] lngs = new double[vertices];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = 0.0002 + random.nextDouble() * 0.0004;
+            lats[i] = lat + r * Math.sin(angle);
+            lngs[i] = lng + r * Math.cos(angle);
+        }
+        return new PolygonRegion(id, lats, lngs);
+    }
+
+    /**
+     * Comb with {@code teeth} teeth pointing north: many edges share every slab.
+     */
+    static PolygonRegion comb(int teeth) {
+        int n = teeth * 4;
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        int v = 0;
+        for (int t = 0; t < teeth; t++) {
+            double west = LNG + t * 0.0001;
+            lats[v] = LAT;
+            lngs[v++] = west;
+            lats[v] = LAT + 0.001 + t * 0.00001;
+            lngs[v++] = west;
+            lats[v] = LAT + 0.001 + t * 0.00001;
+            lngs[v++] = west + 0.00005;
+            lats[v] = LAT + 0.0002;
+            lngs[v++] = west + 0.00005;
+        }
+        // close along the spine below the teeth
+        lats[n - 1] = LAT - 0.0001;
+        lngs[n - 1] = LNG + teeth * 0.0001;
+        lats[0] = LAT - 0.0001;
+        return new PolygonRegion("comb", lats, lngs);
+    }
+
+    private static void assertAgreesWithRayCasting(PolygonRegion polygon, Random random, int probes) {
+        double spanLat = polygon.getBounds().maxLat - polygon.getBounds().minLat;
+        double spanLng = polygon.getBounds().maxLng - polygon.getBounds().minLng;
+        int inside = 0;
+        for (int p = 0; p < probes; p++) {
+            double lat = polygon.getBounds().minLat + (random.nextDouble() * 1.2 - 0.1) * spanLat;
+            double lng = polygon.getBounds().minLng + (random.nextDouble() * 1.2 - 0.1) * spanLng;
+            boolean expected = polygon.containsByRayCasting(lat, lng);
+            assertEquals(lat + "," + lng, expected, polygon.contains(lat, lng));
+            if (expected) {
+                inside++;
+            }
+        }
+        assertTrue(inside > 0);
+    }
+
+    @Test
+    public void matchesRayCastingOnFootprints() {
+        Random random = new Random(11);
+        for (int vertices : new int[]{3, 4, 7, 16, 64, 500}) {
+            assertAgreesWithRayCasting(star("s" + vertices, LAT, LNG, vertices, random), random, 5000);
+        }
+    }
+
+    @Test
+    public void matchesRayCastingOnComb() {
+        assertAgreesWithRayCasting(comb(40), new Random(12), 20000);
+    }
+
+    @Test
+    public void answersOnVerticesAndEdgesLikeRayCasting() {
+        PolygonRegion square = new PolygonRegion("sq",
+                new double[]{LAT, LAT, LAT + 0.001, LAT + 0.001},
+                new double[]{LNG, LNG + 0.001, LNG + 0.001, LNG});
+        double[][] probes = {
+                {LAT, LNG}, {LAT, LNG + 0.0005}, {LAT + 0.0005, LNG}, {LAT + 0.001, LNG + 0.0005},
+                {LAT + 0.0005, LNG + 0.001}, {LAT + 0.0005, LNG + 0.0005}, {LAT + 0.001, LNG + 0.001}};
+        for (double[] p : probes) {
+            assertEquals(p[0] + "," + p[1], square.containsByRayCasting(p[0], p[1]), square.contains(p[0], p[1]));
+        }
+        assertTrue(square.contains(LAT + 0.0005, LNG + 0.0005));
+    }
+
+    @Test
+    public void bucketsStaySmallForFootprints() {
+        double[] lats = new double[64];
+        double[] lngs = new double[64];
+        for (int i = 0; i < 64; i++) {
+            lats[i] = LAT + 0.0003 * Math.sin(2 * Math.PI * (i + 0.25) / 64);
+            lngs[i] = LNG + 0.0003 * Math.cos(2 * Math.PI * (i + 0.25) / 64);
+        }
+        // a convex outline crosses every slab exactly twice
+        assertEquals(2 * 63, new EdgeBuckets(lats, lngs).size());
+        PolygonRegion footprint = star("f", LAT, LNG, 64, new Random(13));
+        EdgeBuckets buckets = new EdgeBuckets(verticesLat(footprint), verticesLng(footprint));
+        assertTrue(buckets.size() + " entries", buckets.size() < 64 * 8);
+    }
+
+    private static double[] verticesLat(PolygonRegion polygon) {
+        double[] lats = new double[polygon.getVertexCount()];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = polygon.getVertexLat(i);
+        }
+        return lats;
+    }
+
+    private static double[] verticesLng(PolygonRegion polygon) {
+        double[] lngs = new double[polygon.getVertexCount()];
+        for (int i = 0; i < lngs.length; i++) {
+            lngs[i] = polygon.getVertexLng(i);
+        }
+        return lngs;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.maptest.geofence;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FloorIndexTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static Set<String> ids(List<Region> regions) {
+        Set<String> ids = new HashSet<String>();
+        for (Region region : regions) {
+            ids.add(region.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void matchesRoomsOnlyOnTheirFloor() {
+        FloorIndex index = new FloorIndex(Arrays.<Region>asList(
+                new CircleRegion("lawn", LAT - 0.001, LNG, 40),
+                new CircleRegion("CH", "CH", Region.ANY_FLOOR, LAT, LNG, 50),
+                new CircleRegion("CH 125", "CH", 1, LAT, LNG, 10),
+                new CircleRegion("CH 225", "CH", 2, LAT, LNG, 10),
+                new CircleRegion("CH 325", "CH", 3, LAT, LNG, 10)));
+        assertEquals(5, index.size());
+        assertEquals(2, index.getAnyFloor().size());
+        assertEquals(Arrays.asList(1, 2, 3), index.getFloors());
+        assertNull(index.getFloor(4));
+
+        RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+        List<Region> out = new ArrayList<Region>();
+        assertEquals(2, index.regionsContaining(LAT, LNG, 2, out, scratch));
+        assertEquals(new HashSet<String>(Arrays.asList("CH", "CH 225")), ids(out));
+
+        out.clear();
+        assertEquals(1, index.regionsContaining(LAT, LNG, Region.ANY_FLOOR, out, scratch));
+        assertEquals(Collections.singleton("CH"), ids(out));
+
+        out.clear();
+        assertEquals(1, index.regionsContaining(LAT, LNG, 7, out, scratch));
+        assertEquals(0, index.regionsOnFloor(LAT - 0.001, LNG, 1, out, scratch));
+    }
+
+    @Test
+    public void sameAsFilteringEveryRegion() {
+        List<Region> regions = new ArrayList<Region>(RegionIndexTest.randomRegions(300, 5));
+        Random random = new Random(9);
+        for (int i = 0; i < 600; i++) {
+            regions.add(new CircleRegion("room" + i, "B" + (i % 20), random.nextInt(5) - 1,
+                    LAT + (random.nextDouble() - 0.5) * 0.02, LNG + (random.nextDouble() - 0.5) * 0.02,
+                    5 + random.nextInt(30)));
+        }
+        FloorIndex index = new FloorIndex(regions);
+        RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+        List<Region> out = new ArrayList<Region>();
+        for (int q = 0; q < 2000; q++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.02;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.02;
+            int floor = random.nextInt(8) == 0 ? Region.ANY_FLOOR : random.nextInt(5) - 1;
+            Set<String> expected = new HashSet<String>();
+            for (Region region : regions) {
+                if ((region.getFloor() == Region.ANY_FLOOR || region.getFloor() == floor)
+                        && region.contains(lat, lng)) {
+                    expected.add(region.getId());
+                }
+            }
+            out.clear();
+            index.regionsContaining(lat, lng, floor, out, scratch);
+            assertEquals(expected, ids(out));
+        }
+    }
+
+    @Test
+    public void wrappedIndexMatchesOnEveryFloor() {
+        RegionIndex regions = new RegionIndex(Collections.<Region>singletonList(
+                new CircleRegion("CH 125", "CH", 1, LAT, LNG, 10)));
+        FloorIndex index = new FloorIndex(regions);
+        assertSame(regions, index.getAnyFloor());
+        List<Region> out = new ArrayList<Region>();
+        assertEquals(1, index.regionsContaining(LAT, LNG, 2, out, new RegionIndex.Scratch()));
+    }
+}
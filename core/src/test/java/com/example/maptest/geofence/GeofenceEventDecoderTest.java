@@ -0,0 +1,94 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.transition.TransitionEvent;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeofenceEventDecoderTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    // a 40 m square footprint
+    private static final Region SQUARE = new PolygonRegion("sq",
+            new double[]{LAT - 0.00018, LAT - 0.00018, LAT + 0.00018, LAT + 0.00018},
+            new double[]{LNG - 0.00022, LNG + 0.00022, LNG + 0.00022, LNG - 0.00022});
+
+    private final GeofenceEventDecoder decoder = new GeofenceEventDecoder(new GeofenceEventDecoder.Shapes() {
+        @Override
+        public Region find(String requestId) {
+            return requestId.equals(SQUARE.getId()) ? SQUARE : null;
+        }
+    });
+
+    private static double north(double meters) {
+        return LAT + meters / GeoMath.METERS_PER_DEGREE;
+    }
+
+    private static String ids(List<TransitionEvent> events) {
+        StringBuilder sb = new StringBuilder();
+        for (TransitionEvent event : events) {
+            sb.append(sb.length() == 0 ? "" : ",").append(event.getRequestId());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void onlyDwellAndExitAreSupported() {
+        assertTrue(GeofenceEventDecoder.isSupported(TransitionEvent.DWELL));
+        assertTrue(GeofenceEventDecoder.isSupported(TransitionEvent.EXIT));
+        assertFalse(GeofenceEventDecoder.isSupported(TransitionEvent.ENTER));
+        assertFalse(GeofenceEventDecoder.isSupported(0));
+    }
+
+    @Test
+    public void dropsDwellClearlyOutsideTheFootprint() {
+        List<String> ids = Arrays.asList("sq", "unknown");
+        // the covering circle reaches about 28 m north of the centre, the square only 20 m
+        assertEquals("sq,unknown", ids(decoder.decode(TransitionEvent.DWELL, ids, north(15), LNG, 5, 7)));
+        assertEquals("unknown", ids(decoder.decode(TransitionEvent.DWELL, ids, north(27), LNG, 5, 7)));
+        // within the accuracy of the fix
+        assertEquals("sq,unknown", ids(decoder.decode(TransitionEvent.DWELL, ids, north(27), LNG, 10, 7)));
+    }
+
+    @Test
+    public void keepsEveryExit() {
+        List<TransitionEvent> events = decoder.decode(TransitionEvent.EXIT, Arrays.asList("sq"),
+                north(27), LNG, 5, 7);
+        assertEquals(1, events.size());
+        assertEquals(TransitionEvent.EXIT, events.get(0).getTransition());
+        assertEquals(7, events.get(0).getTriggerNanos());
+    }
+
+    @Test
+    public void withoutTriggerNothingIsDropped() {
+        List<TransitionEvent> events = decoder.decode(TransitionEvent.DWELL, Arrays.asList("sq"));
+        assertEquals("sq", ids(events));
+        assertEquals(0, events.get(0).getTriggerNanos());
+    }
+
+    @Test
+    public void specCoversTheRegion() {
+        GeofenceSpec spec = GeofenceSpec.forRegion(SQUARE);
+        assertEquals("sq", spec.requestId);
+        assertEquals(SQUARE.getRadius(), spec.radius, 0);
+        assertTrue(spec.reports(TransitionEvent.DWELL));
+        assertTrue(spec.reports(TransitionEvent.EXIT));
+        assertFalse(spec.reports(TransitionEvent.ENTER));
+        assertEquals(GeofenceStateMachine.LOITERING_DELAY, spec.loiteringDelay);
+        assertEquals(GeofenceSpec.NEVER_EXPIRE, spec.expiration);
+        // every corner of the footprint is inside the registered circle
+        assertTrue(GeoMath.haversine(spec.lat, spec.lng, LAT + 0.00018, LNG + 0.00022) <= spec.radius);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void specNeedsATransition() {
+        new GeofenceSpec("x", LAT, LNG, 10, 0, 0, GeofenceSpec.NEVER_EXPIRE);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.maptest.geofence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeofenceRegistryTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("geofences", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void reconnectWithSameRegionsIsANoOp() throws IOException {
+        List<Region> regions = RegionIndexTest.randomRegions(90, 3);
+        GeofenceRegistry registry = new GeofenceRegistry(file, "boot-1");
+        assertFalse(registry.isTrusted());
+        registry.clear();
+
+        GeofenceRegistry.Plan first = registry.plan(regions);
+        assertEquals(90, first.add.size());
+        assertTrue(first.remove.isEmpty());
+        registry.markRegistered(first.add);
+        registry.save();
+
+        GeofenceRegistry reloaded = new GeofenceRegistry(file, "boot-1");
+        assertTrue(reloaded.isTrusted());
+        assertEquals(90, reloaded.size());
+        assertTrue(reloaded.plan(regions).isEmpty());
+    }
+
+    @Test
+    public void planContainsOnlyChanges() {
+        List<Region> regions = RegionIndexTest.randomRegions(10, 4);
+        GeofenceRegistry registry = new GeofenceRegistry(file, "boot-1");
+        registry.clear();
+        registry.markRegistered(regions);
+
+        Region moved = new CircleRegion(regions.get(0).getId(), LAT, LNG, 25);
+        Region added = new CircleRegion("new", LAT, LNG, 40);
+        List<Region> desired = Arrays.asList(moved, regions.get(1), regions.get(2), added);
+
+        GeofenceRegistry.Plan plan = registry.plan(desired);
+        assertEquals(Arrays.asList(moved, added), plan.add);
+        assertEquals(7, plan.remove.size());
+        assertFalse(plan.remove.contains(regions.get(1).getId()));
+
+        registry.markRemoved(plan.remove);
+        registry.markRegistered(plan.add);
+        assertEquals(4, registry.size());
+        assertTrue(registry.plan(desired).isEmpty());
+    }
+
+    @Test
+    public void otherSessionIsNotTrusted() throws IOException {
+        GeofenceRegistry registry = new GeofenceRegistry(file, "boot-1");
+        registry.clear();
+        registry.markRegistered(RegionIndexTest.randomRegions(5, 5));
+        registry.save();
+
+        GeofenceRegistry afterReboot = new GeofenceRegistry(file, "boot-2");
+        assertFalse(afterReboot.isTrusted());
+        assertEquals(0, afterReboot.size());
+    }
+
+    @Test
+    public void corruptFileIsNotTrusted() throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{0x47, 0x52, 0x45});
+        } finally {
+            out.close();
+        }
+        GeofenceRegistry registry = new GeofenceRegistry(file, "boot-1");
+        assertFalse(registry.isTrusted());
+        assertEquals(0, registry.size());
+        assertEquals(3, registry.plan(RegionIndexTest.randomRegions(3, 6)).add.size());
+    }
+
+    @Test
+    public void stampFollowsGeometry() {
+        Region region = new CircleRegion("a", LAT, LNG, 30);
+        assertEquals(GeofenceRegistry.stamp(region),
+                GeofenceRegistry.stamp(new CircleRegion("a", LAT, LNG, 30)));
+        assertNotEquals(GeofenceRegistry.stamp(region),
+                GeofenceRegistry.stamp(new CircleRegion("a", LAT, LNG, 31)));
+        assertNotEquals(GeofenceRegistry.stamp(region),
+                GeofenceRegistry.stamp(new CircleRegion("a", LAT + 0.0001, LNG, 30)));
+        assertTrue(new GeofenceRegistry(file, "boot-1").plan(Collections.<Region>emptyList()).isEmpty());
+    }
+}
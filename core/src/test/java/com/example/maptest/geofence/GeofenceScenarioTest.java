@@ -0,0 +1,149 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Randomized scenarios: campuses of overlapping circles and polygons, and walks that wander
+ * in and out of them, some pausing long enough to dwell. The transitions of the indexed,
+ * bucketed path are checked against a brute-force scan of every region with ray casting
+ * and a straightforward model of the DWELL/EXIT rules.
+ */
+public class GeofenceScenarioTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static final int SCENARIOS = 2000;
+    private static final int FIXES = 200;
+    private static final long DELAY = GeofenceStateMachine.LOITERING_DELAY;
+
+    @Test
+    public void indexedPathMatchesBruteForce() {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            Random random = new Random(seed);
+            List<Region> regions = campus(random);
+            RegionIndex index = new RegionIndex(regions);
+            GeofenceStateMachine machine = new GeofenceStateMachine(DELAY);
+            Reference reference = new Reference();
+
+            List<Region> containing = new ArrayList<Region>();
+            RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+            List<TransitionEvent> fired = new ArrayList<TransitionEvent>();
+            double lat = LAT;
+            double lng = LNG;
+            long time = 0;
+            for (int i = 0; i < FIXES; i++) {
+                // mostly walking, with stops of a few seconds
+                if (random.nextInt(8) != 0) {
+                    lat += (random.nextDouble() - 0.5) * 0.0002;
+                    lng += (random.nextDouble() - 0.5) * 0.0002;
+                }
+                time += 500 + random.nextInt(1500);
+
+                containing.clear();
+                index.regionsContaining(lat, lng, containing, scratch);
+                fired.clear();
+                machine.update(containing, time, fired);
+
+                List<String> inside = new ArrayList<String>();
+                for (Region region : regions) {
+                    boolean contains = region instanceof PolygonRegion
+                            ? ((PolygonRegion) region).containsByRayCasting(lat, lng)
+                            : region.contains(lat, lng);
+                    if (contains) {
+                        inside.add(region.getId());
+                    }
+                }
+                assertEquals("scenario " + seed + " fix " + i, reference.update(inside, time), describe(fired));
+            }
+        }
+    }
+
+    // a dozen overlapping regions within about 100 m
+    private static List<Region> campus(Random random) {
+        List<Region> regions = new ArrayList<Region>();
+        int count = 4 + random.nextInt(12);
+        for (int r = 0; r < count; r++) {
+            double lat = LAT + (random.nextDouble() - 0.5) * 0.002;
+            double lng = LNG + (random.nextDouble() - 0.5) * 0.002;
+            if (random.nextBoolean()) {
+                regions.add(new CircleRegion("c" + r, lat, lng, 10 + random.nextInt(50)));
+                continue;
+            }
+            int n = 3 + random.nextInt(20);
+            double[] lats = new double[n];
+            double[] lngs = new double[n];
+            for (int v = 0; v < n; v++) {
+                double angle = 2 * Math.PI * v / n;
+                double radius = 0.0001 + random.nextDouble() * 0.0004;
+                lats[v] = lat + radius * Math.sin(angle);
+                lngs[v] = lng + radius * Math.cos(angle);
+            }
+            regions.add(new PolygonRegion("p" + r, lats, lngs));
+        }
+        return regions;
+    }
+
+    // EXITs then DWELLs, each sorted, so the order regions were entered in does not matter
+    private static List<String> describe(List<TransitionEvent> events) {
+        List<String> exits = new ArrayList<String>();
+        List<String> dwells = new ArrayList<String>();
+        for (TransitionEvent event : events) {
+            (event.getTransition() == TransitionEvent.EXIT ? exits : dwells).add(event.getRequestId());
+        }
+        return sorted(exits, dwells);
+    }
+
+    private static List<String> sorted(List<String> exits, List<String> dwells) {
+        Collections.sort(exits);
+        Collections.sort(dwells);
+        List<String> result = new ArrayList<String>();
+        for (String id : exits) {
+            result.add("exit " + id);
+        }
+        for (String id : dwells) {
+            result.add("dwell " + id);
+        }
+        return result;
+    }
+
+    // the rules as stated in GeofenceStateMachine, one region at a time
+    private static class Reference {
+        private final Map<String, Long> enteredAt = new HashMap<String, Long>();
+        private final Map<String, Boolean> dwelling = new HashMap<String, Boolean>();
+
+        List<String> update(List<String> inside, long time) {
+            List<String> exits = new ArrayList<String>();
+            for (String id : new ArrayList<String>(enteredAt.keySet())) {
+                if (!inside.contains(id)) {
+                    enteredAt.remove(id);
+                    dwelling.remove(id);
+                    exits.add(id);
+                }
+            }
+            List<String> dwells = new ArrayList<String>();
+            for (String id : inside) {
+                if (!enteredAt.containsKey(id)) {
+                    enteredAt.put(id, time);
+                    dwelling.put(id, false);
+                }
+                if (!dwelling.get(id) && time - enteredAt.get(id) >= DELAY) {
+                    dwelling.put(id, true);
+                    dwells.add(id);
+                }
+            }
+            return sorted(exits, dwells);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.transition.TransitionEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.maptest.geofence.GeofenceStateMachine.TRANSITION_DWELL;
+import static com.example.maptest.geofence.GeofenceStateMachine.TRANSITION_EXIT;
+import static org.junit.Assert.*;
+
+public class GeofenceStateMachineTest {
+
+    private static final Region A = new CircleRegion("a", 36.9873, -86.4512, 30);
+    private static final Region B = new CircleRegion("b", 36.9874, -86.4512, 30);
+
+    private final GeofenceStateMachine machine = new GeofenceStateMachine(2000);
+    private final List<TransitionEvent> out = new ArrayList<TransitionEvent>();
+
+    private List<String> feed(long time, Region... containing) {
+        out.clear();
+        machine.update(Arrays.asList(containing), time, out);
+        List<String> fired = new ArrayList<String>();
+        for (TransitionEvent event : out) {
+            fired.add((event.getTransition() == TRANSITION_DWELL ? "dwell " : "exit ") + event.getRequestId());
+        }
+        return fired;
+    }
+
+    @Test
+    public void dwellsAfterLoiteringDelay() {
+        assertEquals(Collections.emptyList(), feed(0));
+        assertEquals(Collections.emptyList(), feed(1000, A));
+        assertTrue(machine.isInside("a"));
+        assertEquals(Collections.emptyList(), feed(2999, A));
+        assertEquals(Arrays.asList("dwell a"), feed(3000, A));
+        assertTrue(machine.isDwelling("a"));
+        assertEquals(Collections.emptyList(), feed(60000, A));
+        assertEquals(Arrays.asList("exit a"), feed(61000));
+        assertFalse(machine.isInside("a"));
+    }
+
+    @Test
+    public void passingThroughOnlyExits() {
+        feed(0, A);
+        assertEquals(Arrays.asList("exit a"), feed(1500));
+        // re-entering restarts the delay
+        feed(2000, A);
+        assertEquals(Collections.emptyList(), feed(3500, A));
+        assertEquals(Arrays.asList("dwell a"), feed(4000, A));
+    }
+
+    @Test
+    public void initialTriggerDwellsWhenAlreadyInside() {
+        assertEquals(Collections.emptyList(), feed(100000, A, B));
+        assertEquals(Arrays.asList("dwell a", "dwell b"), feed(102000, A, B));
+        assertEquals(Arrays.asList("exit b"), feed(103000, A));
+        assertSame(TRANSITION_EXIT, out.get(0).getTransition());
+        machine.reset();
+        assertEquals(Collections.emptyList(), feed(104000, A));
+    }
+
+    @Test
+    public void exitsComeBeforeDwellsOfTheSameFix() {
+        feed(0, A);
+        feed(1000, A, B);
+        assertEquals(Arrays.asList("exit a", "dwell b"), feed(3000, B));
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.GeoMath;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MonitoredSetSelectorTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    @Test
+    public void selectsNearestAndSkipsSmallMoves() {
+        RegionIndex index = new RegionIndex(RegionIndexTest.randomRegions(2000, 7));
+        MonitoredSetSelector selector = new MonitoredSetSelector(index, 90);
+
+        MonitoredSetSelector.Diff first = selector.update(LAT, LNG);
+        assertNotNull(first);
+        assertEquals(90, first.added.size());
+        assertTrue(first.removed.isEmpty());
+        assertTrue(selector.getReselectDistance() > 0);
+
+        // a couple of meters of jitter keeps the current selection
+        assertNull(selector.update(LAT + 0.00001, LNG));
+    }
+
+    @Test
+    public void selectsARegionBeforeTheUserReachesIt() {
+        // 90 rooms in a ring 5 m around the user, and one more 30 m north
+        List<Region> regions = new ArrayList<Region>();
+        for (int i = 0; i < 90; i++) {
+            double angle = 2 * Math.PI * i / 90;
+            regions.add(new CircleRegion("room" + i, LAT + Math.sin(angle) * 5 / GeoMath.METERS_PER_DEGREE,
+                    LNG + Math.cos(angle) * 5 / GeoMath.metersPerDegreeLng(LAT), 1));
+        }
+        Region next = new CircleRegion("next", LAT + 31 / GeoMath.METERS_PER_DEGREE, LNG, 1);
+        regions.add(next);
+        MonitoredSetSelector selector = new MonitoredSetSelector(new RegionIndex(regions), 90);
+        selector.update(LAT, LNG);
+        assertFalse(selector.getSelected().contains(next));
+        assertEquals(15, selector.getReselectDistance(), 0.1);
+
+        // walking north into it, it is registered before the user is inside
+        for (int meters = 1; meters <= 31; meters++) {
+            double lat = LAT + meters / GeoMath.METERS_PER_DEGREE;
+            selector.update(lat, LNG);
+            if (next.distanceTo(lat, LNG) < 10) {
+                assertTrue("at " + meters + " m", selector.getSelected().contains(next));
+            }
+        }
+    }
+
+    @Test
+    public void reselectionReportsOnlyChanges() {
+        RegionIndex index = new RegionIndex(RegionIndexTest.randomRegions(2000, 8));
+        MonitoredSetSelector selector = new MonitoredSetSelector(index, 50);
+        selector.update(LAT, LNG);
+
+        MonitoredSetSelector.Diff diff = selector.update(LAT + 0.005, LNG + 0.005);
+        assertNotNull(diff);
+        assertEquals(diff.added.size(), diff.removed.size());
+        assertEquals(50, selector.getSelected().size());
+    }
+
+    @Test
+    public void neverReselectsWhenEverythingFits() {
+        RegionIndex index = new RegionIndex(RegionIndexTest.randomRegions(10, 9));
+        MonitoredSetSelector selector = new MonitoredSetSelector(index, 90);
+        assertEquals(10, selector.update(LAT, LNG).added.size());
+        assertNull(selector.update(LAT + 0.01, LNG + 0.01));
+
+        selector.reset();
+        assertEquals(10, selector.update(LAT, LNG).added.size());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.BoundingBox;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RegionIndexTest {
+
+    private static final double BASE_LAT = 36.987336;
+    private static final double BASE_LNG = -86.451221;
+
+    static List<Region> randomRegions(int count, long seed) {
+        Random random = new Random(seed);
+        List<Region> regions = new ArrayList<Region>(count);
+        for (int i = 0; i < count; i++) {
+            double lat = BASE_LAT + (random.nextDouble() - 0.5) * 0.02;
+            double lng = BASE_LNG + (random.nextDouble() - 0.5) * 0.02;
+            if (i % 3 == 0) {
+                double d = 0.0001 + random.nextDouble() * 0.0003;
+                regions.add(new PolygonRegion("p" + i,
+                        new double[]{lat - d, lat - d, lat + d, lat + d},
+                        new double[]{lng - d, lng + d, lng + d, lng - d}));
+            } else {
+                regions.add(new CircleRegion("c" + i, lat, lng, 5 + random.nextFloat() * 50));
+            }
+        }
+        return regions;
+    }
+
+    @Test
+    public void containmentMatchesBruteForce() {
+        List<Region> regions = randomRegions(10000, 1);
+        RegionIndex index = new RegionIndex(regions);
+        Random random = new Random(2);
+        List<Region> found = new ArrayList<Region>();
+        for (int q = 0; q < 2000; q++) {
+            double lat = BASE_LAT + (random.nextDouble() - 0.5) * 0.02;
+            double lng = BASE_LNG + (random.nextDouble() - 0.5) * 0.02;
+            found.clear();
+            index.regionsContaining(lat, lng, found);
+
+            Set<String> expected = new HashSet<String>();
+            for (Region region : regions) {
+                if (region.contains(lat, lng)) {
+                    expected.add(region.getId());
+                }
+            }
+            Set<String> actual = new HashSet<String>();
+            for (Region region : found) {
+                actual.add(region.getId());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void intersectionMatchesBruteForce() {
+        List<Region> regions = randomRegions(3000, 3);
+        RegionIndex index = new RegionIndex(regions);
+        BoundingBox box = BoundingBox.around(BASE_LAT, BASE_LNG, 300);
+        List<Region> found = new ArrayList<Region>();
+        index.regionsIntersecting(box, found);
+
+        int expected = 0;
+        for (Region region : regions) {
+            if (region.getBounds().intersects(box)) {
+                expected++;
+            }
+        }
+        assertEquals(expected, found.size());
+    }
+
+    @Test
+    public void nearestIsSortedAndMatchesBruteForce() {
+        List<Region> regions = randomRegions(5000, 4);
+        RegionIndex index = new RegionIndex(regions);
+        List<Region> nearest = index.nearest(BASE_LAT, BASE_LNG, 50);
+        assertEquals(50, nearest.size());
+
+        double previous = 0;
+        for (Region region : nearest) {
+            double d = region.distanceTo(BASE_LAT, BASE_LNG);
+            assertTrue(d >= previous - 0.5);
+            previous = d;
+        }
+
+        int closer = 0;
+        for (Region region : regions) {
+            if (region.distanceTo(BASE_LAT, BASE_LNG) < previous - 0.5) {
+                closer++;
+            }
+        }
+        assertTrue(closer <= 50);
+    }
+
+    @Test
+    public void emptyIndex() {
+        RegionIndex index = new RegionIndex(new ArrayList<Region>());
+        List<Region> found = new ArrayList<Region>();
+        assertEquals(0, index.regionsContaining(BASE_LAT, BASE_LNG, found));
+        assertTrue(index.nearest(BASE_LAT, BASE_LNG, 5).isEmpty());
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.maptest.geofence;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static com.example.maptest.geofence.WeeklySchedule.MINUTES_PER_DAY;
+import static org.junit.Assert.*;
+
+public class RegionSchedulerTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    // the campus is on Central time, which changes for daylight saving
+    private static final TimeZone CAMPUS = TimeZone.getTimeZone("America/Chicago");
+
+    private static final int MONDAY = 0;
+    private static final int SUNDAY = 6 * MINUTES_PER_DAY;
+
+    private static int at(int day, int hour, int minute) {
+        return day + hour * 60 + minute;
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(CAMPUS);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    // Monday to Friday, 07:00 to 22:00
+    private static WeeklySchedule weekdays() {
+        int[] opens = new int[5];
+        int[] closes = new int[5];
+        for (int d = 0; d < 5; d++) {
+            opens[d] = at(d * MINUTES_PER_DAY, 7, 0);
+            closes[d] = at(d * MINUTES_PER_DAY, 22, 0);
+        }
+        return new WeeklySchedule(opens, closes);
+    }
+
+    @Test
+    public void scheduleMergesIntervalsAndRunsOverTheEndOfTheWeek() {
+        // Sunday 23:00 to Monday 01:00, and a Monday morning class overlapping another
+        WeeklySchedule schedule = new WeeklySchedule(
+                new int[]{at(SUNDAY, 23, 0), at(MONDAY, 9, 0), at(MONDAY, 9, 30)},
+                new int[]{at(MONDAY, 1, 0), at(MONDAY, 10, 0), at(MONDAY, 10, 15)});
+        assertTrue(schedule.isOpen(at(SUNDAY, 23, 59)));
+        assertTrue(schedule.isOpen(at(MONDAY, 0, 0)));
+        assertFalse(schedule.isOpen(at(MONDAY, 1, 0)));
+        assertTrue(schedule.isOpen(at(MONDAY, 10, 0)));
+        assertFalse(schedule.isOpen(at(MONDAY, 10, 15)));
+
+        assertEquals(60, schedule.minutesToChange(at(MONDAY, 0, 0)));
+        assertEquals(75, schedule.minutesToChange(at(MONDAY, 9, 0)));
+        // the end of the week is not a change while open across it
+        assertEquals(120, schedule.minutesToChange(at(SUNDAY, 23, 0)));
+        assertEquals(at(SUNDAY, 23, 0) - at(MONDAY, 10, 15), schedule.minutesToChange(at(MONDAY, 10, 15)));
+
+        WeeklySchedule always = new WeeklySchedule(new int[]{at(MONDAY, 0, 0), at(SUNDAY, 12, 0)},
+                new int[]{at(SUNDAY, 12, 0), at(MONDAY, 0, 0)});
+        assertTrue(always.isConstant());
+        assertTrue(always.isOpen(at(SUNDAY, 23, 59)));
+        assertEquals(-1, always.minutesToChange(0));
+        WeeklySchedule never = new WeeklySchedule(new int[0], new int[0]);
+        assertTrue(never.isConstant());
+        assertFalse(never.isOpen(0));
+    }
+
+    @Test
+    public void minuteOfWeekIsCampusTime() {
+        Random random = new Random(3);
+        Calendar calendar = Calendar.getInstance(CAMPUS);
+        for (int i = 0; i < 1000; i++) {
+            long time = 1500000000000L + (long) (random.nextDouble() * 400L * 24 * 3600 * 1000);
+            calendar.setTimeInMillis(time);
+            // Calendar counts from Sunday = 1
+            int day = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            int expected = day * MINUTES_PER_DAY + calendar.get(Calendar.HOUR_OF_DAY) * 60
+                    + calendar.get(Calendar.MINUTE);
+            assertEquals(expected, WeeklySchedule.minuteOfWeek(time, CAMPUS));
+        }
+    }
+
+    @Test
+    public void turnsRegionsOnAndOffOnlyWhenTheirTimeComes() {
+        Random random = new Random(5);
+        List<Region> regions = new ArrayList<Region>();
+        Map<String, WeeklySchedule> schedules = new HashMap<String, WeeklySchedule>();
+        for (int i = 0; i < 2000; i++) {
+            String id = "room" + i;
+            regions.add(new CircleRegion(id, LAT, LNG, 10));
+            if (i % 10 == 0) {
+                // a tenth of the rooms are not scheduled
+                continue;
+            }
+            // two or three meetings a week, 50 or 75 minutes, on the quarter hour
+            int meetings = 2 + random.nextInt(2);
+            int[] opens = new int[meetings];
+            int[] closes = new int[meetings];
+            for (int m = 0; m < meetings; m++) {
+                opens[m] = random.nextInt(5) * MINUTES_PER_DAY + (8 * 4 + random.nextInt(40)) * 15;
+                closes[m] = opens[m] + (random.nextBoolean() ? 50 : 75);
+            }
+            schedules.put(id, new WeeklySchedule(opens, closes));
+        }
+        RegionScheduler scheduler = new RegionScheduler(regions, schedules, CAMPUS);
+        assertEquals(0, scheduler.getInactiveCount());
+
+        long now = time(2026, Calendar.OCTOBER, 16, 18, 0);
+        long end = now + 7L * 24 * 3600 * 1000;
+        scheduler.start(now);
+        int changes = 0;
+        int wakeups = 0;
+        while (true) {
+            assertActiveAsScheduled(regions, schedules, scheduler, now);
+            long next = scheduler.nextChange();
+            assertTrue(next > now);
+            if (next > end) {
+                break;
+            }
+            // nothing is due until then
+            assertEquals(0, scheduler.advance(next - 1));
+            now = next;
+            changes += scheduler.advance(now);
+            wakeups++;
+        }
+        // every meeting starts and ends once a week; meetings at the same time share a wakeup
+        assertTrue(changes > 3 * 1800);
+        assertTrue(wakeups + " wakeups", wakeups < changes / 5);
+        // in the evening every room but the unscheduled ones is closed
+        scheduler.advance(time(2026, Calendar.OCTOBER, 23, 21, 0));
+        assertEquals(1800, scheduler.getInactiveCount());
+    }
+
+    private static void assertActiveAsScheduled(List<Region> regions, Map<String, WeeklySchedule> schedules,
+                                                RegionScheduler scheduler, long now) {
+        int minute = WeeklySchedule.minuteOfWeek(now, CAMPUS);
+        for (Region region : regions) {
+            WeeklySchedule schedule = schedules.get(region.getId());
+            assertEquals(region.getId(), schedule == null || schedule.isOpen(minute), scheduler.isActive(region));
+        }
+    }
+
+    @Test
+    public void changesFollowTheClockOverDaylightSaving() {
+        Region library = new CircleRegion("library", LAT, LNG, 40);
+        RegionScheduler scheduler = new RegionScheduler(Collections.singletonList(library),
+                Collections.singletonMap("library", weekdays()), CAMPUS);
+
+        // the clocks go forward at 02:00 on Sunday 8 March 2026, and back on Sunday 1 November
+        scheduler.start(time(2026, Calendar.MARCH, 6, 23, 0));
+        assertFalse(scheduler.isActive(library));
+        assertEquals(time(2026, Calendar.MARCH, 9, 7, 0), scheduler.nextChange());
+        scheduler.start(time(2026, Calendar.OCTOBER, 30, 23, 0));
+        assertEquals(time(2026, Calendar.NOVEMBER, 2, 7, 0), scheduler.nextChange());
+        assertEquals(1, scheduler.advance(scheduler.nextChange()));
+        assertTrue(scheduler.isActive(library));
+        assertEquals(time(2026, Calendar.NOVEMBER, 2, 22, 0), scheduler.nextChange());
+    }
+
+    @Test
+    public void selectorAndFilterSkipClosedRegions() {
+        // a closed building next to the user, an open one farther away
+        Region closed = new CircleRegion("closed", LAT, LNG, 20);
+        Region open = new CircleRegion("open", LAT + 0.002, LNG, 20);
+        List<Region> regions = new ArrayList<Region>();
+        regions.add(closed);
+        regions.add(open);
+        Map<String, WeeklySchedule> schedules = new HashMap<String, WeeklySchedule>();
+        schedules.put("closed", weekdays());
+        RegionScheduler scheduler = new RegionScheduler(regions, schedules, CAMPUS);
+        // a Saturday
+        long saturday = time(2026, Calendar.OCTOBER, 17, 12, 0);
+        scheduler.start(saturday);
+
+        RegionIndex index = new RegionIndex(regions);
+        MonitoredSetSelector selector = new MonitoredSetSelector(index, scheduler, 1);
+        MonitoredSetSelector.Diff diff = selector.update(LAT, LNG);
+        assertEquals(Collections.singletonList(open), diff.added);
+
+        // Monday morning it opens, and is the nearer one
+        assertEquals(1, scheduler.advance(time(2026, Calendar.OCTOBER, 19, 7, 0)));
+        assertNull(selector.update(LAT, LNG));
+        selector.invalidate();
+        diff = selector.update(LAT, LNG);
+        assertEquals(Collections.singletonList(closed), diff.added);
+        assertEquals(Collections.singletonList("open"), diff.removed);
+    }
+}
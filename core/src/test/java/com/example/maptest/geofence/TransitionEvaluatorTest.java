@@ -0,0 +1,230 @@
+package com.example.maptest.geofence;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.transition.FlapMeter;
+import com.example.maptest.transition.TransitionEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TransitionEvaluatorTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    // a 40 m square building, its south wall on LAT
+    private static final double SIDE = 40 / GeoMath.METERS_PER_DEGREE;
+    private static final Region HALL = new PolygonRegion("hall",
+            new double[]{LAT, LAT, LAT + SIDE, LAT + SIDE},
+            new double[]{LNG - SIDE, LNG + SIDE, LNG + SIDE, LNG - SIDE});
+    private static final RegionIndex INDEX = new RegionIndex(Collections.singletonList(HALL));
+
+    private final TransitionEvaluator evaluator = new TransitionEvaluator();
+    private final List<TransitionEvent> out = new ArrayList<TransitionEvent>();
+
+    // a fix the given number of meters north of the south wall, negative is outside
+    private List<String> feed(double north, float accuracy, long time) {
+        double lat = LAT + north / GeoMath.METERS_PER_DEGREE;
+        List<Region> containing = new ArrayList<Region>();
+        INDEX.regionsContaining(lat, LNG, containing);
+        out.clear();
+        evaluator.update(lat, LNG, accuracy, time, containing, out);
+        List<String> fired = new ArrayList<String>();
+        for (TransitionEvent event : out) {
+            fired.add((event.getTransition() == TransitionEvent.DWELL ? "dwell " : "exit ")
+                    + event.getRequestId());
+        }
+        return fired;
+    }
+
+    @Test
+    public void dwellsAfterTheConfirmationDelay() {
+        assertEquals(Collections.emptyList(), feed(10, 5, 0));
+        assertTrue(evaluator.isInside("hall"));
+        // 5 m of accuracy takes 3.6 s to walk across, longer than the loitering delay
+        assertEquals(3571, evaluator.confirmDelay(5));
+        assertEquals(Collections.emptyList(), feed(10, 5, 3000));
+        assertEquals(Arrays.asList("dwell hall"), feed(10, 5, 4000));
+        assertTrue(evaluator.isDwelling("hall"));
+    }
+
+    @Test
+    public void poorAccuracyNeedsALongerDwell() {
+        feed(10, 30, 0);
+        assertEquals(Collections.emptyList(), feed(10, 30, 20000));
+        assertEquals(Arrays.asList("dwell hall"), feed(10, 30, 22000));
+    }
+
+    @Test
+    public void dwellRestartsOnAFixOutsideTheShape() {
+        feed(5, 5, 0);
+        // in the band between the enter and the exit radius
+        assertEquals(Collections.emptyList(), feed(-5, 5, 3000));
+        assertTrue(evaluator.isInside("hall"));
+        assertEquals(Collections.emptyList(), feed(5, 5, 4000));
+        assertEquals(Collections.emptyList(), feed(5, 5, 7000));
+        assertEquals(Arrays.asList("dwell hall"), feed(5, 5, 8000));
+    }
+
+    @Test
+    public void exitsOnlyBeyondTheExitMargin() {
+        feed(10, 5, 0);
+        feed(10, 5, 5000);
+        assertEquals(Collections.emptyList(), feed(-9, 5, 6000));
+        assertEquals(Collections.emptyList(), feed(-11, 5, 7000));
+        assertTrue(evaluator.isDwelling("hall"));
+        assertEquals(Arrays.asList("exit hall"), feed(-11, 5, 11000));
+        assertFalse(evaluator.isInside("hall"));
+    }
+
+    @Test
+    public void exitNeedsToHoldForTheConfirmationDelay() {
+        feed(10, 5, 0);
+        feed(10, 5, 5000);
+        feed(-20, 5, 6000);
+        // the band between the radii neither confirms nor cancels
+        assertEquals(Collections.emptyList(), feed(-5, 5, 8000));
+        // one fix inside does
+        assertEquals(Collections.emptyList(), feed(5, 5, 9000));
+        assertEquals(Collections.emptyList(), feed(-20, 5, 10000));
+        assertEquals(Collections.emptyList(), feed(-20, 5, 13000));
+        assertEquals(Arrays.asList("exit hall"), feed(-20, 5, 14000));
+    }
+
+    @Test
+    public void exitMarginGrowsWithAccuracy() {
+        feed(10, 5, 0);
+        feed(10, 5, 5000);
+        // twice the accuracy
+        assertEquals(Collections.emptyList(), feed(-25, 15, 6000));
+        assertEquals(Collections.emptyList(), feed(-25, 10, 7000));
+        assertEquals(Collections.emptyList(), feed(-25, 10, 14000));
+        assertEquals(Arrays.asList("exit hall"), feed(-25, 10, 15000));
+    }
+
+    @Test
+    public void passingThroughReportsNothing() {
+        feed(10, 5, 0);
+        assertEquals(Collections.emptyList(), feed(-20, 5, 1000));
+        assertFalse(evaluator.isInside("hall"));
+        assertEquals(Collections.emptyList(), feed(10, 5, 10000));
+        assertEquals(Collections.emptyList(), feed(10, 5, 13000));
+        assertEquals(Arrays.asList("dwell hall"), feed(10, 5, 14000));
+    }
+
+    @Test
+    public void ignoresFixesWithoutUsableAccuracy() {
+        feed(10, 5, 0);
+        feed(10, 5, 5000);
+        assertEquals(Collections.emptyList(), feed(-500, 150, 6000));
+        assertTrue(evaluator.isDwelling("hall"));
+        assertEquals(Collections.emptyList(), feed(-500, 150, 60000));
+        assertFalse(evaluator.isInside("nowhere"));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        feed(10, 5, 0);
+        feed(10, 5, 5000);
+        evaluator.reset();
+        assertFalse(evaluator.isInside("hall"));
+        assertEquals(Collections.emptyList(), feed(-50, 5, 6000));
+    }
+
+    @Test
+    public void changingFloorsLeavesTheRoomsBelow() {
+        double[] lats = {LAT, LAT, LAT + SIDE, LAT + SIDE};
+        double[] lngs = {LNG - SIDE, LNG + SIDE, LNG + SIDE, LNG - SIDE};
+        FloorIndex floors = new FloorIndex(Arrays.asList(HALL,
+                new PolygonRegion("hall 1", "CH", 1, lats, lngs),
+                new PolygonRegion("hall 2", "CH", 2, lats, lngs)));
+        double lat = LAT + 10 / GeoMath.METERS_PER_DEGREE;
+        List<Region> containing = new ArrayList<Region>();
+        RegionIndex.Scratch scratch = new RegionIndex.Scratch();
+        List<String> fired = new ArrayList<String>();
+        int[] floorAt = {1, 1, 1, 2, 2, 2, 2, Region.ANY_FLOOR, Region.ANY_FLOOR};
+        for (int i = 0; i < floorAt.length; i++) {
+            containing.clear();
+            floors.regionsContaining(lat, LNG, floorAt[i], containing, scratch);
+            out.clear();
+            evaluator.update(lat, LNG, 5, i * 2000L, floorAt[i], containing, out);
+            for (TransitionEvent event : out) {
+                fired.add((event.getTransition() == TransitionEvent.DWELL ? "dwell " : "exit ")
+                        + event.getRequestId());
+            }
+        }
+        // the building is never left; on an unknown floor the floor 2 room is kept
+        assertEquals(Arrays.asList("dwell hall", "dwell hall 1", "exit hall 1", "dwell hall 2"), fired);
+        assertTrue(evaluator.isDwelling("hall"));
+        assertTrue(evaluator.isDwelling("hall 2"));
+    }
+
+    /**
+     * An hour at one spot, one fix per second, with GPS error that drifts the way it does
+     * near walls; returns {flaps of the Play Services semantics, flaps of the evaluator,
+     * transitions of the evaluator}.
+     */
+    private static int[] flaps(double north, double errorMeters, float accuracy, long seed) {
+        Random random = new Random(seed);
+        GeofenceStateMachine play = new GeofenceStateMachine(GeofenceStateMachine.LOITERING_DELAY);
+        TransitionEvaluator evaluator = new TransitionEvaluator();
+        FlapMeter playFlaps = new FlapMeter();
+        FlapMeter evaluatorFlaps = new FlapMeter();
+        List<Region> containing = new ArrayList<Region>();
+        List<TransitionEvent> out = new ArrayList<TransitionEvent>();
+        double dx = 0, dy = 0;
+        // the error of consecutive fixes is correlated, about 10 s
+        double keep = 0.9, step = errorMeters * Math.sqrt(1 - keep * keep);
+        for (long time = 0; time < 3600000; time += 1000) {
+            dx = keep * dx + random.nextGaussian() * step;
+            dy = keep * dy + random.nextGaussian() * step;
+            double lat = LAT + (north + dy) / GeoMath.METERS_PER_DEGREE;
+            double lng = LNG + dx / GeoMath.metersPerDegreeLng(LAT);
+            containing.clear();
+            INDEX.regionsContaining(lat, lng, containing);
+
+            out.clear();
+            play.update(containing, time, out);
+            for (TransitionEvent event : out) {
+                playFlaps.record(event.getRequestId(), event.getTransition(), time);
+            }
+            out.clear();
+            evaluator.update(lat, lng, accuracy, time, containing, out);
+            for (TransitionEvent event : out) {
+                evaluatorFlaps.record(event.getRequestId(), event.getTransition(), time);
+            }
+        }
+        return new int[]{playFlaps.getFlapCount(), evaluatorFlaps.getFlapCount(),
+                evaluatorFlaps.getTransitionCount()};
+    }
+
+    // a desk 3 m inside the south wall, GPS error of about 9 m
+    @Test
+    public void sittingByTheWindowDoesNotFlap() {
+        for (long seed = 1; seed <= 5; seed++) {
+            int[] flaps = flaps(3, 6, 9, seed);
+            assertTrue("Play Services semantics flapped " + flaps[0] + " times", flaps[0] > 50);
+            assertEquals(0, flaps[1]);
+            assertEquals(1, flaps[2]);
+        }
+    }
+
+    // a bench 3 m outside the south wall
+    @Test
+    public void waitingOutsideTheDoorBarelyFlaps() {
+        int flapped = 0;
+        for (long seed = 1; seed <= 5; seed++) {
+            int[] flaps = flaps(-3, 6, 9, seed);
+            assertTrue("Play Services semantics flapped " + flaps[0] + " times", flaps[0] > 50);
+            flapped += flaps[1];
+        }
+        assertTrue("flapped " + flapped + " times in 5 hours", flapped <= 2);
+    }
+}
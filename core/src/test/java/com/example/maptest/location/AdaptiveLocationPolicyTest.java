@@ -0,0 +1,96 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.geofence.CircleRegion;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.location.AdaptiveLocationPolicy.Profile;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveLocationPolicyTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    private AdaptiveLocationPolicy policy;
+
+    @Before
+    public void setUp() {
+        Region hall = new CircleRegion("hall", LAT, LNG, 50);
+        policy = new AdaptiveLocationPolicy(new RegionIndex(Collections.singletonList(hall)));
+    }
+
+    // fix at the given distance north of the region center
+    private static Fix north(double meters, float speed, long time) {
+        return new Fix(LAT + meters / GeoMath.METERS_PER_DEGREE, LNG, 5, speed, time);
+    }
+
+    @Test
+    public void batchesWhenStationaryFarFromEdges() {
+        Profile profile = policy.update(north(800, 0, 0));
+        assertEquals(AdaptiveLocationPolicy.PRIORITY_BALANCED, profile.priority);
+        assertTrue(profile.isBatched());
+        assertTrue(profile.maxWaitTime <= AdaptiveLocationPolicy.MAX_WAIT);
+        assertTrue(profile.maxWaitTime >= 2 * profile.interval);
+    }
+
+    @Test
+    public void batchMustArriveBeforeTheEdgeIsReached() {
+        Profile profile = policy.update(north(250, 1.4f, 0));
+        assertEquals(AdaptiveLocationPolicy.PRIORITY_HIGH_ACCURACY, profile.priority);
+        double secondsToEdge = (250 - 50 - 5) / 1.4;
+        assertTrue(profile.maxWaitTime < secondsToEdge * 1000);
+        assertTrue(profile.interval < secondsToEdge * 1000 / 2);
+    }
+
+    @Test
+    public void stopsBatchingNearAnEdgeFromEitherSide() {
+        Profile outside = policy.update(north(70, 1.4f, 0));
+        assertFalse(outside.isBatched());
+        assertEquals(AdaptiveLocationPolicy.NEAR_INTERVAL, outside.interval);
+
+        policy.reset();
+        Profile inside = policy.update(north(30, 1.4f, 0));
+        assertFalse(inside.isBatched());
+    }
+
+    @Test
+    public void nearZoneHasHysteresis() {
+        // margin 25 m: near
+        assertFalse(policy.update(north(80, 1.4f, 0)).isBatched());
+        // margin 40 m: still near because we have not left the zone yet
+        assertFalse(policy.update(north(95, 1.4f, 1000)).isBatched());
+        // margin 60 m: leaves
+        assertTrue(policy.update(north(115, 0, 2000)).interval > AdaptiveLocationPolicy.NEAR_INTERVAL);
+    }
+
+    @Test
+    public void profileIsStableWhileWalkingFarAway() {
+        Profile first = policy.update(north(900, 1.4f, 0));
+        Profile second = policy.update(north(890, 1.4f, 7000));
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void estimatesSpeedWithoutProviderSpeed() {
+        policy.update(new Fix(LAT + 1000 / GeoMath.METERS_PER_DEGREE, LNG, 5, Float.NaN, 0));
+        policy.update(new Fix(LAT + 1030 / GeoMath.METERS_PER_DEGREE, LNG, 5, Float.NaN, 10000));
+        // 30 m in 10 s minus 5 m of noise, averaged with the initial 0
+        assertEquals(1.25, policy.getSpeed(), 0.05);
+    }
+
+    @Test
+    public void noRegionsMeansLongestInterval() {
+        AdaptiveLocationPolicy empty = new AdaptiveLocationPolicy(
+                new RegionIndex(Collections.<Region>emptyList()));
+        Profile profile = empty.update(north(0, 0, 0));
+        assertEquals(60000, profile.interval);
+        assertEquals(AdaptiveLocationPolicy.MAX_WAIT, profile.maxWaitTime);
+    }
+}
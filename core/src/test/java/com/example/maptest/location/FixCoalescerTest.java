@@ -0,0 +1,72 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixCoalescerTest {
+
+    private static Fix fix(double northMeters, float accuracy, long time) {
+        return new Fix(36.9873 + northMeters / GeoMath.METERS_PER_DEGREE, -86.4512, accuracy,
+                Float.NaN, time);
+    }
+
+    @Test
+    public void publishesFirstFix() {
+        FixCoalescer coalescer = new FixCoalescer();
+        Fix first = fix(0, 10, 0);
+        assertSame(first, coalescer.offer(Collections.singletonList(first)));
+        assertEquals(first.getLat(), coalescer.getPublished().getLat(), 0);
+        assertEquals(first.getTime(), coalescer.getPublished().getTime());
+    }
+
+    @Test
+    public void keepsItsOwnCopyOfReusedFixes() {
+        FixCoalescer coalescer = new FixCoalescer();
+        Fix reused = fix(0, 10, 0);
+        List<Fix> batch = Collections.singletonList(reused);
+        coalescer.offer(batch);
+        // a source refilling the same instance must not look like a fix that did not move
+        reused.set(fix(20, 10, 1000));
+        assertSame(reused, coalescer.offer(batch));
+        assertEquals(1000, coalescer.getPublished().getTime());
+        reused.set(fix(22, 10, 2000));
+        assertNull(coalescer.offer(batch));
+    }
+
+    @Test
+    public void ignoresJitterInsideTheAccuracyCircle() {
+        FixCoalescer coalescer = new FixCoalescer();
+        coalescer.offer(Collections.singletonList(fix(0, 10, 0)));
+        assertNull(coalescer.offer(Collections.singletonList(fix(3, 10, 1000))));
+        assertNotNull(coalescer.offer(Collections.singletonList(fix(20, 10, 2000))));
+    }
+
+    @Test
+    public void picksNewestAccurateFixOfABatch() {
+        FixCoalescer coalescer = new FixCoalescer();
+        Fix good = fix(30, 8, 2000);
+        Fix poor = fix(35, 60, 3000);
+        assertSame(good, coalescer.offer(Arrays.asList(fix(10, 8, 1000), good, poor)));
+    }
+
+    @Test
+    public void publishesBetterAccuracyEvenWithoutMovement() {
+        FixCoalescer coalescer = new FixCoalescer();
+        coalescer.offer(Collections.singletonList(fix(0, 40, 0)));
+        assertNotNull(coalescer.offer(Collections.singletonList(fix(1, 10, 1000))));
+    }
+
+    @Test
+    public void dropsStaleFixes() {
+        FixCoalescer coalescer = new FixCoalescer();
+        coalescer.offer(Collections.singletonList(fix(0, 10, 5000)));
+        assertNull(coalescer.offer(Collections.singletonList(fix(100, 10, 4000))));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geofence.Region;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FloorEstimatorTest {
+
+    private static final double SEA_LEVEL = 1013.25;
+
+    private final FloorEstimator estimator = new FloorEstimator();
+    private final Random random = new Random(3);
+    private long time;
+
+    // pressure at a height in the standard atmosphere, the inverse of FloorEstimator.height()
+    private static float pressureAt(double base, double meters) {
+        return (float) (base * Math.pow(1 - meters / 44330, 5.255));
+    }
+
+    // a few seconds of readings at 5 Hz with sensor noise of about 0.02 hPa
+    private void hold(double base, double meters, int seconds) {
+        for (int i = 0; i < seconds * 5; i++, time += 200) {
+            estimator.onPressure(pressureAt(base, meters) + (float) (random.nextGaussian() * 0.02), time);
+        }
+    }
+
+    @Test
+    public void unknownWithoutAReference() {
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+        // a fix outside but no barometer yet
+        estimator.onFix(5, true);
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+        hold(SEA_LEVEL, 0, 5);
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+        assertTrue(Double.isNaN(estimator.getHeight()));
+        // inside, or too inaccurate to be sure the user is outside
+        estimator.onFix(5, false);
+        estimator.onFix(40, true);
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+    }
+
+    @Test
+    public void climbsFloorsAboveTheDoor() {
+        // the entrance is 60 m up the hill
+        double base = SEA_LEVEL - 2;
+        hold(base, 60, 5);
+        estimator.onFix(8, true);
+        assertEquals(FloorEstimator.GROUND_FLOOR, estimator.getFloor());
+
+        hold(base, 60, 10);
+        assertEquals(1, estimator.getFloor());
+        hold(base, 60 + FloorEstimator.FLOOR_HEIGHT, 10);
+        assertEquals(2, estimator.getFloor());
+        assertEquals(FloorEstimator.FLOOR_HEIGHT, estimator.getHeight(), 0.5);
+        hold(base, 60 + 3 * FloorEstimator.FLOOR_HEIGHT, 10);
+        assertEquals(4, estimator.getFloor());
+        hold(base, 60 - FloorEstimator.FLOOR_HEIGHT, 10);
+        assertEquals(0, estimator.getFloor());
+    }
+
+    @Test
+    public void halfwayUpTheStairsKeepsTheFloor() {
+        hold(SEA_LEVEL, 0, 5);
+        estimator.onFix(8, true);
+        hold(SEA_LEVEL, 0.55 * FloorEstimator.FLOOR_HEIGHT, 30);
+        assertEquals(1, estimator.getFloor());
+        hold(SEA_LEVEL, FloorEstimator.FLOOR_HEIGHT, 5);
+        assertEquals(2, estimator.getFloor());
+        hold(SEA_LEVEL, 0.45 * FloorEstimator.FLOOR_HEIGHT, 30);
+        assertEquals(2, estimator.getFloor());
+    }
+
+    @Test
+    public void staleReferenceIsDropped() {
+        hold(SEA_LEVEL, 0, 5);
+        estimator.onFix(8, true);
+        hold(SEA_LEVEL, FloorEstimator.FLOOR_HEIGHT, 5);
+        assertEquals(2, estimator.getFloor());
+
+        time += FloorEstimator.MAX_REFERENCE_AGE;
+        hold(SEA_LEVEL, FloorEstimator.FLOOR_HEIGHT, 1);
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+
+        // the weather changed meanwhile; outside again takes a new reference
+        hold(SEA_LEVEL - 3, 0, 5);
+        estimator.onFix(8, true);
+        hold(SEA_LEVEL - 3, 2 * FloorEstimator.FLOOR_HEIGHT, 5);
+        assertEquals(3, estimator.getFloor());
+
+        estimator.reset();
+        assertEquals(Region.ANY_FLOOR, estimator.getFloor());
+    }
+}
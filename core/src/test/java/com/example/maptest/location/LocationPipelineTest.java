@@ -0,0 +1,342 @@
+package com.example.maptest.location;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.geofence.CircleRegion;
+import com.example.maptest.geofence.FloorIndex;
+import com.example.maptest.geofence.GeofenceStateMachine;
+import com.example.maptest.geofence.MonitoredSetSelector;
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.RegionIndex;
+import com.example.maptest.routing.EdgeLocator;
+import com.example.maptest.routing.GraphBuilder;
+import com.example.maptest.routing.MapMatcher;
+import com.example.maptest.transition.TransitionEvent;
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the whole pipeline with a replayed walk, the way it runs on the device.
+ */
+public class LocationPipelineTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // buildings of radius 30 m every 500 m along a street running east
+    private static List<Region> street() {
+        List<Region> regions = new ArrayList<Region>();
+        double metersPerLng = GeoMath.metersPerDegreeLng(LAT);
+        for (int i = 1; i <= 6; i++) {
+            regions.add(new CircleRegion("b" + i, LAT, LNG + i * 500 / metersPerLng, 30));
+        }
+        return regions;
+    }
+
+    // walks east along the street at 1.4 m/s, one fix per second
+    private static List<Fix> walk(int seconds) {
+        double metersPerLng = GeoMath.metersPerDegreeLng(LAT);
+        List<Fix> fixes = new ArrayList<Fix>();
+        for (int t = 0; t <= seconds; t++) {
+            fixes.add(new Fix(LAT, LNG + 1.4 * t / metersPerLng, 5, 1.4f, t * 1000L));
+        }
+        return fixes;
+    }
+
+    private static class Recorder implements LocationPipeline.Callback, LocationSource.Listener {
+        final List<Fix> delivered = new ArrayList<Fix>();
+        final List<Long> deliveryTimes = new ArrayList<Long>();
+        int shown;
+        // copy of the last fix shown
+        final Fix lastShown = new Fix(0, 0, 0, Float.NaN, 0);
+        int monitoredChanges;
+        final List<String> transitions = new ArrayList<String>();
+        LocationPipeline pipeline;
+
+        @Override
+        public void onFixes(List<Fix> batch) {
+            long deliveredAt = batch.get(batch.size() - 1).getTime();
+            for (Fix fix : batch) {
+                delivered.add(fix);
+                deliveryTimes.add(deliveredAt);
+            }
+            pipeline.onFixes(batch);
+        }
+
+        @Override
+        public void onMonitoredSetChanged(MonitoredSetSelector.Diff diff) {
+            monitoredChanges++;
+        }
+
+        @Override
+        public void onTransitions(List<TransitionEvent> events) {
+            for (TransitionEvent event : events) {
+                transitions.add((event.getTransition() == GeofenceStateMachine.TRANSITION_DWELL
+                        ? "dwell " : "exit ") + event.getRequestId());
+            }
+        }
+
+        @Override
+        public void onFixShown(Fix fix) {
+            shown++;
+            lastShown.set(fix);
+        }
+    }
+
+    @Test
+    public void walkingBatchesButSeesEveryTransitionPromptly() throws InterruptedException {
+        List<Region> regions = street();
+        RegionIndex index = new RegionIndex(regions);
+        List<Fix> trace = walk(1800);
+        ReplayLocationSource source =
+                new ReplayLocationSource(trace, ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT);
+        Recorder recorder = new Recorder();
+        LocationPipeline pipeline = new LocationPipeline.Builder(source, index,
+                new MonitoredSetSelector(index, 5), recorder).build();
+        recorder.pipeline = pipeline;
+        pipeline.start();
+        source.stop();
+        int batches = source.replay(recorder);
+
+        assertEquals(batches, pipeline.getBatchCount());
+        assertTrue("wakeups " + batches, batches < trace.size() / 4);
+        assertTrue(recorder.shown <= batches);
+        assertTrue(recorder.monitoredChanges > 0);
+        // 2520 m of walking passes through the first four buildings and into the fifth
+        List<String> expected = new ArrayList<String>();
+        for (int i = 1; i <= 4; i++) {
+            expected.add("dwell b" + i);
+            expected.add("exit b" + i);
+        }
+        expected.add("dwell b5");
+        assertEquals(expected, recorder.transitions);
+
+        // every time the walker enters or leaves a building, a fix at most a few seconds
+        // after the transition must have been delivered within a few seconds
+        boolean[] inside = new boolean[regions.size()];
+        for (Fix fix : trace) {
+            for (int r = 0; r < regions.size(); r++) {
+                boolean now = regions.get(r).contains(fix.getLat(), fix.getLng());
+                if (now != inside[r]) {
+                    inside[r] = now;
+                    assertDeliveredSoonAfter(recorder, fix.getTime());
+                }
+            }
+        }
+    }
+
+    private static void assertDeliveredSoonAfter(Recorder recorder, long time) {
+        for (int i = 0; i < recorder.delivered.size(); i++) {
+            if (recorder.delivered.get(i).getTime() >= time) {
+                long delay = recorder.deliveryTimes.get(i) - time;
+                assertTrue("transition at " + time + " seen after " + delay + " ms",
+                        delay <= 2 * AdaptiveLocationPolicy.NEAR_INTERVAL);
+                return;
+            }
+        }
+        fail("transition at " + time + " never delivered");
+    }
+
+    @Test
+    public void steadyStateAllocatesNothing() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        // standing still inside a large region, away from its edge and from the others
+        List<Region> regions = street();
+        regions.add(new CircleRegion("quad", LAT + 0.01, LNG, 300));
+        RegionIndex index = new RegionIndex(regions);
+        Recorder recorder = new Recorder();
+        LocationPipeline pipeline = new LocationPipeline.Builder(new ReplayLocationSource(
+                new ArrayList<Fix>(), ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT),
+                index, new MonitoredSetSelector(index, 3), recorder).build();
+        pipeline.start();
+
+        // one reused Fix and batch, the way FusedLocationSource delivers them
+        int fixes = 20000;
+        double[] jitter = new double[64];
+        for (int i = 0; i < jitter.length; i++) {
+            jitter[i] = Math.sin(i * 2.4) / GeoMath.METERS_PER_DEGREE;
+        }
+        Fix fix = new Fix(0, 0, 0, Float.NaN, 0);
+        List<Fix> batch = new ArrayList<Fix>();
+        batch.add(fix);
+        long time = 0;
+        for (int i = 0; i < 1000; i++, time += 1000) {
+            pipeline.onFixes(batch(fix, batch, jitter[i & 63], time));
+        }
+        assertEquals(Collections.singletonList("dwell quad"), recorder.transitions);
+
+        // what asking for the counter costs, so it can be taken off
+        long probe = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - probe;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < fixes; i++, time += 1000) {
+            pipeline.onFixes(batch(fix, batch, jitter[i & 63], time));
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertEquals(1, recorder.transitions.size());
+        // any object per fix would add up to at least 16 bytes per fix
+        assertTrue("allocated " + allocated + " bytes for " + fixes + " fixes", allocated < fixes);
+    }
+
+    private static List<Fix> batch(Fix fix, List<Fix> batch, double jitter, long time) {
+        fix.set(LAT + 0.01 + jitter, LNG - jitter, 5, 0, time);
+        return batch;
+    }
+
+    @Test
+    public void matchesRoomsOnTheFloorTheBarometerSays() {
+        FloorIndex index = new FloorIndex(Arrays.<Region>asList(
+                new CircleRegion("CH", "CH", Region.ANY_FLOOR, LAT, LNG, 30),
+                new CircleRegion("CH 125", "CH", 1, LAT, LNG, 10),
+                new CircleRegion("CH 225", "CH", 2, LAT, LNG, 10)));
+        FloorEstimator floors = new FloorEstimator();
+        Recorder recorder = new Recorder();
+        LocationPipeline pipeline = new LocationPipeline.Builder(new ReplayLocationSource(
+                new ArrayList<Fix>(), ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT),
+                index, new MonitoredSetSelector(index.getAnyFloor(), 3), recorder)
+                .floors(floors)
+                .build();
+        pipeline.start();
+
+        // an accurate fix outside anchors the barometer at the door
+        float ground = 1000;
+        floors.onPressure(ground, 0);
+        pipeline.onFixes(Collections.singletonList(
+                new Fix(LAT - 100 / GeoMath.METERS_PER_DEGREE, LNG, 5, 0, 0)));
+        assertEquals(FloorEstimator.GROUND_FLOOR, floors.getFloor());
+
+        // ten seconds on the ground floor, then twenty one floor up
+        float upstairs = (float) (ground * Math.pow(1 - FloorEstimator.FLOOR_HEIGHT / 44330, 5.255));
+        for (int t = 1; t <= 30; t++) {
+            floors.onPressure(t <= 10 ? ground : upstairs, t * 1000L);
+            pipeline.onFixes(Collections.singletonList(new Fix(LAT, LNG, 8, 0, t * 1000L)));
+        }
+        assertEquals(2, floors.getFloor());
+        assertEquals(Arrays.asList("dwell CH", "dwell CH 125", "exit CH 125", "dwell CH 225"),
+                recorder.transitions);
+    }
+
+    @Test
+    public void roomsWithoutAClassAreIgnoredUntilItStarts() {
+        List<Region> regions = Arrays.<Region>asList(
+                new CircleRegion("CH", "CH", Region.ANY_FLOOR, LAT, LNG, 30),
+                new CircleRegion("CH 125", "CH", Region.ANY_FLOOR, LAT, LNG, 10));
+        final Set<String> closed = new HashSet<String>(Collections.singleton("CH 125"));
+        RegionIndex.Filter inSession = new RegionIndex.Filter() {
+            @Override
+            public boolean accept(Region region) {
+                return !closed.contains(region.getId());
+            }
+        };
+        FloorIndex index = new FloorIndex(regions);
+        MonitoredSetSelector selector = new MonitoredSetSelector(index.getAnyFloor(), inSession, 3);
+        Recorder recorder = new Recorder();
+        LocationPipeline pipeline = new LocationPipeline.Builder(new ReplayLocationSource(
+                new ArrayList<Fix>(), ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT),
+                index, selector, recorder)
+                .activeRegions(inSession)
+                .build();
+        pipeline.start();
+
+        long t = 0;
+        for (; t < 20; t++) {
+            pipeline.onFixes(Collections.singletonList(new Fix(LAT, LNG, 5, 0, t * 1000L)));
+        }
+        assertEquals(Collections.singletonList("dwell CH"), recorder.transitions);
+        assertEquals(1, selector.getSelected().size());
+
+        // the class starts: the room is registered at once, and entered with the next fixes
+        closed.clear();
+        int changes = recorder.monitoredChanges;
+        pipeline.onActiveRegionsChanged();
+        assertEquals(changes + 1, recorder.monitoredChanges);
+        assertEquals(2, selector.getSelected().size());
+        for (; t < 40; t++) {
+            pipeline.onFixes(Collections.singletonList(new Fix(LAT, LNG, 5, 0, t * 1000L)));
+        }
+        assertEquals(Arrays.asList("dwell CH", "dwell CH 125"), recorder.transitions);
+
+        // and ends with the user still in the room, who leaves it with the class
+        closed.add("CH 125");
+        pipeline.onActiveRegionsChanged();
+        assertEquals(Arrays.asList("dwell CH", "dwell CH 125", "exit CH 125"), recorder.transitions);
+        assertEquals(1, selector.getSelected().size());
+        for (; t < 60; t++) {
+            pipeline.onFixes(Collections.singletonList(new Fix(LAT, LNG, 5, 0, t * 1000L)));
+        }
+        assertEquals(Arrays.asList("dwell CH", "dwell CH 125", "exit CH 125"), recorder.transitions);
+    }
+
+    @Test
+    public void snapsFixesOntoTheWalkwayBeforeMatchingRegions() {
+        // the street as a walkway, with a kiosk on it too small for the fixes to reach
+        double metersPerLng = GeoMath.metersPerDegreeLng(LAT);
+        GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i <= 10; i++) {
+            builder.addNode(LAT, LNG + i * 50 / metersPerLng);
+            if (i > 0) {
+                builder.addWalkway(i - 1, i);
+            }
+        }
+        RegionIndex index = new RegionIndex(Collections.<Region>singletonList(
+                new CircleRegion("kiosk", LAT, LNG + 100 / metersPerLng, 8)));
+        MapMatcher matcher = new MapMatcher(new EdgeLocator(builder.build()));
+        Recorder recorder = new Recorder();
+        LocationPipeline pipeline = new LocationPipeline.Builder(new ReplayLocationSource(
+                new ArrayList<Fix>(), ReplayLocationSource.AS_FAST_AS_POSSIBLE, DIRECT),
+                index, new MonitoredSetSelector(index, 3), recorder)
+                .matcher(matcher)
+                .build();
+        pipeline.start();
+
+        // standing at the kiosk, every fix 12 m north of the street
+        for (int t = 0; t < 120; t++) {
+            pipeline.onFixes(Collections.singletonList(new Fix(LAT + 12 / GeoMath.METERS_PER_DEGREE,
+                    LNG + (100 + Math.sin(t)) / metersPerLng, 12, 0, t * 1000L)));
+        }
+        assertEquals(LAT, recorder.lastShown.getLat(), 0.5 / GeoMath.METERS_PER_DEGREE);
+        assertEquals(Collections.singletonList("dwell kiosk"), recorder.transitions);
+    }
+
+    @Test
+    public void replayIsPacedBySpeedup() throws InterruptedException {
+        List<Fix> trace = walk(20);
+        ReplayLocationSource source = new ReplayLocationSource(trace, 100, DIRECT);
+        final List<Fix> delivered = new ArrayList<Fix>();
+        long start = System.nanoTime();
+        source.replay(new LocationSource.Listener() {
+            @Override
+            public void onFixes(List<Fix> batch) {
+                delivered.addAll(batch);
+            }
+        });
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 190);
+        assertEquals(trace.size(), delivered.size());
+        assertSame(trace.get(trace.size() - 1), source.getLastFix());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.maptest.location;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceReaderTest {
+
+    private static InputStream stream(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void readsGpxTrackPoints() throws IOException {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.0\" xmlns=\"http://www.topografix.com/GPX/1/0\"><trk><trkseg>\n"
+                + "<trkpt lat=\"36.9873\" lon=\"-86.4512\"><ele>150</ele>"
+                + "<time>2016-11-02T14:05:09Z</time><hdop>2</hdop><speed>1.2</speed></trkpt>\n"
+                + "<trkpt lat=\"36.9874\" lon=\"-86.4513\"><time>2016-11-02T14:05:10.5Z</time></trkpt>\n"
+                + "<trkpt lat=\"36.9875\" lon=\"-86.4514\"></trkpt>\n"
+                + "</trkseg></trk></gpx>";
+        List<Fix> fixes = TraceReader.readGpx(stream(gpx));
+        assertEquals(2, fixes.size());
+        assertEquals(36.9873, fixes.get(0).getLat(), 1e-9);
+        assertEquals(-86.4512, fixes.get(0).getLng(), 1e-9);
+        assertEquals(10f, fixes.get(0).getAccuracy(), 1e-6);
+        assertEquals(1.2f, fixes.get(0).getSpeed(), 1e-6);
+        assertFalse(fixes.get(1).hasSpeed());
+        assertEquals(1500, fixes.get(1).getTime() - fixes.get(0).getTime());
+    }
+
+    @Test
+    public void readsCsvWithHeaderAndComments() throws IOException {
+        String csv = "time,lat,lng,accuracy,speed\n"
+                + "# walk to class\n"
+                + "1478095509000,36.9873,-86.4512,8,1.4\n"
+                + "\n"
+                + "2016-11-02T14:05:10Z,36.9874,-86.4513\n";
+        List<Fix> fixes = TraceReader.readCsv(stream(csv));
+        assertEquals(2, fixes.size());
+        assertEquals(8f, fixes.get(0).getAccuracy(), 1e-6);
+        assertEquals(1000, fixes.get(1).getTime() - fixes.get(0).getTime());
+        assertEquals(0f, fixes.get(1).getAccuracy(), 0);
+    }
+
+    @Test
+    public void parsesTimeZoneOffsets() {
+        assertEquals(TraceReader.parseTime("2016-11-02T14:05:09Z"),
+                TraceReader.parseTime("2016-11-02T08:05:09-06:00"));
+        assertEquals(1478095509000L, TraceReader.parseTime("2016-11-02T14:05:09Z"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadCsvLines() throws IOException {
+        TraceReader.readCsv(stream("1478095509000,36.9873,-86.4512\n1478095510000,north,-86\n"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.maptest.mapdata;
+
+import com.example.maptest.geofence.Region;
+import com.example.maptest.geofence.WeeklySchedule;
+import com.example.maptest.routing.AStarRouter;
+import com.example.maptest.routing.Route;
+import com.example.maptest.routing.WalkwayGraph;
+import com.example.maptest.search.Place;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CampusMapTest {
+
+    private static final String SOURCE = ""
+            + "# test campus\n"
+            + "building CH|Cherry Hall|Cherry;Old Main|36.987336|-86.451221|4\n"
+            + "building GH|Grise Hall||36.9866|-86.4540|3\n"
+            + "room CH|125|Lecture Hall|1|36.98734|-86.45122\n"
+            + "room GH|210||2|36.9866|-86.4540\n"
+            + "circle Cherry Hall|CH|-|36.987336|-86.451221|50\n"
+            + "polygon GH 2|GH|2|36.9865,-86.4541;36.9865,-86.4539;36.9867,-86.4539;36.9867,-86.4541\n"
+            + "node a|36.9870|-86.4510|-\n"
+            + "node b|36.9870|-86.4520|-\n"
+            + "node c|36.9875|-86.4520|1\n"
+            + "walkway a|b\n"
+            + "walkway b|c\n"
+            + "edge a|c|500\n";
+
+    private static byte[] compile(String source) throws IOException {
+        return CampusMapCompiler.compile(new ByteArrayInputStream(source.getBytes("UTF-8"))).toByteArray();
+    }
+
+    @Test
+    public void roundTripsBuildingsAndRooms() throws IOException {
+        CampusMap map = CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE)));
+        assertEquals(2, map.buildingCount());
+        assertEquals("CH", map.buildingCode(0));
+        assertEquals("Cherry Hall", map.buildingName(0));
+        assertEquals("Cherry;Old Main", map.buildingAliases(0));
+        assertNull(map.buildingAliases(1));
+        assertEquals(36.987336, map.buildingLat(0), 1e-7);
+        assertEquals(4, map.buildingFloors(0));
+
+        assertEquals(2, map.roomCount());
+        assertEquals(0, map.roomBuilding(0));
+        assertEquals("125", map.roomNumber(0));
+        assertEquals("Lecture Hall", map.roomName(0));
+        assertNull(map.roomName(1));
+        assertEquals(2, map.roomFloor(1));
+
+        List<Place> places = map.places();
+        assertEquals(4, places.size());
+        assertEquals("Cherry Hall 125 (CH)", places.get(2).getLabel());
+    }
+
+    @Test
+    public void roundTripsShapes() throws IOException {
+        CampusMap map = CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE)));
+        assertEquals(2, map.shapeCount());
+        assertEquals(CampusMapFormat.NO_FLOOR, map.shapeFloor(0));
+        assertEquals(2, map.shapeFloor(1));
+        assertEquals(1, map.shapeBuilding(1));
+
+        List<Region> regions = map.regions();
+        assertEquals("Cherry Hall", regions.get(0).getId());
+        assertEquals(50f, regions.get(0).getRadius(), 0.01f);
+        assertTrue(regions.get(0).contains(36.987336, -86.451221));
+        assertTrue(regions.get(1).contains(36.9866, -86.4540));
+        assertFalse(regions.get(1).contains(36.9868, -86.4540));
+        assertEquals("CH", regions.get(0).getBuilding());
+        assertEquals(Region.ANY_FLOOR, regions.get(0).getFloor());
+        assertEquals("GH", regions.get(1).getBuilding());
+        assertEquals(2, regions.get(1).getFloor());
+    }
+
+    @Test
+    public void roundTripsHours() throws IOException {
+        CampusMap map = CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE
+                + "hours Cherry Hall|Mon-Fri|07:00-22:00\n"
+                + "hours Cherry Hall|Sat|10:00-16:00\n"
+                + "hours GH 2|Tue,Thu|09:35-10:50; 13:00-14:15\n"
+                + "hours GH 2|Sun|22:00-01:00\n")));
+        Map<String, WeeklySchedule> schedules = map.schedules();
+        assertEquals(2, schedules.size());
+        int day = WeeklySchedule.MINUTES_PER_DAY;
+
+        WeeklySchedule hall = schedules.get("Cherry Hall");
+        assertFalse(hall.isOpen(6 * 60 + 59));
+        assertTrue(hall.isOpen(7 * 60));
+        assertTrue(hall.isOpen(4 * day + 21 * 60 + 59));
+        assertTrue(hall.isOpen(5 * day + 12 * 60));
+        assertFalse(hall.isOpen(6 * day + 12 * 60));
+
+        WeeklySchedule room = schedules.get("GH 2");
+        assertTrue(room.isOpen(day + 10 * 60));
+        assertFalse(room.isOpen(2 * day + 10 * 60));
+        assertTrue(room.isOpen(3 * day + 14 * 60));
+        // Sunday night runs into Monday
+        assertTrue(room.isOpen(30));
+        assertFalse(room.isOpen(60));
+
+        // a map without hours has every region always in effect
+        assertTrue(CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE))).schedules().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void compilerRejectsHoursOfUnknownRegions() throws IOException {
+        compile(SOURCE + "hours Grise Hall|Mon|08:00-17:00\n");
+    }
+
+    @Test
+    public void graphIsRoutable() throws IOException {
+        CampusMap map = CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE)));
+        WalkwayGraph graph = map.graph();
+        assertEquals(3, graph.nodeCount());
+        assertEquals(5, graph.edgeCount());
+        assertEquals(1, map.nodeFloor(2));
+        assertEquals(CampusMapFormat.NO_FLOOR, map.nodeFloor(0));
+
+        Route route = new AStarRouter(graph).route(0, 2);
+        assertEquals(3, route.size());
+        assertTrue(route.getDistance() < 500);
+    }
+
+    @Test
+    public void mapsFilesAndTracksContentVersion() throws IOException {
+        byte[] bytes = compile(SOURCE);
+        File file = File.createTempFile("campus", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        CampusMap map = CampusMap.map(file);
+        assertEquals(2, map.buildingCount());
+        assertEquals(CampusMap.wrap(ByteBuffer.wrap(bytes)).getDataVersion(), map.getDataVersion());
+
+        CampusMap changed = CampusMap.wrap(ByteBuffer.wrap(compile(SOURCE.replace("|50\n", "|60\n"))));
+        assertNotEquals(map.getDataVersion(), changed.getDataVersion());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFiles() throws IOException {
+        CampusMap.wrap(ByteBuffer.wrap("not a campus map".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNewerVersions() throws IOException {
+        byte[] bytes = compile(SOURCE);
+        bytes[4] = (byte) (CampusMapFormat.VERSION + 1);
+        CampusMap.wrap(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws IOException {
+        byte[] bytes = compile(SOURCE);
+        CampusMap.wrap(ByteBuffer.wrap(bytes, 0, bytes.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void compilerReportsUnknownReferences() throws IOException {
+        compile("room XX|101||1|0|0\n");
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.maptest.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void bucketsCoverTheWholeRange() {
+        long[] values = {0, 1, 127, 128, 129, 1000, 123456789, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = Histogram.indexOf(value);
+            long high = Histogram.highestValueIn(index);
+            assertTrue(value + " above its bucket", value <= high);
+            assertTrue(value + " below its bucket", index == 0 || Histogram.highestValueIn(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        Random random = new Random(7);
+        Histogram histogram = new Histogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal latencies around a millisecond
+            values[i] = (long) Math.exp(13.8 + random.nextGaussian());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(p);
+            assertTrue("p" + p + " " + reported + " vs " + exact,
+                    reported >= exact && reported <= exact + exact / 60);
+        }
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void spansRecordOnce() {
+        Metrics metrics = new Metrics();
+        Span span = metrics.startAt("fix", 1000);
+        assertEquals(4000, span.end(5000));
+        assertEquals(-1, span.end(9000));
+        assertTrue(span.isEnded());
+        assertEquals(1, metrics.histogram("fix").getCount());
+        assertEquals(4000, metrics.histogram("fix").getMax());
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        final Metrics metrics = new Metrics();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        metrics.record("x", i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, metrics.histogram("x").getCount());
+        assertEquals(9999, metrics.histogram("x").getMax());
+    }
+
+    @Test
+    public void exportsJsonAndText() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.record("b.second", 2000000);
+        metrics.record("a.first", 100);
+        StringBuilder json = new StringBuilder();
+        metrics.writeJson(json, "1.0 \"beta\"");
+        assertEquals("{\"version\":\"1.0 \\\"beta\\\"\",\"histograms\":{"
+                + "\"a.first\":{\"count\":1,\"min\":100,\"mean\":100,\"p50\":100,\"p90\":100,\"p99\":100,\"max\":100},"
+                + "\"b.second\":{\"count\":1,\"min\":2000000,\"mean\":2000000,\"p50\":2000000,"
+                + "\"p90\":2000000,\"p99\":2000000,\"max\":2000000}}}", json.toString());
+        assertTrue(metrics.dump().contains("b.second count=1 p50=2.0ms"));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.maptest.overlay;
+
+import com.example.maptest.geo.GeoMath;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CameraFollowerTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    private static double north(double meters) {
+        return LAT + meters / GeoMath.METERS_PER_DEGREE;
+    }
+
+    @Test
+    public void followsTheFirstPosition() {
+        CameraFollower follower = new CameraFollower();
+        assertFalse(follower.isPositioned());
+        assertTrue(follower.follow(LAT, LNG, 18));
+        assertTrue(follower.isPositioned());
+    }
+
+    @Test
+    public void skipsMovesSmallerThanAFewPixels() {
+        CameraFollower follower = new CameraFollower();
+        follower.follow(LAT, LNG, 18);
+        // about 0.48 m per pixel at zoom 18 here
+        double threshold = CameraFollower.MIN_MOVE_PIXELS * CameraFollower.metersPerPixel(LAT, 18);
+        assertEquals(1.9, threshold, 0.1);
+        assertFalse(follower.follow(north(1), LNG, 18));
+        assertTrue(follower.follow(north(3), LNG, 18));
+        // measured from where the camera went, not from the last position offered
+        assertFalse(follower.follow(north(4), LNG, 18));
+    }
+
+    @Test
+    public void thresholdGrowsWhenZoomedOut() {
+        CameraFollower follower = new CameraFollower();
+        follower.follow(LAT, LNG, 18);
+        assertFalse(follower.follow(north(10), LNG, 15));
+        assertTrue(follower.follow(north(10), LNG, 19));
+    }
+
+    @Test
+    public void resetFollowsTheNextPosition() {
+        CameraFollower follower = new CameraFollower();
+        follower.follow(LAT, LNG, 15);
+        follower.reset();
+        assertTrue(follower.follow(north(1), LNG, 15));
+    }
+}
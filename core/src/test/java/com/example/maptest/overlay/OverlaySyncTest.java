@@ -0,0 +1,116 @@
+package com.example.maptest.overlay;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OverlaySyncTest {
+
+    /**
+     * Stand-in for a map marker.
+     */
+    static final class View {
+        String spec;
+        boolean visible = true;
+        boolean removed;
+    }
+
+    static final class Binder implements OverlaySync.Binder<String, View> {
+        final List<View> views = new ArrayList<View>();
+
+        @Override
+        public String keyOf(String spec) {
+            // "key=value": specs with the same key and another value are updates
+            return spec.split("=")[0];
+        }
+
+        @Override
+        public View create(String spec) {
+            View view = new View();
+            view.spec = spec;
+            views.add(view);
+            return view;
+        }
+
+        @Override
+        public void bind(View view, String spec) {
+            view.spec = spec;
+            view.visible = true;
+        }
+
+        @Override
+        public void hide(View view) {
+            view.visible = false;
+        }
+
+        @Override
+        public void destroy(View view) {
+            view.removed = true;
+        }
+
+        int visible() {
+            int count = 0;
+            for (View view : views) {
+                if (view.visible && !view.removed) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    @Test
+    public void unchangedSpecsCostNothing() {
+        Binder binder = new Binder();
+        OverlaySync<String, View> sync = new OverlaySync<String, View>(binder, 10);
+        sync.update(Arrays.asList("a=1", "b=1", "c=1"));
+        sync.update(Arrays.asList("c=1", "a=1", "b=1"));
+        assertEquals(3, sync.getCreatedCount());
+        assertEquals(0, sync.getReboundCount());
+
+        sync.update(Arrays.asList("a=2", "b=1", "c=1"));
+        assertEquals(1, sync.getReboundCount());
+        assertEquals("a=2", binder.views.get(0).spec);
+    }
+
+    @Test
+    public void panningReusesObjects() {
+        Binder binder = new Binder();
+        OverlaySync<String, View> sync = new OverlaySync<String, View>(binder, 10);
+        sync.update(Arrays.asList("a", "b", "c", "d"));
+        // two markers scroll off, two others scroll on
+        sync.update(Arrays.asList("c", "d", "e", "f"));
+        assertEquals(4, sync.getCreatedCount());
+        assertEquals(2, sync.getReboundCount());
+        assertEquals(4, binder.visible());
+
+        // zooming out leaves one cluster; the rest become spares, then come back
+        sync.update(Arrays.asList("cluster"));
+        assertEquals(1, binder.visible());
+        assertEquals(3, sync.getSpareCount());
+        sync.update(Arrays.asList("a", "b", "c", "d", "e"));
+        assertEquals(5, sync.getCreatedCount());
+        assertEquals(5, binder.visible());
+        assertEquals(0, sync.getDestroyedCount());
+    }
+
+    @Test
+    public void sparesAreBounded() {
+        Binder binder = new Binder();
+        OverlaySync<String, View> sync = new OverlaySync<String, View>(binder, 2);
+        sync.update(Arrays.asList("a", "b", "c", "d", "e"));
+        sync.update(new ArrayList<String>());
+        assertEquals(2, sync.getSpareCount());
+        assertEquals(3, sync.getDestroyedCount());
+
+        sync.clear();
+        assertEquals(5, sync.getDestroyedCount());
+        for (View view : binder.views) {
+            assertTrue(view.removed);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.maptest.overlay;
+
+import com.example.maptest.geo.BoundingBox;
+import com.example.maptest.search.Place;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PlaceClustererTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    static List<Place> randomPlaces(int count, long seed) {
+        Random random = new Random(seed);
+        List<Place> places = new ArrayList<Place>(count);
+        for (int i = 0; i < count; i++) {
+            places.add(new Place("B" + i, "Building " + i, null, Collections.<String>emptyList(),
+                    LAT + (random.nextDouble() - 0.5) * 0.02, LNG + (random.nextDouble() - 0.5) * 0.02));
+        }
+        return places;
+    }
+
+    private static int total(List<MarkerSpec> markers) {
+        int count = 0;
+        for (MarkerSpec marker : markers) {
+            count += marker.count;
+        }
+        return count;
+    }
+
+    @Test
+    public void clustersCoverEveryPlaceOnce() {
+        PlaceClusterer clusterer = new PlaceClusterer(randomPlaces(5000, 1));
+        BoundingBox world = new BoundingBox(-80, -180, 80, 180);
+        for (int zoom = 15; zoom <= 20; zoom++) {
+            List<MarkerSpec> markers = clusterer.markers(world, zoom);
+            assertEquals(5000, total(markers));
+            Set<String> keys = new HashSet<String>();
+            for (MarkerSpec marker : markers) {
+                assertTrue(keys.add(marker.key));
+            }
+        }
+        // deeper zooms split clusters up
+        assertTrue(clusterer.markers(world, 15).size() < clusterer.markers(world, 18).size());
+    }
+
+    @Test
+    public void screenHoldsBoundedMarkers() {
+        PlaceClusterer clusterer = new PlaceClusterer(randomPlaces(5000, 2));
+        // roughly a phone screen (1080 x 1920 px) at zoom 16, about 4 x 7 tiles
+        BoundingBox screen = new BoundingBox(LAT - 0.006, LNG - 0.011, LAT + 0.006, LNG + 0.011);
+        List<MarkerSpec> markers = clusterer.markers(screen, 16.5);
+        int cells = (1080 / PlaceClusterer.CELL_PIXELS + 2) * (1920 / PlaceClusterer.CELL_PIXELS + 2);
+        assertTrue(markers.size() + " markers", markers.size() <= cells);
+        for (MarkerSpec marker : markers) {
+            assertTrue(screen.contains(marker.lat, marker.lng));
+        }
+    }
+
+    @Test
+    public void lonePlaceKeepsItsKey() {
+        List<Place> places = randomPlaces(20, 3);
+        places.add(new Place("FAR", "Far Away", null, Collections.<String>emptyList(), LAT + 1, LNG));
+        PlaceClusterer clusterer = new PlaceClusterer(places);
+        BoundingBox around = BoundingBox.around(LAT + 1, LNG, 100);
+        List<MarkerSpec> at15 = clusterer.markers(around, 15);
+        List<MarkerSpec> at20 = clusterer.markers(around, 20);
+        assertEquals(1, at15.size());
+        assertEquals(at15, at20);
+        assertFalse(at15.get(0).isCluster());
+        assertEquals(places.get(20).getLabel(), at15.get(0).title);
+    }
+}
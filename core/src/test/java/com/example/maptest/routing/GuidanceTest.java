@@ -0,0 +1,246 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GuidanceTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    // a square grid of walkways SPACING meters apart, node r * SIDE + c at row r north, column c east
+    private static final int SIDE = 12;
+    private static final double SPACING = 50;
+
+    private WalkwayGraph graph;
+    private Guidance guidance;
+    private final List<GuidanceEvent> events = new ArrayList<GuidanceEvent>();
+    private long time;
+
+    private static double north(double meters) {
+        return meters / GeoMath.METERS_PER_DEGREE;
+    }
+
+    private static double east(double meters) {
+        return meters / GeoMath.metersPerDegreeLng(LAT);
+    }
+
+    @Before
+    public void setUp() {
+        GraphBuilder builder = new GraphBuilder();
+        for (int r = 0; r < SIDE; r++) {
+            for (int c = 0; c < SIDE; c++) {
+                builder.addNode(LAT + north(r * SPACING), LNG + east(c * SPACING));
+            }
+        }
+        for (int r = 0; r < SIDE; r++) {
+            for (int c = 0; c < SIDE; c++) {
+                int n = r * SIDE + c;
+                if (c + 1 < SIDE) {
+                    builder.addWalkway(n, n + 1);
+                }
+                if (r + 1 < SIDE) {
+                    builder.addWalkway(n, n + SIDE);
+                }
+            }
+        }
+        graph = builder.build();
+        setUpGuidance();
+    }
+
+    private void setUpGuidance() {
+        guidance = new Guidance(new NodeLocator(graph), new AStarRouter(graph), new Guidance.Listener() {
+            @Override
+            public void onGuidance(GuidanceEvent event) {
+                events.add(event);
+            }
+        });
+    }
+
+    private Route route(int... nodes) {
+        double distance = 0;
+        for (int i = 1; i < nodes.length; i++) {
+            distance += GeoMath.fastDistance(graph.lat(nodes[i - 1]), graph.lng(nodes[i - 1]),
+                    graph.lat(nodes[i]), graph.lng(nodes[i]));
+        }
+        return new Route(graph, nodes, distance);
+    }
+
+    // one fix a second at walking pace, from (north, east) to (north, east) in meters
+    private void walk(double fromNorth, double fromEast, double toNorth, double toEast) {
+        double length = Math.hypot(toNorth - fromNorth, toEast - fromEast);
+        int steps = (int) Math.ceil(length / Route.WALKING_SPEED);
+        for (int i = 1; i <= steps; i++) {
+            double f = (double) i / steps;
+            at(fromNorth + f * (toNorth - fromNorth), fromEast + f * (toEast - fromEast));
+        }
+    }
+
+    private void at(double metersNorth, double metersEast) {
+        guidance.update(new Fix(LAT + north(metersNorth), LNG + east(metersEast), 5, 1.4f, time));
+        time += 1000;
+    }
+
+    private List<Integer> types() {
+        List<Integer> types = new ArrayList<Integer>();
+        for (GuidanceEvent event : events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void announcesEachTurnTwiceThenArrives() {
+        // east 150 m, left 100 m north, right 50 m east
+        guidance.start(route(0, 1, 2, 3, 3 + SIDE, 3 + 2 * SIDE, 4 + 2 * SIDE));
+        at(0, 0);
+        assertEquals(1, events.size());
+        assertEquals(GuidanceEvent.LEFT, events.get(0).getType());
+        assertEquals(150, events.get(0).getDistance(), 0.5);
+        assertEquals(300, events.get(0).getRemaining(), 0.5);
+
+        walk(0, 0, 0, 150);
+        walk(0, 150, 100, 150);
+        walk(100, 150, 100, 200);
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(GuidanceEvent.LEFT);
+        expected.add(GuidanceEvent.LEFT);
+        expected.add(GuidanceEvent.RIGHT);
+        expected.add(GuidanceEvent.RIGHT);
+        expected.add(GuidanceEvent.ARRIVE);
+        expected.add(GuidanceEvent.ARRIVE);
+        expected.add(GuidanceEvent.ARRIVED);
+        assertEquals(events.toString(), expected, types());
+        assertTrue(events.get(1).getDistance() <= Guidance.PROMPT_METERS);
+        assertTrue(events.get(1).getDistance() > Guidance.PROMPT_METERS - 2 * Route.WALKING_SPEED);
+        assertEquals(100, events.get(2).getDistance(), 2);
+        assertNull(guidance.getRoute());
+        assertEquals(0, guidance.getRerouteCount());
+    }
+
+    @Test
+    public void keepsToThePartOfTheRouteBeingWalked() {
+        // out east along row 0 and back along row 1, 50 m away
+        guidance.start(route(0, 1, 2, 3, 3 + SIDE, 2 + SIDE, 1 + SIDE, SIDE));
+        at(0, 10);
+        assertEquals(10, guidance.getProgress(), 0.5);
+        // noise towards the way back does not skip ahead to it
+        at(20, 20);
+        assertEquals(20, guidance.getProgress(), 0.5);
+        walk(20, 20, 0, 150);
+        walk(0, 150, 50, 150);
+        assertEquals(200, guidance.getProgress(), 0.5);
+        at(50, 120);
+        assertEquals(230, guidance.getProgress(), 0.5);
+    }
+
+    @Test
+    public void leavesTheRouteOnlyAfterSeveralFixesWellOffIt() {
+        guidance.start(route(0, 1, 2, 3, 4, 5));
+        at(0, 0);
+        events.clear();
+        // two fixes off, then one back on the walkway: still on route
+        at(30, 10);
+        at(30, 12);
+        at(0, 14);
+        at(30, 16);
+        at(30, 18);
+        assertFalse(guidance.isOffRoute());
+        // a fix between the thresholds neither counts nor clears
+        at(18, 20);
+        // nor does one too inaccurate to tell
+        guidance.update(new Fix(LAT + north(60), LNG + east(22), Guidance.MAX_ACCURACY + 1, 1.4f, time));
+        assertFalse(guidance.isOffRoute());
+        assertTrue(events.isEmpty());
+        at(30, 24);
+        assertEquals(1, guidance.getRerouteCount());
+        assertEquals(GuidanceEvent.OFF_ROUTE, events.get(0).getType());
+        assertEquals(GuidanceEvent.REROUTED, events.get(1).getType());
+        // the way back onto the route starts with a turn
+        assertTrue(events.get(2).isManeuver());
+    }
+
+    @Test
+    public void reroutesBackOntoTheRouteAfterAWrongTurn() {
+        Route planned = route(0, 1, 2, 3, 4, 5, 6, 7, 8);
+        guidance.start(planned);
+        walk(0, 0, 0, 100);
+        // up column 2 instead of on along row 0
+        walk(0, 100, 70, 100);
+        assertEquals(1, guidance.getRerouteCount());
+        assertFalse(guidance.isOffRoute());
+        int off = types().indexOf(GuidanceEvent.OFF_ROUTE);
+        assertTrue(off >= 0);
+        assertEquals(GuidanceEvent.REROUTED, (int) types().get(off + 1));
+        // then the turn back towards the route is announced
+        assertTrue(events.get(off + 2).isManeuver());
+
+        Route rerouted = events.get(off + 1).getRoute();
+        assertSame(rerouted, guidance.getRoute());
+        assertEquals(guidance.getRoute().getOrigin(), new NodeLocator(graph).nearest(
+                LAT + north(70), LNG + east(100)));
+        assertEquals(planned.getDestination(), rerouted.getDestination());
+        // as short as routing from scratch, and the rest of the old route
+        Route scratch = new AStarRouter(graph).route(rerouted.getOrigin(), planned.getDestination());
+        assertEquals(scratch.getDistance(), rerouted.getDistance(), 0.01);
+        assertEquals(planned.getNode(planned.size() - 2), rerouted.getNode(rerouted.size() - 2));
+
+        walk(70, 100, 50, 100);
+        walk(50, 100, 0, 100);
+        walk(0, 100, 0, 400);
+        assertEquals(GuidanceEvent.ARRIVED, (int) types().get(events.size() - 1));
+    }
+
+    @Test
+    public void routesFromScratchWhenTheRouteIsOutOfReach() {
+        Route planned = route(0, 1, 2, 3);
+        guidance.start(planned);
+        at(0, 0);
+        // more than REJOIN_METERS of walkway away from every node of the route
+        double far = (SIDE - 1) * SPACING;
+        at(far, far);
+        at(far, far);
+        at(far, far);
+        assertEquals(1, guidance.getRerouteCount());
+        Route rerouted = guidance.getRoute();
+        assertEquals(SIDE * SIDE - 1, rerouted.getOrigin());
+        assertEquals(3, rerouted.getDestination());
+        assertEquals((2 * (SIDE - 1) - 3) * SPACING, rerouted.getDistance(), 0.5);
+    }
+
+    @Test
+    public void triesAgainWhileNoRouteIsFound() {
+        // a second grid with no walkway to the first
+        GraphBuilder builder = new GraphBuilder();
+        builder.addNode(LAT, LNG);
+        builder.addNode(LAT, LNG + east(50));
+        builder.addNode(LAT + north(500), LNG);
+        builder.addNode(LAT + north(500), LNG + east(50));
+        builder.addWalkway(0, 1);
+        builder.addWalkway(2, 3);
+        graph = builder.build();
+        setUpGuidance();
+        guidance.start(route(0, 1));
+        for (int i = 0; i < 2 * Guidance.OFF_ROUTE_FIXES; i++) {
+            at(500, 25);
+        }
+        assertTrue(guidance.isOffRoute());
+        assertEquals(0, guidance.getRerouteCount());
+        // told once, and nothing from the fixes that far off
+        assertEquals(types().toString(), 1, events.size());
+        assertEquals(GuidanceEvent.OFF_ROUTE, events.get(0).getType());
+        // back on the walkway, the next maneuver is announced again
+        at(0, 25);
+        assertFalse(guidance.isOffRoute());
+        assertEquals(GuidanceEvent.ARRIVE, events.get(1).getType());
+        assertEquals(25, events.get(1).getDistance(), 0.5);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+import com.example.maptest.location.Fix;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MapMatcherTest {
+
+    private static final double LAT = 36.9873;
+    private static final double LNG = -86.4512;
+
+    private static double north(double meters) {
+        return meters / GeoMath.METERS_PER_DEGREE;
+    }
+
+    private static double east(double meters) {
+        return meters / GeoMath.metersPerDegreeLng(LAT);
+    }
+
+    @Test
+    public void edgeLocatorFindsTheNearestWalkwaysFirst() {
+        WalkwayGraph graph = RouterTest.grid(30, 3);
+        EdgeLocator locator = new EdgeLocator(graph);
+        EdgeLocator.Candidates candidates = new EdgeLocator.Candidates(MapMatcher.MAX_CANDIDATES);
+        Random random = new Random(5);
+        for (int q = 0; q < 300; q++) {
+            double lat = LAT + random.nextDouble() * 0.006;
+            double lng = -86.451221 + random.nextDouble() * 0.006;
+            // brute force over every edge
+            double nearest = Double.MAX_VALUE;
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                    int to = graph.edgeTarget(e);
+                    nearest = Math.min(nearest, GeoMath.distanceToSegment(lat, lng,
+                            graph.lat(node), graph.lng(node), graph.lat(to), graph.lng(to)));
+                }
+            }
+            int n = locator.nearest(lat, lng, 40, candidates);
+            if (nearest > 40) {
+                assertEquals(0, n);
+                continue;
+            }
+            assertTrue(n > 0);
+            assertEquals(nearest, candidates.getDistance(0), 0.01);
+            for (int i = 1; i < n; i++) {
+                assertTrue(candidates.getDistance(i) >= candidates.getDistance(i - 1));
+                assertNotEquals(candidates.getEdge(i), candidates.getEdge(i - 1));
+            }
+            // the projection lies as far from the point as reported
+            assertEquals(candidates.getDistance(0), GeoMath.fastDistance(lat, lng,
+                    candidates.getLat(0), candidates.getLng(0)), 0.01);
+        }
+    }
+
+    /**
+     * How well a walk along a route of the grid, with Gaussian noise added, is matched.
+     */
+    private static final class NoisyWalk {
+        int fixes;
+        int matched;
+        // mean distance from the true position, in meters
+        double rawError;
+        double matchedError;
+        // fixes placed on the path walked, matched and when snapped to the nearest walkway
+        int onPath;
+        int nearestOnPath;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "raw %.1f m, matched %.1f m; %d of %d on the path walked, "
+                    + "%d when snapped to the nearest", rawError, matchedError, onPath, fixes, nearestOnPath);
+        }
+    }
+
+    private static NoisyWalk walkWithNoise(double noise, long seed) {
+        WalkwayGraph graph = RouterTest.grid(30, 3);
+        Route route = null;
+        for (int to = graph.nodeCount() - 1; route == null; to--) {
+            route = new AStarRouter(graph).route(0, to);
+        }
+        List<double[]> truth = walk(route, 1.4);
+        assertTrue(truth.size() > 300);
+
+        EdgeLocator locator = new EdgeLocator(graph);
+        EdgeLocator.Candidates nearest = new EdgeLocator.Candidates(1);
+        MapMatcher matcher = new MapMatcher(locator);
+        Random random = new Random(seed);
+        Fix fix = new Fix(0, 0, 0, Float.NaN, 0);
+        Fix out = new Fix(0, 0, 0, Float.NaN, 0);
+        NoisyWalk result = new NoisyWalk();
+        for (int t = 0; t < truth.size(); t++) {
+            double[] at = truth.get(t);
+            fix.set(at[0] + north(random.nextGaussian() * noise), at[1] + east(random.nextGaussian() * noise),
+                    (float) noise, 1.4f, t * 1000L);
+            if (!matcher.match(fix, out)) {
+                // thrown off the edge of the grid, as the pipeline would show it
+                out.set(fix);
+            }
+            result.rawError += GeoMath.fastDistance(at[0], at[1], fix.getLat(), fix.getLng());
+            result.matchedError += GeoMath.fastDistance(at[0], at[1], out.getLat(), out.getLng());
+            assertEquals(t * 1000L, out.getTime());
+            if (distanceToRoute(route, out.getLat(), out.getLng()) < 1) {
+                result.onPath++;
+            }
+            if (locator.nearest(fix.getLat(), fix.getLng(), MapMatcher.MAX_RADIUS, nearest) > 0
+                    && distanceToRoute(route, nearest.getLat(0), nearest.getLng(0)) < 1) {
+                result.nearestOnPath++;
+            }
+        }
+        result.fixes = truth.size();
+        result.matched = matcher.getMatchedCount();
+        result.rawError /= truth.size();
+        result.matchedError /= truth.size();
+        return result;
+    }
+
+    @Test
+    public void snapsANoisyWalkOntoThePathWalked() {
+        NoisyWalk walk = walkWithNoise(8, 17);
+        // snapping takes out the noise across the walkway; along it, it stays
+        assertTrue(walk.toString(), walk.matchedError < walk.rawError * 0.8);
+        // on a 20 m grid, the nearest walkway is often a side path
+        assertTrue(walk.toString(), walk.onPath > walk.fixes * 0.8 && walk.onPath > walk.nearestOnPath * 1.4);
+        assertTrue(walk.matched > walk.fixes * 0.95);
+    }
+
+    @Test
+    public void helpsFromCleanToPoorFixes() {
+        // the other noise levels of MapMatchingBenchmark
+        NoisyWalk clean = walkWithNoise(4, 17);
+        assertTrue(clean.toString(), clean.matchedError < clean.rawError * 0.8);
+        assertTrue(clean.toString(), clean.onPath > clean.fixes * 0.85 && clean.onPath > clean.nearestOnPath * 1.1);
+        assertTrue(clean.matched > clean.fixes * 0.95);
+
+        // across the street, give or take: the path walked is still picked far more often
+        NoisyWalk poor = walkWithNoise(15, 17);
+        assertTrue(poor.toString(), poor.matchedError < poor.rawError * 0.9);
+        assertTrue(poor.toString(), poor.onPath > poor.fixes * 0.5 && poor.onPath > poor.nearestOnPath * 1.6);
+        assertTrue(poor.matched + " of " + poor.fixes, poor.matched > poor.fixes * 0.9);
+    }
+
+    static double distanceToRoute(Route route, double lat, double lng) {
+        double nearest = Double.MAX_VALUE;
+        for (int i = 1; i < route.size(); i++) {
+            nearest = Math.min(nearest, GeoMath.distanceToSegment(lat, lng,
+                    route.getLat(i - 1), route.getLng(i - 1), route.getLat(i), route.getLng(i)));
+        }
+        return nearest;
+    }
+
+    // points every step meters along the route
+    static List<double[]> walk(Route route, double step) {
+        List<double[]> points = new ArrayList<double[]>();
+        double carried = 0;
+        for (int i = 1; i < route.size(); i++) {
+            double aLat = route.getLat(i - 1), aLng = route.getLng(i - 1);
+            double bLat = route.getLat(i), bLng = route.getLng(i);
+            double length = GeoMath.fastDistance(aLat, aLng, bLat, bLng);
+            double s = carried;
+            for (; s < length; s += step) {
+                double f = s / length;
+                points.add(new double[]{aLat + f * (bLat - aLat), aLng + f * (bLng - aLng)});
+            }
+            carried = s - length;
+        }
+        return points;
+    }
+
+    @Test
+    public void staysOnTheWalkwayItCanReach() {
+        // a walkway east, and a parallel one 14 m north joined to it only 200 m away each way
+        GraphBuilder builder = new GraphBuilder();
+        int west = builder.addNode(LAT, LNG - east(200));
+        int middle = builder.addNode(LAT, LNG);
+        int eastEnd = builder.addNode(LAT, LNG + east(200));
+        int otherWest = builder.addNode(LAT + north(14), LNG - east(200));
+        int otherEast = builder.addNode(LAT + north(14), LNG + east(200));
+        builder.addWalkway(west, middle);
+        builder.addWalkway(middle, eastEnd);
+        builder.addWalkway(otherWest, otherEast);
+        builder.addWalkway(west, otherWest);
+        builder.addWalkway(eastEnd, otherEast);
+        MapMatcher matcher = new MapMatcher(new EdgeLocator(builder.build()));
+
+        Fix out = new Fix(0, 0, 0, Float.NaN, 0);
+        for (int t = 0; t < 10; t++) {
+            assertTrue(matcher.match(new Fix(LAT, LNG + east(1.4 * t), 4, 1.4f, t * 1000L), out));
+        }
+        // 10 m off towards the other walkway, nearer to it than to this one
+        assertTrue(matcher.match(new Fix(LAT + north(10), LNG + east(14), 4, 1.4f, 10000), out));
+        assertEquals(LAT, out.getLat(), north(0.5));
+        assertEquals(0, matcher.getBreakCount());
+    }
+
+    @Test
+    public void startsAfreshWhenNothingConnects() {
+        GraphBuilder builder = new GraphBuilder();
+        int a = builder.addNode(LAT, LNG);
+        int b = builder.addNode(LAT, LNG + east(100));
+        int c = builder.addNode(LAT + north(300), LNG);
+        int d = builder.addNode(LAT + north(300), LNG + east(100));
+        builder.addWalkway(a, b);
+        builder.addWalkway(c, d);
+        MapMatcher matcher = new MapMatcher(new EdgeLocator(builder.build()));
+
+        Fix out = new Fix(0, 0, 0, Float.NaN, 0);
+        assertTrue(matcher.match(new Fix(LAT + north(3), LNG + east(50), 5, 0, 0), out));
+        assertEquals(LAT, out.getLat(), north(0.5));
+        // far from every walkway: left alone
+        assertFalse(matcher.match(new Fix(LAT + north(150), LNG + east(50), 5, 0, 1000), out));
+        assertTrue(matcher.match(new Fix(LAT + north(3), LNG + east(50), 5, 0, 2000), out));
+        // teleported onto the other walkway, which no walk reaches
+        assertTrue(matcher.match(new Fix(LAT + north(297), LNG + east(50), 5, 0, 3000), out));
+        assertEquals(LAT + north(300), out.getLat(), north(0.5));
+        assertEquals(1, matcher.getBreakCount());
+    }
+}
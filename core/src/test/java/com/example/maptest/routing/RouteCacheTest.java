@@ -0,0 +1,291 @@
+package com.example.maptest.routing;
+
+import com.example.maptest.geo.GeoMath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RouteCacheTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    private static WalkwayGraph graph;
+    private static NodeLocator locator;
+
+    private File file;
+
+    /**
+     * Counts the searches that actually run.
+     */
+    private static class CountingRouter implements Router {
+        final Router router = new AStarRouter(graph);
+        int routes;
+
+        @Override
+        public Route route(int from, int to) {
+            routes++;
+            return router.route(from, to);
+        }
+    }
+
+    @BeforeClass
+    public static void buildGraph() {
+        graph = RouterTest.grid(30, 7);
+        locator = new NodeLocator(graph);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("routes", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static int bruteForceNearest(double lat, double lng) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < graph.nodeCount(); i++) {
+            double d = GeoMath.fastDistance(lat, lng, graph.lat(i), graph.lng(i));
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static Route route(RoutePlanner planner, RouteCache.Key key) {
+        return planner.route(key.getFromLat(), key.getFromLng(), key.getToLat(), key.getToLng());
+    }
+
+    @Test
+    public void locatorMatchesBruteForce() {
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            // also points well outside the graph
+            double lat = LAT - 0.002 + random.nextDouble() * 0.01;
+            double lng = LNG - 0.002 + random.nextDouble() * 0.01;
+            int expected = bruteForceNearest(lat, lng);
+            int actual = locator.nearest(lat, lng);
+            assertEquals(GeoMath.fastDistance(lat, lng, graph.lat(expected), graph.lng(expected)),
+                    GeoMath.fastDistance(lat, lng, graph.lat(actual), graph.lng(actual)), 1e-9);
+        }
+        assertEquals(-1, new NodeLocator(new GraphBuilder().build()).nearest(LAT, LNG));
+    }
+
+    @Test
+    public void nearbyQueriesShareAnEntry() {
+        CountingRouter router = new CountingRouter();
+        RoutePlanner planner = new RoutePlanner(locator, router, 1);
+        RouteCache cache = new RouteCache(16);
+        RouteCache.Key key = RouteCache.key(LAT + 0.001, LNG + 0.001, LAT + 0.004, LNG + 0.004);
+        double lat = key.getOriginLat();
+        double lng = key.getOriginLng();
+
+        Route first = cache.route(lat, lng, LAT + 0.004, LNG + 0.004, planner);
+        assertNotNull(first);
+        Route second = cache.route(lat + 0.00003, lng - 0.00003, LAT + 0.004, LNG + 0.004, planner);
+        assertSame(first, second);
+        assertEquals(1, router.routes);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertTrue(first.getWalkingTime() > 0);
+        assertEquals(Math.round(first.getDistance() / Route.WALKING_SPEED), first.getWalkingTime());
+
+        // a cell away is another entry
+        cache.route(lat + 2 * RouteCache.CELL_METERS / GeoMath.METERS_PER_DEGREE, lng,
+                LAT + 0.004, LNG + 0.004, planner);
+        assertEquals(2, router.routes);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void routesRunFromTheNodesNearestTheActualEndpoints() {
+        CountingRouter router = new CountingRouter();
+        RoutePlanner planner = new RoutePlanner(locator, router, 1);
+        RouteCache cache = new RouteCache(16);
+        double toLat = LAT + 0.004;
+        double toLng = LNG + 0.004;
+        RouteCache.Key key = RouteCache.key(LAT + 0.001, LNG + 0.001, toLat, toLng);
+        double lat = key.getOriginLat();
+        double lng = key.getOriginLng();
+        int center = locator.nearest(lat, lng);
+
+        // a point of the same cell whose nearest node is another one, e.g. across a wall
+        double otherLat = Double.NaN;
+        double otherLng = Double.NaN;
+        double half = RouteCache.CELL_METERS / 2 * 0.9;
+        for (int i = -4; i <= 4 && Double.isNaN(otherLat); i++) {
+            for (int j = -4; j <= 4; j++) {
+                double pLat = lat + i * half / 4 / GeoMath.METERS_PER_DEGREE;
+                double pLng = lng + j * half / 4 / GeoMath.metersPerDegreeLng(lat);
+                if (RouteCache.key(pLat, pLng, toLat, toLng).equals(key)
+                        && locator.nearest(pLat, pLng) != center) {
+                    otherLat = pLat;
+                    otherLng = pLng;
+                    break;
+                }
+            }
+        }
+        assertFalse(Double.isNaN(otherLat));
+
+        Route first = cache.route(lat, lng, toLat, toLng, planner);
+        assertEquals(center, first.getOrigin());
+        Route other = cache.route(otherLat, otherLng, toLat, toLng, planner);
+        assertEquals(locator.nearest(otherLat, otherLng), other.getOrigin());
+        assertEquals(locator.nearest(toLat, toLng), other.getDestination());
+        assertEquals(2, router.routes);
+        assertEquals(1, cache.size());
+        // the entry now holds the newer route
+        assertSame(other, cache.route(otherLat, otherLng, toLat, toLng, planner));
+        assertEquals(2, router.routes);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RoutePlanner planner = new RoutePlanner(locator, new AStarRouter(graph), 1);
+        RouteCache cache = new RouteCache(3);
+        RouteCache.Key[] keys = new RouteCache.Key[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = RouteCache.key(LAT, LNG, LAT + 0.001 * (i + 1), LNG + 0.001);
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.put(keys[i], 1, route(planner, keys[i]));
+        }
+        assertNotNull(cache.get(keys[0], 1));
+        cache.put(keys[3], 1, route(planner, keys[3]));
+
+        assertEquals(3, cache.size());
+        assertNotNull(cache.get(keys[0], 1));
+        assertNull(cache.get(keys[1], 1));
+        assertNotNull(cache.get(keys[2], 1));
+        assertNotNull(cache.get(keys[3], 1));
+    }
+
+    @Test
+    public void newGraphVersionInvalidates() {
+        RoutePlanner planner = new RoutePlanner(locator, new AStarRouter(graph), 1);
+        RouteCache cache = new RouteCache(16);
+        RouteCache.Key a = RouteCache.key(LAT, LNG, LAT + 0.002, LNG + 0.003);
+        RouteCache.Key b = RouteCache.key(LAT, LNG, LAT + 0.003, LNG + 0.002);
+        cache.put(a, 1, route(planner, a));
+        cache.put(b, 1, route(planner, b));
+
+        assertNull(cache.get(a, 2));
+        assertEquals(1, cache.size());
+        cache.invalidate(2);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(b, 1));
+    }
+
+    @Test
+    public void precomputesTheMostRequestedPairs() throws IOException {
+        RouteCache cache = new RouteCache(16);
+        RouteCache.Key[] keys = new RouteCache.Key[5];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = RouteCache.key(LAT + 0.001, LNG, LAT + 0.0008 * (i + 1), LNG + 0.004);
+            // key i asked for i + 1 times
+            for (int j = 0; j <= i; j++) {
+                assertNull(cache.get(keys[i], 1));
+            }
+        }
+        List<RouteCache.Key> warm = cache.warmSet(3);
+        assertEquals(3, warm.size());
+        assertEquals(keys[4], warm.get(0));
+        assertEquals(keys[3], warm.get(1));
+        assertEquals(keys[2], warm.get(2));
+        cache.save(file, 3);
+
+        // a fresh start only knows the saved warm set
+        RouteCache restarted = new RouteCache(16);
+        assertEquals(3, restarted.load(file));
+        assertEquals(warm, restarted.warmSet(10));
+        CountingRouter router = new CountingRouter();
+        RoutePlanner planner = new RoutePlanner(locator, router, 2);
+        assertEquals(3, restarted.precompute(3, planner));
+        assertEquals(0, restarted.precompute(3, planner));
+        assertEquals(3, router.routes);
+        assertNotNull(restarted.get(keys[4], 2));
+        assertNull(restarted.get(keys[0], 2));
+        assertEquals(3, router.routes);
+        // precomputed from the endpoints asked for, so asking again is a hit
+        for (int i = 2; i < keys.length; i++) {
+            restarted.route(LAT + 0.001, LNG, LAT + 0.0008 * (i + 1), LNG + 0.004, planner);
+        }
+        assertEquals(3, router.routes);
+    }
+
+    @Test
+    public void warmSetKeepsTheEndpointsOfTheLatestQuery() throws IOException {
+        RouteCache cache = new RouteCache(16);
+        // two queries of one pair of cells, from either side of the origin cell
+        RouteCache.Key key = RouteCache.key(LAT + 0.001, LNG + 0.001, LAT + 0.004, LNG + 0.004);
+        double step = RouteCache.CELL_METERS * 0.4 / GeoMath.METERS_PER_DEGREE;
+        RouteCache.Key first = RouteCache.key(key.getOriginLat() - step, key.getOriginLng(),
+                LAT + 0.004, LNG + 0.004);
+        RouteCache.Key latest = RouteCache.key(key.getOriginLat() + step, key.getOriginLng(),
+                LAT + 0.004, LNG + 0.004);
+        assertEquals(first, latest);
+        cache.get(first, 1);
+        cache.get(latest, 1);
+        cache.save(file, 1);
+
+        RouteCache restarted = new RouteCache(16);
+        assertEquals(1, restarted.load(file));
+        RouteCache.Key loaded = restarted.warmSet(1).get(0);
+        assertEquals(latest.getFromLat(), loaded.getFromLat(), 0);
+        assertEquals(latest.getToLng(), loaded.getToLng(), 0);
+
+        CountingRouter router = new CountingRouter();
+        RoutePlanner planner = new RoutePlanner(locator, router, 1);
+        assertEquals(1, restarted.precompute(1, planner));
+        Route route = restarted.route(latest.getFromLat(), latest.getFromLng(),
+                latest.getToLat(), latest.getToLng(), planner);
+        assertEquals(locator.nearest(latest.getFromLat(), latest.getFromLng()), route.getOrigin());
+        assertEquals(1, router.routes);
+    }
+
+    @Test
+    public void corruptWarmSetLoadsNothing() throws IOException {
+        RouteCache cache = new RouteCache(16);
+        assertEquals(0, cache.load(file));
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] {1, 2, 3});
+        } finally {
+            out.close();
+        }
+        assertEquals(0, cache.load(file));
+        assertTrue(cache.warmSet(10).isEmpty());
+    }
+
+    @Test
+    public void requestCountsStayBounded() {
+        RouteCache cache = new RouteCache(2);
+        RouteCache.Key popular = RouteCache.key(LAT, LNG, LAT + 0.003, LNG);
+        for (int i = 0; i < 5; i++) {
+            cache.get(popular, 1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.get(RouteCache.key(LAT, LNG, LAT + 0.0003 * i, LNG + 0.003), 1);
+        }
+        List<RouteCache.Key> warm = cache.warmSet(Integer.MAX_VALUE);
+        assertTrue(warm.size() <= 16);
+        assertEquals(popular, warm.get(0));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.maptest.routing;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RouterTest {
+
+    private static final double BASE_LAT = 36.987336;
+    private static final double BASE_LNG = -86.451221;
+
+    private static WalkwayGraph graph;
+
+    /**
+     * Jittered grid of walkways with a few missing links and one-way edges,
+     * roughly the shape of a campus path network.
+     */
+    static WalkwayGraph grid(int side, long seed) {
+        Random random = new Random(seed);
+        GraphBuilder builder = new GraphBuilder();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                builder.addNode(BASE_LAT + r * 0.0002 + random.nextDouble() * 0.00005,
+                        BASE_LNG + c * 0.0002 + random.nextDouble() * 0.00005);
+            }
+        }
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int n = r * side + c;
+                if (c + 1 < side && random.nextInt(10) > 0) {
+                    builder.addWalkway(n, n + 1);
+                }
+                if (r + 1 < side && random.nextInt(10) > 0) {
+                    builder.addWalkway(n, n + side);
+                }
+                if (r + 1 < side && c + 1 < side && random.nextInt(20) == 0) {
+                    // a slow one-way path, e.g. an escalator
+                    builder.addEdge(n, n + side + 1, 60f);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    @BeforeClass
+    public static void buildGraph() {
+        graph = grid(40, 11);
+    }
+
+    /**
+     * Plain Dijkstra as the reference implementation.
+     */
+    static double dijkstra(WalkwayGraph graph, int from, int to) {
+        double[] distance = new double[graph.nodeCount()];
+        java.util.Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        NodeHeap queue = new NodeHeap(graph.nodeCount());
+        distance[from] = 0;
+        queue.put(from, 0);
+        boolean[] done = new boolean[graph.nodeCount()];
+        while (!queue.isEmpty()) {
+            int u = queue.pop();
+            done[u] = true;
+            for (int e = graph.firstEdge(u); e < graph.firstEdge(u + 1); e++) {
+                int v = graph.edgeTarget(e);
+                double d = distance[u] + graph.edgeLength(e);
+                if (!done[v] && d < distance[v]) {
+                    distance[v] = d;
+                    queue.put(v, d);
+                }
+            }
+        }
+        return distance[to];
+    }
+
+    private static void assertValidRoute(Route route, int from, int to) {
+        assertEquals(from, route.getOrigin());
+        assertEquals(to, route.getDestination());
+        double length = 0;
+        for (int i = 1; i < route.size(); i++) {
+            int a = route.getNode(i - 1);
+            int b = route.getNode(i);
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = graph.firstEdge(a); e < graph.firstEdge(a + 1); e++) {
+                if (graph.edgeTarget(e) == b) {
+                    best = Math.min(best, graph.edgeLength(e));
+                }
+            }
+            assertTrue("no edge " + a + " -> " + b, best < Double.POSITIVE_INFINITY);
+            length += best;
+        }
+        assertEquals(route.getDistance(), length, 1e-3);
+    }
+
+    @Test
+    public void aStarMatchesDijkstra() {
+        AStarRouter router = new AStarRouter(graph);
+        Random random = new Random(5);
+        for (int q = 0; q < 200; q++) {
+            int from = random.nextInt(graph.nodeCount());
+            int to = random.nextInt(graph.nodeCount());
+            double expected = dijkstra(graph, from, to);
+            Route route = router.route(from, to);
+            if (Double.isInfinite(expected)) {
+                assertNull(route);
+            } else {
+                assertEquals(expected, route.getDistance(), 1e-3);
+                assertValidRoute(route, from, to);
+            }
+        }
+    }
+
+    @Test
+    public void contractionHierarchyMatchesDijkstra() {
+        ContractionHierarchy router = ContractionHierarchy.build(graph);
+        Random random = new Random(6);
+        for (int q = 0; q < 200; q++) {
+            int from = random.nextInt(graph.nodeCount());
+            int to = random.nextInt(graph.nodeCount());
+            double expected = dijkstra(graph, from, to);
+            Route route = router.route(from, to);
+            if (Double.isInfinite(expected)) {
+                assertNull(route);
+            } else {
+                assertEquals(expected, route.getDistance(), 1e-3);
+                assertValidRoute(route, from, to);
+            }
+        }
+    }
+
+    @Test
+    public void contractionHierarchySettlesFewerNodes() {
+        AStarRouter aStar = new AStarRouter(graph);
+        ContractionHierarchy ch = ContractionHierarchy.build(graph);
+        int from = 0;
+        int to = graph.nodeCount() - 1;
+        assertNotNull(aStar.route(from, to));
+        assertNotNull(ch.route(from, to));
+        assertTrue(ch.getSettledCount() < aStar.getSettledCount());
+    }
+
+    @Test
+    public void sameNodeAndUnreachable() {
+        GraphBuilder builder = new GraphBuilder();
+        int a = builder.addNode(BASE_LAT, BASE_LNG);
+        int b = builder.addNode(BASE_LAT + 0.001, BASE_LNG);
+        int c = builder.addNode(BASE_LAT + 0.002, BASE_LNG);
+        builder.addEdge(a, b, 0f);
+        WalkwayGraph small = builder.build();
+
+        for (Router router : new Router[]{new AStarRouter(small), ContractionHierarchy.build(small)}) {
+            Route self = router.route(a, a);
+            assertEquals(1, self.size());
+            assertEquals(0, self.getDistance(), 0);
+            assertNull(router.route(b, a));
+            assertNull(router.route(a, c));
+            // edge lengths are raised to the great-circle distance
+            assertTrue(router.route(a, b).getDistance() > 100);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.maptest.search;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClassroomIndexTest {
+
+    private static final String[] WORDS = {"Hall", "Center", "Science", "Arts", "Library",
+            "Tower", "Complex", "Annex", "Music", "Garrett", "Grise", "Snell", "Thompson"};
+
+    private static ClassroomIndex index;
+
+    @BeforeClass
+    public static void buildIndex() {
+        List<Place> places = new ArrayList<Place>();
+        places.add(new Place("CH", "Cherry Hall", null, Arrays.asList("Cherry"), 36.987336, -86.451221));
+        for (int room = 100; room < 400; room += 25) {
+            places.add(new Place("CH", "Cherry Hall", String.valueOf(room), null, 36.987336, -86.451221));
+        }
+        // pad the directory to 20k rooms across 200 synthetic buildings
+        Random random = new Random(42);
+        for (int b = 0; places.size() < 20000; b++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + b;
+            String code = "B" + b;
+            places.add(new Place(code, name, null, null, 37, -86));
+            for (int r = 0; r < 100; r++) {
+                places.add(new Place(code, name, String.valueOf(100 + r), null, 37, -86));
+            }
+        }
+        index = new ClassroomIndex(places);
+    }
+
+    private static String top(String query) {
+        List<Place> results = index.search(query, 5);
+        return results.isEmpty() ? null : results.get(0).getLabel();
+    }
+
+    @Test
+    public void codeAndNumber() {
+        assertEquals("Cherry Hall 125 (CH)", top("CH 125"));
+        assertEquals("Cherry Hall 125 (CH)", top("ch125"));
+        assertEquals("Cherry Hall 125 (CH)", top("CH-125"));
+    }
+
+    @Test
+    public void fullNameAndNumber() {
+        assertEquals("Cherry Hall 125 (CH)", top("Cherry Hall 125"));
+    }
+
+    @Test
+    public void prefixWhileTyping() {
+        assertEquals("Cherry Hall (CH)", top("Cher"));
+        List<Place> results = index.search("cherry hall 1", 10);
+        assertFalse(results.isEmpty());
+        for (Place place : results) {
+            assertEquals("CH", place.getBuildingCode());
+        }
+    }
+
+    @Test
+    public void typoTolerance() {
+        assertEquals("Cherry Hall 125 (CH)", top("Chery Hall 125"));
+        assertEquals("Cherry Hall 125 (CH)", top("Cehrry 125"));
+    }
+
+    @Test
+    public void aliases() {
+        assertEquals("Cherry Hall (CH)", top("cherry"));
+    }
+
+    @Test
+    public void noMatchAndEmptyQuery() {
+        assertTrue(index.search("", 5).isEmpty());
+        assertTrue(index.search("zzzzqqq", 5).isEmpty());
+    }
+
+    @Test
+    public void keystrokesStayUnderFiveMilliseconds() {
+        String[] queries = {"Cherry Hall 125", "Science Tower 1", "Grisee Hall 150", "B17 120", "Thompson Annex"};
+        // warm up the JIT the way a long typing session would
+        for (int i = 0; i < 20; i++) {
+            for (String q : queries) {
+                for (int len = 1; len <= q.length(); len++) {
+                    index.search(q.subSequence(0, len), 20);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        int keystrokes = 0;
+        for (String q : queries) {
+            for (int len = 1; len <= q.length(); len++) {
+                index.search(q.subSequence(0, len), 20);
+                keystrokes++;
+            }
+        }
+        double averageMs = (System.nanoTime() - start) / 1e6 / keystrokes;
+        assertTrue("average " + averageMs + " ms per keystroke", averageMs < 5);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.maptest.startup;
+
+import com.example.maptest.metrics.Metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StartupTest {
+
+    /**
+     * Runs tasks only when asked, like a looper that has not got round to them yet.
+     */
+    private static class QueueExecutor implements Executor {
+        final Queue<Runnable> queue = new LinkedList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            Runnable next;
+            while ((next = poll()) != null) {
+                next.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return queue.poll();
+        }
+    }
+
+    private static Runnable log(final List<String> ran, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ran) {
+                    ran.add(name);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void runsStagesOnceTheirDependenciesComplete() {
+        QueueExecutor main = new QueueExecutor();
+        QueueExecutor background = new QueueExecutor();
+        Metrics metrics = new Metrics();
+        List<String> ran = new ArrayList<String>();
+        Startup startup = new Startup(main, background, metrics, "startup.")
+                .event("map_ready")
+                .event("first_frame")
+                .inBackground("regions", log(ran, "regions"))
+                .onMain("ui", log(ran, "ui"))
+                .onMain("overlay", log(ran, "overlay"), "map_ready", "regions")
+                .inBackground("places", log(ran, "places"), "first_frame");
+        startup.start();
+
+        main.runAll();
+        assertEquals(Collections.singletonList("ui"), ran);
+        startup.complete("map_ready");
+        main.runAll();
+        // still waiting for the regions
+        assertEquals(Collections.singletonList("ui"), ran);
+        assertEquals(Collections.singletonList("regions"), startup.getPending().get("overlay"));
+
+        background.runAll();
+        main.runAll();
+        assertEquals(Arrays.asList("ui", "regions", "overlay"), ran);
+        assertTrue(startup.isDone("overlay"));
+        assertFalse(startup.isDone("places"));
+
+        startup.complete("first_frame");
+        startup.complete("first_frame");
+        background.runAll();
+        assertEquals(Arrays.asList("ui", "regions", "overlay", "places"), ran);
+        assertTrue(startup.getPending().isEmpty());
+
+        assertEquals(1, metrics.histogram("startup.first_frame").getCount());
+        assertEquals(1, metrics.histogram("startup.overlay").getCount());
+        List<Startup.Entry> trace = startup.getTrace();
+        assertEquals(6, trace.size());
+        assertEquals("places", trace.get(5).name);
+        assertEquals("first_frame", trace.get(4).name);
+        assertEquals("event", trace.get(4).kind);
+        assertTrue(trace.get(5).readyAt >= trace.get(4).endedAt);
+        assertEquals(6, startup.dump().split("\n").length);
+    }
+
+    @Test
+    public void eventBeforeStartCountsFromStart() {
+        QueueExecutor main = new QueueExecutor();
+        List<String> ran = new ArrayList<String>();
+        Startup startup = new Startup(main, main, new Metrics(), "")
+                .event("connected")
+                .onMain("tracking", log(ran, "tracking"), "connected");
+        startup.complete("connected");
+        assertFalse(startup.isDone("connected"));
+        startup.start();
+        assertTrue(startup.isDone("connected"));
+        main.runAll();
+        assertEquals(Collections.singletonList("tracking"), ran);
+    }
+
+    @Test
+    public void independentBackgroundStagesOverlap() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final CountDownLatch both = new CountDownLatch(2);
+            Runnable meet = new Runnable() {
+                @Override
+                public void run() {
+                    both.countDown();
+                    try {
+                        // only returns if the other stage runs at the same time
+                        assertTrue(both.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            };
+            final CountDownLatch done = new CountDownLatch(1);
+            Startup startup = new Startup(pool, pool, new Metrics(), "")
+                    .inBackground("a", meet)
+                    .inBackground("b", meet)
+                    .inBackground("c", new Runnable() {
+                        @Override
+                        public void run() {
+                            done.countDown();
+                        }
+                    }, "a", "b");
+            startup.start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // c may still be finishing, but it became ready only once both had ended
+            Startup.Entry c = null;
+            for (Startup.Entry entry : startup.getTrace()) {
+                if (entry.name.equals("c")) {
+                    c = entry;
+                }
+            }
+            assertTrue(c.readyAt >= startup.getTime("a"));
+            assertTrue(c.readyAt >= startup.getTime("b"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsCycles() {
+        QueueExecutor main = new QueueExecutor();
+        new Startup(main, main, new Metrics(), "")
+                .onMain("a", log(new ArrayList<String>(), "a"), "b")
+                .onMain("b", log(new ArrayList<String>(), "b"), "a")
+                .start();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsUnknownDependencies() {
+        QueueExecutor main = new QueueExecutor();
+        new Startup(main, main, new Metrics(), "")
+                .onMain("a", log(new ArrayList<String>(), "a"), "missing")
+                .start();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyEventsAreCompletedFromOutside() {
+        QueueExecutor main = new QueueExecutor();
+        Startup startup = new Startup(main, main, new Metrics(), "")
+                .onMain("a", log(new ArrayList<String>(), "a"));
+        startup.start();
+        startup.complete("a");
+    }
+}
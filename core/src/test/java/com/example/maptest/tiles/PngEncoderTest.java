@@ -0,0 +1,55 @@
+package com.example.maptest.tiles;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class PngEncoderTest {
+
+    @Test
+    public void decodesToSamePixels() throws IOException {
+        int width = 37;
+        int height = 11;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i * 0x9E3779B9) | (i % 3 == 0 ? 0 : 0x80000000);
+        }
+        // fully transparent pixels keep their color in PNG, but say so explicitly
+        pixels[0] = 0x00000000;
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                PngEncoder.encode(pixels, width, height)));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("pixel " + x + "," + y, pixels[y * width + x], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void rastersFilledShapes() throws IOException {
+        Raster raster = new Raster(64, 64);
+        assertTrue(raster.isTransparent());
+        raster.fillPolygon(new double[]{8, 56, 56, 8}, new double[]{8, 8, 56, 56}, 4, 0xFF00FF00);
+        raster.strokeLine(0, 32, 64, 32, 4, 0xFFFF0000);
+        assertFalse(raster.isTransparent());
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                PngEncoder.encode(raster.getPixels(), 64, 64)));
+        assertEquals(0, image.getRGB(2, 2));
+        assertEquals(0xFF00FF00, image.getRGB(20, 20));
+        assertEquals(0xFFFF0000, image.getRGB(2, 32));
+        // half covered edge pixel
+        raster.clear();
+        raster.fillPolygon(new double[]{0, 10.5, 10.5, 0}, new double[]{0, 0, 10, 10}, 4, 0xFF0000FF);
+        assertEquals(0x80, raster.getPixels()[5 * 64 + 10] >>> 24, 1);
+    }
+}
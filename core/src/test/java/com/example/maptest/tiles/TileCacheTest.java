@@ -0,0 +1,124 @@
+package com.example.maptest.tiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("tiles", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static byte[] tile(int size, int fill) {
+        byte[] tile = new byte[size];
+        java.util.Arrays.fill(tile, (byte) fill);
+        return tile;
+    }
+
+    @Test
+    public void memoryEvictsLeastRecentlyUsed() {
+        int entry = 1000 + MemoryTileCache.ENTRY_OVERHEAD;
+        MemoryTileCache cache = new MemoryTileCache(3 * entry);
+        cache.put(1, tile(1000, 1));
+        cache.put(2, tile(1000, 2));
+        cache.put(3, tile(1000, 3));
+        assertNotNull(cache.get(1));
+        cache.put(4, tile(1000, 4));
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+        assertEquals(3 * entry, cache.byteSize());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void diskStaysWithinLimitAndSurvivesReopen() throws IOException {
+        DiskTileCache disk = new DiskTileCache(dir, 3 * 4096, 7);
+        disk.put(TileMath.key(19, 1, 1), tile(100, 1));
+        disk.put(TileMath.key(19, 1, 2), tile(100, 2));
+        disk.put(TileMath.key(19, 1, 3), TileSource.EMPTY);
+        assertNotNull(disk.get(TileMath.key(19, 1, 1)));
+        disk.put(TileMath.key(19, 1, 4), tile(5000, 4));
+
+        assertEquals(3 * 4096, disk.byteSize());
+        assertNull(disk.get(TileMath.key(19, 1, 2)));
+        assertNull(disk.get(TileMath.key(19, 1, 3)));
+        assertArrayEquals(tile(100, 1), disk.get(TileMath.key(19, 1, 1)));
+
+        DiskTileCache reopened = new DiskTileCache(dir, 3 * 4096, 7);
+        assertEquals(2, reopened.size());
+        assertArrayEquals(tile(5000, 4), reopened.get(TileMath.key(19, 1, 4)));
+
+        DiskTileCache newData = new DiskTileCache(dir, 3 * 4096, 8);
+        assertEquals(0, newData.size());
+        assertNull(newData.get(TileMath.key(19, 1, 4)));
+    }
+
+    @Test
+    public void blankTilesAreCachedAsEmpty() throws IOException {
+        DiskTileCache disk = new DiskTileCache(dir, 1 << 20, 1);
+        disk.put(TileMath.key(20, 5, 5), TileSource.EMPTY);
+        assertSame(TileSource.EMPTY, disk.get(TileMath.key(20, 5, 5)));
+        assertEquals(-1, DiskTileCache.keyOf("version"));
+        assertEquals(TileMath.key(20, 5, 6), DiskTileCache.keyOf("20-5-6.png"));
+    }
+
+    @Test
+    public void tiersAreAskedInOrderAndFilled() throws IOException {
+        final int[] rendered = new int[1];
+        TileSource origin = new TileSource() {
+            @Override
+            public byte[] getTile(int zoom, int x, int y) {
+                rendered[0]++;
+                return tile(10, x);
+            }
+        };
+        TileSource pack = new TileSource() {
+            @Override
+            public byte[] getTile(int zoom, int x, int y) {
+                return zoom <= 18 ? tile(10, 99) : null;
+            }
+        };
+        MemoryTileCache memory = new MemoryTileCache(1 << 20);
+        DiskTileCache disk = new DiskTileCache(dir, 1 << 20, 1);
+        TileCache cache = new TileCache(memory, pack, disk, origin);
+
+        assertArrayEquals(tile(10, 99), cache.getTile(18, 1, 1));
+        assertEquals(0, disk.size());
+        assertArrayEquals(tile(10, 3), cache.getTile(19, 3, 1));
+        assertArrayEquals(tile(10, 3), cache.getTile(19, 3, 1));
+        assertEquals(1, rendered[0]);
+        assertEquals(1, disk.size());
+        assertEquals(2, memory.size());
+
+        // a new process starts with a cold memory tier but keeps the rendered tile
+        TileCache restarted = new TileCache(new MemoryTileCache(1 << 20), pack,
+                new DiskTileCache(dir, 1 << 20, 1), origin);
+        assertArrayEquals(tile(10, 3), restarted.getTile(19, 3, 1));
+        assertEquals(1, rendered[0]);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.maptest.tiles;
+
+import com.example.maptest.geo.BoundingBox;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileMathTest {
+
+    private static final double LAT = 36.987336;
+    private static final double LNG = -86.451221;
+
+    @Test
+    public void matchesKnownTile() {
+        // Cherry Hall at zoom 15
+        assertEquals(8515, (int) TileMath.tileX(LNG, 15));
+        assertEquals(12755, (int) TileMath.tileY(LAT, 15));
+        assertEquals(0.5, TileMath.tileX(0, 0), 1e-12);
+        assertEquals(0.5, TileMath.tileY(0, 0), 1e-12);
+    }
+
+    @Test
+    public void inverseRoundTrips() {
+        for (int zoom = 15; zoom <= 20; zoom++) {
+            assertEquals(LNG, TileMath.lng(TileMath.tileX(LNG, zoom), zoom), 1e-9);
+            assertEquals(LAT, TileMath.lat(TileMath.tileY(LAT, zoom), zoom), 1e-9);
+        }
+        int x = (int) TileMath.tileX(LNG, 18);
+        int y = (int) TileMath.tileY(LAT, 18);
+        BoundingBox bounds = TileMath.bounds(18, x, y);
+        assertTrue(bounds.contains(LAT, LNG));
+    }
+
+    @Test
+    public void keysPackAndSort() {
+        long key = TileMath.key(20, 272483, 407052);
+        assertEquals(20, TileMath.zoom(key));
+        assertEquals(272483, TileMath.x(key));
+        assertEquals(407052, TileMath.y(key));
+        assertTrue(TileMath.key(20, 1, 0) > TileMath.key(20, 0, 5));
+        assertTrue(TileMath.key(21, 0, 0) > TileMath.key(20, 272483, 407052));
+    }
+
+    @Test
+    public void pixelSizeHalvesPerZoom() {
+        double z15 = TileMath.metersPerPixel(LAT, 15);
+        assertEquals(3.82, z15, 0.01);
+        assertEquals(z15 / 32, TileMath.metersPerPixel(LAT, 20), 1e-9);
+    }
+}
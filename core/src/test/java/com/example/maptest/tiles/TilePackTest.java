@@ -0,0 +1,82 @@
+package com.example.maptest.tiles;
+
+import com.example.maptest.mapdata.CampusMap;
+import com.example.maptest.mapdata.CampusMapCompiler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TilePackTest {
+
+    static final String CAMPUS = ""
+            + "building CH|Cherry Hall||36.987336|-86.451221|4\n"
+            + "circle Cherry Hall|CH|-|36.987336|-86.451221|50\n"
+            + "polygon CH 1|CH|1|36.9872,-86.4514;36.9872,-86.4511;36.9875,-86.4511;36.9875,-86.4514\n"
+            + "node a|36.9870|-86.4510|-\n"
+            + "node b|36.9870|-86.4530|-\n"
+            + "node c|36.98734|-86.45122|1\n"
+            + "walkway a|b\n"
+            + "walkway a|c\n";
+
+    static CampusMap campus() throws IOException {
+        byte[] bytes = CampusMapCompiler.compile(new ByteArrayInputStream(CAMPUS.getBytes("UTF-8")))
+                .toByteArray();
+        return CampusMap.wrap(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void roundTripsRenderedTiles() throws IOException {
+        CampusMap map = campus();
+        TilePackWriter writer = CampusTileTool.render(map, 15, 18);
+        assertTrue(writer.size() > 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals(writer.byteSize(), out.size());
+
+        TilePack pack = TilePack.wrap(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(writer.size(), pack.size());
+        assertEquals(15, pack.getMinZoom());
+        assertEquals(18, pack.getMaxZoom());
+        assertEquals(map.getDataVersion(), pack.getDataVersion());
+
+        TileRenderer renderer = new TileRenderer(map);
+        int x = (int) TileMath.tileX(-86.451221, 17);
+        int y = (int) TileMath.tileY(36.987336, 17);
+        assertArrayEquals(renderer.getTile(17, x, y), pack.getTile(17, x, y));
+        // far away is blank, outside the zoom range is not the pack's business
+        assertSame(TileSource.EMPTY, pack.getTile(17, x + 100, y));
+        assertNull(pack.getTile(19, x * 4, y * 4));
+    }
+
+    @Test
+    public void floorPlansOnlyAtDetailZoom() throws IOException {
+        String indoorOnly = ""
+                + "polygon CH 1|-|1|36.9872,-86.4514;36.9872,-86.4511;36.9875,-86.4511;36.9875,-86.4514\n"
+                + "node c|36.98734|-86.45122|1\n"
+                + "node d|36.98730|-86.45130|1\n"
+                + "walkway c|d\n";
+        TileRenderer renderer = new TileRenderer(CampusMap.wrap(ByteBuffer.wrap(CampusMapCompiler.compile(
+                new ByteArrayInputStream(indoorOnly.getBytes("UTF-8"))).toByteArray())));
+        int zoom = TileRenderer.DETAIL_ZOOM;
+        int x = (int) TileMath.tileX(-86.45122, zoom);
+        int y = (int) TileMath.tileY(36.98734, zoom);
+        assertTrue(renderer.getTile(zoom, x, y).length > 0);
+        assertSame(TileSource.EMPTY, renderer.getTile(zoom - 1, x / 2, y / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedPack() throws IOException {
+        TilePackWriter writer = new TilePackWriter(15, 15, 1);
+        writer.add(15, 1, 1, new byte[]{1, 2, 3});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        TilePack.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 2));
+    }
+}
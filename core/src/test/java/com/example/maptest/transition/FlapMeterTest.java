@@ -0,0 +1,23 @@
+package com.example.maptest.transition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlapMeterTest {
+
+    @Test
+    public void countsDwellsSoonAfterAnExit() {
+        FlapMeter meter = new FlapMeter(60000);
+        assertFalse(meter.record("a", TransitionEvent.DWELL, 0));
+        // walking through
+        assertFalse(meter.record("a", TransitionEvent.EXIT, 30000));
+        assertTrue(meter.record("a", TransitionEvent.DWELL, 50000));
+        assertFalse(meter.record("b", TransitionEvent.DWELL, 55000));
+        assertFalse(meter.record("a", TransitionEvent.EXIT, 60000));
+        assertFalse(meter.record("a", TransitionEvent.DWELL, 200000));
+        assertEquals(6, meter.getTransitionCount());
+        assertEquals(1, meter.getFlapCount());
+        assertEquals(2, meter.flapsPerHour(1800000), 0);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.maptest.transition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NotificationAggregatorTest {
+
+    private static final int DWELL = TransitionEvent.DWELL;
+    private static final int EXIT = TransitionEvent.EXIT;
+
+    private static List<TransitionEvent> event(String id, int transition) {
+        return Collections.singletonList(new TransitionEvent(id, transition, 0));
+    }
+
+    @Test
+    public void collapsesAWindowIntoOneDigest() {
+        NotificationAggregator aggregator = new NotificationAggregator(5000, 60000);
+        assertEquals(6000, aggregator.offer(event("a", DWELL), 1000));
+        assertEquals(6000, aggregator.offer(event("b", DWELL), 2000));
+        assertEquals(6000, aggregator.offer(event("a", EXIT), 3000));
+        assertNull(aggregator.poll(5999));
+
+        NotificationAggregator.Digest digest = aggregator.poll(6000);
+        assertEquals(2, digest.entries.size());
+        assertEquals("a", digest.entries.get(1).event.getRequestId());
+        assertEquals(EXIT, digest.entries.get(1).event.getTransition());
+        assertNull(aggregator.poll(7000));
+        assertEquals(-1, aggregator.offer(Collections.<TransitionEvent>emptyList(), 7000));
+    }
+
+    @Test
+    public void walkingPastARowOfBuildingsAlertsOncePerWindow() {
+        NotificationAggregator aggregator = new NotificationAggregator(5000, 60000);
+        int digests = 0;
+        int posted = 0;
+        for (long t = 0; t < 30000; t += 500) {
+            aggregator.offer(event("building" + (t / 1000), DWELL), t);
+            NotificationAggregator.Digest digest = aggregator.poll(t);
+            if (digest != null) {
+                digests++;
+                posted += digest.entries.size();
+            }
+        }
+        NotificationAggregator.Digest last = aggregator.poll(35000);
+        if (last != null) {
+            digests++;
+            posted += last.entries.size();
+        }
+        // one alert per 5 s window over 30 s, each building notified once
+        assertTrue("digests " + digests, digests <= 7);
+        assertEquals(30, posted);
+    }
+
+    @Test
+    public void appliesPerRegionCooldown() {
+        NotificationAggregator aggregator = new NotificationAggregator(0, 60000);
+        aggregator.offer(event("a", DWELL), 0);
+        assertEquals(1, aggregator.poll(0).entries.size());
+
+        aggregator.offer(Arrays.asList(new TransitionEvent("a", DWELL, 0), new TransitionEvent("b", DWELL, 0)), 1000);
+        NotificationAggregator.Digest digest = aggregator.poll(1000);
+        assertEquals(1, digest.entries.size());
+        assertEquals("b", digest.entries.get(0).event.getRequestId());
+        assertEquals(1, digest.suppressed);
+
+        // a different transition is news
+        aggregator.offer(event("a", EXIT), 2000);
+        assertEquals(1, aggregator.poll(2000).entries.size());
+
+        aggregator.offer(event("a", DWELL), 60000);
+        assertEquals(1, aggregator.poll(60000).entries.size());
+        assertEquals(1, aggregator.getSuppressedCount());
+    }
+
+    @Test
+    public void regionIdsAreStableAndDistinct() {
+        NotificationAggregator aggregator = new NotificationAggregator(0, 0);
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int i = 0; i < 5000; i++) {
+            int id = aggregator.notificationIdFor("region-" + i);
+            assertTrue(id != NotificationAggregator.SUMMARY_ID);
+            assertTrue(ids.add(id));
+        }
+        assertEquals(aggregator.notificationIdFor("region-7"),
+                new NotificationAggregator(0, 0).notificationIdFor("region-7"));
+        // "Aa" and "BB" share a hash code
+        assertTrue(aggregator.notificationIdFor("Aa") != aggregator.notificationIdFor("BB"));
+    }
+}
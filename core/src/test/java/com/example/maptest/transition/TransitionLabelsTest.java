@@ -0,0 +1,19 @@
+package com.example.maptest.transition;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransitionLabelsTest {
+
+    private final TransitionLabels labels = new TransitionLabels("Entered", "Exited", "Unknown");
+
+    @Test
+    public void describesDwellAsEntering() {
+        assertEquals("Entered: Cherry Hall",
+                labels.details(new TransitionEvent("Cherry Hall", TransitionEvent.DWELL, 0)));
+        assertEquals("Exited: Cherry Hall",
+                labels.details(new TransitionEvent("Cherry Hall", TransitionEvent.EXIT, 0)));
+        assertEquals("Unknown", labels.label(TransitionEvent.ENTER));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.maptest.transition;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TransitionPipelineTest {
+
+    private static final int DWELL = TransitionEvent.DWELL;
+    private static final int EXIT = TransitionEvent.EXIT;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Recorder implements TransitionPipeline.Handler {
+        final List<List<TransitionEvent>> batches = new ArrayList<List<TransitionEvent>>();
+
+        @Override
+        public synchronized void handle(List<TransitionEvent> batch) {
+            batches.add(batch);
+        }
+    }
+
+    @Test
+    public void keepsNewestEventPerRegion() {
+        Recorder recorder = new Recorder();
+        TransitionPipeline pipeline = new TransitionPipeline(DIRECT, recorder);
+        pipeline.submit(Arrays.asList(
+                new TransitionEvent("a", DWELL, 10),
+                new TransitionEvent("b", DWELL, 10),
+                new TransitionEvent("a", EXIT, 20),
+                new TransitionEvent("b", EXIT, 5)), null);
+
+        assertEquals(1, recorder.batches.size());
+        List<TransitionEvent> batch = recorder.batches.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("a", batch.get(0).getRequestId());
+        assertEquals(EXIT, batch.get(0).getTransition());
+        assertEquals(DWELL, batch.get(1).getTransition());
+        assertEquals(4, pipeline.getSubmittedCount());
+        assertEquals(2, pipeline.getHandledCount());
+    }
+
+    @Test
+    public void batchesEventsThatArriveWhileBusy() throws InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Recorder recorder = new Recorder();
+        ExecutorService executor = TransitionPipeline.newBoundedExecutor("test", 2, 4);
+        TransitionPipeline pipeline = new TransitionPipeline(executor, new TransitionPipeline.Handler() {
+            @Override
+            public void handle(List<TransitionEvent> batch) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                recorder.handle(batch);
+            }
+        });
+
+        final CountDownLatch done = new CountDownLatch(3);
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        pipeline.submit(Collections.singletonList(new TransitionEvent("a", DWELL, 1)), countDown);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(Collections.singletonList(new TransitionEvent("r" + (i % 10), DWELL, i)),
+                    i < 2 ? countDown : null);
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(2, recorder.batches.size());
+        assertEquals(10, recorder.batches.get(1).size());
+        assertEquals(2, pipeline.getBatchCount());
+    }
+
+    @Test
+    public void recoversFromHandlerFailure() {
+        final Recorder recorder = new Recorder();
+        TransitionPipeline pipeline = new TransitionPipeline(DIRECT, new TransitionPipeline.Handler() {
+            @Override
+            public void handle(List<TransitionEvent> batch) {
+                if (batch.get(0).getRequestId().equals("bad")) {
+                    throw new IllegalStateException("boom");
+                }
+                recorder.handle(batch);
+            }
+        });
+        final boolean[] called = new boolean[1];
+        try {
+            pipeline.submit(Collections.singletonList(new TransitionEvent("bad", DWELL, 1)), new Runnable() {
+                @Override
+                public void run() {
+                    called[0] = true;
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(called[0]);
+        }
+        pipeline.submit(Collections.singletonList(new TransitionEvent("good", DWELL, 2)), null);
+        assertEquals(1, recorder.batches.size());
+    }
+}